@@ -20,6 +20,7 @@ package org.apache.openejb;
 import org.apache.openejb.assembler.classic.DeploymentExceptionManager;
 import org.apache.openejb.cdi.CdiBuilder;
 import org.apache.openejb.core.ServerFederation;
+import org.apache.openejb.loader.ComponentHandle;
 import org.apache.openejb.loader.SystemInstance;
 import org.apache.openejb.spi.ApplicationServer;
 import org.apache.openejb.spi.Assembler;
@@ -41,6 +42,8 @@ import java.util.Properties;
  */
 public final class OpenEJB {
 
+    private static final ComponentHandle<TransactionManager> TRANSACTION_MANAGER = ComponentHandle.of(TransactionManager.class);
+
     private static Instance instance;
 
     private OpenEJB() {
@@ -51,7 +54,7 @@ public final class OpenEJB {
     }
 
     public static TransactionManager getTransactionManager() {
-        return SystemInstance.get().getComponent(TransactionManager.class);
+        return TRANSACTION_MANAGER.get();
     }
 
     public static class Instance {
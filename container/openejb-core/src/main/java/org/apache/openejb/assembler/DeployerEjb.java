@@ -25,6 +25,7 @@ import org.apache.openejb.UndeployException;
 import org.apache.openejb.assembler.classic.AppInfo;
 import org.apache.openejb.assembler.classic.Assembler;
 import org.apache.openejb.assembler.classic.DeploymentExceptionManager;
+import org.apache.openejb.assembler.classic.RedeployPlan;
 import org.apache.openejb.config.AppModule;
 import org.apache.openejb.config.ConfigurationFactory;
 import org.apache.openejb.config.DeploymentLoader;
@@ -50,12 +51,15 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.math.BigInteger;
+import java.net.MalformedURLException;
 import java.security.SecureRandom;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.Iterator;
 import java.util.Map;
 import java.util.Properties;
 import java.util.TreeMap;
+import java.util.WeakHashMap;
 
 import static javax.ejb.TransactionManagementType.BEAN;
 import static org.apache.openejb.config.ConfigurationFactory.ADDITIONAL_DEPLOYMENTS;
@@ -85,6 +89,9 @@ public class DeployerEjb implements Deployer {
     private static final String OPENEJB_DEPLOYER_SAVE_DEPLOYMENTS = "openejb.deployer.save-deployments";
     private static final boolean SAVE_DEPLOYMENTS = SystemInstance.get().getOptions().get(OPENEJB_DEPLOYER_SAVE_DEPLOYMENTS, false);
 
+    // the properties an application was deployed with, a reload reads the application again with them
+    private static final Map<AppInfo, Properties> DEPLOYMENT_PROPERTIES = Collections.synchronizedMap(new WeakHashMap<AppInfo, Properties>());
+
     static {
         final String uniqueName = "OpenEJB-" + new BigInteger(128, new SecureRandom()).toString(Character.MAX_RADIX);
         final String tempDir = System.getProperty("java.io.tmpdir");
@@ -191,52 +198,7 @@ public class DeployerEjb implements Deployer {
         try {
             appModule = deploymentLoader.load(file, null);
 
-            // Add any alternate deployment descriptors to the modules
-            final Map<String, DeploymentModule> modules = new TreeMap<>();
-            for (final DeploymentModule module : appModule.getEjbModules()) {
-                modules.put(module.getModuleId(), module);
-            }
-            for (final DeploymentModule module : appModule.getClientModules()) {
-                modules.put(module.getModuleId(), module);
-            }
-            for (final WebModule module : appModule.getWebModules()) {
-                final String contextRoot = contextRoot(properties, module.getJarLocation());
-                if (contextRoot != null) {
-                    module.setContextRoot(contextRoot);
-                    module.setHost(host);
-                }
-                modules.put(module.getModuleId(), module);
-            }
-            for (final DeploymentModule module : appModule.getConnectorModules()) {
-                modules.put(module.getModuleId(), module);
-            }
-
-            for (final Map.Entry<Object, Object> entry : properties.entrySet()) {
-                String name = (String) entry.getKey();
-                if (name.startsWith(ALT_DD + "/")) {
-                    name = name.substring(ALT_DD.length() + 1);
-
-                    final DeploymentModule module;
-                    final int slash = name.indexOf('/');
-                    if (slash > 0) {
-                        final String moduleId = name.substring(0, slash);
-                        name = name.substring(slash + 1);
-                        module = modules.get(moduleId);
-                    } else {
-                        module = appModule;
-                    }
-
-                    if (module != null) {
-                        final String value = (String) entry.getValue();
-                        final File dd = new File(value);
-                        if (dd.canRead()) {
-                            module.getAltDDs().put(name, dd.toURI().toURL());
-                        } else {
-                            module.getAltDDs().put(name, value);
-                        }
-                    }
-                }
-            }
+            applyDeploymentProperties(appModule, properties);
 
             appInfo = configurationFactory.configureApplication(appModule);
             appInfo.autoDeploy = autoDeploy;
@@ -247,6 +209,11 @@ public class DeployerEjb implements Deployer {
 
             assembler.createApplication(appInfo);
 
+            final Properties deploymentProperties = new Properties();
+            deploymentProperties.putAll(properties);
+            deploymentProperties.remove(OPENEJB_VALUE_BINARIES);
+            DEPLOYMENT_PROPERTIES.put(appInfo, deploymentProperties);
+
             saveIfNeeded(properties, file, appInfo);
 
             return appInfo;
@@ -292,6 +259,60 @@ public class DeployerEjb implements Deployer {
         }
     }
 
+    /**
+     * Sets the context roots, the host and the alternate deployment descriptors given in the deployment properties.
+     */
+    private void applyDeploymentProperties(final AppModule appModule, final Properties properties) throws MalformedURLException {
+        final String host = properties.getProperty(OPENEJB_DEPLOYER_HOST, null);
+
+        // Add any alternate deployment descriptors to the modules
+        final Map<String, DeploymentModule> modules = new TreeMap<>();
+        for (final DeploymentModule module : appModule.getEjbModules()) {
+            modules.put(module.getModuleId(), module);
+        }
+        for (final DeploymentModule module : appModule.getClientModules()) {
+            modules.put(module.getModuleId(), module);
+        }
+        for (final WebModule module : appModule.getWebModules()) {
+            final String contextRoot = contextRoot(properties, module.getJarLocation());
+            if (contextRoot != null) {
+                module.setContextRoot(contextRoot);
+                module.setHost(host);
+            }
+            modules.put(module.getModuleId(), module);
+        }
+        for (final DeploymentModule module : appModule.getConnectorModules()) {
+            modules.put(module.getModuleId(), module);
+        }
+
+        for (final Map.Entry<Object, Object> entry : properties.entrySet()) {
+            String name = (String) entry.getKey();
+            if (name.startsWith(ALT_DD + "/")) {
+                name = name.substring(ALT_DD.length() + 1);
+
+                final DeploymentModule module;
+                final int slash = name.indexOf('/');
+                if (slash > 0) {
+                    final String moduleId = name.substring(0, slash);
+                    name = name.substring(slash + 1);
+                    module = modules.get(moduleId);
+                } else {
+                    module = appModule;
+                }
+
+                if (module != null) {
+                    final String value = (String) entry.getValue();
+                    final File dd = new File(value);
+                    if (dd.canRead()) {
+                        module.getAltDDs().put(name, dd.toURI().toURL());
+                    } else {
+                        module.getAltDDs().put(name, value);
+                    }
+                }
+            }
+        }
+    }
+
     private void saveIfNeeded(final Properties properties, final File file, final AppInfo appInfo) {
         if ((SAVE_DEPLOYMENTS && null == properties.getProperty(OPENEJB_DEPLOYER_SAVE_DEPLOYMENTS))
             || "true".equalsIgnoreCase(properties.getProperty(OPENEJB_DEPLOYER_SAVE_DEPLOYMENTS, "false"))) {
@@ -412,6 +433,7 @@ public class DeployerEjb implements Deployer {
         }
         if (appInfo != null) {
             assembler.destroyApplication(appInfo);
+            DEPLOYMENT_PROPERTIES.remove(appInfo);
             if (appInfo.properties.containsKey("save-deployment")) {
                 saveDeployment(new File(moduleId), false);
             }
@@ -445,11 +467,29 @@ public class DeployerEjb implements Deployer {
             }
         }
 
-            try {
-                assembler.destroyApplication(info);
-                assembler.createApplication(info);
-            } catch (final Exception e) {
-                throw new OpenEJBRuntimeException(e);
+        try {
+            if (RedeployPlan.isActive() && info.resourceIds.isEmpty() && info.connectors.isEmpty()) {
+                // read the application again to find out what changed, app scoped resources would be configured twice
+                Properties properties = DEPLOYMENT_PROPERTIES.get(info);
+                if (properties == null) {
+                    properties = new Properties();
+                }
+
+                final AppModule appModule = deploymentLoader.load(new File(info.path), null);
+                applyDeploymentProperties(appModule, properties);
+
+                final AppInfo next = configurationFactory.configureApplication(appModule);
+                next.appId = info.appId; // forced one included
+                next.autoDeploy = info.autoDeploy;
+                assembler.redeployApplication(info, next);
+                DEPLOYMENT_PROPERTIES.put(next, properties);
+                return;
             }
+
+            assembler.destroyApplication(info);
+            assembler.createApplication(info);
+        } catch (final Exception e) {
+            throw new OpenEJBRuntimeException(e);
         }
     }
+}
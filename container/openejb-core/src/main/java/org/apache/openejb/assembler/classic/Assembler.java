@@ -765,6 +765,9 @@ public class Assembler extends AssemblerTool implements org.apache.openejb.spi.A
             containerSystem.addAppContext(appContext);
 
             appContext.set(AsynchronousPool.class, AsynchronousPool.create(appContext));
+            if (RedeployPlan.isActive()) {
+                appContext.set(RedeployPlan.Fingerprints.class, RedeployPlan.Fingerprints.of(appInfo));
+            }
 
             final Map<String, LazyValidatorFactory> lazyValidatorFactories = new HashMap<String, LazyValidatorFactory>();
             final Map<String, LazyValidator> lazyValidators = new HashMap<String, LazyValidator>();
@@ -1001,6 +1004,10 @@ public class Assembler extends AssemblerTool implements org.apache.openejb.spi.A
             deployedApplications.put(appInfo.path, appInfo);
             resumePersistentSchedulers(appContext);
 
+            if (!isGeronimo && appContext.getOptions().get(ConstraintMetadataPrecomputer.PRECOMPUTE_KEY, false)) {
+                precomputeConstraintMetadata(appInfo, appContext, lazyValidatorFactories);
+            }
+
             systemInstance.fireEvent(new AssemblerAfterApplicationCreated(appInfo, appContext, allDeployments));
             logger.info("createApplication.success", appInfo.path);
 
@@ -1253,6 +1260,39 @@ public class Assembler extends AssemblerTool implements org.apache.openejb.spi.A
         }
     }
 
+    private static void precomputeConstraintMetadata(final AppInfo appInfo, final AppContext appContext,
+                                                     final Map<String, LazyValidatorFactory> factories) {
+        final ConstraintMetadataPrecomputer precomputer = new ConstraintMetadataPrecomputer(appInfo.appId);
+        for (final EjbJarInfo ejbJar : appInfo.ejbJars) {
+            final Collection<String> classes = new ArrayList<String>();
+            for (final EnterpriseBeanInfo bean : ejbJar.enterpriseBeans) {
+                classes.add(bean.ejbClass);
+            }
+            if (ejbJar.beans != null) {
+                for (final BeansInfo.BDAInfo bda : ejbJar.beans.bdas) {
+                    classes.addAll(bda.managedClasses);
+                }
+                for (final BeansInfo.BDAInfo bda : ejbJar.beans.noDescriptorBdas) {
+                    classes.addAll(bda.managedClasses);
+                }
+            }
+            precomputer.add(factories.get(ejbJar.uniqueId), appContext.getClassLoader(), classes);
+        }
+        for (final WebAppInfo webApp : appInfo.webApps) {
+            ClassLoader loader = appContext.getClassLoader();
+            for (final WebContext web : appContext.getWebContexts()) {
+                if (webApp.moduleId.equals(web.getId()) && web.getClassLoader() != null) {
+                    loader = web.getClassLoader();
+                    break;
+                }
+            }
+            precomputer.add(factories.get(webApp.uniqueId), loader, webApp.restClass);
+        }
+
+        appContext.set(ConstraintMetadataPrecomputer.class, precomputer);
+        precomputer.start();
+    }
+
     private static List<CommonInfoObject> listCommonInfoObjectsForAppInfo(final AppInfo appInfo) {
         final List<CommonInfoObject> vfs = new ArrayList<CommonInfoObject>(
             appInfo.clients.size() + appInfo.connectors.size() +
@@ -1317,7 +1357,7 @@ public class Assembler extends AssemblerTool implements org.apache.openejb.spi.A
             final Collection<Scheduler> schedulers = new ArrayList<Scheduler>();
             for (final BeanContext ejb : appContext.getBeanContexts()) {
                 final Scheduler scheduler = ejb.get(Scheduler.class);
-                if (scheduler == null || scheduler == globalScheduler || schedulers.contains(scheduler)) {
+                if (scheduler == null || scheduler == globalScheduler || schedulers.contains(scheduler) || EjbTimerServiceImpl.isPartition(scheduler)) {
                     continue;
                 }
 
@@ -1924,6 +1964,135 @@ public class Assembler extends AssemblerTool implements org.apache.openejb.spi.A
         return o;
     }
 
+    /**
+     * Replaces a deployed application. When only some of its web modules changed and
+     * {@link RedeployPlan#OPENEJB_REDEPLOY_INCREMENTAL} is set these web modules are the only ones
+     * redeployed, the rest of the application is kept as it is.
+     *
+     * @param running the deployed application
+     * @param next    the application to deploy instead
+     * @return what was rebuilt and what was reused
+     */
+    public RedeployPlan redeployApplication(final AppInfo running, final AppInfo next) throws OpenEJBException, IOException, NamingException {
+        final ReentrantLock l = lock;
+        l.lock();
+
+        try {
+            final AppContext appContext = containerSystem.getAppContext(running.appId);
+            final WebAppBuilder webAppBuilder = SystemInstance.get().getComponent(WebAppBuilder.class);
+            final RedeployPlan plan = RedeployPlan.of(running, appContext == null ? null : appContext.get(RedeployPlan.Fingerprints.class), next, webAppBuilder != null);
+            logger.info("Redeploying " + running.path + ": " + plan);
+
+            if (plan.isIncremental()) {
+                try {
+                    undeployWebApps(webAppBuilder, running, appContext, plan.getStaleWebApps());
+                    plan.apply(running);
+                    appContext.set(RedeployPlan.Fingerprints.class, plan.getFingerprints());
+
+                    final List<WebAppInfo> webApps = new ArrayList<WebAppInfo>(running.webApps);
+                    running.webApps.retainAll(plan.getNewWebApps());
+                    try {
+                        webAppBuilder.deployWebApps(running, appContext.getClassLoader());
+                    } finally {
+                        running.webApps.clear();
+                        running.webApps.addAll(webApps);
+                    }
+                    return plan;
+                } catch (final Exception e) {
+                    logger.warning("Incremental redeployment of " + running.path + " failed, redeploying the whole application", e);
+                    try {
+                        destroyApplication(running);
+                    } catch (final UndeployException ue) {
+                        logger.warning("Can't undeploy " + running.path + " completely", ue);
+                    }
+                    createApplication(next);
+                    return plan;
+                }
+            }
+
+            destroyApplication(running);
+            createApplication(next);
+            return plan;
+        } finally {
+            l.unlock();
+        }
+    }
+
+    /**
+     * Undeploys some web modules of an application which stays deployed.
+     */
+    private void undeployWebApps(final WebAppBuilder webAppBuilder, final AppInfo appInfo, final AppContext appContext, final List<WebAppInfo> stale) throws Exception {
+        if (stale.isEmpty()) {
+            return;
+        }
+
+        final List<WebAppInfo> webApps = new ArrayList<WebAppInfo>(appInfo.webApps);
+        appInfo.webApps.retainAll(stale);
+        try {
+            webAppBuilder.undeployWebApps(appInfo);
+        } finally {
+            appInfo.webApps.clear();
+            appInfo.webApps.addAll(webApps);
+        }
+
+        final Set<String> moduleIds = new HashSet<String>();
+        for (final WebAppInfo webApp : stale) {
+            moduleIds.add(webApp.moduleId);
+        }
+
+        for (final Iterator<WebContext> it = appContext.getWebContexts().iterator(); it.hasNext(); ) {
+            final WebContext webContext = it.next();
+            if (!moduleIds.contains(webContext.getId())) {
+                continue;
+            }
+
+            final WebBeansContext webBeansContext = webContext.getWebbeansContext();
+            if (webBeansContext != null && webBeansContext != appContext.getWebBeansContext()) {
+                final ClassLoader old = Thread.currentThread().getContextClassLoader();
+                Thread.currentThread().setContextClassLoader(webContext.getClassLoader());
+                try {
+                    webBeansContext.getService(ContainerLifecycle.class).stopApplication(webContext.getServletContext());
+                } finally {
+                    Thread.currentThread().setContextClassLoader(old);
+                }
+            }
+            containerSystem.removeWebContext(webContext);
+            it.remove();
+        }
+
+        // the comp beans of the web modules
+        final Context globalContext = containerSystem.getJNDIContext();
+        for (final EjbJarInfo ejbJarInfo : appInfo.ejbJars) {
+            if (!moduleIds.contains(ejbJarInfo.moduleId)) {
+                continue;
+            }
+
+            for (final EnterpriseBeanInfo beanInfo : ejbJarInfo.enterpriseBeans) {
+                final BeanContext beanContext = containerSystem.getBeanContext(beanInfo.ejbDeploymentId);
+                if (beanContext == null) {
+                    continue;
+                }
+
+                final Container container = beanContext.getContainer();
+                if (container != null) {
+                    container.stop(beanContext);
+                    container.undeploy(beanContext);
+                    beanContext.setContainer(null);
+                }
+                beanContext.setDestroyed(true);
+                containerSystem.removeBeanContext(beanContext);
+                appContext.getBeanContexts().remove(beanContext);
+
+                final JndiBuilder.Bindings bindings = beanContext.get(JndiBuilder.Bindings.class);
+                if (bindings != null) {
+                    for (final String name : bindings.getBindings()) {
+                        unbind(globalContext, name);
+                    }
+                }
+            }
+        }
+    }
+
     public void destroyApplication(final String filePath) throws UndeployException, NoSuchApplicationException {
 
         final ReentrantLock l = lock;
@@ -2128,6 +2297,11 @@ public class Assembler extends AssemblerTool implements org.apache.openejb.spi.A
                 pool.stop();
             }
 
+            final ConstraintMetadataPrecomputer precomputer = appContext.get(ConstraintMetadataPrecomputer.class);
+            if (precomputer != null) {
+                precomputer.stop();
+            }
+
             for (final CommonInfoObject jar : listCommonInfoObjectsForAppInfo(appInfo)) {
                 try {
                     globalContext.unbind(VALIDATOR_FACTORY_NAMING_CONTEXT + jar.uniqueId);
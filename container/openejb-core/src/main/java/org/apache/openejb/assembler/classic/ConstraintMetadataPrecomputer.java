@@ -0,0 +1,220 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.openejb.assembler.classic;
+
+import org.apache.openejb.api.internal.Internal;
+import org.apache.openejb.api.jmx.Description;
+import org.apache.openejb.api.jmx.MBean;
+import org.apache.openejb.api.jmx.ManagedAttribute;
+import org.apache.openejb.monitoring.LocalMBeanServer;
+import org.apache.openejb.monitoring.ObjectNameBuilder;
+import org.apache.openejb.util.DaemonThreadFactory;
+import org.apache.openejb.util.LogCategory;
+import org.apache.openejb.util.Logger;
+
+import javax.management.ObjectName;
+import javax.validation.Validator;
+import javax.validation.metadata.BeanDescriptor;
+import javax.validation.metadata.MethodType;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Computes the bean validation metadata of the classes of an application once it is deployed,
+ * instead of letting the first validated call of each class pay for it.
+ *
+ * Activated with openejb.bean-validation.precompute=true, as a system or application property.
+ * The EJB, CDI and JAX-RS classes found while deploying the application are given to the
+ * validator of their module on a single background thread, the providers cache the constraints
+ * of a class, its methods and constructors from the first time they are asked for them.
+ */
+@MBean
+@Internal
+@Description("Bean validation metadata computed after the deployment of an application")
+public class ConstraintMetadataPrecomputer {
+    private static final Logger LOGGER = Logger.getInstance(LogCategory.OPENEJB_STARTUP, ConstraintMetadataPrecomputer.class);
+
+    public static final String PRECOMPUTE_KEY = "openejb.bean-validation.precompute";
+
+    private final String appId;
+    private final List<Module> modules = new ArrayList<>();
+    private final AtomicInteger types = new AtomicInteger();
+    private final AtomicInteger failures = new AtomicInteger();
+    private volatile long duration = -1;
+    private ExecutorService executor;
+    private ObjectName objectName;
+
+    public ConstraintMetadataPrecomputer(final String appId) {
+        this.appId = appId;
+    }
+
+    /**
+     * @param factory the validator factory of the module
+     * @param loader  the loader of the module, several modules can share the same factory but not their classes
+     */
+    public void add(final LazyValidatorFactory factory, final ClassLoader loader, final Collection<String> classes) {
+        if (factory == null || loader == null || classes.isEmpty()) {
+            return;
+        }
+
+        for (final Module module : modules) {
+            if (module.factory == factory && module.loader == loader) {
+                module.classes.addAll(classes);
+                return;
+            }
+        }
+        modules.add(new Module(factory, loader, classes));
+    }
+
+    public synchronized void start() {
+        if (modules.isEmpty() || executor != null) {
+            return;
+        }
+
+        register();
+        executor = Executors.newSingleThreadExecutor(new DaemonThreadFactory("OpenEJB-bval-precompute", appId));
+        executor.submit(new Runnable() {
+            @Override
+            public void run() {
+                precompute();
+            }
+        });
+        executor.shutdown();
+    }
+
+    public synchronized void stop() {
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+        unregister();
+    }
+
+    /**
+     * Computes the metadata on the calling thread, {@link #start()} does it in background.
+     */
+    public void precompute() {
+        final Thread thread = Thread.currentThread();
+        final ClassLoader oldLoader = thread.getContextClassLoader();
+        final long start = System.nanoTime();
+        try {
+            for (final Module module : modules) {
+                thread.setContextClassLoader(module.loader);
+                final Validator validator;
+                try {
+                    validator = module.factory.getFactory().getValidator();
+                } catch (final Exception e) {
+                    LOGGER.warning("Can't get a validator to precompute the validation metadata of " + appId, e);
+                    continue;
+                }
+
+                for (final String name : module.classes) {
+                    if (thread.isInterrupted()) { // undeployed
+                        return;
+                    }
+                    precompute(validator, module.loader, name);
+                }
+            }
+        } finally {
+            thread.setContextClassLoader(oldLoader);
+            duration = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        }
+
+        LOGGER.info("Precomputed the validation metadata of " + types.get() + " classes of " + appId + " in " + duration + "ms"
+            + (failures.get() > 0 ? ", " + failures.get() + " classes skipped" : ""));
+    }
+
+    private void precompute(final Validator validator, final ClassLoader loader, final String name) {
+        try {
+            final BeanDescriptor descriptor = validator.getConstraintsForClass(loader.loadClass(name));
+            descriptor.getConstrainedMethods(MethodType.GETTER, MethodType.NON_GETTER);
+            descriptor.getConstrainedConstructors();
+            types.incrementAndGet();
+        } catch (final Exception | LinkageError e) { // the call will fail the same way if the class is ever validated
+            failures.incrementAndGet();
+            LOGGER.debug("Can't precompute the validation metadata of " + name + ": " + e.getMessage());
+        }
+    }
+
+    @ManagedAttribute
+    @Description("Classes whose validation metadata were computed")
+    public int getPrecomputedTypes() {
+        return types.get();
+    }
+
+    @ManagedAttribute
+    @Description("Classes which couldn't be loaded or introspected")
+    public int getFailedTypes() {
+        return failures.get();
+    }
+
+    @ManagedAttribute
+    @Description("Milliseconds spent computing the metadata, -1 until it is done")
+    public long getDuration() {
+        return duration;
+    }
+
+    @ManagedAttribute
+    @Description("Classes given to the validators")
+    public int getTypes() {
+        int count = 0;
+        for (final Module module : modules) {
+            count += module.classes.size();
+        }
+        return count;
+    }
+
+    private void register() {
+        if (!LocalMBeanServer.isJMXActive()) {
+            return;
+        }
+
+        final ObjectName on = new ObjectNameBuilder("openejb.management")
+            .set("J2EEServer", "openejb")
+            .set("J2EEApplication", null)
+            .set("j2eeType", "BeanValidationPrecomputation")
+            .set("name", appId)
+            .build();
+        LocalMBeanServer.registerDynamicWrapperSilently(this, on);
+        objectName = on;
+    }
+
+    private void unregister() {
+        if (objectName != null) {
+            LocalMBeanServer.unregisterSilently(objectName);
+            objectName = null;
+        }
+    }
+
+    private static final class Module {
+        private final LazyValidatorFactory factory;
+        private final ClassLoader loader;
+        private final Set<String> classes;
+
+        private Module(final LazyValidatorFactory factory, final ClassLoader loader, final Collection<String> classes) {
+            this.factory = factory;
+            this.loader = loader;
+            this.classes = new LinkedHashSet<>(classes);
+        }
+    }
+}
@@ -0,0 +1,376 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.openejb.assembler.classic;
+
+import org.apache.openejb.loader.SystemInstance;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+/**
+ * What a redeployment of an application can keep from the running one.
+ *
+ * The files of the modules are fingerprinted when the application is deployed, a module is
+ * unchanged when its id, its path and its fingerprint are the same, the META-INF folder of the
+ * application being fingerprinted too for its descriptors. When only web modules
+ * changed, and none of them holds EJBs or persistence units, the EJB modules, the persistence
+ * units, the resources and the class loader of the application are kept and only these web
+ * modules are redeployed. Anything else changing means a full redeployment.
+ */
+public class RedeployPlan {
+    public static final String OPENEJB_REDEPLOY_INCREMENTAL = "openejb.redeploy.incremental";
+
+    private final Fingerprints fingerprints;
+    private final Collection<String> reused = new TreeSet<>();
+    private final Collection<String> rebuilt = new TreeSet<>();
+    private final List<WebAppInfo> staleWebApps = new ArrayList<>();
+    private final List<WebAppInfo> newWebApps = new ArrayList<>();
+    private final List<WebAppInfo> webApps = new ArrayList<>();
+    private final List<EjbJarInfo> ejbJars = new ArrayList<>();
+    private String fullRedeploymentReason;
+
+    private RedeployPlan(final Fingerprints fingerprints) {
+        this.fingerprints = fingerprints;
+    }
+
+    public static boolean isActive() {
+        return SystemInstance.get().getOptions().get(OPENEJB_REDEPLOY_INCREMENTAL, false);
+    }
+
+    /**
+     * @param running      the deployed application
+     * @param deployed     the fingerprints of its modules taken when it was deployed, can be null
+     * @param next         the application to deploy instead
+     * @param webAppBuilder true if web modules can be deployed on their own
+     */
+    public static RedeployPlan of(final AppInfo running, final Fingerprints deployed, final AppInfo next, final boolean webAppBuilder) {
+        final RedeployPlan plan = new RedeployPlan(Fingerprints.of(next));
+        if (deployed == null) {
+            return plan.full("the modules were not fingerprinted when the application was deployed");
+        }
+        if (!webAppBuilder) {
+            return plan.full("web modules can't be deployed on their own");
+        }
+        if (running.webAppAlone || running.standaloneModule || next.webAppAlone || next.standaloneModule) {
+            return plan.full("standalone module");
+        }
+        if (!running.libs.equals(next.libs) || !deployed.same(plan.fingerprints, running.libs)) {
+            return plan.full("libraries changed");
+        }
+        if (!running.resourceIds.equals(next.resourceIds) || !running.resourceAliases.equals(next.resourceAliases)) {
+            return plan.full("resources changed");
+        }
+        final String descriptors = descriptors(next);
+        if (!same(descriptors(running), descriptors) || !deployed.same(plan.fingerprints, descriptors)) {
+            return plan.full("application descriptors changed");
+        }
+
+        // web modules
+        final Map<String, WebAppInfo> runningWebApps = new HashMap<>();
+        for (final WebAppInfo webApp : running.webApps) {
+            runningWebApps.put(webApp.moduleId, webApp);
+        }
+        final Collection<String> webModules = new TreeSet<>();
+        for (final WebAppInfo webApp : next.webApps) {
+            final WebAppInfo previous = runningWebApps.remove(webApp.moduleId);
+            if (previous != null && same(previous.path, webApp.path) && deployed.same(plan.fingerprints, webApp.path)) {
+                plan.webApps.add(previous);
+                plan.reused.add("web module " + webApp.moduleId);
+                continue;
+            }
+
+            if (previous != null) {
+                plan.staleWebApps.add(previous);
+            }
+            plan.newWebApps.add(webApp);
+            plan.webApps.add(webApp);
+            plan.rebuilt.add("web module " + webApp.moduleId);
+            webModules.add(webApp.moduleId);
+        }
+        for (final WebAppInfo removed : runningWebApps.values()) {
+            plan.staleWebApps.add(removed);
+            plan.rebuilt.add("web module " + removed.moduleId + " (removed)");
+            webModules.add(removed.moduleId);
+        }
+
+        // ejb modules, the ones of the rebuilt web modules can only hold their comp bean
+        final Map<String, EjbJarInfo> runningEjbJars = ejbJars(running);
+        final Map<String, EjbJarInfo> nextEjbJars = ejbJars(next);
+        for (final Map.Entry<String, EjbJarInfo> entry : runningEjbJars.entrySet()) {
+            final String moduleId = entry.getKey();
+            final EjbJarInfo previous = entry.getValue();
+            if (webModules.contains(moduleId)) {
+                if (!onlyManagedBeans(previous) || (nextEjbJars.containsKey(moduleId) && !onlyManagedBeans(nextEjbJars.get(moduleId)))) {
+                    return plan.full("web module " + moduleId + " holds EJBs");
+                }
+                continue;
+            }
+
+            final EjbJarInfo ejbJar = nextEjbJars.get(moduleId);
+            if (ejbJar == null) {
+                return plan.full("EJB module " + moduleId + " removed");
+            }
+            if (!same(previous.path, ejbJar.path) || !deployed.same(plan.fingerprints, ejbJar.path)) {
+                return plan.full("EJB module " + moduleId + " changed");
+            }
+            plan.ejbJars.add(previous);
+            if (!previous.webapp) {
+                plan.reused.add("EJB module " + moduleId);
+            }
+        }
+        for (final Map.Entry<String, EjbJarInfo> entry : nextEjbJars.entrySet()) {
+            final String moduleId = entry.getKey();
+            if (webModules.contains(moduleId)) {
+                if (!onlyManagedBeans(entry.getValue())) {
+                    return plan.full("web module " + moduleId + " holds EJBs");
+                }
+                plan.ejbJars.add(entry.getValue());
+            } else if (!runningEjbJars.containsKey(moduleId)) {
+                return plan.full("EJB module " + moduleId + " added");
+            }
+        }
+
+        // persistence units
+        final Map<String, PersistenceUnitInfo> runningUnits = new HashMap<>();
+        for (final PersistenceUnitInfo unit : running.persistenceUnits) {
+            runningUnits.put(unit.id, unit);
+        }
+        for (final PersistenceUnitInfo unit : next.persistenceUnits) {
+            final PersistenceUnitInfo previous = runningUnits.remove(unit.id);
+            if (previous == null || !same(previous.persistenceUnitRootUrl, unit.persistenceUnitRootUrl)) {
+                return plan.full("persistence unit " + unit.id + " changed");
+            }
+            for (final WebAppInfo webApp : plan.newWebApps) {
+                if (webApp.path != null && unit.persistenceUnitRootUrl != null
+                    && unit.persistenceUnitRootUrl.contains(new File(webApp.path).toURI().toString())) {
+                    return plan.full("web module " + webApp.moduleId + " holds the persistence unit " + unit.name);
+                }
+            }
+            plan.reused.add("persistence unit " + unit.name);
+        }
+        if (!runningUnits.isEmpty()) {
+            return plan.full("persistence unit " + runningUnits.keySet().iterator().next() + " removed");
+        }
+
+        // connectors and clients
+        final Map<String, String> runningModules = new HashMap<>();
+        for (final ConnectorInfo connector : running.connectors) {
+            runningModules.put("connector " + connector.moduleId, connector.path);
+        }
+        for (final ClientInfo client : running.clients) {
+            runningModules.put("client " + client.moduleId, client.path);
+        }
+        final Map<String, String> nextModules = new HashMap<>();
+        for (final ConnectorInfo connector : next.connectors) {
+            nextModules.put("connector " + connector.moduleId, connector.path);
+        }
+        for (final ClientInfo client : next.clients) {
+            nextModules.put("client " + client.moduleId, client.path);
+        }
+        if (!runningModules.equals(nextModules)) {
+            return plan.full("connectors or application clients changed");
+        }
+        for (final Map.Entry<String, String> module : nextModules.entrySet()) {
+            if (!deployed.same(plan.fingerprints, module.getValue())) {
+                return plan.full(module.getKey() + " changed");
+            }
+            plan.reused.add(module.getKey());
+        }
+        if (!running.resourceIds.isEmpty()) {
+            plan.reused.add("resources " + running.resourceIds);
+        }
+        plan.reused.add("application class loader");
+
+        return plan;
+    }
+
+    public boolean isIncremental() {
+        return fullRedeploymentReason == null;
+    }
+
+    public String getFullRedeploymentReason() {
+        return fullRedeploymentReason;
+    }
+
+    public Fingerprints getFingerprints() {
+        return fingerprints;
+    }
+
+    public Collection<String> getReused() {
+        return reused;
+    }
+
+    public Collection<String> getRebuilt() {
+        return rebuilt;
+    }
+
+    /**
+     * @return the web modules of the running application to undeploy
+     */
+    public List<WebAppInfo> getStaleWebApps() {
+        return staleWebApps;
+    }
+
+    /**
+     * @return the web modules to deploy
+     */
+    public List<WebAppInfo> getNewWebApps() {
+        return newWebApps;
+    }
+
+    /**
+     * Makes the running application look like the redeployed one, keeping the info of the
+     * modules which were not rebuilt since they are the ones deployed.
+     */
+    public void apply(final AppInfo running) {
+        running.webApps.clear();
+        running.webApps.addAll(webApps);
+        running.ejbJars.clear();
+        running.ejbJars.addAll(ejbJars);
+    }
+
+    @Override
+    public String toString() {
+        if (!isIncremental()) {
+            return "full redeployment, " + fullRedeploymentReason;
+        }
+        return "incremental redeployment, rebuilt " + rebuilt + ", reused " + reused;
+    }
+
+    private RedeployPlan full(final String reason) {
+        fullRedeploymentReason = reason;
+        reused.clear();
+        rebuilt.clear();
+        staleWebApps.clear();
+        newWebApps.clear();
+        webApps.clear();
+        ejbJars.clear();
+        return this;
+    }
+
+    private static Map<String, EjbJarInfo> ejbJars(final AppInfo info) {
+        final Map<String, EjbJarInfo> ejbJars = new LinkedHashMap<>();
+        for (final EjbJarInfo ejbJar : info.ejbJars) {
+            ejbJars.put(ejbJar.moduleId, ejbJar);
+        }
+        return ejbJars;
+    }
+
+    private static boolean onlyManagedBeans(final EjbJarInfo ejbJar) {
+        for (final EnterpriseBeanInfo bean : ejbJar.enterpriseBeans) {
+            if (!ManagedBeanInfo.class.isInstance(bean)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return the META-INF folder of an application which isn't a single module, null otherwise
+     */
+    private static String descriptors(final AppInfo info) {
+        if (info.path == null) {
+            return null;
+        }
+        final File metaInf = new File(info.path, "META-INF");
+        return metaInf.isDirectory() ? metaInf.getPath() : null;
+    }
+
+    private static boolean same(final String a, final String b) {
+        return a == null ? b == null : a.equals(b);
+    }
+
+    /**
+     * Size and last modification of the files of the modules, the ones of a directory being folded
+     * in a single value.
+     */
+    public static final class Fingerprints {
+        private final Map<String, Long> values = new HashMap<>();
+
+        public static Fingerprints of(final AppInfo info) {
+            final Fingerprints fingerprints = new Fingerprints();
+            fingerprints.add(descriptors(info));
+            fingerprints.add(info.libs);
+            for (final EjbJarInfo ejbJar : info.ejbJars) {
+                fingerprints.add(ejbJar.path);
+            }
+            for (final WebAppInfo webApp : info.webApps) {
+                fingerprints.add(webApp.path);
+            }
+            for (final ConnectorInfo connector : info.connectors) {
+                fingerprints.add(connector.path);
+            }
+            for (final ClientInfo client : info.clients) {
+                fingerprints.add(client.path);
+            }
+            return fingerprints;
+        }
+
+        private boolean same(final Fingerprints other, final Collection<String> paths) {
+            for (final String path : paths) {
+                if (!same(other, path)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private boolean same(final Fingerprints other, final String path) {
+            if (path == null) {
+                return true;
+            }
+            final Long value = values.get(path);
+            return value != null && value.equals(other.values.get(path));
+        }
+
+        private void add(final Collection<String> paths) {
+            for (final String path : paths) {
+                add(path);
+            }
+        }
+
+        private void add(final String path) {
+            if (path != null && !values.containsKey(path)) {
+                values.put(path, fingerprint(new File(path)));
+            }
+        }
+
+        private static long fingerprint(final File file) {
+            if (!file.isDirectory()) {
+                return 31 * file.length() + file.lastModified();
+            }
+
+            long fingerprint = file.getName().hashCode();
+            final File[] children = file.listFiles();
+            if (children != null) {
+                Arrays.sort(children);
+                for (final File child : children) {
+                    fingerprint = 31 * fingerprint + child.getName().hashCode();
+                    fingerprint = 31 * fingerprint + fingerprint(child);
+                }
+            }
+            return fingerprint;
+        }
+    }
+}
@@ -21,6 +21,7 @@ import org.apache.openejb.AppContext;
 import org.apache.openejb.assembler.classic.AppInfo;
 import org.apache.openejb.assembler.classic.EjbJarInfo;
 import org.apache.openejb.cdi.transactional.TransactionContext;
+import org.apache.openejb.cdi.transactional.TransactionalMetadata;
 import org.apache.openejb.loader.SystemInstance;
 import org.apache.openejb.spi.ContainerSystem;
 import org.apache.openejb.util.AppFinder;
@@ -172,6 +173,7 @@ public class ThreadSingletonServiceImpl implements ThreadSingletonService {
             final BeanManagerImpl beanManagerImpl = webBeansContext.getBeanManagerImpl();
             beanManagerImpl.addContext(new TransactionContext());
             beanManagerImpl.addAdditionalInterceptorBindings(Transactional.class);
+            webBeansContext.registerService(TransactionalMetadata.class, new TransactionalMetadata(beanManagerImpl));
 
             SystemInstance.get().fireEvent(new WebBeansContextCreated(webBeansContext));
 
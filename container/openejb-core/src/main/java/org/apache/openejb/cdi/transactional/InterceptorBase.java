@@ -22,26 +22,19 @@ import org.apache.openejb.SystemException;
 import org.apache.openejb.core.CoreUserTransaction;
 import org.apache.openejb.core.transaction.TransactionPolicy;
 import org.apache.openejb.loader.SystemInstance;
+import org.apache.webbeans.config.WebBeansContext;
 
-import javax.enterprise.inject.spi.AnnotatedMethod;
-import javax.enterprise.inject.spi.AnnotatedType;
 import javax.enterprise.inject.spi.CDI;
 import javax.interceptor.InvocationContext;
 import javax.transaction.TransactionManager;
-import javax.transaction.Transactional;
 import javax.transaction.TransactionalException;
 import java.io.Serializable;
-import java.lang.reflect.Method;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ConcurrentMap;
-
-import static java.util.Arrays.asList;
 
 public abstract class InterceptorBase implements Serializable {
     private static final IllegalStateException ILLEGAL_STATE_EXCEPTION = new IllegalStateException("Can't use UserTransaction from @Transaction call");
     private static final boolean HANDLE_EXCEPTION_ONLY_FOR_CLIENT = SystemInstance.get().getOptions().get("openejb.cdi.jta.exception.client-only", false);
 
-    private transient volatile ConcurrentMap<Method, Boolean> rollback = new ConcurrentHashMap<>();
+    private transient volatile TransactionalMetadata metadata;
 
     protected Object intercept(final InvocationContext ic) throws Exception {
         Exception error = null;
@@ -58,11 +51,21 @@ public abstract class InterceptorBase implements Serializable {
             oldEx = null;
         }
 
+        final boolean upfront = isPolicyNeededUpfront();
         try {
-            policy = getPolicy();
+            if (upfront) {
+                policy = getPolicy();
+            }
             return ic.proceed();
         } catch (final Exception e) {
             error = e;
+            if (!upfront && !HANDLE_EXCEPTION_ONLY_FOR_CLIENT) { // only needed to mark the caller transaction
+                try {
+                    policy = getPolicy();
+                } catch (final SystemException | ApplicationException pe) {
+                    e.addSuppressed(pe);
+                }
+            }
             if (illegalStateException == e) {
                 throw e;
             }
@@ -73,107 +76,42 @@ public abstract class InterceptorBase implements Serializable {
             }
 
             if (policy != null) {
-                if (error != null && (!HANDLE_EXCEPTION_ONLY_FOR_CLIENT || policy.isNewTransaction())) {
-                    final Method method = ic.getMethod();
-                    if (rollback == null) {
-                        synchronized (this) {
-                            if (rollback == null) {
-                                rollback = new ConcurrentHashMap<>();
-                            }
-                        }
-                    }
-                    Boolean doRollback = rollback.get(method);
-                    if (doRollback != null) {
-                        if (doRollback) {
-                            policy.setRollbackOnly();
-                        }
-                    } else {
-                        // computed lazily but we could cache it later for sure if that's really a normal case
-                        final AnnotatedType<?> annotatedType = CDI.current().getBeanManager().createAnnotatedType(method.getDeclaringClass());
-                        Transactional tx = null;
-                        for (final AnnotatedMethod<?> m : annotatedType.getMethods()) {
-                            if (method.equals(m.getJavaMember())) {
-                                tx = m.getAnnotation(Transactional.class);
-                                break;
-                            }
-                        }
-                        if (tx == null) {
-                            tx = annotatedType.getAnnotation(Transactional.class);
-                        }
-                        if (tx != null) {
-                            doRollback = new ExceptionPriotiryRules(tx.rollbackOn(), tx.dontRollbackOn()).accept(error, method.getExceptionTypes());
-                            rollback.putIfAbsent(method, doRollback);
-                            if (doRollback) {
-                                policy.setRollbackOnly();
-                            }
-                        }
-                    }
+                if (error != null && (!HANDLE_EXCEPTION_ONLY_FOR_CLIENT || policy.isNewTransaction())
+                    && getMetadata().getRules(ic.getMethod()).isRollback(error)) {
+                    policy.setRollbackOnly();
                 }
                 policy.commit();
             }
         }
     }
 
+    private TransactionalMetadata getMetadata() {
+        if (metadata == null) {
+            final WebBeansContext context = WebBeansContext.currentInstance();
+            TransactionalMetadata found = context.getService(TransactionalMetadata.class);
+            if (found == null) { // not deployed by openejb
+                found = new TransactionalMetadata(CDI.current().getBeanManager());
+            }
+            metadata = found;
+        }
+        return metadata;
+    }
+
     protected boolean doesForbidUtUsage() {
         return true;
     }
 
+    /**
+     * @return false if the policy doesn't do anything for a call ending normally, it is then
+     * only created when the call fails to mark the caller transaction rollback only
+     */
+    protected boolean isPolicyNeededUpfront() {
+        return true;
+    }
+
     protected abstract TransactionPolicy getPolicy() throws SystemException, ApplicationException;
 
     protected static TransactionManager getTransactionManager() {
         return OpenEJB.getTransactionManager();
     }
-
-    private static final class ExceptionPriotiryRules {
-        private final Class<?>[] includes;
-        private final Class<?>[] excludes;
-
-        private ExceptionPriotiryRules(final Class<?>[] includes, final Class<?>[] excludes) {
-            this.includes = includes;
-            this.excludes = excludes;
-        }
-
-        public boolean accept(final Exception e, final Class<?>[] exceptionTypes) {
-            if (e == null) {
-                return false;
-            }
-
-            final int includeScore = contains(includes, e);
-            final int excludeScore = contains(excludes, e);
-
-            if (excludeScore < 0) {
-                return includeScore >= 0 || isNotChecked(e, exceptionTypes);
-            }
-            return includeScore - excludeScore >= 0;
-        }
-
-        private static int contains(final Class<?>[] list, final Exception e) {
-            int score = -1;
-            for (final Class<?> clazz : list) {
-                if (clazz.isInstance(e)) {
-                    final int thisScore = score(clazz, e.getClass());
-                    if (score < 0) {
-                        score = thisScore;
-                    } else {
-                        score = Math.min(thisScore, score);
-                    }
-                }
-            }
-            return score;
-        }
-
-        private static int score(final Class<?> config, final Class<?> ex) {
-            int score = 0;
-            Class<?> current = ex;
-            while (current != null && !current.equals(config)) {
-                score++;
-                current = current.getSuperclass();
-            }
-            return score;
-        }
-
-        private static boolean isNotChecked(final Exception e, final Class<?>[] exceptionTypes) {
-            return RuntimeException.class.isInstance(e) && (exceptionTypes.length == 0 || !asList(exceptionTypes).contains(e.getClass()));
-        }
-    }
 }
@@ -40,4 +40,9 @@ public class SupportsInterceptor extends InterceptorBase {
     protected TransactionPolicy getPolicy() throws SystemException, ApplicationException {
         return new TxSupports(getTransactionManager());
     }
+
+    @Override
+    protected boolean isPolicyNeededUpfront() {
+        return false; // no need to look up the caller transaction until an exception has to roll it back
+    }
 }
@@ -0,0 +1,173 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.openejb.cdi.transactional;
+
+import javax.enterprise.inject.spi.AnnotatedMethod;
+import javax.enterprise.inject.spi.AnnotatedType;
+import javax.enterprise.inject.spi.BeanManager;
+import javax.transaction.Transactional;
+import java.lang.reflect.Method;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import static java.util.Arrays.asList;
+
+/**
+ * The @Transactional rules of the beans of an application, shared by all the transactional interceptors.
+ *
+ * The annotated type of a bean class is read once, for all its methods, the first time one of them
+ * is intercepted. The rollbackOn/dontRollbackOn rules of a method are then evaluated once per
+ * exception class.
+ */
+public class TransactionalMetadata {
+    private static final Rules NO_ROLLBACK = new Rules(null, null);
+
+    private final BeanManager beanManager;
+    private final ConcurrentMap<Class<?>, ClassMetadata> classes = new ConcurrentHashMap<>();
+
+    public TransactionalMetadata(final BeanManager beanManager) {
+        this.beanManager = beanManager;
+    }
+
+    public Rules getRules(final Method method) {
+        final Class<?> declaringClass = method.getDeclaringClass();
+        ClassMetadata metadata = classes.get(declaringClass);
+        if (metadata == null) {
+            metadata = new ClassMetadata(beanManager.createAnnotatedType(declaringClass));
+            final ClassMetadata existing = classes.putIfAbsent(declaringClass, metadata);
+            if (existing != null) {
+                metadata = existing;
+            }
+        }
+        return metadata.getRules(method);
+    }
+
+    private static final class ClassMetadata {
+        private final Transactional classTransactional;
+        private final Map<Method, Transactional> methodTransactionals = new HashMap<>();
+        private final ConcurrentMap<Method, Rules> rules = new ConcurrentHashMap<>();
+
+        private ClassMetadata(final AnnotatedType<?> annotatedType) {
+            for (final AnnotatedMethod<?> m : annotatedType.getMethods()) {
+                final Transactional tx = m.getAnnotation(Transactional.class);
+                if (tx != null) {
+                    methodTransactionals.put(m.getJavaMember(), tx);
+                }
+            }
+            classTransactional = annotatedType.getAnnotation(Transactional.class);
+        }
+
+        private Rules getRules(final Method method) {
+            Rules methodRules = rules.get(method);
+            if (methodRules == null) {
+                Transactional tx = methodTransactionals.get(method);
+                if (tx == null) {
+                    tx = classTransactional;
+                }
+                methodRules = tx == null ? NO_ROLLBACK : new Rules(tx, method.getExceptionTypes());
+                final Rules existing = rules.putIfAbsent(method, methodRules);
+                if (existing != null) {
+                    methodRules = existing;
+                }
+            }
+            return methodRules;
+        }
+    }
+
+    /**
+     * Whether an exception thrown by a method rolls the transaction back.
+     */
+    public static final class Rules {
+        private final ExceptionPriotiryRules rules;
+        private final Class<?>[] exceptionTypes;
+        private final ConcurrentMap<Class<?>, Boolean> decisions = new ConcurrentHashMap<>();
+
+        private Rules(final Transactional tx, final Class<?>[] exceptionTypes) {
+            this.rules = tx == null ? null : new ExceptionPriotiryRules(tx.rollbackOn(), tx.dontRollbackOn());
+            this.exceptionTypes = exceptionTypes;
+        }
+
+        public boolean isRollback(final Exception e) {
+            if (rules == null || e == null) {
+                return false;
+            }
+
+            final Class<?> type = e.getClass();
+            Boolean rollback = decisions.get(type);
+            if (rollback == null) {
+                rollback = rules.accept(e, exceptionTypes);
+                decisions.putIfAbsent(type, rollback);
+            }
+            return rollback;
+        }
+    }
+
+    private static final class ExceptionPriotiryRules {
+        private final Class<?>[] includes;
+        private final Class<?>[] excludes;
+
+        private ExceptionPriotiryRules(final Class<?>[] includes, final Class<?>[] excludes) {
+            this.includes = includes;
+            this.excludes = excludes;
+        }
+
+        public boolean accept(final Exception e, final Class<?>[] exceptionTypes) {
+            if (e == null) {
+                return false;
+            }
+
+            final int includeScore = contains(includes, e);
+            final int excludeScore = contains(excludes, e);
+
+            if (excludeScore < 0) {
+                return includeScore >= 0 || isNotChecked(e, exceptionTypes);
+            }
+            return includeScore - excludeScore >= 0;
+        }
+
+        private static int contains(final Class<?>[] list, final Exception e) {
+            int score = -1;
+            for (final Class<?> clazz : list) {
+                if (clazz.isInstance(e)) {
+                    final int thisScore = score(clazz, e.getClass());
+                    if (score < 0) {
+                        score = thisScore;
+                    } else {
+                        score = Math.min(thisScore, score);
+                    }
+                }
+            }
+            return score;
+        }
+
+        private static int score(final Class<?> config, final Class<?> ex) {
+            int score = 0;
+            Class<?> current = ex;
+            while (current != null && !current.equals(config)) {
+                score++;
+                current = current.getSuperclass();
+            }
+            return score;
+        }
+
+        private static boolean isNotChecked(final Exception e, final Class<?>[] exceptionTypes) {
+            return RuntimeException.class.isInstance(e) && (exceptionTypes.length == 0 || !asList(exceptionTypes).contains(e.getClass()));
+        }
+    }
+}
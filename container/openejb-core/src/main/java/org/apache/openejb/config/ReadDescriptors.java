@@ -54,12 +54,15 @@ import org.apache.openejb.jee.oejb3.OpenejbJar;
 import org.apache.openejb.loader.IO;
 import org.apache.openejb.loader.SystemInstance;
 import org.apache.openejb.sxc.ApplicationClientXml;
+import org.apache.openejb.sxc.ConnectorXml;
 import org.apache.openejb.sxc.EjbJarXml;
 import org.apache.openejb.sxc.FacesConfigXml;
 import org.apache.openejb.sxc.HandlerChainsXml;
+import org.apache.openejb.sxc.JavaWsdlMappingXml;
 import org.apache.openejb.sxc.TldTaglibXml;
 import org.apache.openejb.sxc.WebXml;
 import org.apache.openejb.sxc.WebservicesXml;
+import org.apache.openejb.util.DaemonThreadFactory;
 import org.apache.openejb.util.LengthInputStream;
 import org.apache.openejb.util.LogCategory;
 import org.apache.openejb.util.Logger;
@@ -77,117 +80,120 @@ import javax.xml.parsers.SAXParser;
 import javax.xml.parsers.SAXParserFactory;
 
 import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.lang.ref.SoftReference;
+import java.math.BigInteger;
 import java.net.URL;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 public class ReadDescriptors implements DynamicDeployer {
     private static final Logger logger = Logger.getInstance(LogCategory.OPENEJB_STARTUP, ReadDescriptors.class);
 
     private static final boolean ROOT_URL_FROM_WEBINF = SystemInstance.get().getOptions().get("openejb.jpa.root-url-from-webinf", false);
 
+    /**
+     * Reads the descriptors of the modules and persistence units of an application on as many threads as cores.
+     */
+    public static final String PARALLEL_PROPERTY = "openejb.descriptors.parallel";
+
+    /**
+     * The tld files are shared between the webapps, the parsed ones are reused when the content is the same.
+     */
+    private static final boolean TLD_CACHE = SystemInstance.get().getOptions().get("openejb.descriptors.tld-cache", true);
+    private static final ConcurrentMap<String, SoftReference<TldTaglib>> TAGLIBS = new ConcurrentHashMap<>();
+
     public static final TldTaglib SKIP_TAGLIB = new TldTaglib();
 
     @SuppressWarnings({"unchecked"})
     public AppModule deploy(final AppModule appModule) throws OpenEJBException {
+        final List<Callable<Void>> modules = new ArrayList<>();
         for (final EjbModule ejbModule : appModule.getEjbModules()) {
-
-            if (ejbModule.getEjbJar() == null) {
-                readEjbJar(ejbModule, appModule);
-            }
-
-            if (ejbModule.getOpenejbJar() == null) {
-                readOpenejbJar(ejbModule);
-            }
-
-            if (ejbModule.getBeans() == null) {
-                readBeans(ejbModule);
-            }
-
-            readValidationConfigType(ejbModule);
-            readCmpOrm(ejbModule);
-            readResourcesXml(ejbModule);
+            modules.add(new Callable<Void>() {
+                @Override
+                public Void call() throws Exception {
+                    readEjbModule(ejbModule, appModule);
+                    return null;
+                }
+            });
         }
 
         for (final ClientModule clientModule : appModule.getClientModules()) {
-            readAppClient(clientModule, appModule);
-            readValidationConfigType(clientModule);
-            readResourcesXml(clientModule);
+            modules.add(new Callable<Void>() {
+                @Override
+                public Void call() throws Exception {
+                    readAppClient(clientModule, appModule);
+                    readValidationConfigType(clientModule);
+                    readResourcesXml(clientModule);
+                    return null;
+                }
+            });
         }
 
         for (final ConnectorModule connectorModule : appModule.getConnectorModules()) {
-            readConnector(connectorModule, appModule);
-            readValidationConfigType(connectorModule);
-            readResourcesXml(connectorModule);
+            modules.add(new Callable<Void>() {
+                @Override
+                public Void call() throws Exception {
+                    readConnector(connectorModule, appModule);
+                    readValidationConfigType(connectorModule);
+                    readResourcesXml(connectorModule);
+                    return null;
+                }
+            });
         }
 
         for (final WebModule webModule : appModule.getWebModules()) {
-            readWebApp(webModule, appModule);
-            readValidationConfigType(webModule);
-            readResourcesXml(webModule);
+            modules.add(new Callable<Void>() {
+                @Override
+                public Void call() throws Exception {
+                    readWebApp(webModule, appModule);
+                    readValidationConfigType(webModule);
+                    readResourcesXml(webModule);
+                    return null;
+                }
+            });
         }
 
+        final List<Callable<PersistenceModule>> persistenceModules = new ArrayList<>();
         final List<Object> persistenceUrls = (List<Object>) appModule.getAltDDs().get("persistence.xml");
         if (persistenceUrls != null) {
             for (final Object persistenceUrl : persistenceUrls) {
-                final boolean url = persistenceUrl instanceof URL;
-                final Source source = getSource(persistenceUrl);
-
-                final String moduleName;
-                final String path;
-                final String rootUrl;
-                if (url) {
-                    final URL pUrl = (URL) persistenceUrl;
-                    File file = URLs.toFile(pUrl);
-                    path = file.getAbsolutePath();
-
-                    if (file.getName().endsWith("persistence.xml")) {
-                        final String parent = file.getParentFile().getName();
-                        if (parent.equalsIgnoreCase("WEB-INF") || parent.equalsIgnoreCase("META-INF")) {
-                            file = file.getParentFile().getParentFile();
-                        } else { // we don't really know so simply go back (users will often put persistence.xml in root resource folder with arquillian)
-                            file = file.getParentFile();
-                        }
-                    }
-                    moduleName = file.toURI().toString();
-
-                    String tmpRootUrl = moduleName;
-
-                    final String extForm = pUrl.toExternalForm();
-                    if (extForm.contains("WEB-INF/classes/META-INF/")) {
-                        if (!ROOT_URL_FROM_WEBINF) {
-                            tmpRootUrl = extForm.substring(0, extForm.indexOf("/META-INF"));
-                        } else {
-                            tmpRootUrl = extForm.substring(0, extForm.indexOf("/classes/META-INF"));
-                        }
-                    }
-                    if (tmpRootUrl.endsWith(".war")) {
-                        tmpRootUrl = tmpRootUrl.substring(0, tmpRootUrl.length() - ".war".length());
+                persistenceModules.add(new Callable<PersistenceModule>() {
+                    @Override
+                    public PersistenceModule call() throws Exception {
+                        return readPersistence(appModule, persistenceUrl);
                     }
-                    rootUrl = tmpRootUrl;
-                } else {
-                    moduleName = "";
-                    rootUrl = "";
-                    path = null;
-                }
+                });
+            }
+        }
 
-                try {
-                    final Persistence persistence = JaxbPersistenceFactory.getPersistence(Persistence.class, source.get());
-                    final PersistenceModule persistenceModule = new PersistenceModule(appModule, rootUrl, persistence);
-                    persistenceModule.getWatchedResources().add(moduleName);
-                    if (url && "file".equals(((URL) persistenceUrl).getProtocol())) {
-                        persistenceModule.getWatchedResources().add(path);
-                    }
+        final ExecutorService executor = newExecutor(appModule, modules.size() + persistenceModules.size());
+        try {
+            invokeAll(executor, modules);
+            for (final PersistenceModule persistenceModule : invokeAll(executor, persistenceModules)) {
+                if (persistenceModule != null) {
                     appModule.addPersistenceModule(persistenceModule);
-                } catch (final Exception e1) {
-                    DeploymentLoader.logger.error("Unable to load Persistence Unit from EAR: " + appModule.getJarLocation() + ", module: " + moduleName + ". Exception: " + e1.getMessage(), e1);
                 }
             }
+        } finally {
+            if (executor != null) {
+                executor.shutdownNow();
+            }
         }
 
         final List<URL> persistenceFragmentUrls = (List<URL>) appModule.getAltDDs().get("persistence-fragment.xml");
@@ -247,6 +253,168 @@ public class ReadDescriptors implements DynamicDeployer {
         return appModule;
     }
 
+    private void readEjbModule(final EjbModule ejbModule, final AppModule appModule) throws OpenEJBException {
+        if (ejbModule.getEjbJar() == null) {
+            readEjbJar(ejbModule, appModule);
+        }
+
+        if (ejbModule.getOpenejbJar() == null) {
+            readOpenejbJar(ejbModule);
+        }
+
+        if (ejbModule.getBeans() == null) {
+            readBeans(ejbModule);
+        }
+
+        readValidationConfigType(ejbModule);
+        readCmpOrm(ejbModule);
+        readResourcesXml(ejbModule);
+    }
+
+    private static PersistenceModule readPersistence(final AppModule appModule, final Object persistenceUrl) {
+        final boolean url = persistenceUrl instanceof URL;
+        final Source source = getSource(persistenceUrl);
+
+        final String moduleName;
+        final String path;
+        final String rootUrl;
+        if (url) {
+            final URL pUrl = (URL) persistenceUrl;
+            File file = URLs.toFile(pUrl);
+            path = file.getAbsolutePath();
+
+            if (file.getName().endsWith("persistence.xml")) {
+                final String parent = file.getParentFile().getName();
+                if (parent.equalsIgnoreCase("WEB-INF") || parent.equalsIgnoreCase("META-INF")) {
+                    file = file.getParentFile().getParentFile();
+                } else { // we don't really know so simply go back (users will often put persistence.xml in root resource folder with arquillian)
+                    file = file.getParentFile();
+                }
+            }
+            moduleName = file.toURI().toString();
+
+            String tmpRootUrl = moduleName;
+
+            final String extForm = pUrl.toExternalForm();
+            if (extForm.contains("WEB-INF/classes/META-INF/")) {
+                if (!ROOT_URL_FROM_WEBINF) {
+                    tmpRootUrl = extForm.substring(0, extForm.indexOf("/META-INF"));
+                } else {
+                    tmpRootUrl = extForm.substring(0, extForm.indexOf("/classes/META-INF"));
+                }
+            }
+            if (tmpRootUrl.endsWith(".war")) {
+                tmpRootUrl = tmpRootUrl.substring(0, tmpRootUrl.length() - ".war".length());
+            }
+            rootUrl = tmpRootUrl;
+        } else {
+            moduleName = "";
+            rootUrl = "";
+            path = null;
+        }
+
+        try {
+            final Persistence persistence = JaxbPersistenceFactory.getPersistence(Persistence.class, source.get());
+            final PersistenceModule persistenceModule = new PersistenceModule(appModule, rootUrl, persistence);
+            persistenceModule.getWatchedResources().add(moduleName);
+            if (url && "file".equals(((URL) persistenceUrl).getProtocol())) {
+                persistenceModule.getWatchedResources().add(path);
+            }
+            return persistenceModule;
+        } catch (final Exception e1) {
+            DeploymentLoader.logger.error("Unable to load Persistence Unit from EAR: " + appModule.getJarLocation() + ", module: " + moduleName + ". Exception: " + e1.getMessage(), e1);
+            return null;
+        }
+    }
+
+    /**
+     * @return null when the descriptors are read by the deploying thread
+     */
+    private static ExecutorService newExecutor(final AppModule appModule, final int modules) {
+        if (modules < 2 || !SystemInstance.get().getOptions().get(PARALLEL_PROPERTY, false)) {
+            return null;
+        }
+
+        final int threads = Math.min(modules, Runtime.getRuntime().availableProcessors());
+        if (threads < 2) {
+            return null;
+        }
+        return Executors.newFixedThreadPool(threads, new DaemonThreadFactory("OpenEJB-descriptors", appModule.getModuleId()));
+    }
+
+    /**
+     * Reads the modules in parallel when there is an executor. Either way all of them are read before
+     * failing and the error is the one of the first failing module.
+     */
+    private static <T> List<T> invokeAll(final ExecutorService executor, final List<Callable<T>> tasks) throws OpenEJBException {
+        final List<T> results = new ArrayList<>(tasks.size());
+        if (executor == null || tasks.size() < 2) {
+            Exception error = null;
+            for (final Callable<T> task : tasks) {
+                try {
+                    results.add(task.call());
+                } catch (final Exception e) {
+                    if (error == null) {
+                        error = e;
+                    }
+                }
+            }
+            if (error != null) {
+                throw rethrow(error);
+            }
+            return results;
+        }
+
+        final ClassLoader loader = Thread.currentThread().getContextClassLoader();
+        final List<Future<T>> futures = new ArrayList<>(tasks.size());
+        for (final Callable<T> task : tasks) {
+            futures.add(executor.submit(new Callable<T>() {
+                @Override
+                public T call() throws Exception {
+                    final Thread thread = Thread.currentThread();
+                    final ClassLoader old = thread.getContextClassLoader();
+                    thread.setContextClassLoader(loader);
+                    try {
+                        return task.call();
+                    } finally {
+                        thread.setContextClassLoader(old);
+                    }
+                }
+            }));
+        }
+
+        Throwable error = null;
+        for (final Future<T> future : futures) {
+            try {
+                results.add(future.get());
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new OpenEJBException("Interrupted while reading the descriptors", e);
+            } catch (final ExecutionException e) {
+                if (error == null) {
+                    error = e.getCause();
+                }
+            }
+        }
+        if (error != null) {
+            throw rethrow(error);
+        }
+        return results;
+    }
+
+    private static OpenEJBException rethrow(final Throwable t) {
+        if (t instanceof OpenEJBException) {
+            return (OpenEJBException) t;
+        }
+        if (t instanceof RuntimeException) {
+            throw (RuntimeException) t;
+        }
+        if (t instanceof Error) {
+            throw (Error) t;
+        }
+        return new OpenEJBException(t);
+    }
+
     public static void readResourcesXml(final Module module) {
         { // xml
             final Source url = getSource(module.getAltDDs().get("resources.xml"));
@@ -752,6 +920,35 @@ public class ReadDescriptors implements DynamicDeployer {
         return id[0];
     }
 
+    private static String getRootAttribute(final InputStream is, final String name) {
+        final String[] value = {null};
+
+        try {
+            final SAXParser parser = Saxs.namespaceAwareFactory().newSAXParser();
+
+            parser.parse(new InputSource(is), new DefaultHandler() {
+                public void startElement(final String uri, final String localName, final String qName, final Attributes att) throws SAXException {
+                    value[0] = att.getValue(name);
+                    throw new SAXException("root element read");
+                }
+
+                public InputSource resolveEntity(final String publicId, final String systemId) throws IOException, SAXException {
+                    return new InputSource(new ByteArrayInputStream(new byte[0]));
+                }
+            });
+        } catch (final Exception e) {
+            // no-op
+        }
+
+        return value[0];
+    }
+
+    private static byte[] readBytes(final URL url) throws IOException {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        IO.copy(url, out);
+        return out.toByteArray();
+    }
+
     public static Webservices readWebservices(final URL url) throws OpenEJBException {
         try {
             return WebservicesXml.unmarshal(url);
@@ -783,7 +980,7 @@ public class ReadDescriptors implements DynamicDeployer {
     public static JavaWsdlMapping readJaxrpcMapping(final URL url) throws OpenEJBException {
         final JavaWsdlMapping wsdlMapping;
         try {
-            wsdlMapping = (JavaWsdlMapping) JaxbJavaee.unmarshalJavaee(JavaWsdlMapping.class, IO.read(url));
+            wsdlMapping = JavaWsdlMappingXml.unmarshal(url);
         } catch (final SAXException e) {
             throw new OpenEJBException("Cannot parse the JaxRPC mapping file: " + url.toExternalForm(), e);
         } catch (final JAXBException e) {
@@ -797,6 +994,15 @@ public class ReadDescriptors implements DynamicDeployer {
     }
 
     public static Connector readConnector(final URL url) throws OpenEJBException {
+        try {
+            final byte[] content = readBytes(url);
+            if (getRootAttribute(new ByteArrayInputStream(content), "version") != null) { // 1.0 descriptors only have a DTD
+                return ConnectorXml.unmarshal(new ByteArrayInputStream(content));
+            }
+        } catch (final Exception e) {
+            logger.debug("Reading " + url.toExternalForm() + " with JAXB", e);
+        }
+
         Connector connector;
         try {
             connector = (Connector) JaxbJavaee.unmarshalJavaee(Connector.class, IO.read(url));
@@ -850,7 +1056,33 @@ public class ReadDescriptors implements DynamicDeployer {
             return taglib;
         }
 
+        if (!TLD_CACHE) {
+            return parseTldTaglib(url, null);
+        }
+
+        final byte[] content;
+        final String key;
         try {
+            content = readBytes(url);
+            key = content.length + "-" + new BigInteger(1, MessageDigest.getInstance("SHA-1").digest(content)).toString(16);
+        } catch (final IOException | NoSuchAlgorithmException e) {
+            return parseTldTaglib(url, null);
+        }
+
+        final SoftReference<TldTaglib> cached = TAGLIBS.get(key);
+        TldTaglib taglib = cached == null ? null : cached.get();
+        if (taglib == null) {
+            taglib = parseTldTaglib(url, content);
+            TAGLIBS.put(key, new SoftReference<>(taglib));
+        }
+        return taglib;
+    }
+
+    private static TldTaglib parseTldTaglib(final URL url, final byte[] content) {
+        try {
+            if (content != null) {
+                return TldTaglibXml.unmarshal(new ByteArrayInputStream(content));
+            }
             return TldTaglibXml.unmarshal(url);
         } catch (final SAXException e) {
             final String message = "Cannot parse the JSP tag library definition file: " + url.toExternalForm();
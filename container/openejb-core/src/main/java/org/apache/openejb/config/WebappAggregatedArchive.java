@@ -17,31 +17,60 @@
 
 package org.apache.openejb.config;
 
+import org.apache.openejb.loader.IO;
+import org.apache.openejb.loader.SystemInstance;
+import org.apache.openejb.util.DaemonThreadFactory;
 import org.apache.xbean.finder.archive.Archive;
 import org.apache.xbean.finder.archive.CompositeArchive;
 import org.apache.xbean.finder.archive.FilteredArchive;
 import org.apache.xbean.finder.filter.Filter;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.URL;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
+/**
+ * The classes of the scanned urls of a module, one archive per url.
+ *
+ * With openejb.finder.parallel the archives are read on as many threads as cores while the finder
+ * indexes them: the class files of the next jars are already in memory when it gets to them. The
+ * archives are still handed to the finder one after the other and in the order of the urls, at most
+ * two jars per thread are read ahead. The time spent reading and indexing each jar is logged once
+ * the scanning is done.
+ */
 public class WebappAggregatedArchive implements Archive, ScanConstants {
+    public static final String PARALLEL_PROPERTY = "openejb.finder.parallel";
+
     private final Map<URL, List<String>> map = new HashMap<URL, List<String>>();
     private ScanUtil.ScanHandler handler;
     private boolean scanXmlExists; // faster than using an empty handler
     private final Archive archive;
+    private final String name;
+    private final List<URL> urls = new ArrayList<>();
+    private final List<Archive> archives = new ArrayList<>();
+    private final boolean parallel = SystemInstance.get().getOptions().get(PARALLEL_PROPERTY, false);
+    private final Map<URL, ScanTime> scanTimes = Collections.synchronizedMap(new LinkedHashMap<URL, ScanTime>());
 
     public WebappAggregatedArchive(final Module module, final Iterable<URL> urls, final Filter filter) {
-        final List<Archive> archives = new ArrayList<Archive>();
-
         final URL scanXml = (URL) module.getAltDDs().get(ScanConstants.SCAN_XML_NAME);
         if (scanXml != null) {
             try {
@@ -57,10 +86,12 @@ public class WebappAggregatedArchive implements Archive, ScanConstants {
             final Archive archive = new FilteredArchive(
                     new ConfigurableClasspathArchive(module.getClassLoader(), Arrays.asList(url)), new ScanXmlSaverFilter(scanXmlExists, handler, classes, filter));
             map.put(url, classes);
-            archives.add(archive);
+            this.urls.add(url);
+            this.archives.add(archive);
         }
 
-        archive = new CompositeArchive(archives);
+        archive = new CompositeArchive(this.archives);
+        name = DeploymentModule.class.isInstance(module) ? DeploymentModule.class.cast(module).getModuleId() : module.getUniqueId();
     }
 
     public WebappAggregatedArchive(final Module module, final Iterable<URL> urls) {
@@ -75,6 +106,15 @@ public class WebappAggregatedArchive implements Archive, ScanConstants {
         return map;
     }
 
+    /**
+     * @return the time spent on each url during the last parallel iteration
+     */
+    public Map<URL, ScanTime> getScanTimes() {
+        synchronized (scanTimes) {
+            return new LinkedHashMap<>(scanTimes);
+        }
+    }
+
     @Override
     public InputStream getBytecode(final String className) throws IOException, ClassNotFoundException {
         return archive.getBytecode(className);
@@ -87,9 +127,215 @@ public class WebappAggregatedArchive implements Archive, ScanConstants {
 
     @Override
     public Iterator<Entry> iterator() {
+        if (parallel && archives.size() > 1) {
+            return new ReadAheadIterator();
+        }
         return archive.iterator();
     }
 
+    public static final class ScanTime {
+        private final long read;
+        private final long index;
+        private final int classes;
+
+        private ScanTime(final long read, final long index, final int classes) {
+            this.read = read;
+            this.index = index;
+            this.classes = classes;
+        }
+
+        /**
+         * @return nanoseconds spent reading the class files
+         */
+        public long getRead() {
+            return read;
+        }
+
+        /**
+         * @return nanoseconds the finder spent on the class files once read
+         */
+        public long getIndex() {
+            return index;
+        }
+
+        public int getClasses() {
+            return classes;
+        }
+
+        @Override
+        public String toString() {
+            return classes + " classes read in " + TimeUnit.NANOSECONDS.toMillis(read) + "ms, indexed in " + TimeUnit.NANOSECONDS.toMillis(index) + "ms";
+        }
+    }
+
+    private final class ReadAheadIterator implements Iterator<Entry> {
+        private final int threads = Math.min(archives.size(), Runtime.getRuntime().availableProcessors());
+        private final ThreadPoolExecutor executor;
+        private final List<Future<ReadArchive>> reads = new ArrayList<>(archives.size());
+        private final long start = System.nanoTime();
+        private Iterator<Entry> entries = Collections.<Entry>emptyList().iterator();
+        private ReadArchive current;
+        private int index = -1;
+        private long indexStart;
+
+        private ReadAheadIterator() {
+            executor = new ThreadPoolExecutor(threads, threads, 1, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), new DaemonThreadFactory("OpenEJB-scanning", name));
+            executor.allowCoreThreadTimeOut(true); // don't leak the threads if the finder stops iterating
+            scanTimes.clear();
+        }
+
+        @Override
+        public boolean hasNext() {
+            while (!entries.hasNext()) {
+                if (current != null) {
+                    scanTimes.put(urls.get(index), new ScanTime(current.time, System.nanoTime() - indexStart, current.entries.size()));
+                    current = null;
+                }
+                if (index + 1 >= archives.size()) {
+                    if (!executor.isShutdown()) {
+                        executor.shutdown();
+                        report();
+                    }
+                    return false;
+                }
+
+                index++;
+                while (reads.size() < archives.size() && reads.size() <= index + 2 * threads) {
+                    final Archive next = archives.get(reads.size());
+                    reads.add(executor.submit(new Callable<ReadArchive>() {
+                        @Override
+                        public ReadArchive call() throws Exception {
+                            return new ReadArchive(next);
+                        }
+                    }));
+                }
+                current = get(reads.set(index, null));
+                entries = current.entries.iterator();
+                indexStart = System.nanoTime();
+            }
+            return true;
+        }
+
+        @Override
+        public Entry next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            return entries.next();
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+
+        private ReadArchive get(final Future<ReadArchive> read) {
+            try {
+                return read.get();
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+                executor.shutdownNow();
+                throw new IllegalStateException("Interrupted while scanning " + name, e);
+            } catch (final ExecutionException e) {
+                executor.shutdownNow();
+                final Throwable cause = e.getCause();
+                if (cause instanceof RuntimeException) {
+                    throw (RuntimeException) cause;
+                }
+                if (cause instanceof Error) {
+                    throw (Error) cause;
+                }
+                throw new IllegalStateException("Can't scan " + urls.get(index), cause);
+            }
+        }
+
+        private void report() {
+            final long total = System.nanoTime() - start;
+            final List<Map.Entry<URL, ScanTime>> times = new ArrayList<>(getScanTimes().entrySet());
+            long read = 0;
+            for (final Map.Entry<URL, ScanTime> time : times) {
+                read += time.getValue().read;
+                DeploymentLoader.logger.debug("Scanned " + time.getKey().toExternalForm() + ": " + time.getValue());
+            }
+            Collections.sort(times, new Comparator<Map.Entry<URL, ScanTime>>() {
+                @Override
+                public int compare(final Map.Entry<URL, ScanTime> o1, final Map.Entry<URL, ScanTime> o2) {
+                    return Long.compare(o2.getValue().read + o2.getValue().index, o1.getValue().read + o1.getValue().index);
+                }
+            });
+
+            final StringBuilder slowest = new StringBuilder();
+            for (int i = 0; i < Math.min(3, times.size()); i++) {
+                final Map.Entry<URL, ScanTime> time = times.get(i);
+                slowest.append(i == 0 ? "" : ", ").append(shortName(time.getKey())).append(" (").append(time.getValue()).append(')');
+            }
+            DeploymentLoader.logger.info("Scanned " + times.size() + " archives of " + name + " in " + TimeUnit.NANOSECONDS.toMillis(total)
+                + "ms, " + TimeUnit.NANOSECONDS.toMillis(read) + "ms of reading on " + threads + " threads, slowest: " + slowest);
+        }
+    }
+
+    private static String shortName(final URL url) {
+        final String path = url.getPath();
+        final int end = path.endsWith("/") ? path.length() - 1 : path.length();
+        return path.substring(path.lastIndexOf('/', end - 1) + 1, end);
+    }
+
+    /**
+     * The entries of an archive with their bytecode in memory.
+     */
+    private static final class ReadArchive {
+        private final List<Entry> entries = new ArrayList<>();
+        private final long time;
+
+        private ReadArchive(final Archive archive) {
+            final long start = System.nanoTime();
+            for (final Entry entry : archive) {
+                entries.add(new ReadEntry(entry));
+            }
+            time = System.nanoTime() - start;
+        }
+    }
+
+    private static final class ReadEntry implements Entry {
+        private final String name;
+        private final byte[] bytecode;
+        private final IOException error;
+
+        private ReadEntry(final Entry entry) {
+            name = entry.getName();
+
+            byte[] bytes = null;
+            IOException failure = null;
+            try {
+                final InputStream in = entry.getBytecode();
+                try {
+                    final ByteArrayOutputStream out = new ByteArrayOutputStream();
+                    IO.copy(in, out);
+                    bytes = out.toByteArray();
+                } finally {
+                    IO.close(in);
+                }
+            } catch (final IOException e) {
+                failure = e;
+            }
+            bytecode = bytes;
+            error = failure;
+        }
+
+        @Override
+        public String getName() {
+            return name;
+        }
+
+        @Override
+        public InputStream getBytecode() throws IOException {
+            if (error != null) {
+                throw error;
+            }
+            return new ByteArrayInputStream(bytecode);
+        }
+    }
+
     public static class ScanXmlSaverFilter implements Filter {
         private final boolean scanXmlExists;
         private final ScanUtil.ScanHandler handler;
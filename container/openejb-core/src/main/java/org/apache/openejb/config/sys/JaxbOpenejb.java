@@ -53,11 +53,11 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.Enumeration;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
 
 public abstract class JaxbOpenejb {
 
@@ -271,7 +271,7 @@ public abstract class JaxbOpenejb {
 
     public static final ThreadLocal<Set<String>> currentPublicId = new ThreadLocal<Set<String>>();
 
-    private static final Map<Class, JAXBContext> jaxbContexts = new HashMap<Class, JAXBContext>();
+    private static final Map<Class, JAXBContext> jaxbContexts = new ConcurrentHashMap<Class, JAXBContext>();
 
     public static <T> String marshal(final Class<T> type, final Object object) throws JAXBException {
         final ByteArrayOutputStream baos = new ByteArrayOutputStream();
@@ -19,12 +19,16 @@ package org.apache.openejb.config.typed;
 
 import org.apache.openejb.config.sys.Container;
 import org.apache.openejb.config.typed.util.Builders;
+import org.apache.openejb.config.typed.util.DurationAdapter;
+import org.apache.openejb.util.Duration;
 
 import javax.xml.bind.annotation.XmlAccessType;
 import javax.xml.bind.annotation.XmlAccessorType;
 import javax.xml.bind.annotation.XmlAttribute;
 import javax.xml.bind.annotation.XmlRootElement;
+import javax.xml.bind.annotation.adapters.XmlJavaTypeAdapter;
 import java.util.Properties;
+import java.util.concurrent.TimeUnit;
 
 @XmlAccessorType(XmlAccessType.FIELD)
 @XmlRootElement(name = "MessageDrivenContainer")
@@ -38,6 +42,13 @@ public class MessageDrivenContainerBuilder extends Container {
     private String activationSpecClass = "org.apache.activemq.ra.ActiveMQActivationSpec";
     @XmlAttribute
     private int instanceLimit = 10;
+    @XmlAttribute
+    private boolean pooling;
+    @XmlAttribute
+    private int batchSize = 1;
+    @XmlJavaTypeAdapter(DurationAdapter.class)
+    @XmlAttribute
+    private Duration batchTimeout = Duration.parse("100 milliseconds");
 
     public MessageDrivenContainerBuilder() {
         setClassName("org.apache.openejb.core.mdb.MdbContainer");
@@ -105,6 +116,53 @@ public class MessageDrivenContainerBuilder extends Container {
         return instanceLimit;
     }
 
+    public MessageDrivenContainerBuilder withPooling(final boolean pooling) {
+        this.pooling = pooling;
+        return this;
+    }
+
+    public void setPooling(final boolean pooling) {
+        this.pooling = pooling;
+    }
+
+    public boolean getPooling() {
+        return pooling;
+    }
+
+    public MessageDrivenContainerBuilder withBatchSize(final int batchSize) {
+        this.batchSize = batchSize;
+        return this;
+    }
+
+    public void setBatchSize(final int batchSize) {
+        this.batchSize = batchSize;
+    }
+
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    public MessageDrivenContainerBuilder withBatchTimeout(final Duration batchTimeout) {
+        this.batchTimeout = batchTimeout;
+        return this;
+    }
+
+    public void setBatchTimeout(final Duration batchTimeout) {
+        this.batchTimeout = batchTimeout;
+    }
+
+    public Duration getBatchTimeout() {
+        return batchTimeout;
+    }
+
+    public MessageDrivenContainerBuilder withBatchTimeout(final long time, final TimeUnit unit) {
+        return withBatchTimeout(new Duration(time, unit));
+    }
+
+    public void setBatchTimeout(final long time, final TimeUnit unit) {
+        setBatchTimeout(new Duration(time, unit));
+    }
+
     public Properties getProperties() {
         return Builders.getProperties(this);
     }
@@ -19,14 +19,30 @@ package org.apache.openejb.core;
 
 import org.apache.openejb.BeanContext;
 import org.apache.openejb.core.transaction.TransactionPolicy;
+import org.apache.openejb.loader.SystemInstance;
 import org.apache.openejb.util.LogCategory;
 import org.apache.openejb.util.Logger;
 
+import java.lang.reflect.Method;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.atomic.AtomicBoolean;
 
+/**
+ * Data associated to the current invocation.
+ * <p/>
+ * Data is stored by type. Types registered with {@link #key(Class)} get an index in a flat array
+ * instead of an entry in a map, other types go to a map created on first use.
+ * <p/>
+ * Contexts created with {@link #obtain(BeanContext, Object)} are reused by the next invocation
+ * of the same thread once exited so they must not be referenced after {@link #exit(ThreadContext)},
+ * {@link #ThreadContext(ThreadContext)} gives a copy which can be kept.
+ */
 public class ThreadContext {
 
     private static final Logger log = Logger.getInstance(LogCategory.OPENEJB, "org.apache.openejb.util.resources");
@@ -34,10 +50,66 @@ public class ThreadContext {
     private static final List<ThreadContextListener> listeners = new CopyOnWriteArrayList<ThreadContextListener>();
     private static final ThreadLocal<AtomicBoolean> asynchronousCancelled = new ThreadLocal<AtomicBoolean>();
 
+    private static final ConcurrentMap<Class<?>, Key<?>> keys = new ConcurrentHashMap<Class<?>, Key<?>>();
+    private static final ThreadLocal<ThreadContext> recycled = new ThreadLocal<ThreadContext>();
+    private static final boolean RECYCLE = SystemInstance.get().getOptions().get("openejb.thread-context.recycle", true);
+
+    public static final Key<Method> METHOD = key(Method.class);
+
+    /**
+     * Registers a type stored in a slot, meant to be called once, typically from a static field initializer.
+     *
+     * @param type the data type
+     * @return the key to use with {@link #get(Key)} and {@link #set(Key, Object)}, the same one for a given type
+     */
+    @SuppressWarnings({"unchecked"})
+    public static synchronized <T> Key<T> key(final Class<T> type) {
+        Key<T> key = (Key<T>) keys.get(type);
+        if (key == null) {
+            key = new Key<T>(type, keys.size());
+            keys.put(type, key);
+        }
+        return key;
+    }
+
     public static ThreadContext getThreadContext() {
         return threadStorage.get();
     }
 
+    public static ThreadContext obtain(final BeanContext beanContext, final Object primaryKey) {
+        return obtain(beanContext, primaryKey, null);
+    }
+
+    /**
+     * Same as the constructor but reuses the last context exited by the current thread when
+     * it is not in use, i.e. for all invocations which are not nested.
+     */
+    public static ThreadContext obtain(final BeanContext beanContext, final Object primaryKey, final Operation operation) {
+        if (!RECYCLE) {
+            return new ThreadContext(beanContext, primaryKey, operation);
+        }
+
+        final ThreadContext free = recycled.get();
+        if (free != null && !free.inUse) {
+            if (beanContext == null) {
+                throw new NullPointerException("deploymentInfo is null");
+            }
+            free.beanContext = beanContext;
+            free.primaryKey = primaryKey;
+            free.currentOperation = operation;
+            free.inUse = true;
+            return free;
+        }
+
+        final ThreadContext context = new ThreadContext(beanContext, primaryKey, operation);
+        if (free == null) {
+            context.recyclable = true;
+            context.inUse = true;
+            recycled.set(context);
+        }
+        return context;
+    }
+
     public static ThreadContext enter(final ThreadContext newContext) {
         if (newContext == null) {
             throw new NullPointerException("newContext is null");
@@ -86,6 +158,10 @@ public class ThreadContext {
                 log.debug("ThreadContextListener threw an exception", e);
             }
         }
+
+        if (exitingContext.recyclable) {
+            exitingContext.recycle();
+        }
     }
 
     public static void initAsynchronousCancelled(final AtomicBoolean initializeValue) {
@@ -108,9 +184,10 @@ public class ThreadContext {
         listeners.remove(listener);
     }
 
-    private final BeanContext beanContext;
-    private final Object primaryKey;
-    private final HashMap<Class, Object> data = new HashMap<Class, Object>();
+    private BeanContext beanContext;
+    private Object primaryKey;
+    private Object[] slots = new Object[Math.max(8, keys.size())];
+    private Map<Class, Object> data; // types without key
     private ClassLoader oldClassLoader;
     private Operation currentOperation;
     private Class invokedInterface;
@@ -122,6 +199,9 @@ public class ThreadContext {
      */
     private boolean discardInstance;
 
+    private boolean recyclable;
+    private boolean inUse;
+
     public ThreadContext(final BeanContext beanContext, final Object primaryKey) {
         this(beanContext, primaryKey, null);
     }
@@ -138,7 +218,10 @@ public class ThreadContext {
     public ThreadContext(final ThreadContext that) {
         this.beanContext = that.beanContext;
         this.primaryKey = that.primaryKey;
-        this.data.putAll(that.data);
+        this.slots = that.slots.clone();
+        if (that.data != null) {
+            this.data = new HashMap<Class, Object>(that.data);
+        }
         this.oldClassLoader = that.oldClassLoader;
     }
 
@@ -184,17 +267,66 @@ public class ThreadContext {
 
     @SuppressWarnings({"unchecked"})
     public <T> T get(final Class<T> type) {
-        return (T) data.get(type);
+        final Key<?> key = keys.get(type);
+        if (key != null) {
+            final Object value = key.index < slots.length ? slots[key.index] : null;
+            if (value != null || data == null) {
+                return (T) value;
+            }
+        }
+        return data == null ? null : (T) data.get(type); // set before the key was registered
     }
 
     @SuppressWarnings({"unchecked"})
     public <T> T set(final Class<T> type, final T value) {
+        final Key<T> key = (Key<T>) keys.get(type);
+        if (key != null) {
+            final T old = set(key, value);
+            return old == null && data != null ? (T) data.remove(type) : old;
+        }
+
+        if (data == null) {
+            data = new HashMap<Class, Object>();
+        }
         return (T) data.put(type, value);
     }
 
     @SuppressWarnings({"unchecked"})
     public <T> T remove(final Class<T> type) {
-        return (T) data.remove(type);
+        final Key<T> key = (Key<T>) keys.get(type);
+        final T old = key != null ? set(key, null) : null;
+        return old == null && data != null ? (T) data.remove(type) : old;
+    }
+
+    @SuppressWarnings({"unchecked"})
+    public <T> T get(final Key<T> key) {
+        return key.index < slots.length ? (T) slots[key.index] : null;
+    }
+
+    @SuppressWarnings({"unchecked"})
+    public <T> T set(final Key<T> key, final T value) {
+        if (key.index >= slots.length) { // registered after this context was created
+            slots = Arrays.copyOf(slots, Math.max(keys.size(), slots.length * 2));
+        }
+        final T old = (T) slots[key.index];
+        slots[key.index] = value;
+        return old;
+    }
+
+    public <T> T remove(final Key<T> key) {
+        return set(key, null);
+    }
+
+    private void recycle() {
+        beanContext = null;
+        primaryKey = null;
+        Arrays.fill(slots, null);
+        data = null;
+        currentOperation = null;
+        invokedInterface = null;
+        transactionPolicy = null;
+        discardInstance = false;
+        inUse = false;
     }
 
     public boolean isDiscardInstance() {
@@ -208,9 +340,9 @@ public class ThreadContext {
     @Override
     public String toString() {
         return "ThreadContext{" +
-            "beanContext=" + beanContext.getId() +
+            "beanContext=" + (beanContext == null ? null : beanContext.getId()) +
             ", primaryKey=" + primaryKey +
-            ", data=" + data.size() +
+            ", data=" + (data == null ? 0 : data.size()) +
             ", oldClassLoader=" + oldClassLoader +
             ", currentOperation=" + currentOperation +
             ", invokedInterface=" + invokedInterface +
@@ -218,4 +350,23 @@ public class ThreadContext {
             ", discardInstance=" + discardInstance +
             '}';
     }
+
+    public static final class Key<T> {
+        private final Class<T> type;
+        private final int index;
+
+        private Key(final Class<T> type, final int index) {
+            this.type = type;
+            this.index = index;
+        }
+
+        public Class<T> getType() {
+            return type;
+        }
+
+        @Override
+        public String toString() {
+            return "Key{" + type.getName() + "@" + index + "}";
+        }
+    }
 }
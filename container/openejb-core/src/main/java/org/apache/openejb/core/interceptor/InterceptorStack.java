@@ -32,6 +32,8 @@ import java.util.Set;
  * @version $Rev$ $Date$
  */
 public class InterceptorStack {
+    private static final ThreadContext.Key<InvocationContext> INVOCATION_CONTEXT = ThreadContext.key(InvocationContext.class);
+
     private final Object beanInstance;
     private final List<Interceptor> interceptors;
     private final Method targetMethod;
@@ -77,15 +79,16 @@ public class InterceptorStack {
     }
 
     public Object invoke(final Object... parameters) throws Exception {
+        final ThreadContext threadContext = ThreadContext.getThreadContext();
         try {
             final InvocationContext invocationContext = createInvocationContext(parameters);
-            if (ThreadContext.getThreadContext() != null) {
-                ThreadContext.getThreadContext().set(InvocationContext.class, invocationContext);
+            if (threadContext != null) {
+                threadContext.set(INVOCATION_CONTEXT, invocationContext);
             }
             return invocationContext.proceed();
         } finally {
-            if (ThreadContext.getThreadContext() != null) {
-                ThreadContext.getThreadContext().remove(InvocationContext.class);
+            if (threadContext != null) {
+                threadContext.remove(INVOCATION_CONTEXT);
             }
         }
     }
@@ -93,20 +96,20 @@ public class InterceptorStack {
     public Object invoke(final javax.xml.ws.handler.MessageContext messageContext, final Object... parameters) throws Exception {
         try {
             final InvocationContext invocationContext = new JaxWsInvocationContext(operation, interceptors, beanInstance, targetMethod, messageContext, parameters);
-            ThreadContext.getThreadContext().set(InvocationContext.class, invocationContext);
+            ThreadContext.getThreadContext().set(INVOCATION_CONTEXT, invocationContext);
             return invocationContext.proceed();
         } finally {
-            ThreadContext.getThreadContext().remove(InvocationContext.class);
+            ThreadContext.getThreadContext().remove(INVOCATION_CONTEXT);
         }
     }
 
     public Object invoke(final javax.xml.rpc.handler.MessageContext messageContext, final Object... parameters) throws Exception {
         try {
             final InvocationContext invocationContext = new JaxRpcInvocationContext(operation, interceptors, beanInstance, targetMethod, messageContext, parameters);
-            ThreadContext.getThreadContext().set(InvocationContext.class, invocationContext);
+            ThreadContext.getThreadContext().set(INVOCATION_CONTEXT, invocationContext);
             return invocationContext.proceed();
         } finally {
-            ThreadContext.getThreadContext().remove(InvocationContext.class);
+            ThreadContext.getThreadContext().remove(INVOCATION_CONTEXT);
         }
     }
 }
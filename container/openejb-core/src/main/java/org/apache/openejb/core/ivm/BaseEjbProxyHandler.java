@@ -24,6 +24,7 @@ import org.apache.openejb.OpenEJBException;
 import org.apache.openejb.ProxyInfo;
 import org.apache.openejb.RpcContainer;
 import org.apache.openejb.core.ThreadContext;
+import org.apache.openejb.loader.ComponentHandle;
 import org.apache.openejb.loader.SystemInstance;
 import org.apache.openejb.spi.ContainerSystem;
 import org.apache.openejb.spi.SecurityService;
@@ -72,6 +73,8 @@ import static org.apache.openejb.core.ivm.IntraVmCopyMonitor.State.NONE;
 public abstract class BaseEjbProxyHandler implements InvocationHandler, Serializable {
 
     private static final String OPENEJB_LOCALCOPY = "openejb.localcopy";
+    private static final ComponentHandle<SecurityService> SECURITY_SERVICE = ComponentHandle.of(SecurityService.class);
+    private static final ComponentHandle<ContainerSystem> CONTAINER_SYSTEM = ComponentHandle.of(ContainerSystem.class);
     private static final boolean REMOTE_COPY_ENABLED = parseRemoteCopySetting();
     public final Object deploymentID;
     public final Object primaryKey;
@@ -281,7 +284,7 @@ public abstract class BaseEjbProxyHandler implements InvocationHandler, Serializ
         final Object localClientIdentity = ClientSecurity.getIdentity();
         try {
             if (callContext == null && localClientIdentity != null) {
-                final SecurityService securityService = SystemInstance.get().getComponent(SecurityService.class);
+                final SecurityService securityService = SECURITY_SERVICE.get();
                 securityService.associate(localClientIdentity);
             }
             if (strategy == CLASSLOADER_COPY || getBeanContext().getInterfaceType(interfce) == InterfaceType.BUSINESS_REMOTE) {
@@ -326,7 +329,7 @@ public abstract class BaseEjbProxyHandler implements InvocationHandler, Serializ
         } finally {
 
             if (callContext == null && localClientIdentity != null) {
-                final SecurityService securityService = SystemInstance.get().getComponent(SecurityService.class);
+                final SecurityService securityService = SECURITY_SERVICE.get();
                 securityService.disassociate();
             }
         }
@@ -658,7 +661,7 @@ public abstract class BaseEjbProxyHandler implements InvocationHandler, Serializ
 
         in.defaultReadObject();
 
-        final ContainerSystem containerSystem = SystemInstance.get().getComponent(ContainerSystem.class);
+        final ContainerSystem containerSystem = CONTAINER_SYSTEM.get();
         setBeanContext(containerSystem.getBeanContext(deploymentID));
         container = (RpcContainer) getBeanContext().getContainer();
 
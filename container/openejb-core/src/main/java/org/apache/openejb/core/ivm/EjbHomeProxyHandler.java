@@ -291,7 +291,9 @@ public abstract class EjbHomeProxyHandler extends BaseEjbProxyHandler {
                 throw new RemoteException("Unknown Container Exception", oe.getRootCause());
             }
         } catch (final Throwable t) {
-            logger.debug("EjbHomeProxyHandler: finished invoking method " + method.getName() + " with exception:" + t, t);
+            if (logger.isDebugEnabled()) {
+                logger.debug("EjbHomeProxyHandler: finished invoking method " + method.getName() + " with exception:" + t, t);
+            }
             throw t;
         }
     }
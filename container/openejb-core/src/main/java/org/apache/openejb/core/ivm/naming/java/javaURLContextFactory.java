@@ -23,7 +23,7 @@ import org.apache.openejb.core.ThreadContext;
 import org.apache.openejb.core.WebContext;
 import org.apache.openejb.core.ivm.ContextHandler;
 import org.apache.openejb.core.ivm.naming.ContextWrapper;
-import org.apache.openejb.loader.SystemInstance;
+import org.apache.openejb.loader.ComponentHandle;
 import org.apache.openejb.spi.ContainerSystem;
 
 import javax.naming.Context;
@@ -34,6 +34,7 @@ import javax.naming.spi.ObjectFactory;
 import java.util.Hashtable;
 
 public class javaURLContextFactory implements ObjectFactory {
+    private static final ComponentHandle<ContainerSystem> CONTAINER_SYSTEM = ComponentHandle.of(ContainerSystem.class);
 
     public Object getObjectInstance(final Object obj, final Name name, final Context nameCtx, final Hashtable env) throws NamingException {
         return getContext();
@@ -42,7 +43,7 @@ public class javaURLContextFactory implements ObjectFactory {
     public static Context getContext() {
         final ThreadContext callContext = ThreadContext.getThreadContext();
         if (callContext == null) {
-            final ContainerSystem containerSystem = SystemInstance.get().getComponent(ContainerSystem.class);
+            final ContainerSystem containerSystem = CONTAINER_SYSTEM.get();
             final ClassLoader current = Thread.currentThread().getContextClassLoader();
             final Context globalContext = containerSystem.getJNDIContext();
             if (current == null) {
@@ -67,7 +68,7 @@ public class javaURLContextFactory implements ObjectFactory {
         if (di != null) {
             return di.getJndiEnc();
         } else {
-            final ContainerSystem containerSystem = SystemInstance.get().getComponent(ContainerSystem.class);
+            final ContainerSystem containerSystem = CONTAINER_SYSTEM.get();
             return containerSystem.getJNDIContext();
         }
     }
@@ -83,7 +84,7 @@ public class javaURLContextFactory implements ObjectFactory {
                 return super.lookup(name);
             } catch (final NameNotFoundException nnfe) {
                 try {
-                    return SystemInstance.get().getComponent(ContainerSystem.class).getJNDIContext().lookup(name);
+                    return CONTAINER_SYSTEM.get().getJNDIContext().lookup(name);
                 } catch (final NameNotFoundException nnfe2) {
                     // ignore, let it be thrown
                 }
@@ -97,7 +98,7 @@ public class javaURLContextFactory implements ObjectFactory {
                 return super.lookup(name);
             } catch (final NameNotFoundException nnfe) {
                 try {
-                    return SystemInstance.get().getComponent(ContainerSystem.class).getJNDIContext().lookup(name);
+                    return CONTAINER_SYSTEM.get().getJNDIContext().lookup(name);
                 } catch (final NameNotFoundException nnfe2) {
                     // ignore, let it be thrown
                 }
@@ -0,0 +1,201 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.openejb.core.mdb;
+
+import org.apache.openejb.ApplicationException;
+import org.apache.openejb.BeanContext;
+import org.apache.openejb.SystemException;
+import org.apache.openejb.core.ThreadContext;
+import org.apache.openejb.core.transaction.TransactionPolicy;
+import org.apache.openejb.util.LogCategory;
+import org.apache.openejb.util.Logger;
+
+import javax.transaction.Transaction;
+import javax.transaction.TransactionManager;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Delivers the messages of one endpoint in a single container transaction.
+ * <p/>
+ * The transaction started for the first message is suspended by afterDelivery instead of
+ * being committed and resumed by the next beforeDelivery until BatchSize messages were delivered
+ * or BatchTimeout elapsed since the first one. When no message comes the scheduler commits it at
+ * the end of the timeout, a transaction marked for rollback is completed at once.
+ * <p/>
+ * Only new transactions of Required methods are batched.
+ */
+public class DeliveryBatch {
+    private static final Logger logger = Logger.getInstance(LogCategory.OPENEJB, "org.apache.openejb.util.resources");
+
+    private final BeanContext beanContext;
+    private final TransactionManager transactionManager;
+    private final ScheduledExecutorService scheduler;
+    private final MdbDeliveryStats stats;
+    private final int size;
+    private final long timeout;
+
+    private TransactionPolicy txPolicy;
+    private Transaction suspended;
+    private ScheduledFuture<?> timeoutTask;
+    private int count;
+    private long start;
+
+    public DeliveryBatch(final BeanContext beanContext, final TransactionManager transactionManager, final ScheduledExecutorService scheduler,
+                         final MdbDeliveryStats stats, final int size, final long timeout) {
+        this.beanContext = beanContext;
+        this.transactionManager = transactionManager;
+        this.scheduler = scheduler;
+        this.stats = stats;
+        this.size = size;
+        this.timeout = timeout;
+    }
+
+    /**
+     * Associates the suspended batch transaction to the current thread.
+     *
+     * @return the policy of the batch transaction or null if there is no pending batch
+     */
+    public synchronized TransactionPolicy resume() throws SystemException {
+        if (suspended == null) {
+            return null;
+        }
+
+        final Transaction tx = suspended;
+        suspended = null;
+        if (timeoutTask != null) {
+            timeoutTask.cancel(false);
+            timeoutTask = null;
+        }
+
+        try {
+            transactionManager.resume(tx);
+        } catch (final Exception e) {
+            final int messages = count;
+            txPolicy = null;
+            count = 0;
+            try {
+                tx.rollback();
+            } catch (final Exception re) {
+                logger.error("Unable to rollback the transaction of the batch", re);
+            }
+            stats.completed(messages, true);
+            throw new SystemException("Unable to resume the transaction of the batch", e);
+        }
+        return txPolicy;
+    }
+
+    public synchronized void begin(final TransactionPolicy txPolicy) {
+        this.txPolicy = txPolicy;
+        count = 0;
+        start = System.currentTimeMillis();
+    }
+
+    public synchronized boolean isBatched(final TransactionPolicy txPolicy) {
+        return txPolicy != null && txPolicy == this.txPolicy;
+    }
+
+    /**
+     * Called once a message was delivered in the batch transaction.
+     *
+     * @return true if the transaction was suspended to wait for the next message,
+     * false if the batch is complete and its transaction must be completed now
+     */
+    public synchronized boolean suspend() {
+        count++;
+
+        final long elapsed = System.currentTimeMillis() - start;
+        if (count >= size || elapsed >= timeout || txPolicy.isRollbackOnly() || scheduler.isShutdown()) {
+            return false;
+        }
+
+        try {
+            suspended = transactionManager.suspend();
+        } catch (final javax.transaction.SystemException e) {
+            logger.warning("Unable to suspend the transaction of the batch, completing it", e);
+            return false;
+        }
+        if (suspended == null) {
+            return false;
+        }
+
+        try {
+            timeoutTask = scheduler.schedule(new Runnable() {
+                @Override
+                public void run() {
+                    flush();
+                }
+            }, timeout - elapsed, TimeUnit.MILLISECONDS);
+        } catch (final RejectedExecutionException e) {
+            // undeploying, completed when the endpoint is released
+        }
+        return true;
+    }
+
+    /**
+     * Ends the current batch.
+     *
+     * @return the number of messages delivered in the batch
+     */
+    public synchronized int complete() {
+        final int messages = count;
+        txPolicy = null;
+        count = 0;
+        return messages;
+    }
+
+    /**
+     * Completes the suspended transaction if any, used when the timeout expires or the endpoint is released.
+     */
+    public void flush() {
+        final TransactionPolicy txPolicy;
+        final int messages;
+        synchronized (this) {
+            if (suspended == null) {
+                return;
+            }
+            txPolicy = this.txPolicy;
+            messages = count;
+            suspended = null;
+            this.txPolicy = null;
+            count = 0;
+            if (timeoutTask != null) {
+                timeoutTask.cancel(false);
+                timeoutTask = null;
+            }
+        }
+
+        // the transaction is not associated to this thread, the policy commits it directly
+        boolean rollback = txPolicy.isRollbackOnly();
+        final ThreadContext oldContext = ThreadContext.enter(new ThreadContext(beanContext, null));
+        try {
+            txPolicy.commit();
+        } catch (final ApplicationException e) {
+            rollback = true;
+            logger.warning("The transaction of a batch of " + messages + " messages for " + beanContext.getDeploymentID() + " was rolled back", e);
+        } catch (final SystemException e) {
+            rollback = true;
+            logger.error("Unable to complete the transaction of a batch of " + messages + " messages for " + beanContext.getDeploymentID(), e);
+        } finally {
+            ThreadContext.exit(oldContext);
+            stats.completed(messages, rollback);
+        }
+    }
+}
@@ -19,7 +19,9 @@ package org.apache.openejb.core.mdb;
 
 import org.apache.openejb.BeanContext;
 import org.apache.openejb.core.transaction.TransactionType;
+import org.apache.openejb.loader.SystemInstance;
 import org.apache.openejb.resource.XAResourceWrapper;
+import org.apache.openejb.util.DaemonThreadFactory;
 import org.apache.openejb.util.proxy.LocalBeanProxyFactory;
 
 import javax.management.ObjectName;
@@ -27,10 +29,13 @@ import javax.resource.spi.ActivationSpec;
 import javax.resource.spi.UnavailableException;
 import javax.resource.spi.endpoint.MessageEndpoint;
 import javax.resource.spi.endpoint.MessageEndpointFactory;
+import javax.transaction.TransactionManager;
 import javax.transaction.xa.XAResource;
 import java.lang.reflect.Method;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
 
 public class EndpointFactory implements MessageEndpointFactory {
 
@@ -43,8 +48,21 @@ public class EndpointFactory implements MessageEndpointFactory {
     private final XAResourceWrapper xaResourceWrapper;
     protected final List<ObjectName> jmxNames = new ArrayList<ObjectName>();
     private final Class<?> proxy;
+    private final MdbDeliveryStats deliveryStats = new MdbDeliveryStats();
+    private final int batchSize;
+    private final long batchTimeout;
+    private final ScheduledExecutorService batchScheduler;
 
     public EndpointFactory(final ActivationSpec activationSpec, final MdbContainer container, final BeanContext beanContext, final MdbInstanceFactory instanceFactory, final XAResourceWrapper xaResourceWrapper) {
+        this(activationSpec, container, beanContext, instanceFactory, xaResourceWrapper, 1, 0);
+    }
+
+    /**
+     * @param batchSize    the maximum number of messages delivered to an endpoint in one transaction, 1 to disable batching
+     * @param batchTimeout the maximum time in milliseconds a batch transaction stays open
+     */
+    public EndpointFactory(final ActivationSpec activationSpec, final MdbContainer container, final BeanContext beanContext, final MdbInstanceFactory instanceFactory,
+                           final XAResourceWrapper xaResourceWrapper, final int batchSize, final long batchTimeout) {
         this.activationSpec = activationSpec;
         this.container = container;
         this.beanContext = beanContext;
@@ -60,6 +78,14 @@ public class EndpointFactory implements MessageEndpointFactory {
         } else {
             proxy = proxyClass.getProxy();
         }
+
+        this.batchSize = batchSize;
+        this.batchTimeout = batchTimeout;
+        if (batchSize > 1) {
+            batchScheduler = Executors.newSingleThreadScheduledExecutor(new DaemonThreadFactory("MdbBatch-" + beanContext.getEjbName()));
+        } else {
+            batchScheduler = null;
+        }
     }
 
     public ActivationSpec getActivationSpec() {
@@ -70,12 +96,24 @@ public class EndpointFactory implements MessageEndpointFactory {
         return instanceFactory;
     }
 
+    public MdbDeliveryStats getDeliveryStats() {
+        return deliveryStats;
+    }
+
+    public void stop() {
+        if (batchScheduler != null) {
+            batchScheduler.shutdown();
+        }
+    }
+
     @Override
     public MessageEndpoint createEndpoint(XAResource xaResource) throws UnavailableException {
         if (xaResource != null && xaResourceWrapper != null) {
             xaResource = xaResourceWrapper.wrap(xaResource, container.getContainerID().toString());
         }
-        final EndpointHandler endpointHandler = new EndpointHandler(container, beanContext, instanceFactory, xaResource);
+        final DeliveryBatch batch = batchScheduler == null ? null : new DeliveryBatch(beanContext,
+            SystemInstance.get().getComponent(TransactionManager.class), batchScheduler, deliveryStats, batchSize, batchTimeout);
+        final EndpointHandler endpointHandler = new EndpointHandler(container, beanContext, instanceFactory, xaResource, batch, deliveryStats);
         try {
             return (MessageEndpoint) LocalBeanProxyFactory.constructProxy(proxy, endpointHandler);
         } catch (final InternalError e) { // should be useless
@@ -22,6 +22,8 @@ import org.apache.openejb.BeanContext;
 import org.apache.openejb.SystemException;
 
 import javax.ejb.EJBException;
+import javax.jms.JMSException;
+import javax.jms.Message;
 import javax.resource.spi.ApplicationServerInternalException;
 import javax.resource.spi.UnavailableException;
 import javax.resource.spi.endpoint.MessageEndpoint;
@@ -66,15 +68,24 @@ public class EndpointHandler implements InvocationHandler, MessageEndpoint {
     private final BeanContext deployment;
     private final MdbInstanceFactory instanceFactory;
     private final XAResource xaResource;
+    private final DeliveryBatch batch;
+    private final MdbDeliveryStats stats;
 
     private State state = State.NONE;
     private Object instance;
 
     public EndpointHandler(final MdbContainer container, final BeanContext deployment, final MdbInstanceFactory instanceFactory, final XAResource xaResource) throws UnavailableException {
+        this(container, deployment, instanceFactory, xaResource, null, new MdbDeliveryStats());
+    }
+
+    public EndpointHandler(final MdbContainer container, final BeanContext deployment, final MdbInstanceFactory instanceFactory, final XAResource xaResource,
+                           final DeliveryBatch batch, final MdbDeliveryStats stats) throws UnavailableException {
         this.container = container;
         this.deployment = deployment;
         this.instanceFactory = instanceFactory;
         this.xaResource = xaResource;
+        this.batch = batch;
+        this.stats = stats;
         instance = instanceFactory.createInstance(false);
     }
 
@@ -186,7 +197,7 @@ public class EndpointHandler implements InvocationHandler, MessageEndpoint {
 
         // call beforeDelivery on the container
         try {
-            container.beforeDelivery(deployment, instance, method, xaResource);
+            container.beforeDelivery(deployment, instance, method, xaResource, batch);
         } catch (final SystemException se) {
             final Throwable throwable = se.getRootCause() != null ? se.getRootCause() : se;
             throw new ApplicationServerInternalException(throwable);
@@ -226,11 +237,14 @@ public class EndpointHandler implements InvocationHandler, MessageEndpoint {
         try {
             // deliver the message
             value = container.invoke(instance, method, null, args);
+            stats.delivered(isRedelivered(args));
         } catch (final SystemException se) {
             throwable = se.getRootCause() != null ? se.getRootCause() : se;
             state = State.SYSTEM_EXCEPTION;
+            stats.failed();
         } catch (final ApplicationException ae) {
             throwable = ae.getRootCause() != null ? ae.getRootCause() : ae;
+            stats.failed();
         } finally {
             // if the adapter is not using before/after, we must call afterDelivery to clean up
             if (callBeforeAfter) {
@@ -309,6 +323,9 @@ public class EndpointHandler implements InvocationHandler, MessageEndpoint {
 
         // notify the container
         try {
+            if (batch != null) {
+                batch.flush();
+            }
             container.release(deployment, instance);
         } finally {
             instanceFactory.freeInstance((Instance) instance, false);
@@ -316,6 +333,17 @@ public class EndpointHandler implements InvocationHandler, MessageEndpoint {
         }
     }
 
+    private static boolean isRedelivered(final Object[] args) {
+        if (args != null && args.length == 1 && args[0] instanceof Message) {
+            try {
+                return ((Message) args[0]).getJMSRedelivered();
+            } catch (final JMSException e) {
+                return false;
+            }
+        }
+        return false;
+    }
+
     private boolean isValidException(final Method method, final Throwable throwable) {
         if (throwable instanceof RuntimeException || throwable instanceof Error) {
             return true;
@@ -31,6 +31,7 @@ import org.apache.openejb.core.interceptor.InterceptorData;
 import org.apache.openejb.core.interceptor.InterceptorStack;
 import org.apache.openejb.core.timer.EjbTimerService;
 import org.apache.openejb.core.transaction.TransactionPolicy;
+import org.apache.openejb.core.transaction.TransactionType;
 import org.apache.openejb.loader.Options;
 import org.apache.openejb.loader.SystemInstance;
 import org.apache.openejb.monitoring.LocalMBeanServer;
@@ -39,8 +40,11 @@ import org.apache.openejb.monitoring.ObjectNameBuilder;
 import org.apache.openejb.monitoring.StatsInterceptor;
 import org.apache.openejb.resource.XAResourceWrapper;
 import org.apache.openejb.spi.SecurityService;
+import org.apache.openejb.util.Duration;
 import org.apache.openejb.util.LogCategory;
 import org.apache.openejb.util.Logger;
+import org.apache.openejb.util.PassthroughFactory;
+import org.apache.openejb.util.Pool;
 import org.apache.xbean.recipe.ObjectRecipe;
 import org.apache.xbean.recipe.Option;
 
@@ -59,10 +63,12 @@ import java.lang.reflect.Method;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
+import java.util.Properties;
 import java.util.Set;
 import java.util.TreeSet;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
 
 import static org.apache.openejb.core.transaction.EjbTransactionUtil.afterInvoke;
 import static org.apache.openejb.core.transaction.EjbTransactionUtil.createTransactionPolicy;
@@ -84,6 +90,7 @@ public class MdbContainer implements RpcContainer {
     private final ConcurrentMap<Object, BeanContext> deployments = new ConcurrentHashMap<Object, BeanContext>();
     private final XAResourceWrapper xaResourceWrapper;
     private final InboundRecovery inboundRecovery;
+    private final Properties properties = new Properties();
 
     public MdbContainer(final Object containerID, final SecurityService securityService, final ResourceAdapter resourceAdapter,
                         final Class messageListenerInterface, final Class activationSpecClass, final int instanceLimit,
@@ -127,6 +134,17 @@ public class MdbContainer implements RpcContainer {
         return activationSpecClass;
     }
 
+    /**
+     * Container properties used as defaults of the MDB properties (pooling and batching options).
+     */
+    public Properties getProperties() {
+        return properties;
+    }
+
+    public void setProperties(final Properties properties) {
+        this.properties.putAll(properties);
+    }
+
     public void deploy(final BeanContext beanContext) throws OpenEJBException {
         final Object deploymentId = beanContext.getDeploymentID();
         if (!beanContext.getMdbInterface().equals(messageListenerInterface)) {
@@ -142,11 +160,19 @@ public class MdbContainer implements RpcContainer {
             inboundRecovery.recover(resourceAdapter, activationSpec, containerID.toString());
         }
 
-        final Options options = new Options(beanContext.getProperties());
+        final Options options = new Options(beanContext.getProperties(), new Options(properties));
         final int instanceLimit = options.get("InstanceLimit", this.instanceLimit);
+        final Pool.Builder<Instance> poolBuilder = options.get("Pooling", false) ? createPoolBuilder(beanContext, instanceLimit) : null;
+        final int batchSize = options.get("BatchSize", 1);
+        final Duration batchTimeout = new Duration(options.get("BatchTimeout", "100 milliseconds"));
+        if (batchTimeout.getUnit() == null) {
+            batchTimeout.setUnit(TimeUnit.MILLISECONDS);
+        }
+
         // create the message endpoint
-        final MdbInstanceFactory instanceFactory = new MdbInstanceFactory(beanContext, securityService, instanceLimit);
-        final EndpointFactory endpointFactory = new EndpointFactory(activationSpec, this, beanContext, instanceFactory, xaResourceWrapper);
+        final MdbInstanceFactory instanceFactory = new MdbInstanceFactory(beanContext, securityService, instanceLimit, poolBuilder);
+        final EndpointFactory endpointFactory = new EndpointFactory(activationSpec, this, beanContext, instanceFactory, xaResourceWrapper,
+            batchSize, batchTimeout.getTime(TimeUnit.MILLISECONDS));
 
         // update the data structures
         // this must be done before activating the endpoint since the ra may immedately begin delivering messages
@@ -154,34 +180,33 @@ public class MdbContainer implements RpcContainer {
         beanContext.setContainerData(endpointFactory);
         deployments.put(deploymentId, beanContext);
 
+        final MBeanServer server = LocalMBeanServer.get();
+
+        final ObjectNameBuilder jmxName = new ObjectNameBuilder("openejb.management");
+        jmxName.set("J2EEServer", "openejb");
+        jmxName.set("J2EEApplication", null);
+        jmxName.set("EJBModule", beanContext.getModuleID());
+        jmxName.set("StatelessSessionBean", beanContext.getEjbName());
+        jmxName.set("j2eeType", "");
+        jmxName.set("name", beanContext.getEjbName());
+
         // Create stats interceptor
         if (StatsInterceptor.isStatsActivated()) {
             final StatsInterceptor stats = new StatsInterceptor(beanContext.getBeanClass());
             beanContext.addFirstSystemInterceptor(stats);
 
-            final MBeanServer server = LocalMBeanServer.get();
-
-            final ObjectNameBuilder jmxName = new ObjectNameBuilder("openejb.management");
-            jmxName.set("J2EEServer", "openejb");
-            jmxName.set("J2EEApplication", null);
-            jmxName.set("EJBModule", beanContext.getModuleID());
-            jmxName.set("StatelessSessionBean", beanContext.getEjbName());
-            jmxName.set("j2eeType", "");
-            jmxName.set("name", beanContext.getEjbName());
-
             // register the invocation stats interceptor
-            try {
-                final ObjectName objectName = jmxName.set("j2eeType", "Invocations").build();
-                if (server.isRegistered(objectName)) {
-                    server.unregisterMBean(objectName);
-                }
-                server.registerMBean(new ManagedMBean(stats), objectName);
-                endpointFactory.jmxNames.add(objectName);
-            } catch (final Exception e) {
-                logger.error("Unable to register MBean ", e);
-            }
+            registerMBean(server, jmxName.set("j2eeType", "Invocations"), stats, endpointFactory);
+        }
+
+        // register the delivery stats and the pool
+        registerMBean(server, jmxName.set("j2eeType", "Deliveries"), endpointFactory.getDeliveryStats(), endpointFactory);
+        if (instanceFactory.getPool() != null) {
+            registerMBean(server, jmxName.set("j2eeType", "Pool"), instanceFactory.getPool(), endpointFactory);
         }
 
+        instanceFactory.start();
+
         // activate the endpoint
         try {
             resourceAdapter.endpointActivation(endpointFactory, activationSpec);
@@ -190,11 +215,65 @@ public class MdbContainer implements RpcContainer {
             beanContext.setContainer(null);
             beanContext.setContainerData(null);
             deployments.remove(deploymentId);
+            stop(endpointFactory);
 
             throw new OpenEJBException(e);
         }
     }
 
+    @SuppressWarnings("unchecked")
+    private Pool.Builder<Instance> createPoolBuilder(final BeanContext beanContext, final int instanceLimit) {
+        final Pool.Builder<Instance> defaults = new Pool.Builder<Instance>();
+        if (instanceLimit > 0) {
+            defaults.setMaxSize(instanceLimit);
+        } else {
+            defaults.setStrictPooling(false);
+        }
+
+        final ObjectRecipe recipe = PassthroughFactory.recipe(defaults);
+        recipe.allow(Option.CASE_INSENSITIVE_FACTORY);
+        recipe.allow(Option.CASE_INSENSITIVE_PROPERTIES);
+        recipe.allow(Option.IGNORE_MISSING_PROPERTIES);
+        recipe.setAllProperties(properties);
+        recipe.setAllProperties(beanContext.getProperties());
+        final Pool.Builder<Instance> builder = (Pool.Builder<Instance>) recipe.create();
+
+        setDefault(builder.getMaxAge(), TimeUnit.HOURS);
+        setDefault(builder.getIdleTimeout(), TimeUnit.MINUTES);
+        setDefault(builder.getInterval(), TimeUnit.MINUTES);
+        return builder;
+    }
+
+    private static void setDefault(final Duration duration, final TimeUnit unit) {
+        if (duration.getUnit() == null) {
+            duration.setUnit(unit);
+        }
+    }
+
+    private static void registerMBean(final MBeanServer server, final ObjectNameBuilder jmxName, final Object managed, final EndpointFactory endpointFactory) {
+        try {
+            final ObjectName objectName = jmxName.build();
+            if (server.isRegistered(objectName)) {
+                server.unregisterMBean(objectName);
+            }
+            server.registerMBean(new ManagedMBean(managed), objectName);
+            endpointFactory.jmxNames.add(objectName);
+        } catch (final Exception e) {
+            logger.error("Unable to register MBean ", e);
+        }
+    }
+
+    private static void stop(final EndpointFactory endpointFactory) {
+        endpointFactory.stop();
+        try {
+            if (!endpointFactory.getInstanceFactory().stop(1, TimeUnit.MINUTES)) {
+                logger.error("Timed-out waiting for the instance pool to close");
+            }
+        } catch (final InterruptedException e) {
+            Thread.interrupted();
+        }
+    }
+
     private ActivationSpec createActivationSpec(final BeanContext beanContext) throws OpenEJBException {
         try {
             // initialize the object recipe
@@ -284,6 +363,8 @@ public class MdbContainer implements RpcContainer {
                         logger.error("Unable to unregister MBean " + objectName);
                     }
                 }
+
+                stop(endpointFactory);
             }
         } finally {
             beanContext.setContainer(null);
@@ -315,6 +396,11 @@ public class MdbContainer implements RpcContainer {
     }
 
     public void beforeDelivery(final BeanContext deployInfo, final Object instance, final Method method, final XAResource xaResource) throws SystemException {
+        beforeDelivery(deployInfo, instance, method, xaResource, null);
+    }
+
+    public void beforeDelivery(final BeanContext deployInfo, final Object instance, final Method method, final XAResource xaResource,
+                               final DeliveryBatch batch) throws SystemException {
         // intialize call context
         final ThreadContext callContext = new ThreadContext(deployInfo, null);
         final ThreadContext oldContext = ThreadContext.enter(callContext);
@@ -324,15 +410,29 @@ public class MdbContainer implements RpcContainer {
         callContext.set(MdbCallContext.class, mdbCallContext);
         mdbCallContext.deliveryMethod = method;
         mdbCallContext.oldCallContext = oldContext;
+        mdbCallContext.batch = batch;
 
         // call the tx before method
         try {
-            mdbCallContext.txPolicy = createTransactionPolicy(deployInfo.getTransactionType(method), callContext);
+            final TransactionPolicy batchTxPolicy = batch == null ? null : batch.resume();
+            if (batchTxPolicy != null) {
+                // join the transaction of the previous messages, the xaResource is already enlisted
+                mdbCallContext.txPolicy = batchTxPolicy;
+                callContext.setTransactionPolicy(batchTxPolicy);
+                return;
+            }
+
+            final TransactionType transactionType = deployInfo.getTransactionType(method);
+            mdbCallContext.txPolicy = createTransactionPolicy(transactionType, callContext);
 
             // if we have an xaResource and a transaction was not imported from the adapter, enlist the xaResource
             if (xaResource != null && mdbCallContext.txPolicy.isNewTransaction()) {
                 mdbCallContext.txPolicy.enlistResource(xaResource);
             }
+
+            if (batch != null && transactionType == TransactionType.Required && mdbCallContext.txPolicy.isNewTransaction()) {
+                batch.begin(mdbCallContext.txPolicy);
+            }
         } catch (final ApplicationException e) {
             ThreadContext.exit(oldContext);
             throw new SystemException("Should never get an Application exception", e);
@@ -439,12 +539,31 @@ public class MdbContainer implements RpcContainer {
         final ThreadContext callContext = ThreadContext.getThreadContext();
         final MdbCallContext mdbCallContext = callContext.get(MdbCallContext.class);
 
+        final TransactionPolicy txPolicy = mdbCallContext.txPolicy;
+        final DeliveryBatch batch = mdbCallContext.batch;
+        final boolean batched = batch != null && batch.isBatched(txPolicy);
+
         // invoke the tx after method
+        boolean rollback = txPolicy.isRollbackOnly();
+        boolean suspended = false;
         try {
-            afterInvoke(mdbCallContext.txPolicy, callContext);
+            suspended = batched && batch.suspend();
+            if (!suspended) {
+                afterInvoke(txPolicy, callContext);
+            } // else committed with the next messages
         } catch (final ApplicationException e) {
+            rollback = true;
             throw new SystemException("Should never get an Application exception", e);
+        } catch (final SystemException e) {
+            rollback = true;
+            throw e;
         } finally {
+            if (!suspended && txPolicy.isNewTransaction()) {
+                final EndpointFactory endpointFactory = (EndpointFactory) callContext.getBeanContext().getContainerData();
+                if (endpointFactory != null) {
+                    endpointFactory.getDeliveryStats().completed(batched ? batch.complete() : 1, rollback);
+                }
+            }
             ThreadContext.exit(mdbCallContext.oldCallContext);
         }
     }
@@ -468,8 +587,10 @@ public class MdbContainer implements RpcContainer {
                 } catch (final Exception e) {
                     logger.error("error while releasing message endpoint", e);
                 } finally {
-                    final EndpointFactory endpointFactory = (EndpointFactory) deployInfo.getContainerData();
-                    endpointFactory.getInstanceFactory().freeInstance((Instance) instance, false);
+                    // the endpoint handler frees the instance
+                    if (mdbCallContext.batch != null) {
+                        mdbCallContext.batch.complete();
+                    }
                 }
             }
         } finally {
@@ -483,5 +604,6 @@ public class MdbContainer implements RpcContainer {
         private Method deliveryMethod;
         private TransactionPolicy txPolicy;
         private ThreadContext oldCallContext;
+        private DeliveryBatch batch;
     }
 }
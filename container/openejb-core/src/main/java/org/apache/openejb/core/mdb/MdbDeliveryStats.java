@@ -0,0 +1,122 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.openejb.core.mdb;
+
+import org.apache.openejb.monitoring.Managed;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Message delivery statistics of a message driven bean, registered in JMX with j2eeType=Deliveries.
+ * <p/>
+ * Redelivered messages are the ones flagged as such by JMS, rolled back messages are the ones
+ * whose transaction was rolled back, the resource adapter will usually redeliver them.
+ */
+public class MdbDeliveryStats {
+    private final AtomicLong delivered = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicLong redelivered = new AtomicLong();
+    private final AtomicLong transactions = new AtomicLong();
+    private final AtomicLong committed = new AtomicLong();
+    private final AtomicLong rolledBack = new AtomicLong();
+
+    // throughput of the last complete second
+    private final AtomicLong second = new AtomicLong();
+    private final AtomicLong secondCount = new AtomicLong();
+    private volatile long lastSecondCount;
+
+    public void delivered(final boolean redelivery) {
+        delivered.incrementAndGet();
+        if (redelivery) {
+            redelivered.incrementAndGet();
+        }
+
+        final long now = System.currentTimeMillis() / 1000;
+        final long current = second.get();
+        if (current != now && second.compareAndSet(current, now)) {
+            final long count = secondCount.getAndSet(0);
+            lastSecondCount = now - current == 1 ? count : 0;
+        }
+        secondCount.incrementAndGet();
+    }
+
+    public void failed() {
+        failed.incrementAndGet();
+    }
+
+    /**
+     * @param messages the number of messages delivered in the transaction
+     * @param rollback true if the transaction was rolled back
+     */
+    public void completed(final int messages, final boolean rollback) {
+        transactions.incrementAndGet();
+        if (rollback) {
+            rolledBack.addAndGet(messages);
+        } else {
+            committed.addAndGet(messages);
+        }
+    }
+
+    @Managed
+    public long getDelivered() {
+        return delivered.get();
+    }
+
+    @Managed
+    public long getFailed() {
+        return failed.get();
+    }
+
+    @Managed
+    public long getRedelivered() {
+        return redelivered.get();
+    }
+
+    @Managed
+    public long getTransactions() {
+        return transactions.get();
+    }
+
+    @Managed
+    public long getCommitted() {
+        return committed.get();
+    }
+
+    @Managed
+    public long getRolledBack() {
+        return rolledBack.get();
+    }
+
+    @Managed
+    public double getAverageBatchSize() {
+        final long transactions = this.transactions.get();
+        return transactions == 0 ? 0 : (committed.get() + rolledBack.get()) / (double) transactions;
+    }
+
+    /**
+     * @return the number of messages delivered during the last complete second
+     */
+    @Managed
+    public long getThroughput() {
+        final long elapsed = System.currentTimeMillis() / 1000 - second.get();
+        if (elapsed == 0) {
+            return lastSecondCount;
+        }
+        return elapsed == 1 ? secondCount.get() : 0;
+    }
+}
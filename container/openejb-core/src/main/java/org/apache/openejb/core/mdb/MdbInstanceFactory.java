@@ -29,6 +29,7 @@ import org.apache.openejb.core.timer.TimerServiceWrapper;
 import org.apache.openejb.spi.SecurityService;
 import org.apache.openejb.util.LogCategory;
 import org.apache.openejb.util.Logger;
+import org.apache.openejb.util.Pool;
 
 import javax.ejb.EJBContext;
 import javax.ejb.MessageDrivenBean;
@@ -40,6 +41,8 @@ import java.lang.reflect.Method;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 /**
  * A MdbInstanceFactory creates instances of message driven beans for a single instance. This class differs from other
@@ -51,6 +54,9 @@ import java.util.List;
  * </p>
  * This class can optionally limit the number of bean instances and therefore the message endpoints available to the
  * resource adapter.
+ * </p>
+ * When the resource adapter often releases its endpoints the instances can be kept in a {@link Pool} instead, the pool
+ * then enforces the instance limit and destroys the instances idle for too long.
  */
 public class MdbInstanceFactory {
     private static final Logger logger = Logger.getInstance(LogCategory.OPENEJB, "org.apache.openejb.util.resources");
@@ -59,6 +65,8 @@ public class MdbInstanceFactory {
     private final int instanceLimit;
     private int instanceCount;
     private final MdbContext mdbContext;
+    private final Pool<Instance> pool;
+    private final int poolMin;
 
     /**
      * Creates a MdbInstanceFactory for a single specific deployment.
@@ -68,10 +76,33 @@ public class MdbInstanceFactory {
      * @param instanceLimit   the maximal number of instances or <= 0 if unlimited
      */
     public MdbInstanceFactory(final BeanContext beanContext, final SecurityService securityService, final int instanceLimit) throws OpenEJBException {
+        this(beanContext, securityService, instanceLimit, null);
+    }
+
+    /**
+     * Creates a MdbInstanceFactory for a single specific deployment.
+     *
+     * @param beanContext     the deployment for which instances will be created
+     * @param securityService the transaction manager for this container system
+     * @param instanceLimit   the maximal number of instances or <= 0 if unlimited, ignored when pooling
+     * @param poolBuilder     the pool configuration or null to create an instance per endpoint
+     */
+    public MdbInstanceFactory(final BeanContext beanContext, final SecurityService securityService, final int instanceLimit,
+                              final Pool.Builder<Instance> poolBuilder) throws OpenEJBException {
         this.beanContext = beanContext;
         this.instanceLimit = instanceLimit;
         mdbContext = new MdbContext(securityService);
 
+        if (poolBuilder != null) {
+            final Pool.Builder<Instance> builder = new Pool.Builder<Instance>(poolBuilder);
+            builder.setSupplier(new MdbSupplier());
+            pool = builder.build();
+            poolMin = builder.getMin();
+        } else {
+            pool = null;
+            poolMin = 0;
+        }
+
         try {
             final Context context = beanContext.getJndiEnc();
             context.bind("comp/EJBContext", mdbContext);
@@ -93,7 +124,41 @@ public class MdbInstanceFactory {
     }
 
     /**
-     * Gets the current number of created instances.
+     * @return the instance pool or null if instances are not pooled
+     */
+    public Pool<Instance> getPool() {
+        return pool;
+    }
+
+    /**
+     * Fills the pool up to its minimum size and starts it.
+     */
+    public void start() {
+        if (pool == null) {
+            return;
+        }
+
+        for (int i = 0; i < poolMin; i++) {
+            try {
+                pool.add((Instance) constructBean());
+            } catch (final UnavailableException e) {
+                break; // already logged
+            }
+        }
+        pool.start();
+    }
+
+    /**
+     * Destroys the pooled instances.
+     *
+     * @return false if the instances in use were not returned within the timeout
+     */
+    public boolean stop(final long timeout, final TimeUnit unit) throws InterruptedException {
+        return pool == null || pool.close(timeout, unit);
+    }
+
+    /**
+     * Gets the current number of created instances, not maintained when instances are pooled.
      *
      * @return the current number of instances created
      */
@@ -110,6 +175,10 @@ public class MdbInstanceFactory {
      *                              if an exception occurs while creating the bean instance
      */
     public Object createInstance(final boolean ignoreInstanceCount) throws UnavailableException {
+        if (!ignoreInstanceCount && pool != null) {
+            return popInstance();
+        }
+
         if (!ignoreInstanceCount) {
             synchronized (this) {
                 // check the instance limit
@@ -149,6 +218,16 @@ public class MdbInstanceFactory {
             throw new NullPointerException("bean is null");
         }
 
+        if (!ignoredInstanceCount && pool != null) {
+            // the pool calls the lifecycle callbacks when it discards the instance
+            if (instance.getPoolEntry() != null) {
+                pool.push(instance.getPoolEntry());
+            } else {
+                pool.push(instance);
+            }
+            return;
+        }
+
         // decrement the instance count
         if (!ignoredInstanceCount) {
             synchronized (this) {
@@ -156,6 +235,10 @@ public class MdbInstanceFactory {
             }
         }
 
+        destroyInstance(instance);
+    }
+
+    private void destroyInstance(final Instance instance) {
         final ThreadContext callContext = ThreadContext.getThreadContext();
 
         final Operation originalOperation = callContext == null ? null : callContext.getCurrentOperation();
@@ -195,10 +278,43 @@ public class MdbInstanceFactory {
         if (bean == null) {
             throw new NullPointerException("bean is null");
         }
+
+        if (pool != null) {
+            // no callback, the discarded permit is taken back right away
+            pool.discard(((Instance) bean).getPoolEntry());
+            return popInstance();
+        }
+
         final Object newBean = constructBean();
         return newBean;
     }
 
+    private Instance popInstance() throws UnavailableException {
+        final Pool<Instance>.Entry entry;
+        try {
+            entry = pool.pop(0, TimeUnit.MILLISECONDS);
+        } catch (final TimeoutException e) {
+            throw new UnavailableException("No instance available in the pool of " + beanContext.getDeploymentID());
+        } catch (final InterruptedException e) {
+            Thread.interrupted();
+            throw new UnavailableException("Interrupted while waiting for an instance of " + beanContext.getDeploymentID());
+        }
+
+        if (entry != null) {
+            final Instance instance = entry.get();
+            instance.setPoolEntry(entry);
+            return instance;
+        }
+
+        // the pool gave us the permission to create one
+        try {
+            return (Instance) constructBean();
+        } catch (final UnavailableException e) {
+            pool.discard();
+            throw e;
+        }
+    }
+
     private Object constructBean() throws UnavailableException {
         final BeanContext beanContext = this.beanContext;
 
@@ -228,4 +344,26 @@ public class MdbInstanceFactory {
         }
     }
 
+    private final class MdbSupplier implements Pool.Supplier<Instance> {
+        @Override
+        public void discard(final Instance instance, final Pool.Event reason) {
+            final ThreadContext callContext = new ThreadContext(beanContext, null);
+            final ThreadContext oldContext = ThreadContext.enter(callContext);
+            try {
+                destroyInstance(instance);
+            } finally {
+                ThreadContext.exit(oldContext);
+            }
+        }
+
+        @Override
+        public Instance create() {
+            try {
+                return (Instance) constructBean();
+            } catch (final UnavailableException e) {
+                return null; // already logged
+            }
+        }
+    }
+
 }
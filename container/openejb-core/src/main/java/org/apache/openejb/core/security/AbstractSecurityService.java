@@ -61,6 +61,7 @@ import java.util.concurrent.ConcurrentHashMap;
 public abstract class AbstractSecurityService implements SecurityService<UUID>, ThreadContextListener, BasicPolicyConfiguration.RoleResolver {
 
     private static final Map<Object, Identity> identities = new ConcurrentHashMap<Object, Identity>();
+    private static final ThreadContext.Key<SecurityContext> SECURITY_CONTEXT = ThreadContext.key(SecurityContext.class);
     protected static final ThreadLocal<Identity> clientIdentity = new ThreadLocal<Identity>();
     protected String defaultUser = "guest";
     private String realmName = "PropertiesLogin";
@@ -147,7 +148,7 @@ public abstract class AbstractSecurityService implements SecurityService<UUID>,
         }
 
         final ProvidedSecurityContext providedSecurityContext = newContext.get(ProvidedSecurityContext.class);
-        SecurityContext securityContext = oldContext != null ? oldContext.get(SecurityContext.class) :
+        SecurityContext securityContext = oldContext != null ? oldContext.get(SECURITY_CONTEXT) :
             (providedSecurityContext != null ? providedSecurityContext.context : null);
         if (providedSecurityContext == null) {
             if (runAsSubject != null) {
@@ -165,7 +166,7 @@ public abstract class AbstractSecurityService implements SecurityService<UUID>,
             }
         }
 
-        newContext.set(SecurityContext.class, securityContext);
+        newContext.set(SECURITY_CONTEXT, securityContext);
     }
 
     protected Subject getRunAsSubject(final BeanContext callingBeanContext) {
@@ -247,7 +248,7 @@ public abstract class AbstractSecurityService implements SecurityService<UUID>,
             return false;
         }
 
-        final SecurityContext securityContext = threadContext.get(SecurityContext.class);
+        final SecurityContext securityContext = threadContext.get(SECURITY_CONTEXT);
 
         if ("**".equals(role)) {
             return securityContext != defaultContext; // ie logged in
@@ -279,7 +280,7 @@ public abstract class AbstractSecurityService implements SecurityService<UUID>,
             return null;
         }
 
-        final SecurityContext securityContext = threadContext.get(SecurityContext.class);
+        final SecurityContext securityContext = threadContext.get(SECURITY_CONTEXT);
         final Set<Principal> principals = securityContext.subject.getPrincipals();
         return getCallerPrincipal(principals);
     }
@@ -309,7 +310,7 @@ public abstract class AbstractSecurityService implements SecurityService<UUID>,
             final Identity currentIdentity = clientIdentity.get();
             final SecurityContext securityContext;
             if (currentIdentity == null) {
-                securityContext = threadContext.get(SecurityContext.class);
+                securityContext = threadContext.get(SECURITY_CONTEXT);
             } else {
                 securityContext = new SecurityContext(currentIdentity.getSubject());
             }
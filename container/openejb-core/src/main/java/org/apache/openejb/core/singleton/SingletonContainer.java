@@ -175,7 +175,7 @@ public class SingletonContainer implements RpcContainer {
 
         final Method runMethod = beanContext.getMatchingBeanMethod(callMethod);
 
-        final ThreadContext callContext = new ThreadContext(beanContext, primKey);
+        final ThreadContext callContext = ThreadContext.obtain(beanContext, primKey);
         final ThreadContext oldCallContext = ThreadContext.enter(callContext);
         final CurrentCreationalContext currentCreationalContext = beanContext.get(CurrentCreationalContext.class);
         try {
@@ -201,7 +201,7 @@ public class SingletonContainer implements RpcContainer {
 
             callContext.setCurrentOperation(type == InterfaceType.TIMEOUT ? Operation.TIMEOUT : Operation.BUSINESS);
             callContext.setCurrentAllowedStates(null);
-            callContext.set(Method.class, runMethod);
+            callContext.set(ThreadContext.METHOD, runMethod);
             callContext.setInvokedInterface(callInterface);
 
             if (currentCreationalContext != null) {
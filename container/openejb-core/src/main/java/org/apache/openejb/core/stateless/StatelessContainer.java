@@ -156,7 +156,7 @@ public class StatelessContainer implements org.apache.openejb.RpcContainer {
         }
 
         final Method runMethod = beanContext.getMatchingBeanMethod(callMethod);
-        final ThreadContext callContext = new ThreadContext(beanContext, primKey);
+        final ThreadContext callContext = ThreadContext.obtain(beanContext, primKey);
         final ThreadContext oldCallContext = ThreadContext.enter(callContext);
 
         Instance bean = null;
@@ -186,7 +186,7 @@ public class StatelessContainer implements org.apache.openejb.RpcContainer {
             bean = this.instanceManager.getInstance(callContext);
 
             callContext.setCurrentOperation(type == InterfaceType.TIMEOUT ? Operation.TIMEOUT : Operation.BUSINESS);
-            callContext.set(Method.class, runMethod);
+            callContext.set(ThreadContext.METHOD, runMethod);
             callContext.setInvokedInterface(callInterface);
             if (currentCreationalContext != null) {
                 currentCreationalContext.set(bean.creationalContext);
@@ -63,6 +63,11 @@ public class DefaultTimerThreadPoolAdapter implements ThreadPool {
 
     private boolean threadPoolExecutorUsed;
 
+    /**
+     * false to not share the executor of the EJB timers with the other schedulers, as the timer partitions do
+     */
+    private boolean shared = true;
+
     // This is to prevent other parts of the code becoming dependent
     // on the executor produced for EJB Timers
     //
@@ -140,7 +145,12 @@ public class DefaultTimerThreadPoolAdapter implements ThreadPool {
     public synchronized void initialize() throws SchedulerConfigException {
         final TimerExecutor timerExecutor = SystemInstance.get().getComponent(TimerExecutor.class);
 
-        if (timerExecutor != null) {
+        if (!shared) {
+            this.executor = new ExecutorBuilder()
+                .size(threadCount)
+                .prefix("EjbTimerPool-" + instanceName)
+                .build(SystemInstance.get().getOptions());
+        } else if (timerExecutor != null) {
             this.executor = timerExecutor.incr().executor;
         } else {
             this.executor = new ExecutorBuilder()
@@ -224,6 +234,14 @@ public class DefaultTimerThreadPoolAdapter implements ThreadPool {
         this.threadCount = threadCount;
     }
 
+    public boolean isShared() {
+        return shared;
+    }
+
+    public void setShared(final boolean shared) {
+        this.shared = shared;
+    }
+
     public int getThreadPriority() {
         return this.threadPriority;
     }
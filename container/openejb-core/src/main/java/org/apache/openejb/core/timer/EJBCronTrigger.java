@@ -369,7 +369,9 @@ public class EJBCronTrigger extends CronTriggerImpl {
 
     @Override
     public Date getFireTimeAfter(final Date afterTime) {
-        log.debug("start to getFireTimeAfter:" + afterTime);
+        if (log.isDebugEnabled()) {
+            log.debug("start to getFireTimeAfter:" + afterTime);
+        }
         final Calendar calendar = new GregorianCalendar(timezone);
         // calendar.setLenient(false);
         calendar.setFirstDayOfWeek(Calendar.SUNDAY);
@@ -474,14 +476,16 @@ public class EJBCronTrigger extends CronTriggerImpl {
                     currentFieldIndex++;
                 }
             } else {
-                log.debug("end of getFireTimeAfter, result is:" + null);
+                log.debug("end of getFireTimeAfter, result is:null");
                 return null;
             }
         }
 
-        log.debug("end of getFireTimeAfter, result is:" + (calendar.before(stopCalendar) ? calendar.getTime() : null));
-
-        return calendar.before(stopCalendar) ? calendar.getTime() : null;
+        final Date fireTime = calendar.before(stopCalendar) ? calendar.getTime() : null;
+        if (log.isDebugEnabled()) {
+            log.debug("end of getFireTimeAfter, result is:" + fireTime);
+        }
+        return fireTime;
     }
 
     /**
@@ -21,6 +21,9 @@ import org.apache.openejb.quartz.Job;
 import org.apache.openejb.quartz.JobDataMap;
 import org.apache.openejb.quartz.JobExecutionContext;
 import org.apache.openejb.quartz.JobExecutionException;
+import org.apache.openejb.quartz.SchedulerException;
+
+import java.util.Date;
 
 /**
  * @version $Rev$ $Date$
@@ -36,6 +39,28 @@ public class EjbTimeoutJob implements Job {
         final JobDataMap jobDataMap = jobExecutionContext.getMergedJobDataMap();
         final EjbTimerServiceImpl ejbTimerService = (EjbTimerServiceImpl) jobDataMap.get(EJB_TIMERS_SERVICE);
         final TimerData timerData = (TimerData) jobDataMap.get(TIMER_DATA);
-        ejbTimerService.ejbTimeout(timerData);
+
+        final TimerSchedulerStats stats = stats(jobExecutionContext);
+        if (stats == null) {
+            ejbTimerService.ejbTimeout(timerData);
+            return;
+        }
+
+        final long start = System.currentTimeMillis();
+        final Date scheduled = jobExecutionContext.getScheduledFireTime();
+        stats.started(scheduled == null ? 0 : start - scheduled.getTime()); // includes the wait for a thread
+        try {
+            ejbTimerService.ejbTimeout(timerData);
+        } finally {
+            stats.ended(System.currentTimeMillis() - start);
+        }
+    }
+
+    private static TimerSchedulerStats stats(final JobExecutionContext jobExecutionContext) {
+        try {
+            return (TimerSchedulerStats) jobExecutionContext.getScheduler().getContext().get(TimerSchedulerStats.KEY);
+        } catch (final SchedulerException e) {
+            return null;
+        }
     }
 }
@@ -31,6 +31,7 @@ import org.apache.openejb.monitoring.LocalMBeanServer;
 import org.apache.openejb.quartz.JobBuilder;
 import org.apache.openejb.quartz.JobDataMap;
 import org.apache.openejb.quartz.JobDetail;
+import org.apache.openejb.quartz.JobKey;
 import org.apache.openejb.quartz.Scheduler;
 import org.apache.openejb.quartz.SchedulerException;
 import org.apache.openejb.quartz.Trigger;
@@ -38,6 +39,7 @@ import org.apache.openejb.quartz.TriggerKey;
 import org.apache.openejb.quartz.impl.StdSchedulerFactory;
 import org.apache.openejb.quartz.impl.jdbcjobstore.JobStoreSupport;
 import org.apache.openejb.quartz.impl.jdbcjobstore.StdJDBCDelegate;
+import org.apache.openejb.quartz.impl.matchers.GroupMatcher;
 import org.apache.openejb.quartz.impl.triggers.AbstractTrigger;
 import org.apache.openejb.quartz.listeners.SchedulerListenerSupport;
 import org.apache.openejb.quartz.simpl.RAMJobStore;
@@ -53,7 +55,9 @@ import javax.ejb.ScheduleExpression;
 import javax.ejb.Timer;
 import javax.ejb.TimerConfig;
 import javax.transaction.Status;
+import javax.transaction.Synchronization;
 import javax.transaction.SystemException;
+import javax.transaction.Transaction;
 import javax.transaction.TransactionManager;
 import java.io.IOException;
 import java.io.ObjectInputStream;
@@ -64,9 +68,15 @@ import java.lang.reflect.Method;
 import java.lang.reflect.Proxy;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.Date;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicReference;
@@ -83,7 +93,10 @@ public class EjbTimerServiceImpl implements EjbTimerService, Serializable {
     public static final String OPENEJB_TIMEOUT_JOB_GROUP_NAME = "OPENEJB_TIMEOUT_GROUP";
 
     public static final String EJB_TIMER_RETRY_ATTEMPTS = "EjbTimer.RetryAttempts";
+    public static final String EJB_TIMER_WRITE_BEHIND = "EjbTimer.WriteBehind";
     public static final String OPENEJB_QUARTZ_USE_TCCL = "openejb.quartz.use-TCCL";
+    public static final String OPENEJB_TIMER_PARTITIONS = "openejb.timer.partitions";
+    public static final String OPENEJB_TIMER_PARTITION_POOL_SIZE = "openejb.timer.partition.pool.size";
 
     private boolean transacted;
     private int retryAttempts;
@@ -92,6 +105,7 @@ public class EjbTimerServiceImpl implements EjbTimerService, Serializable {
     private transient BeanContext deployment;
     private transient TimerStore timerStore;
     private transient Scheduler scheduler;
+    private transient ConcurrentMap<Transaction, TimerBatch> batches; // null when the write-behind mode is off
 
     public EjbTimerServiceImpl(final BeanContext deployment, final TimerStore timerStore) {
         this(deployment, getDefaultTransactionManager(), timerStore, -1);
@@ -112,6 +126,13 @@ public class EjbTimerServiceImpl implements EjbTimerService, Serializable {
         if (retryAttempts < 0) {
             this.retryAttempts = deployment.getOptions().get(EJB_TIMER_RETRY_ATTEMPTS, 1);
         }
+        initWriteBehind();
+    }
+
+    private void initWriteBehind() {
+        if (deployment.getOptions().get(EJB_TIMER_WRITE_BEHIND, false)) {
+            batches = new ConcurrentHashMap<>();
+        }
     }
 
     private void writeObject(final ObjectOutputStream out) throws IOException {
@@ -129,6 +150,7 @@ public class EjbTimerServiceImpl implements EjbTimerService, Serializable {
         transactionManager = getDefaultTransactionManager();
         timerStore = deployment.getEjbTimerService().getTimerStore();
         scheduler = (Scheduler) Proxy.newProxyInstance(deployment.getClassLoader(), new Class<?>[]{Scheduler.class}, new LazyScheduler(deployment));
+        initWriteBehind();
     }
 
     public static synchronized Scheduler getDefaultScheduler(final BeanContext deployment) {
@@ -168,37 +190,15 @@ public class EjbTimerServiceImpl implements EjbTimerService, Serializable {
 
             scheduler = systemInstance.getComponent(Scheduler.class);
 
-            if (scheduler == null || newInstance) {
+            final int partitions = newInstance ? 1 : systemInstance.getOptions().get(OPENEJB_TIMER_PARTITIONS, 1);
+            if (partitions > 1) {
+                thisScheduler = getPartition(deployment, properties, partitions);
+            } else if (scheduler == null || newInstance) {
                 final boolean useTccl = "true".equalsIgnoreCase(properties.getProperty(OPENEJB_QUARTZ_USE_TCCL, "false"));
 
                 defaultQuartzConfiguration(properties, deployment, newInstance, useTccl);
-
-                try {
-                    // start in container context to avoid thread leaks
-                    final ClassLoader oldCl = Thread.currentThread().getContextClassLoader();
-                    if (useTccl) {
-                        Thread.currentThread().setContextClassLoader(deployment.getClassLoader());
-                    } else {
-                        Thread.currentThread().setContextClassLoader(EjbTimerServiceImpl.class.getClassLoader());
-                    }
-                    try {
-                        thisScheduler = new StdSchedulerFactory(properties).getScheduler();
-                        thisScheduler.start();
-                    } finally {
-                        Thread.currentThread().setContextClassLoader(oldCl);
-                    }
-
-                    //durability is configured with true, which means that the job will be kept in the store even if no trigger is attached to it.
-                    //Currently, all the EJB beans share with the same job instance
-                    final JobDetail job = JobBuilder.newJob(EjbTimeoutJob.class)
-                        .withIdentity(OPENEJB_TIMEOUT_JOB_NAME, OPENEJB_TIMEOUT_JOB_GROUP_NAME)
-                        .storeDurably(true)
-                        .requestRecovery(false)
-                        .build();
-                    thisScheduler.addJob(job, true);
-                } catch (final SchedulerException e) {
-                    throw new OpenEJBRuntimeException("Fail to initialize the default scheduler", e);
-                }
+                thisScheduler = newScheduler(properties, deployment, useTccl,
+                    newInstance ? deployment.getDeploymentID().toString() : properties.getProperty(StdSchedulerFactory.PROP_SCHED_INSTANCE_NAME), -1);
 
                 if (!newInstance) {
                     systemInstance.setComponent(Scheduler.class, thisScheduler);
@@ -213,6 +213,85 @@ public class EjbTimerServiceImpl implements EjbTimerService, Serializable {
         return thisScheduler;
     }
 
+    /**
+     * The deployments are spread by their id over the partitions, each one being a scheduler with
+     * its own threads, so a burst of timeouts of some deployments doesn't delay the others.
+     */
+    private static Scheduler getPartition(final BeanContext deployment, final Properties properties, final int partitions) {
+        final SystemInstance systemInstance = SystemInstance.get();
+        Partitions holder = systemInstance.getComponent(Partitions.class);
+        if (holder == null) {
+            holder = new Partitions(partitions);
+            systemInstance.setComponent(Partitions.class, holder);
+        }
+
+        final int index = (deployment.getDeploymentID().hashCode() & Integer.MAX_VALUE) % holder.schedulers.length;
+        final Scheduler existing = holder.schedulers[index];
+        if (existing != null) {
+            try {
+                if (!existing.isShutdown()) {
+                    return existing;
+                }
+            } catch (final SchedulerException e) {
+                // recreate it
+            }
+        }
+
+        final boolean useTccl = "true".equalsIgnoreCase(properties.getProperty(OPENEJB_QUARTZ_USE_TCCL, "false"));
+        final String name = "OpenEJB-TimerService-Scheduler-" + index;
+        properties.setProperty(StdSchedulerFactory.PROP_SCHED_INSTANCE_NAME, name);
+        defaultQuartzConfiguration(properties, deployment, false, useTccl);
+
+        final int threads = systemInstance.getOptions().get(OPENEJB_TIMER_PARTITION_POOL_SIZE,
+            Integer.parseInt(systemInstance.getProperty(DefaultTimerThreadPoolAdapter.OPENEJB_TIMER_POOL_SIZE, "3")));
+        properties.setProperty(StdSchedulerFactory.PROP_THREAD_POOL_PREFIX + ".threadCount", Integer.toString(threads));
+        properties.setProperty(StdSchedulerFactory.PROP_THREAD_POOL_PREFIX + ".shared", "false");
+
+        final Scheduler partition = newScheduler(properties, deployment, useTccl, name, threads);
+        holder.schedulers[index] = partition;
+        return partition;
+    }
+
+    private static Scheduler newScheduler(final Properties properties, final BeanContext deployment, final boolean useTccl,
+                                          final String statsName, final int threads) {
+        try {
+            final Scheduler thisScheduler;
+
+            // start in container context to avoid thread leaks
+            final ClassLoader oldCl = Thread.currentThread().getContextClassLoader();
+            if (useTccl) {
+                Thread.currentThread().setContextClassLoader(deployment.getClassLoader());
+            } else {
+                Thread.currentThread().setContextClassLoader(EjbTimerServiceImpl.class.getClassLoader());
+            }
+            try {
+                thisScheduler = new StdSchedulerFactory(properties).getScheduler();
+
+                if (!thisScheduler.getContext().containsKey(TimerSchedulerStats.KEY)) { // quartz can give back an existing scheduler
+                    final TimerSchedulerStats stats = new TimerSchedulerStats(statsName, threads);
+                    thisScheduler.getContext().put(TimerSchedulerStats.KEY, stats);
+                    stats.register();
+                }
+
+                thisScheduler.start();
+            } finally {
+                Thread.currentThread().setContextClassLoader(oldCl);
+            }
+
+            //durability is configured with true, which means that the job will be kept in the store even if no trigger is attached to it.
+            //Currently, all the EJB beans share with the same job instance
+            final JobDetail job = JobBuilder.newJob(EjbTimeoutJob.class)
+                .withIdentity(OPENEJB_TIMEOUT_JOB_NAME, OPENEJB_TIMEOUT_JOB_GROUP_NAME)
+                .storeDurably(true)
+                .requestRecovery(false)
+                .build();
+            thisScheduler.addJob(job, true);
+            return thisScheduler;
+        } catch (final SchedulerException e) {
+            throw new OpenEJBRuntimeException("Fail to initialize the default scheduler", e);
+        }
+    }
+
     private static void defaultQuartzConfiguration(final Properties properties, final BeanContext deployment, final boolean newInstance, final boolean tccl) {
         final String defaultThreadPool = DefaultTimerThreadPoolAdapter.class.getName();
         if (!properties.containsKey(StdSchedulerFactory.PROP_THREAD_POOL_CLASS)) {
@@ -284,9 +363,15 @@ public class EjbTimerServiceImpl implements EjbTimerService, Serializable {
             }
         }
 
-        // to ensure we can shutdown correctly, default doesn't support such a configuration
         if (!properties.getProperty(StdSchedulerFactory.PROP_JOB_STORE_CLASS, RAMJobStore.class.getName()).equals(RAMJobStore.class.getName())) {
+            // to ensure we can shutdown correctly, default doesn't support such a configuration
             properties.put("org.apache.openejb.quartz.jobStore.makeThreadsDaemons", properties.getProperty("org.apache.openejb.quartz.jobStore.makeThreadsDaemon", "true"));
+
+            // acquire the triggers to fire in a single store transaction rather than one by one
+            if (!properties.containsKey(StdSchedulerFactory.PROP_SCHED_MAX_BATCH_SIZE)) {
+                properties.put(StdSchedulerFactory.PROP_SCHED_MAX_BATCH_SIZE, properties.getProperty(StdSchedulerFactory.PROP_THREAD_POOL_PREFIX + ".threadCount",
+                    properties.getProperty(DefaultTimerThreadPoolAdapter.OPENEJB_TIMER_POOL_SIZE, SystemInstance.get().getProperty(DefaultTimerThreadPoolAdapter.OPENEJB_TIMER_POOL_SIZE, "3"))));
+            }
         }
     }
 
@@ -359,13 +444,36 @@ public class EjbTimerServiceImpl implements EjbTimerService, Serializable {
         }
 
         // if specific instance
-        if (!defaultScheduler) {
+        if (!defaultScheduler && !isPartition(scheduler)) {
             shutdown(scheduler);
         }
     }
 
+    /**
+     * @return true if this scheduler is one of the partitions shared by the deployments
+     */
+    public static boolean isPartition(final Scheduler scheduler) {
+        final Partitions partitions = SystemInstance.get().getComponent(Partitions.class);
+        if (partitions == null) {
+            return false;
+        }
+        for (final Scheduler partition : partitions.schedulers) {
+            if (partition == scheduler) {
+                return true;
+            }
+        }
+        return false;
+    }
+
     public static void shutdown() {
-        shutdown(SystemInstance.get().getComponent(Scheduler.class));
+        final SystemInstance systemInstance = SystemInstance.get();
+        final Partitions partitions = systemInstance.removeComponent(Partitions.class);
+        if (partitions != null) {
+            for (final Scheduler partition : partitions.schedulers) {
+                shutdown(partition);
+            }
+        }
+        shutdown(systemInstance.getComponent(Scheduler.class));
     }
 
     private static void shutdown(final Scheduler s) throws OpenEJBRuntimeException {
@@ -373,6 +481,11 @@ public class EjbTimerServiceImpl implements EjbTimerService, Serializable {
         try {
             if (null != s && !s.isShutdown() && s.isStarted()) {
 
+                final Object stats = s.getContext().get(TimerSchedulerStats.KEY);
+                if (stats != null) {
+                    TimerSchedulerStats.class.cast(stats).unregister();
+                }
+
                 try {
                     s.pauseAll();
                 } catch (final SchedulerException e) {
@@ -481,6 +594,15 @@ public class EjbTimerServiceImpl implements EjbTimerService, Serializable {
 
         // load saved timers
         final Collection<TimerData> timerDatas = timerStore.loadTimers(this, (String) deployment.getDeploymentID());
+        if (batches != null && timerDatas.size() > 1) {
+            // schedule them together, the triggers already in the store are listed once and not looked up timer by timer
+            for (final TimerData timerData : timerDatas) {
+                timerData.newTrigger();
+            }
+            scheduleAll(timerDatas, true);
+            return;
+        }
+
         // schedule the saved timers
         for (final TimerData timerData : timerDatas) {
             initializeNewTimer(timerData);
@@ -519,6 +641,23 @@ public class EjbTimerServiceImpl implements EjbTimerService, Serializable {
             }
         }
 
+        final AbstractTrigger<?> atrigger = toJobTrigger(timerData, trigger);
+        try {
+            final TriggerKey triggerKey = new TriggerKey(atrigger.getName(), atrigger.getGroup());
+            if (!scheduler.checkExists(triggerKey)) {
+                scheduler.scheduleJob(trigger);
+            } else if (Trigger.TriggerState.PAUSED.equals(scheduler.getTriggerState(triggerKey))) { // redeployment
+                // more consistent in the semantic than a resume but resume would maybe be more relevant here
+                scheduler.unscheduleJob(triggerKey);
+                scheduler.scheduleJob(trigger);
+            }
+        } catch (final Exception e) {
+            //TODO Any other actions we could do ?
+            log.error("Could not schedule timer " + timerData, e);
+        }
+    }
+
+    private AbstractTrigger<?> toJobTrigger(final TimerData timerData, final Trigger trigger) {
         final AbstractTrigger<?> atrigger;
         if (trigger instanceof AbstractTrigger) { // is the case
             atrigger = (AbstractTrigger<?>) trigger;
@@ -531,22 +670,79 @@ public class EjbTimerServiceImpl implements EjbTimerService, Serializable {
         final JobDataMap triggerDataMap = trigger.getJobDataMap();
         triggerDataMap.put(EjbTimeoutJob.EJB_TIMERS_SERVICE, this);
         triggerDataMap.put(EjbTimeoutJob.TIMER_DATA, timerData);
+        return atrigger;
+    }
 
+    /**
+     * Schedules several timers at once: the ones not in the store yet are stored in a single
+     * store transaction, the others go through {@link #schedule(TimerData)}.
+     *
+     * @param timerDatas the timers to schedule
+     * @param listTriggers true to list the triggers of the store once, false to check them one by one
+     */
+    void scheduleAll(final Collection<TimerData> timerDatas, final boolean listTriggers) throws TimerStoreException {
+        start();
+
+        if (scheduler == null) {
+            throw new TimerStoreException("Scheduler is not configured properly");
+        }
+
+        final Set<Trigger> triggers = new LinkedHashSet<>();
+        final List<TimerData> others = new ArrayList<>();
         try {
-            final TriggerKey triggerKey = new TriggerKey(atrigger.getName(), atrigger.getGroup());
-            if (!scheduler.checkExists(triggerKey)) {
-                scheduler.scheduleJob(trigger);
-            } else if (Trigger.TriggerState.PAUSED.equals(scheduler.getTriggerState(triggerKey))) { // redeployment
-                // more consistent in the semantic than a resume but resume would maybe be more relevant here
-                scheduler.unscheduleJob(triggerKey);
-                scheduler.scheduleJob(trigger);
+            final Set<TriggerKey> existing = listTriggers ?
+                scheduler.getTriggerKeys(GroupMatcher.triggerGroupEquals(TimerData.OPEN_EJB_TIMEOUT_TRIGGER_GROUP_NAME)) : null;
+            for (final TimerData timerData : timerDatas) {
+                timerData.setScheduler(scheduler);
+
+                final TriggerKey key = timerData.trigger.getKey();
+                if (existing != null ? existing.contains(key) : scheduler.checkExists(key)) {
+                    others.add(timerData);
+                } else {
+                    triggers.add(toJobTrigger(timerData, timerData.trigger));
+                }
+            }
+
+            if (!triggers.isEmpty()) {
+                final JobDetail job = scheduler.getJobDetail(new JobKey(OPENEJB_TIMEOUT_JOB_NAME, OPENEJB_TIMEOUT_JOB_GROUP_NAME));
+                scheduler.scheduleJobs(Collections.<JobDetail, Set<? extends Trigger>>singletonMap(job, triggers), true);
             }
         } catch (final Exception e) {
-            //TODO Any other actions we could do ?
-            log.error("Could not schedule timer " + timerData, e);
+            log.warning("Could not schedule " + timerDatas.size() + " timers at once, scheduling them one by one", e);
+            others.clear();
+            others.addAll(timerDatas);
+        }
+
+        for (final TimerData timerData : others) {
+            schedule(timerData);
         }
     }
 
+    /**
+     * In write-behind mode the timers changed in a transaction are scheduled together when it completes.
+     *
+     * @return false if the timer has to register its own synchronization
+     */
+    boolean enlist(final Transaction transaction, final TimerData timerData) {
+        if (batches == null) {
+            return false;
+        }
+
+        TimerBatch batch = batches.get(transaction);
+        if (batch == null) {
+            batch = new TimerBatch(transaction);
+            try {
+                transaction.registerSynchronization(batch);
+            } catch (final Exception e) {
+                log.warning("Unable to register timer batch transaction synchronization", e);
+                return false;
+            }
+            batches.put(transaction, batch);
+        }
+        batch.timers.add(timerData);
+        return true;
+    }
+
     /**
      * Call back from TimerData and ejbTimeout when a timer has been cancelled (or is complete) and should be removed from stores.
      *
@@ -815,7 +1011,9 @@ public class EjbTimerServiceImpl implements EjbTimerService, Serializable {
                 } catch (final OpenEJBException e) {
                     retry = true;
                     if (ApplicationException.class.isInstance(e)) { // we don't want to pollute logs
-                        log.debug("Exception from ejbTimeout on " + deployment.getDeploymentID(), e);
+                        if (log.isDebugEnabled()) {
+                            log.debug("Exception from ejbTimeout on " + deployment.getDeploymentID(), e);
+                        }
                     } else {
                         log.warning("Exception from ejbTimeout on " + deployment.getDeploymentID(), e);
                     }
@@ -902,4 +1100,51 @@ public class EjbTimerServiceImpl implements EjbTimerService, Serializable {
             return method.invoke(getDefaultScheduler(ejb), args);
         }
     }
+
+    private final class TimerBatch implements Synchronization {
+        private final Transaction transaction;
+        private final Collection<TimerData> timers = new LinkedHashSet<>();
+
+        private TimerBatch(final Transaction transaction) {
+            this.transaction = transaction;
+        }
+
+        @Override
+        public void beforeCompletion() {
+            // no-op
+        }
+
+        @Override
+        public void afterCompletion(final int status) {
+            batches.remove(transaction);
+
+            final Collection<TimerData> toSchedule = new ArrayList<>(timers.size());
+            for (final TimerData timerData : timers) {
+                if (timerData.transactionCompleted(status == Status.STATUS_COMMITTED)) {
+                    toSchedule.add(timerData);
+                }
+            }
+            if (toSchedule.isEmpty()) {
+                return;
+            }
+
+            try {
+                if (toSchedule.size() == 1) {
+                    schedule(toSchedule.iterator().next());
+                } else {
+                    scheduleAll(toSchedule, false);
+                }
+            } catch (final TimerStoreException e) {
+                throw new EJBException("Failed on afterCompletion", e);
+            }
+        }
+    }
+
+    private static final class Partitions {
+        private final Scheduler[] schedulers;
+
+        private Partitions(final int size) {
+            schedulers = new Scheduler[size];
+        }
+    }
 }
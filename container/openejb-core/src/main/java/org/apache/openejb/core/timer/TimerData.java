@@ -218,11 +218,7 @@ public abstract class TimerData implements Serializable {
     }
 
     public void newTimer() {
-        //Initialize the Quartz Trigger
-        trigger = initializeTrigger();
-        trigger.computeFirstFireTime(null);
-        trigger.setGroup(OPEN_EJB_TIMEOUT_TRIGGER_GROUP_NAME);
-        trigger.setName(OPEN_EJB_TIMEOUT_TRIGGER_NAME_PREFIX + deploymentId + "_" + id);
+        newTrigger();
         newTimer = true;
         try {
             registerTimerDataSynchronization();
@@ -231,6 +227,16 @@ public abstract class TimerData implements Serializable {
         }
     }
 
+    /**
+     * Initialize the Quartz Trigger
+     */
+    void newTrigger() {
+        trigger = initializeTrigger();
+        trigger.computeFirstFireTime(null);
+        trigger.setGroup(OPEN_EJB_TIMEOUT_TRIGGER_GROUP_NAME);
+        trigger.setName(OPEN_EJB_TIMEOUT_TRIGGER_NAME_PREFIX + deploymentId + "_" + id);
+    }
+
     public boolean isCancelled() {
         return cancelled;
     }
@@ -241,7 +247,7 @@ public abstract class TimerData implements Serializable {
         }
 
         timerService.cancelled(TimerData.this);
-        if (trigger != null) {
+        if (trigger != null && !newTimer) { // a new timer is scheduled when its transaction completes, nothing to remove yet
             try {
                 final Scheduler s = timerService.getScheduler();
 
@@ -269,23 +275,31 @@ public abstract class TimerData implements Serializable {
     }
 
     private void transactionComplete(final boolean committed) throws TimerStoreException {
+        if (transactionCompleted(committed)) {
+            timerService.schedule(TimerData.this);
+        }
+    }
+
+    /**
+     * @return true if the timer has to be scheduled now its transaction completed
+     */
+    boolean transactionCompleted(final boolean committed) {
+        synchronizationRegistered = false;
         if (newTimer) {
             // you are only a new timer once no matter what
             newTimer = false;
 
             // if our new timer was not canceled and the transaction committed
-            if (!isCancelled() && committed) {
-                // schedule the timer with the java.util.Timer
-                timerService.schedule(TimerData.this);
-            }
-        } else {
-            // if the tx was rolled back, reschedule the timer with the java.util.Timer
-            if (!committed) {
-                cancelled = false;
-                timerService.addTimerData(TimerData.this);
-                timerService.schedule(TimerData.this);
-            }
+            return !isCancelled() && committed;
         }
+
+        // if the tx was rolled back, reschedule the timer
+        if (!committed) {
+            cancelled = false;
+            timerService.addTimerData(TimerData.this);
+            return true;
+        }
+        return false;
     }
 
     private void registerTimerDataSynchronization() throws TimerStoreException {
@@ -298,7 +312,9 @@ public abstract class TimerData implements Serializable {
             final int status = transaction == null ? Status.STATUS_NO_TRANSACTION : transaction.getStatus();
 
             if (transaction != null && status == Status.STATUS_ACTIVE || status == Status.STATUS_MARKED_ROLLBACK) {
-                transaction.registerSynchronization(new TimerDataSynchronization());
+                if (!timerService.enlist(transaction, TimerData.this)) {
+                    transaction.registerSynchronization(new TimerDataSynchronization());
+                }
                 synchronizationRegistered = true;
                 return;
             }
@@ -322,7 +338,6 @@ public abstract class TimerData implements Serializable {
 
         @Override
         public void afterCompletion(final int status) {
-            synchronizationRegistered = false;
             try {
                 transactionComplete(status == Status.STATUS_COMMITTED);
             } catch (final TimerStoreException e) {
@@ -0,0 +1,151 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.openejb.core.timer;
+
+import org.apache.openejb.api.internal.Internal;
+import org.apache.openejb.api.jmx.Description;
+import org.apache.openejb.api.jmx.MBean;
+import org.apache.openejb.api.jmx.ManagedAttribute;
+import org.apache.openejb.api.jmx.ManagedOperation;
+import org.apache.openejb.monitoring.LocalMBeanServer;
+import org.apache.openejb.monitoring.ObjectNameBuilder;
+
+import javax.management.ObjectName;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * How late the timers of a scheduler, a partition when the timers are partitioned, fire.
+ *
+ * The lag of a timeout is the time between the moment its trigger was scheduled to fire
+ * and the moment the job actually started, it grows when the timers queue behind each other.
+ */
+@MBean
+@Internal
+@Description("Timeouts fired by an EJB timer scheduler")
+public class TimerSchedulerStats {
+    public static final String KEY = TimerSchedulerStats.class.getName();
+
+    private final String name;
+    private final int threads;
+    private final AtomicLong fired = new AtomicLong();
+    private final AtomicInteger running = new AtomicInteger();
+    private final AtomicLong totalLag = new AtomicLong();
+    private final AtomicLong maxLag = new AtomicLong();
+    private final AtomicLong totalTime = new AtomicLong();
+    private volatile long lastLag;
+    private ObjectName objectName;
+
+    public TimerSchedulerStats(final String name, final int threads) {
+        this.name = name;
+        this.threads = threads;
+    }
+
+    public void started(final long lag) {
+        running.incrementAndGet();
+        fired.incrementAndGet();
+
+        final long positiveLag = Math.max(0, lag);
+        lastLag = positiveLag;
+        totalLag.addAndGet(positiveLag);
+        long max = maxLag.get();
+        while (positiveLag > max && !maxLag.compareAndSet(max, positiveLag)) {
+            max = maxLag.get();
+        }
+    }
+
+    public void ended(final long duration) {
+        running.decrementAndGet();
+        totalTime.addAndGet(duration);
+    }
+
+    @ManagedAttribute
+    @Description("Threads of the scheduler, -1 if they are not known")
+    public int getThreads() {
+        return threads;
+    }
+
+    @ManagedAttribute
+    @Description("Timeouts fired")
+    public long getFired() {
+        return fired.get();
+    }
+
+    @ManagedAttribute
+    @Description("Timeouts currently running")
+    public int getRunning() {
+        return running.get();
+    }
+
+    @ManagedAttribute
+    @Description("Milliseconds between the scheduled and the actual fire time of the last timeout")
+    public long getLastLag() {
+        return lastLag;
+    }
+
+    @ManagedAttribute
+    @Description("Average milliseconds between the scheduled and the actual fire time")
+    public long getAverageLag() {
+        final long count = fired.get();
+        return count == 0 ? 0 : totalLag.get() / count;
+    }
+
+    @ManagedAttribute
+    @Description("Maximum milliseconds between the scheduled and the actual fire time")
+    public long getMaxLag() {
+        return maxLag.get();
+    }
+
+    @ManagedAttribute
+    @Description("Average milliseconds spent in the timeouts")
+    public long getAverageTime() {
+        final long count = fired.get() - running.get();
+        return count <= 0 ? 0 : totalTime.get() / count;
+    }
+
+    @ManagedOperation
+    @Description("Reset the statistics")
+    public void reset() {
+        fired.set(0);
+        totalLag.set(0);
+        maxLag.set(0);
+        totalTime.set(0);
+        lastLag = 0;
+    }
+
+    public void register() {
+        if (!LocalMBeanServer.isJMXActive()) {
+            return;
+        }
+
+        final ObjectName on = new ObjectNameBuilder("openejb.management")
+            .set("J2EEServer", "openejb")
+            .set("J2EEApplication", null)
+            .set("j2eeType", "TimerScheduler")
+            .set("name", name)
+            .build();
+        LocalMBeanServer.registerDynamicWrapperSilently(this, on);
+        objectName = on;
+    }
+
+    public void unregister() {
+        if (objectName != null) {
+            LocalMBeanServer.unregisterSilently(objectName);
+            objectName = null;
+        }
+    }
+}
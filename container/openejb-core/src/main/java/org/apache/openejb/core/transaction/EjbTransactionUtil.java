@@ -137,7 +137,7 @@ public final class EjbTransactionUtil {
         }
         if (operation != null) {
             logger.error("EjbTransactionUtil.handleSystemException: " + sysException.getMessage(), sysException);
-        } else {
+        } else if (logger.isDebugEnabled()) {
             logger.debug("EjbTransactionUtil.handleSystemException: " + sysException.getMessage(), sysException);
         }
 
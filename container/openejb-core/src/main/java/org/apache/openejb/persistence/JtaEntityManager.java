@@ -170,7 +170,9 @@ public class JtaEntityManager implements EntityManager, Serializable {
     void closeIfNoTx(final EntityManager entityManager) {
         if (!extended && !isTransactionActive()) {
             entityManager.close();
-            logger.debug("Closed EntityManager(unit=" + unitName + ", hashCode=" + entityManager.hashCode() + ")");
+            if (logger.isDebugEnabled()) {
+                logger.debug("Closed EntityManager(unit=" + unitName + ", hashCode=" + entityManager.hashCode() + ")");
+            }
         }
     }
 
@@ -132,7 +132,9 @@ public class JtaEntityManagerRegistry {
                 entityManager = entityManagerFactory.createEntityManager();
             }
 
-            logger.debug("Created EntityManager(unit=" + unitName + ", hashCode=" + entityManager.hashCode() + ")");
+            if (logger.isDebugEnabled()) {
+                logger.debug("Created EntityManager(unit=" + unitName + ", hashCode=" + entityManager.hashCode() + ")");
+            }
 
             // if we are in a transaction associate the entity manager with the transaction; otherwise it is
             // expected the caller will close this entity manager after use
@@ -360,7 +362,9 @@ public class JtaEntityManagerRegistry {
 
         public void afterCompletion(final int i) {
             entityManager.close();
-            logger.debug("Closed EntityManager(unit=" + unitName + ", hashCode=" + entityManager.hashCode() + ")");
+            if (logger.isDebugEnabled()) {
+                logger.debug("Closed EntityManager(unit=" + unitName + ", hashCode=" + entityManager.hashCode() + ")");
+            }
         }
     }
 }
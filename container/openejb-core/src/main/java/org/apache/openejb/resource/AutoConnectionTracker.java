@@ -22,22 +22,83 @@ import org.apache.geronimo.connector.outbound.ConnectionReturnAction;
 import org.apache.geronimo.connector.outbound.ConnectionTrackingInterceptor;
 import org.apache.geronimo.connector.outbound.ManagedConnectionInfo;
 import org.apache.geronimo.connector.outbound.connectiontracking.ConnectionTracker;
+import org.apache.openejb.api.internal.Internal;
+import org.apache.openejb.api.jmx.Description;
+import org.apache.openejb.api.jmx.MBean;
+import org.apache.openejb.api.jmx.ManagedAttribute;
+import org.apache.openejb.api.jmx.ManagedOperation;
+import org.apache.openejb.monitoring.LocalMBeanServer;
+import org.apache.openejb.monitoring.ObjectNameBuilder;
+import org.apache.openejb.util.LogCategory;
+import org.apache.openejb.util.Logger;
 
+import javax.management.ObjectName;
 import javax.resource.ResourceException;
 import javax.resource.spi.DissociatableManagedConnection;
+import java.io.PrintWriter;
+import java.io.StringWriter;
 import java.lang.ref.PhantomReference;
 import java.lang.ref.ReferenceQueue;
 import java.lang.reflect.InvocationHandler;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
 
+/**
+ * Tracks the connection handles given to the application to release the managed connections
+ * of the handles garbage collected without having been closed.
+ *
+ * By default every handle is proxied and followed by a phantom reference. With a sample rate of N
+ * only one handle out of N is, and the allocation stack of these sampled handles is captured to tell
+ * where a reclaimed connection was obtained. A sample rate of 0 proxies no handle at all.
+ *
+ * With a leak threshold the handles which are not sampled are still followed, by their obtention
+ * time and thread only, and the ones held longer than the threshold are reported as suspected leaks,
+ * through JMX when the tracker is registered.
+ */
+@MBean
+@Internal
+@Description("Connection handles tracking of a connection manager")
 public class AutoConnectionTracker implements ConnectionTracker {
+    private static final Logger LOGGER = Logger.getInstance(LogCategory.OPENEJB_CONNECTOR, AutoConnectionTracker.class);
+
     private final ConcurrentMap<ManagedConnectionInfo, ProxyPhantomReference> references = new ConcurrentHashMap<ManagedConnectionInfo, ProxyPhantomReference>();
+    private final ConcurrentMap<ManagedConnectionInfo, Obtention> held = new ConcurrentHashMap<ManagedConnectionInfo, Obtention>();
     private final ReferenceQueue referenceQueue = new ReferenceQueue();
 
+    private final String name;
+    private final int sampleRate;
+    private final long leakThreshold;
+    private final AtomicLong obtained = new AtomicLong();
+    private final AtomicLong reclaimed = new AtomicLong();
+    private ObjectName objectName;
+
+    public AutoConnectionTracker() {
+        this(null, 1, 0);
+    }
+
+    /**
+     * @param name          the connection manager name, used for the logs and the MBean
+     * @param sampleRate    proxy one handle out of sampleRate, 1 for all of them and 0 for none
+     * @param leakThreshold milliseconds after which a handle not released yet is a suspected leak, 0 to not follow the handles which are not sampled
+     */
+    public AutoConnectionTracker(final String name, final int sampleRate, final long leakThreshold) {
+        if (sampleRate < 0) {
+            throw new IllegalArgumentException("sample rate can't be negative: " + sampleRate);
+        }
+        this.name = name;
+        this.sampleRate = sampleRate;
+        this.leakThreshold = Math.max(0, leakThreshold);
+    }
+
     /**
      * Releases any managed connections held by a garbage collected connection proxy.
      *
@@ -50,6 +111,11 @@ public class AutoConnectionTracker implements ConnectionTracker {
             reference.clear();
             references.remove(reference.managedConnectionInfo);
 
+            reclaimed.incrementAndGet();
+            if (reference.obtention.origin != null) {
+                LOGGER.warning("Connection of " + name + " garbage collected without having been closed, destroying it", reference.obtention.origin);
+            }
+
             final ConnectionInfo released = new ConnectionInfo(reference.managedConnectionInfo);
             reference.interceptor.returnConnection(released, ConnectionReturnAction.DESTROY);
             reference = (ProxyPhantomReference) referenceQueue.poll();
@@ -64,11 +130,22 @@ public class AutoConnectionTracker implements ConnectionTracker {
      * @param reassociate    should always be false
      */
     public void handleObtained(final ConnectionTrackingInterceptor interceptor, final ConnectionInfo connectionInfo, final boolean reassociate) throws ResourceException {
-        if (!reassociate) {
+        if (reassociate) {
+            return;
+        }
+
+        obtained.incrementAndGet();
+        if (isSampled()) {
             proxyConnection(interceptor, connectionInfo);
+        } else if (leakThreshold > 0) {
+            held.put(connectionInfo.getManagedConnectionInfo(), new Obtention(false));
         }
     }
 
+    private boolean isSampled() {
+        return sampleRate == 1 || (sampleRate > 1 && ThreadLocalRandom.current().nextInt(sampleRate) == 0);
+    }
+
     /**
      * Removes the released collection from the garbage collection reference tracker, since this
      * connection is being release via a normal close method.
@@ -81,6 +158,113 @@ public class AutoConnectionTracker implements ConnectionTracker {
         final PhantomReference phantomReference = references.remove(connectionInfo.getManagedConnectionInfo());
         if (phantomReference != null) {
             phantomReference.clear();
+        } else if (leakThreshold > 0) {
+            held.remove(connectionInfo.getManagedConnectionInfo());
+        }
+    }
+
+    @ManagedAttribute
+    @Description("Proxy one connection handle out of this rate, 1 for all of them, 0 for none")
+    public int getSampleRate() {
+        return sampleRate;
+    }
+
+    @ManagedAttribute
+    @Description("Milliseconds after which a connection not released is a suspected leak")
+    public long getLeakThreshold() {
+        return leakThreshold;
+    }
+
+    @ManagedAttribute
+    @Description("Connection handles given to the application")
+    public long getObtainedConnections() {
+        return obtained.get();
+    }
+
+    @ManagedAttribute
+    @Description("Connection handles currently followed, proxied or not")
+    public int getTrackedConnections() {
+        return references.size() + held.size();
+    }
+
+    @ManagedAttribute
+    @Description("Connections destroyed because their handle was garbage collected without being closed")
+    public long getReclaimedConnections() {
+        return reclaimed.get();
+    }
+
+    @ManagedAttribute
+    @Description("Connections held longer than the leak threshold, oldest first: age, thread and origin when sampled")
+    public String[] getSuspectedLeaks() {
+        final List<Obtention> leaks = suspectedLeaks();
+        final long now = System.currentTimeMillis();
+        final String[] descriptions = new String[leaks.size()];
+        for (int i = 0; i < descriptions.length; i++) {
+            final Obtention leak = leaks.get(i);
+            descriptions[i] = (now - leak.time) + "ms in " + leak.thread + (leak.origin == null ? "" : " from " + leak.caller());
+        }
+        return descriptions;
+    }
+
+    @ManagedOperation
+    @Description("Suspected leaks with the whole allocation stack of the sampled ones")
+    public String dumpSuspectedLeaks() {
+        final long now = System.currentTimeMillis();
+        final StringWriter writer = new StringWriter();
+        final PrintWriter out = new PrintWriter(writer);
+        for (final Obtention leak : suspectedLeaks()) {
+            out.println("Connection held for " + (now - leak.time) + "ms, obtained in " + leak.thread);
+            if (leak.origin != null) {
+                for (final StackTraceElement element : leak.origin.getStackTrace()) {
+                    out.println("\tat " + element);
+                }
+            }
+        }
+        out.flush();
+        return writer.toString();
+    }
+
+    private List<Obtention> suspectedLeaks() {
+        final long limit = System.currentTimeMillis() - leakThreshold;
+        final List<Obtention> leaks = new ArrayList<Obtention>();
+        for (final ProxyPhantomReference reference : references.values()) {
+            if (reference.obtention.time <= limit) {
+                leaks.add(reference.obtention);
+            }
+        }
+        for (final Obtention obtention : held.values()) {
+            if (obtention.time <= limit) {
+                leaks.add(obtention);
+            }
+        }
+        Collections.sort(leaks, new Comparator<Obtention>() {
+            @Override
+            public int compare(final Obtention o1, final Obtention o2) {
+                return Long.compare(o1.time, o2.time);
+            }
+        });
+        return leaks;
+    }
+
+    public void register() {
+        if (name == null || !LocalMBeanServer.isJMXActive()) {
+            return;
+        }
+
+        final ObjectName on = new ObjectNameBuilder("openejb.management")
+            .set("J2EEServer", "openejb")
+            .set("J2EEApplication", null)
+            .set("j2eeType", "ConnectionTracker")
+            .set("name", name)
+            .build();
+        LocalMBeanServer.registerDynamicWrapperSilently(this, on);
+        objectName = on;
+    }
+
+    public void unregister() {
+        if (objectName != null) {
+            LocalMBeanServer.unregisterSilently(objectName);
+            objectName = null;
         }
     }
 
@@ -100,7 +284,8 @@ public class AutoConnectionTracker implements ConnectionTracker {
             final ConnectionInvocationHandler invocationHandler = new ConnectionInvocationHandler(handle);
             final Object proxy = Proxy.newProxyInstance(handle.getClass().getClassLoader(), handle.getClass().getInterfaces(), invocationHandler);
             connectionInfo.setConnectionProxy(proxy);
-            final ProxyPhantomReference reference = new ProxyPhantomReference(interceptor, connectionInfo.getManagedConnectionInfo(), invocationHandler, referenceQueue);
+            final ProxyPhantomReference reference = new ProxyPhantomReference(interceptor, connectionInfo.getManagedConnectionInfo(), invocationHandler, referenceQueue,
+                new Obtention(sampleRate != 1)); // all handles are proxied by default, no need of their stack
             references.put(connectionInfo.getManagedConnectionInfo(), reference);
         } catch (final Throwable e) {
             throw new ResourceException("Unable to construct connection proxy", e);
@@ -142,15 +327,51 @@ public class AutoConnectionTracker implements ConnectionTracker {
     private static class ProxyPhantomReference extends PhantomReference<ConnectionInvocationHandler> {
         private final ConnectionTrackingInterceptor interceptor;
         private final ManagedConnectionInfo managedConnectionInfo;
+        private final Obtention obtention;
 
         @SuppressWarnings({"unchecked"})
         public ProxyPhantomReference(final ConnectionTrackingInterceptor interceptor,
                                      final ManagedConnectionInfo managedConnectionInfo,
                                      final ConnectionInvocationHandler handler,
-                                     final ReferenceQueue referenceQueue) {
+                                     final ReferenceQueue referenceQueue,
+                                     final Obtention obtention) {
             super(handler, referenceQueue);
             this.interceptor = interceptor;
             this.managedConnectionInfo = managedConnectionInfo;
+            this.obtention = obtention;
+        }
+    }
+
+    /**
+     * When, where and, for the sampled handles, from which code a connection was obtained.
+     */
+    private static final class Obtention {
+        private final long time = System.currentTimeMillis();
+        private final String thread = Thread.currentThread().getName();
+        private final Throwable origin;
+
+        private Obtention(final boolean captureStack) {
+            this.origin = captureStack ? new Throwable("Connection obtained here") : null;
+        }
+
+        /**
+         * @return the first frame out of the connector and of the connection wrappers
+         */
+        private String caller() {
+            for (final StackTraceElement element : origin.getStackTrace()) {
+                final String className = element.getClassName();
+                if (!className.equals(AutoConnectionTracker.class.getName())
+                    && !className.startsWith(AutoConnectionTracker.class.getName() + "$")
+                    && !className.startsWith("org.apache.geronimo.connector.")
+                    && !className.startsWith("org.tranql.")
+                    && !className.startsWith("org.apache.activemq.ra.")
+                    && !className.startsWith("com.sun.proxy.")
+                    && !className.startsWith("java.lang.reflect.")
+                    && !className.startsWith("sun.reflect.")) {
+                    return element.toString();
+                }
+            }
+            return "unknown";
         }
     }
 }
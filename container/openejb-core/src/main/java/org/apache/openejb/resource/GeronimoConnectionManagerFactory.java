@@ -83,6 +83,10 @@ public class GeronimoConnectionManagerFactory {
     private int validationInterval = -1;
     private ManagedConnectionFactory mcf;
 
+    // leak tracking properties
+    private int connectionTrackingSampleRate = 1;
+    private long connectionLeakThreshold; // ms
+
     public ManagedConnectionFactory getMcf() {
         return mcf;
     }
@@ -211,6 +215,25 @@ public class GeronimoConnectionManagerFactory {
         setValidationInterval((int) minutes);
     }
 
+    public int getConnectionTrackingSampleRate() {
+        return connectionTrackingSampleRate;
+    }
+
+    public void setConnectionTrackingSampleRate(final int connectionTrackingSampleRate) {
+        this.connectionTrackingSampleRate = connectionTrackingSampleRate;
+    }
+
+    public long getConnectionLeakThreshold() {
+        return connectionLeakThreshold;
+    }
+
+    public void setConnectionLeakThreshold(final Duration connectionLeakThreshold) {
+        if (connectionLeakThreshold.getUnit() == null) {
+            connectionLeakThreshold.setUnit(TimeUnit.SECONDS);
+        }
+        this.connectionLeakThreshold = TimeUnit.MILLISECONDS.convert(connectionLeakThreshold.getTime(), connectionLeakThreshold.getUnit());
+    }
+
     public GenericConnectionManager create() {
         final PoolingSupport poolingSupport = createPoolingSupport();
 
@@ -237,14 +260,19 @@ public class GeronimoConnectionManagerFactory {
             tm = new SimpleRecoverableTransactionManager(transactionManager);
         }
 
+        final AutoConnectionTracker tracker = new AutoConnectionTracker(name, connectionTrackingSampleRate, connectionLeakThreshold);
+        if (connectionTrackingSampleRate != 1 || connectionLeakThreshold > 0) {
+            tracker.register();
+        }
+
         if (validationInterval >= 0 && mcf instanceof ValidatingManagedConnectionFactory) {
             return new ValidatingGenericConnectionManager(txSupport, poolingSupport,
-                null, new AutoConnectionTracker(), tm,
+                null, tracker, tm,
                 mcf, name, classLoader, validationInterval);
         }
 
-        return new GenericConnectionManager(txSupport, poolingSupport,
-            null, new AutoConnectionTracker(), tm,
+        return new TrackingGenericConnectionManager(txSupport, poolingSupport,
+            null, tracker, tm,
             mcf, name, classLoader);
     }
 
@@ -373,7 +401,22 @@ public class GeronimoConnectionManagerFactory {
         }
     }
 
-    private static class ValidatingGenericConnectionManager extends GenericConnectionManager {
+    private static class TrackingGenericConnectionManager extends GenericConnectionManager {
+        private final AutoConnectionTracker tracker;
+
+        public TrackingGenericConnectionManager(final TransactionSupport txSupport, final PoolingSupport poolingSupport, final SubjectSource o, final AutoConnectionTracker autoConnectionTracker, final RecoverableTransactionManager tm, final ManagedConnectionFactory mcf, final String name, final ClassLoader classLoader) {
+            super(txSupport, poolingSupport, o, autoConnectionTracker, tm, mcf, name, classLoader);
+            tracker = autoConnectionTracker;
+        }
+
+        @Override
+        public void doStop() throws Exception {
+            tracker.unregister();
+            super.doStop();
+        }
+    }
+
+    private static class ValidatingGenericConnectionManager extends TrackingGenericConnectionManager {
         private static final Timer TIMER = new Timer("ValidatingGenericConnectionManagerTimer", true);
 
         private final TimerTask validatingTask;
@@ -40,7 +40,6 @@ import org.apache.xbean.recipe.Option;
 import javax.sql.CommonDataSource;
 import javax.sql.DataSource;
 import javax.sql.XADataSource;
-import java.io.Flushable;
 import java.io.IOException;
 import java.io.Serializable;
 import java.lang.reflect.InvocationHandler;
@@ -93,11 +92,11 @@ public class DataSourceFactory {
 
         final boolean flushable = SystemInstance.get().getOptions().get(GLOBAL_FLUSH_PROPERTY,
             "true".equalsIgnoreCase((String) properties.remove(FLUSHABLE_PROPERTY)));
-        final FlushableDataSourceHandler.FlushConfig flushConfig;
+        final FlushableCommonDataSource.FlushConfig flushConfig;
         if (flushable) {
             properties.remove("flushable"); // don't let it wrap the delegate again
 
-            flushConfig = new FlushableDataSourceHandler.FlushConfig(
+            flushConfig = new FlushableCommonDataSource.FlushConfig(
                 name, configuredManaged,
                 impl, PropertiesHelper.propertiesToString(properties),
                 maxWaitTime, timeBetweenEvictionRuns, minEvictableIdleTime);
@@ -249,11 +248,11 @@ public class DataSourceFactory {
         return true;
     }
 
-    private static CommonDataSource makeFlushable(final CommonDataSource ds, final FlushableDataSourceHandler.FlushConfig flushConfig) {
-        return (CommonDataSource) Proxy.newProxyInstance(
-            Thread.currentThread().getContextClassLoader(),
-            new Class<?>[]{DataSource.class.isInstance(ds) ? DataSource.class : XADataSource.class, Flushable.class, Serializable.class},
-            new FlushableDataSourceHandler(ds, flushConfig));
+    private static CommonDataSource makeFlushable(final CommonDataSource ds, final FlushableCommonDataSource.FlushConfig flushConfig) {
+        if (DataSource.class.isInstance(ds)) {
+            return new FlushableDataSource(DataSource.class.cast(ds), flushConfig);
+        }
+        return new FlushableXADataSource(XADataSource.class.cast(ds), flushConfig);
     }
 
     public static void setCreatedWith(final DataSourceCreator creator, final CommonDataSource ds) {
@@ -398,18 +397,19 @@ public class DataSourceFactory {
     }
 
     // remove proxy added by us in front of the datasource returned by the creator
-    private static Object realInstance(final Object o) {
-        if (o == null || !(o instanceof DataSource)) {
+    static Object realInstance(final Object o) {
+        if (o == null || !(o instanceof CommonDataSource)) {
             return o;
         }
 
         Object ds = o;
-        while (Proxy.isProxyClass(ds.getClass())) {
-            final InvocationHandler handler = Proxy.getInvocationHandler(o);
+        if (FlushableCommonDataSource.class.isInstance(ds)) {
+            ds = FlushableCommonDataSource.class.cast(ds).getDelegate();
+        }
+        while (ds != null && Proxy.isProxyClass(ds.getClass())) {
+            final InvocationHandler handler = Proxy.getInvocationHandler(ds);
             if (LoggingSqlDataSource.class.isInstance(handler)) {
                 ds = LoggingSqlDataSource.class.cast(handler).getDelegate();
-            } else if (FlushableDataSourceHandler.class.isInstance(handler)) {
-                ds = FlushableDataSourceHandler.class.cast(handler).getDelegate();
             } else {
                 break;
             }
@@ -0,0 +1,293 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.openejb.resource.jdbc;
+
+import org.apache.openejb.loader.SystemInstance;
+import org.apache.openejb.resource.jdbc.managed.local.ManagedDataSource;
+import org.apache.openejb.util.DaemonThreadFactory;
+import org.apache.openejb.util.Duration;
+import org.apache.openejb.util.LogCategory;
+import org.apache.openejb.util.Logger;
+import org.apache.openejb.util.reflection.Reflections;
+
+import javax.sql.CommonDataSource;
+import java.io.Flushable;
+import java.io.ObjectStreamException;
+import java.io.PrintWriter;
+import java.io.Serializable;
+import java.lang.reflect.Method;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A datasource whose pool can be recreated with {@link #flush()}.
+ *
+ * The current pool is published through a volatile field, getting a connection is a plain
+ * delegation without any lock. A flush publishes a new pool and retires the previous one: the
+ * callers which already read it keep using it, and so do the connections it handed out.
+ * A retired pool is destroyed once it has no more active connections, or after
+ * openejb.jdbc.flushable.drain-timeout (30 seconds by default). Pools which can't tell
+ * their active connections are destroyed right away as before.
+ */
+public abstract class FlushableCommonDataSource implements CommonDataSource, Flushable, Serializable {
+    private static final Logger LOGGER = Logger.getInstance(LogCategory.OPENEJB, FlushableCommonDataSource.class);
+
+    public static final String DRAIN_TIMEOUT_PROPERTY = "openejb.jdbc.flushable.drain-timeout";
+
+    private static final long DRAIN_CHECK_PERIOD = 500;
+
+    private final FlushConfig config;
+    private final List<Retired> retired = new ArrayList<>(); // guarded by itself
+    private volatile CommonDataSource delegate;
+    private volatile long epoch;
+    private ScheduledExecutorService drainer; // guarded by retired
+
+    protected FlushableCommonDataSource(final CommonDataSource delegate, final FlushConfig config) {
+        this.delegate = delegate;
+        this.config = config;
+    }
+
+    public CommonDataSource getDelegate() {
+        return delegate;
+    }
+
+    /**
+     * @return the number of pools this datasource created, 0 until the first flush
+     */
+    public long getEpoch() {
+        return epoch;
+    }
+
+    /**
+     * @return the retired pools not destroyed yet
+     */
+    public int getRetiredPools() {
+        synchronized (retired) {
+            return retired.size();
+        }
+    }
+
+    /**
+     * @return the connections still in use from the retired pools
+     */
+    public int getRetiredActiveConnections() {
+        int active = 0;
+        synchronized (retired) {
+            for (final Retired pool : retired) {
+                active += Math.max(0, pool.active());
+            }
+        }
+        return active;
+    }
+
+    @Override
+    public synchronized void flush() {
+        final CommonDataSource old = delegate;
+        final CommonDataSource ds;
+        try {
+            ds = DataSourceFactory.create(config.name, config.configuredManaged, config.impl, config.definition, config.maxWaitTime, config.timeBetweenEvictionRuns, config.minEvictableIdleTime);
+        } catch (final Exception e) {
+            LOGGER.error("Can't recreate the datasource, keeping old one", e);
+            return;
+        }
+
+        delegate = ds;
+        epoch++;
+
+        if (Flushable.class.isInstance(ds)) {
+            try {
+                Flushable.class.cast(ds).flush();
+            } catch (final Exception e) {
+                LOGGER.warning("Can't flush " + ds, e);
+            }
+        }
+
+        if (DataSourceFactory.knows(old)) {
+            retire(old);
+        }
+    }
+
+    private void retire(final CommonDataSource old) {
+        final Retired pool = new Retired(old);
+        final int active = pool.active();
+        if (active <= 0) { // nothing in flight or can't know
+            pool.destroy();
+            return;
+        }
+
+        LOGGER.info("Datasource " + config.name + " flushed, " + active + " connection(s) of the previous pool still in use");
+        synchronized (retired) {
+            retired.add(pool);
+            if (drainer == null) {
+                drainer = Executors.newSingleThreadScheduledExecutor(new DaemonThreadFactory("openejb-flushable-datasource", config.name));
+                drainer.scheduleWithFixedDelay(new Runnable() {
+                    @Override
+                    public void run() {
+                        drain();
+                    }
+                }, DRAIN_CHECK_PERIOD, DRAIN_CHECK_PERIOD, TimeUnit.MILLISECONDS);
+            }
+        }
+    }
+
+    private void drain() {
+        final List<Retired> drained = new ArrayList<>();
+        synchronized (retired) {
+            final long now = System.currentTimeMillis();
+            final Iterator<Retired> it = retired.iterator();
+            while (it.hasNext()) {
+                final Retired pool = it.next();
+                if (pool.active() <= 0 || now >= pool.deadline) {
+                    drained.add(pool);
+                    it.remove();
+                }
+            }
+            if (retired.isEmpty() && drainer != null) {
+                drainer.shutdown();
+                drainer = null;
+            }
+        }
+
+        for (final Retired pool : drained) {
+            final int active = pool.active();
+            if (active > 0) {
+                LOGGER.warning("Destroying the previous pool of datasource " + config.name + " with " + active + " connection(s) still in use");
+            }
+            pool.destroy();
+        }
+    }
+
+    @Override
+    public PrintWriter getLogWriter() throws SQLException {
+        return delegate.getLogWriter();
+    }
+
+    @Override
+    public void setLogWriter(final PrintWriter out) throws SQLException {
+        delegate.setLogWriter(out);
+    }
+
+    @Override
+    public void setLoginTimeout(final int seconds) throws SQLException {
+        delegate.setLoginTimeout(seconds);
+    }
+
+    @Override
+    public int getLoginTimeout() throws SQLException {
+        return delegate.getLoginTimeout();
+    }
+
+    // @Override JDK7
+    public java.util.logging.Logger getParentLogger() throws SQLFeatureNotSupportedException {
+        return (java.util.logging.Logger) Reflections.invokeByReflection(delegate, "getParentLogger", new Class<?>[0], null);
+    }
+
+    Object writeReplace() throws ObjectStreamException {
+        final CommonDataSource ds = delegate;
+        if (Serializable.class.isInstance(ds)) {
+            return ds;
+        }
+        throw new ObjectStreamException(ds + " not serializable") {};
+    }
+
+    /**
+     * A pool waiting for its connections to be released before being destroyed.
+     */
+    private static final class Retired {
+        private final CommonDataSource dataSource;
+        private final Object pool;
+        private final Method numActive;
+        private final long deadline;
+
+        private Retired(final CommonDataSource dataSource) {
+            this.dataSource = dataSource;
+
+            Object pool = DataSourceFactory.realInstance(dataSource);
+            if (ManagedDataSource.class.isInstance(pool)) {
+                pool = ManagedDataSource.class.cast(pool).getDelegate();
+            }
+            this.pool = pool;
+
+            // dbcp and tomcat-jdbc pools, resolved once per flush and not on the connection path
+            Method method = null;
+            try {
+                method = pool.getClass().getMethod("getNumActive");
+                if (method.getReturnType() != int.class) {
+                    method = null;
+                }
+            } catch (final Exception e) {
+                // can't know
+            }
+            this.numActive = method;
+
+            final Duration timeout = SystemInstance.get().getOptions().get(DRAIN_TIMEOUT_PROPERTY, new Duration(30, TimeUnit.SECONDS));
+            this.deadline = System.currentTimeMillis() + (timeout.getUnit() == null ? timeout.getTime() : timeout.getTime(TimeUnit.MILLISECONDS));
+        }
+
+        /**
+         * @return the active connections, -1 if the pool can't tell
+         */
+        private int active() {
+            if (numActive == null) {
+                return -1;
+            }
+            try {
+                return (Integer) numActive.invoke(pool);
+            } catch (final Exception e) {
+                return -1;
+            }
+        }
+
+        private void destroy() {
+            try {
+                DataSourceFactory.destroy(dataSource);
+            } catch (final Throwable t) {
+                //Ignore
+            }
+
+            if (ManagedDataSource.class.isInstance(dataSource)) {
+                ManagedDataSource.class.cast(dataSource).clean();
+            }
+        }
+    }
+
+    public static class FlushConfig {
+        public final String name;
+        public final boolean configuredManaged;
+        public final Class impl;
+        public final String definition;
+        public final Duration maxWaitTime;
+        public final Duration timeBetweenEvictionRuns;
+        public final Duration minEvictableIdleTime;
+
+        public FlushConfig(final String name, final boolean configuredManaged, final Class impl, final String definition, final Duration maxWaitTime, final Duration timeBetweenEvictionRuns, final Duration minEvictableIdleTime) {
+            this.name = name;
+            this.impl = impl;
+            this.configuredManaged = configuredManaged;
+            this.definition = definition;
+            this.maxWaitTime = maxWaitTime;
+            this.timeBetweenEvictionRuns = timeBetweenEvictionRuns;
+            this.minEvictableIdleTime = minEvictableIdleTime;
+        }
+    }
+}
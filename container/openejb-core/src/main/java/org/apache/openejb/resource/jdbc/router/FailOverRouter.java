@@ -18,7 +18,7 @@
 package org.apache.openejb.resource.jdbc.router;
 
 import org.apache.openejb.OpenEJB;
-import org.apache.openejb.loader.SystemInstance;
+import org.apache.openejb.loader.ComponentHandle;
 import org.apache.openejb.util.LogCategory;
 import org.apache.openejb.util.Logger;
 
@@ -123,7 +123,7 @@ public class FailOverRouter extends AbstractRouter {
     }
 
     private static class FacadeHandler implements InvocationHandler {
-        private static final TransactionSynchronizationRegistry SYNCHRONIZATION_REGISTRY = SystemInstance.get().getComponent(TransactionSynchronizationRegistry.class);
+        private static final ComponentHandle<TransactionSynchronizationRegistry> SYNCHRONIZATION_REGISTRY = ComponentHandle.of(TransactionSynchronizationRegistry.class);
         private static final String DATASOURCE_KEY = "router_datasource_in_use";
 
         private final Collection<DataSource> delegates;
@@ -154,7 +154,7 @@ public class FailOverRouter extends AbstractRouter {
 
             if (transaction != null) {
 
-                final DataSource currentDs = DataSource.class.cast(SYNCHRONIZATION_REGISTRY.getResource(DATASOURCE_KEY));
+                final DataSource currentDs = DataSource.class.cast(SYNCHRONIZATION_REGISTRY.get().getResource(DATASOURCE_KEY));
                 if (currentDs != null) {
                     return method.invoke(currentDs, args);
                 }
@@ -175,7 +175,7 @@ public class FailOverRouter extends AbstractRouter {
                     }
 
                     if (transaction != null) { // if a tx is in progress save the datasource to use for the tx
-                        SYNCHRONIZATION_REGISTRY.putResource(DATASOURCE_KEY, ds);
+                        SYNCHRONIZATION_REGISTRY.get().putResource(DATASOURCE_KEY, ds);
                         break;
                     }
 
@@ -45,7 +45,8 @@ public abstract class CUTask<T> extends ManagedTaskListenerTask {
         final ThreadContext threadContext = ThreadContext.getThreadContext();
         initialContext = new Context(
             associate, stateTmp, threadContext == null ? null : threadContext.get(AbstractSecurityService.SecurityContext.class),
-            threadContext, Thread.currentThread().getContextClassLoader());
+            threadContext == null ? null : new ThreadContext(threadContext), // the current one can be recycled before the task runs
+            Thread.currentThread().getContextClassLoader());
     }
 
     protected T invoke(final Callable<T> call) throws Exception {
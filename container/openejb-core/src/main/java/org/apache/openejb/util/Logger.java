@@ -24,6 +24,7 @@ import java.io.File;
 import java.io.IOException;
 import java.text.MessageFormat;
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.MissingResourceException;
@@ -33,6 +34,7 @@ import java.util.ResourceBundle;
 public class Logger {
     private static final String SUFFIX = ".Messages";
     private static final String OPENEJB = "org.apache.openejb";
+    private static final int MAX_MESSAGE_FORMATS = 128;
     private static LogStreamFactory logStreamFactory;
 
     // don't return the instance since it needs to stay private but export which one is used to allow integration with other libs (as tomcat ;))
@@ -231,23 +233,26 @@ public class Logger {
     /**
      * Builds a Logger object and returns it
      */
-    private static final Computable<Object[], Logger> loggerResolver = new Computable<Object[], Logger>() {
+    private static final Computable<LoggerKey, Logger> loggerResolver = new Computable<LoggerKey, Logger>() {
         @Override
-        public Logger compute(final Object[] args) throws InterruptedException {
-            final LogCategory category = (LogCategory) args[0];
-            final LogStream logStream = logStreamFactory.createLogStream(category);
-            final String baseName = (String) args[1];
-            return new Logger(category, logStream, baseName);
+        public Logger compute(final LoggerKey key) throws InterruptedException {
+            final LogStream logStream = logStreamFactory.createLogStream(key.category);
+            return new Logger(key.category, logStream, key.baseName);
         }
     };
 
     /**
-     * Creates a MessageFormat object for a message and returns it
+     * MessageFormat is not thread safe so each thread keeps the formats of its last messages
      */
-    private static final Computable<String, MessageFormat> messageFormatResolver = new Computable<String, MessageFormat>() {
+    private static final ThreadLocal<Map<String, MessageFormat>> messageFormats = new ThreadLocal<Map<String, MessageFormat>>() {
         @Override
-        public MessageFormat compute(final String message) throws InterruptedException {
-            return new MessageFormat(message);
+        protected Map<String, MessageFormat> initialValue() {
+            return new LinkedHashMap<String, MessageFormat>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(final Map.Entry<String, MessageFormat> eldest) {
+                    return size() > MAX_MESSAGE_FORMATS;
+                }
+            };
         }
     };
 
@@ -264,12 +269,7 @@ public class Logger {
     /**
      * Cache of Loggers
      */
-    private static final Computable<Object[], Logger> loggerCache = new Memoizer<Object[], Logger>(loggerResolver);
-
-    /**
-     * Cache of MessageFormats
-     */
-    private static final Computable<String, MessageFormat> messageFormatCache = new Memoizer<String, MessageFormat>(messageFormatResolver);
+    private static final Computable<LoggerKey, Logger> loggerCache = new Memoizer<LoggerKey, Logger>(loggerResolver);
 
     /**
      * Finds a Logger from the cache and returns it. If not found in cache then builds a Logger and returns it.
@@ -282,7 +282,7 @@ public class Logger {
         configure();
 
         try {
-            return loggerCache.compute(new Object[]{category, baseName});
+            return loggerCache.compute(new LoggerKey(category, baseName));
         } catch (final InterruptedException e) {
             // Don't return null here. Just create a new Logger and set it up.
             // It will not be stored in the cache, but a later lookup for the
@@ -377,7 +377,7 @@ public class Logger {
     }
 
     /**
-     * Formats a given message
+     * Formats a given message, the Deferred arguments are computed first
      *
      * @param message String
      * @param args    Object...
@@ -389,14 +389,32 @@ public class Logger {
         }
 
         try {
-            final MessageFormat mf = messageFormatCache.compute(message);
-            return mf.format(args);
+            final Map<String, MessageFormat> formats = messageFormats.get();
+            MessageFormat mf = formats.get(message);
+            if (mf == null) {
+                mf = new MessageFormat(message);
+                formats.put(message, mf);
+            }
+            return mf.format(resolve(args));
         } catch (final Exception e) {
             return "Error in formatting message " + message;
         }
 
     }
 
+    private static Object[] resolve(final Object[] args) {
+        Object[] resolved = args;
+        for (int i = 0; i < args.length; i++) {
+            if (args[i] instanceof Deferred) {
+                if (resolved == args) {
+                    resolved = args.clone();
+                }
+                resolved[i] = ((Deferred) args[i]).get();
+            }
+        }
+        return resolved;
+    }
+
     public boolean isDebugEnabled() {
         return logStream.isDebugEnabled();
     }
@@ -474,6 +492,30 @@ public class Logger {
         return message;
     }
 
+    /**
+     * Same as debug(String, Object...) without the array allocation when the level is disabled
+     */
+    public String debug(final String message, final Object arg) {
+        if (isDebugEnabled()) {
+            final String msg = formatMessage(getMessage(message, baseName), arg);
+            logStream.debug(msg);
+            return msg;
+        }
+        return message;
+    }
+
+    public String debug(final String message, final Object arg0, final Object arg1) {
+        if (isDebugEnabled()) {
+            if (arg0 instanceof Throwable) { // debug(message, t, arg)
+                return debug(message, (Throwable) arg0, new Object[]{arg1});
+            }
+            final String msg = formatMessage(getMessage(message, baseName), arg0, arg1);
+            logStream.debug(msg);
+            return msg;
+        }
+        return message;
+    }
+
     public String debug(final String message, final Throwable t) {
 
         if (isDebugEnabled()) {
@@ -516,6 +558,30 @@ public class Logger {
         return message;
     }
 
+    /**
+     * Same as error(String, Object...) without the array allocation when the level is disabled
+     */
+    public String error(final String message, final Object arg) {
+        if (isErrorEnabled()) {
+            final String msg = formatMessage(getMessage(message, baseName), arg);
+            logStream.error(msg);
+            return msg;
+        }
+        return message;
+    }
+
+    public String error(final String message, final Object arg0, final Object arg1) {
+        if (isErrorEnabled()) {
+            if (arg0 instanceof Throwable) { // error(message, t, arg)
+                return error(message, (Throwable) arg0, new Object[]{arg1});
+            }
+            final String msg = formatMessage(getMessage(message, baseName), arg0, arg1);
+            logStream.error(msg);
+            return msg;
+        }
+        return message;
+    }
+
     public String error(final String message, final Throwable t) {
 
         if (isErrorEnabled()) {
@@ -556,6 +622,30 @@ public class Logger {
         return message;
     }
 
+    /**
+     * Same as fatal(String, Object...) without the array allocation when the level is disabled
+     */
+    public String fatal(final String message, final Object arg) {
+        if (isFatalEnabled()) {
+            final String msg = formatMessage(getMessage(message, baseName), arg);
+            logStream.fatal(msg);
+            return msg;
+        }
+        return message;
+    }
+
+    public String fatal(final String message, final Object arg0, final Object arg1) {
+        if (isFatalEnabled()) {
+            if (arg0 instanceof Throwable) { // fatal(message, t, arg)
+                return fatal(message, (Throwable) arg0, new Object[]{arg1});
+            }
+            final String msg = formatMessage(getMessage(message, baseName), arg0, arg1);
+            logStream.fatal(msg);
+            return msg;
+        }
+        return message;
+    }
+
     public String fatal(final String message, final Throwable t) {
         if (isFatalEnabled()) {
             final String msg = getMessage(message, baseName);
@@ -594,6 +684,30 @@ public class Logger {
         return message;
     }
 
+    /**
+     * Same as info(String, Object...) without the array allocation when the level is disabled
+     */
+    public String info(final String message, final Object arg) {
+        if (isInfoEnabled()) {
+            final String msg = formatMessage(getMessage(message, baseName), arg);
+            logStream.info(msg);
+            return msg;
+        }
+        return message;
+    }
+
+    public String info(final String message, final Object arg0, final Object arg1) {
+        if (isInfoEnabled()) {
+            if (arg0 instanceof Throwable) { // info(message, t, arg)
+                return info(message, (Throwable) arg0, new Object[]{arg1});
+            }
+            final String msg = formatMessage(getMessage(message, baseName), arg0, arg1);
+            logStream.info(msg);
+            return msg;
+        }
+        return message;
+    }
+
     public String info(final String message, final Throwable t) {
         if (isInfoEnabled()) {
             final String msg = getMessage(message, baseName);
@@ -632,6 +746,30 @@ public class Logger {
         return message;
     }
 
+    /**
+     * Same as warning(String, Object...) without the array allocation when the level is disabled
+     */
+    public String warning(final String message, final Object arg) {
+        if (isWarningEnabled()) {
+            final String msg = formatMessage(getMessage(message, baseName), arg);
+            logStream.warn(msg);
+            return msg;
+        }
+        return message;
+    }
+
+    public String warning(final String message, final Object arg0, final Object arg1) {
+        if (isWarningEnabled()) {
+            if (arg0 instanceof Throwable) { // warning(message, t, arg)
+                return warning(message, (Throwable) arg0, new Object[]{arg1});
+            }
+            final String msg = formatMessage(getMessage(message, baseName), arg0, arg1);
+            logStream.warn(msg);
+            return msg;
+        }
+        return message;
+    }
+
     public String warning(final String message, final Throwable t) {
         if (isWarningEnabled()) {
             final String msg = getMessage(message, baseName);
@@ -668,28 +806,14 @@ public class Logger {
         }
 
         try {
-
             final ResourceBundle bundle = bundleCache.compute(baseName);
-            if (bundle != null) {
-                try {
-                    return bundle.getString(key);
-                } catch (final MissingResourceException e) {
-                    final String parentName = heirarchyCache.compute(baseName);
-                    if (parentName == null) {
-                        return key;
-                    } else {
-                        return getMessage(key, parentName);
-                    }
-                }
-
-            } else {
-                final String parentName = heirarchyCache.compute(baseName);
-                if (parentName == null) {
-                    return key;
-                } else {
-                    return getMessage(key, parentName);
-                }
+            if (bundle != null && bundle.containsKey(key)) { // most messages are not keys, don't pay a MissingResourceException for them
+                return bundle.getString(key);
+            }
 
+            final String parentName = heirarchyCache.compute(baseName);
+            if (parentName != null) {
+                return getMessage(key, parentName);
             }
         } catch (final InterruptedException e) {
             // ignore
@@ -697,4 +821,40 @@ public class Logger {
         return key;
     }
 
+    /**
+     * A log argument computed only if the message is logged, useful when computing it is expensive.
+     * A static instance doesn't allocate anything when the level is disabled.
+     */
+    public interface Deferred {
+        Object get();
+    }
+
+    private static final class LoggerKey {
+        private final LogCategory category;
+        private final String baseName;
+
+        private LoggerKey(final LogCategory category, final String baseName) {
+            this.category = category;
+            this.baseName = baseName;
+        }
+
+        @Override
+        public boolean equals(final Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (o == null || getClass() != o.getClass()) {
+                return false;
+            }
+
+            final LoggerKey other = (LoggerKey) o;
+            return category.getName().equals(other.category.getName())
+                && (baseName == null ? other.baseName == null : baseName.equals(other.baseName));
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * category.getName().hashCode() + (baseName != null ? baseName.hashCode() : 0);
+        }
+    }
 }
@@ -0,0 +1,99 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.openejb.assembler.classic;
+
+import org.apache.openejb.AppContext;
+import org.apache.openejb.jee.EjbJar;
+import org.apache.openejb.jee.StatelessBean;
+import org.apache.openejb.junit.ApplicationComposer;
+import org.apache.openejb.loader.SystemInstance;
+import org.apache.openejb.spi.ContainerSystem;
+import org.apache.openejb.testing.Configuration;
+import org.apache.openejb.testing.Module;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import javax.validation.constraints.NotNull;
+import javax.validation.constraints.Size;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Properties;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(ApplicationComposer.class)
+public class ConstraintMetadataPrecomputerTest {
+    @Configuration
+    public Properties config() {
+        final Properties p = new Properties();
+        p.setProperty(ConstraintMetadataPrecomputer.PRECOMPUTE_KEY, "true");
+        return p;
+    }
+
+    @Module
+    public EjbJar app() {
+        return new EjbJar("precompute").enterpriseBean(new StatelessBean(Validated.class));
+    }
+
+    @Test
+    public void precomputedAfterDeployment() throws Exception {
+        ConstraintMetadataPrecomputer precomputer = null;
+        for (final AppContext appContext : SystemInstance.get().getComponent(ContainerSystem.class).getAppContexts()) {
+            if (appContext.get(ConstraintMetadataPrecomputer.class) != null) {
+                precomputer = appContext.get(ConstraintMetadataPrecomputer.class);
+            }
+        }
+        assertNotNull(precomputer);
+
+        for (int i = 0; i < 100 && precomputer.getDuration() < 0; i++) {
+            Thread.sleep(50);
+        }
+        assertTrue(precomputer.getDuration() >= 0);
+        assertTrue(precomputer.getPrecomputedTypes() > 0); // the bean and the test class
+        assertEquals(precomputer.getTypes(), precomputer.getPrecomputedTypes());
+        assertEquals(0, precomputer.getFailedTypes());
+    }
+
+    @Test
+    public void modulesSharingTheirFactoryAndLoaderAreMerged() {
+        final ClassLoader loader = getClass().getClassLoader();
+        final LazyValidatorFactory factory = new LazyValidatorFactory(loader, null);
+
+        final ConstraintMetadataPrecomputer precomputer = new ConstraintMetadataPrecomputer("test");
+        precomputer.add(factory, loader, Arrays.asList(Validated.class.getName(), "org.apache.openejb.Missing"));
+        precomputer.add(factory, loader, Collections.singletonList(Validated.class.getName()));
+        precomputer.add(null, loader, Collections.singletonList(Validated.class.getName()));
+        assertEquals(2, precomputer.getTypes());
+        assertEquals(-1, precomputer.getDuration());
+
+        precomputer.precompute();
+        assertEquals(1, precomputer.getPrecomputedTypes());
+        assertEquals(1, precomputer.getFailedTypes());
+        assertTrue(precomputer.getDuration() >= 0);
+    }
+
+    public static class Validated {
+        @NotNull
+        private String name;
+
+        public String hello(@NotNull @Size(min = 1) final String who) {
+            return "hello " + who;
+        }
+    }
+}
@@ -0,0 +1,189 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.openejb.assembler.classic;
+
+import org.apache.openejb.AppContext;
+import org.apache.openejb.BeanContext;
+import org.apache.openejb.config.ConfigurationFactory;
+import org.apache.openejb.core.WebContext;
+import org.apache.openejb.jee.EjbJar;
+import org.apache.openejb.jee.SingletonBean;
+import org.apache.openejb.junit.ApplicationComposer;
+import org.apache.openejb.loader.Files;
+import org.apache.openejb.loader.IO;
+import org.apache.openejb.loader.SystemInstance;
+import org.apache.openejb.spi.ContainerSystem;
+import org.apache.openejb.testing.Component;
+import org.apache.openejb.testing.Configuration;
+import org.apache.openejb.testing.Module;
+import org.apache.openejb.web.LightweightWebAppBuilder;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import javax.naming.Context;
+import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Redeploys an exploded ear where a single web module changed.
+ */
+@RunWith(ApplicationComposer.class)
+public class IncrementalRedeploymentTest {
+    @Configuration
+    public Properties config() {
+        final Properties p = new Properties();
+        p.setProperty(RedeployPlan.OPENEJB_REDEPLOY_INCREMENTAL, "true");
+        return p;
+    }
+
+    @Component
+    public WebAppBuilder webAppBuilder() {
+        return new LightweightWebAppBuilder();
+    }
+
+    @Module
+    public EjbJar other() {
+        return new EjbJar("other").enterpriseBean(new SingletonBean(Other.class).localBean());
+    }
+
+    private File ear;
+
+    @Before
+    public void ear() throws IOException {
+        ear = Files.tmpdir();
+        write("META-INF/application.xml", "<application xmlns=\"http://java.sun.com/xml/ns/javaee\" version=\"6\">"
+            + "<module><ejb>ejbs.jar</ejb></module>"
+            + "<module><web><web-uri>shop.war</web-uri><context-root>/shop</context-root></web></module>"
+            + "<module><web><web-uri>admin.war</web-uri><context-root>/admin</context-root></web></module>"
+            + "</application>");
+        write("ejbs.jar/META-INF/ejb-jar.xml", "<ejb-jar xmlns=\"http://java.sun.com/xml/ns/javaee\" version=\"3.1\"><enterprise-beans><session>"
+            + "<ejb-name>IncrementalGreeter</ejb-name><ejb-class>" + Greeter.class.getName() + "</ejb-class><session-type>Stateless</session-type>"
+            + "</session></enterprise-beans></ejb-jar>");
+        write("shop.war/WEB-INF/web.xml", "<web-app xmlns=\"http://java.sun.com/xml/ns/javaee\" version=\"3.0\"/>");
+        write("shop.war/index.html", "shop");
+        write("admin.war/WEB-INF/web.xml", "<web-app xmlns=\"http://java.sun.com/xml/ns/javaee\" version=\"3.0\"/>");
+        write("admin.war/index.html", "admin");
+    }
+
+    @After
+    public void deleteEar() {
+        Files.delete(ear);
+    }
+
+    @Test
+    public void onlyTheChangedWebModuleIsRedeployed() throws Exception {
+        final Assembler assembler = SystemInstance.get().getComponent(Assembler.class);
+        final ContainerSystem containerSystem = SystemInstance.get().getComponent(ContainerSystem.class);
+        final ConfigurationFactory config = new ConfigurationFactory();
+
+        final AppInfo running = config.configureApplication(ear);
+        assembler.createApplication(running);
+        try {
+            final AppContext appContext = containerSystem.getAppContext(running.appId);
+            final BeanContext greeter = containerSystem.getBeanContext(greeterId(running));
+            final BeanContext other = containerSystem.getBeanContext("Other");
+            final List<String> bindings = greeter.get(JndiBuilder.Bindings.class).getBindings();
+            assertFalse(bindings.isEmpty());
+            final Map<String, WebContext> webContexts = webContexts(appContext);
+            assertEquals(2, webContexts.size());
+
+            write("shop.war/index.html", "new shop");
+            final AppInfo next = config.configureApplication(ear);
+            next.appId = running.appId;
+
+            final RedeployPlan plan = assembler.redeployApplication(running, next);
+            assertTrue(plan.toString(), plan.isIncremental());
+            assertEquals("[web module shop]", plan.getRebuilt().toString());
+
+            // the application, its EJB module and the other web module are the deployed ones
+            assertSame(appContext, containerSystem.getAppContext(running.appId));
+            assertSame(greeter, containerSystem.getBeanContext(greeterId(running)));
+            assertSame(other, containerSystem.getBeanContext("Other"));
+            assertFalse(greeter.isDestroyed());
+            final Map<String, WebContext> redeployed = webContexts(appContext);
+            assertEquals(2, redeployed.size());
+            assertSame(webContexts.get("admin"), redeployed.get("admin"));
+            assertNotSame(webContexts.get("shop"), redeployed.get("shop"));
+            assertSame(next.webApps.get(0), running.webApps.get(0));
+            assertEquals("admin", running.webApps.get(1).moduleId);
+
+            // so are their bindings
+            final Context jndi = containerSystem.getJNDIContext();
+            boolean invoked = false;
+            for (final String name : bindings) {
+                final Object bound = jndi.lookup(name);
+                assertNotNull(name, bound);
+                if (bound instanceof Greeter) {
+                    assertEquals("hello", ((Greeter) bound).hello());
+                    invoked = true;
+                }
+            }
+            assertTrue(invoked);
+            assertNotNull(redeployed.get("admin").getJndiEnc());
+        } finally {
+            assembler.destroyApplication(running);
+        }
+    }
+
+    private static String greeterId(final AppInfo app) {
+        for (final EjbJarInfo ejbJar : app.ejbJars) {
+            if ("ejbs".equals(ejbJar.moduleId)) {
+                return ejbJar.enterpriseBeans.get(0).ejbDeploymentId;
+            }
+        }
+        throw new IllegalStateException("No ejbs module in " + app.path);
+    }
+
+    private static Map<String, WebContext> webContexts(final AppContext appContext) {
+        final Map<String, WebContext> webContexts = new HashMap<>();
+        for (final WebContext webContext : appContext.getWebContexts()) {
+            webContexts.put(webContext.getId(), webContext);
+        }
+        return webContexts;
+    }
+
+    private void write(final String path, final String content) throws IOException {
+        final File file = new File(ear, path);
+        Files.mkdirs(file.getParentFile());
+        IO.copy(content.getBytes(), file);
+    }
+
+    public static class Greeter {
+        public String hello() {
+            return "hello";
+        }
+    }
+
+    public static class Other {
+        public String hello() {
+            return "other";
+        }
+    }
+}
@@ -0,0 +1,154 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.apache.openejb.assembler.classic;
+
+import org.apache.openejb.loader.Files;
+import org.apache.openejb.loader.IO;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class RedeployPlanTest {
+
+    private File ear;
+
+    @Before
+    public void ear() throws IOException {
+        ear = Files.tmpdir();
+        write("META-INF/application.xml", "<application/>");
+        write("ejbs.jar/META-INF/ejb-jar.xml", "<ejb-jar/>");
+        write("shop.war/index.html", "shop");
+        write("admin.war/index.html", "admin");
+    }
+
+    @Test
+    public void onlyTheChangedWebModuleIsRebuilt() throws IOException {
+        final AppInfo running = app(false);
+        final RedeployPlan.Fingerprints deployed = RedeployPlan.Fingerprints.of(running);
+
+        write("shop.war/index.html", "new shop");
+        final AppInfo next = app(false);
+
+        final RedeployPlan plan = RedeployPlan.of(running, deployed, next, true);
+        assertTrue(plan.toString(), plan.isIncremental());
+        assertEquals(Arrays.asList("web module shop"), Arrays.asList(plan.getRebuilt().toArray()));
+        assertTrue(plan.getReused().contains("web module admin"));
+        assertTrue(plan.getReused().contains("EJB module ejbs"));
+        assertSame(running.webApps.get(0), plan.getStaleWebApps().get(0));
+        assertSame(next.webApps.get(0), plan.getNewWebApps().get(0));
+
+        final WebAppInfo admin = running.webApps.get(1);
+        plan.apply(running);
+        assertSame(next.webApps.get(0), running.webApps.get(0));
+        assertSame(admin, running.webApps.get(1));
+        assertEquals(3, running.ejbJars.size());
+    }
+
+    @Test
+    public void nothingChanged() {
+        final AppInfo running = app(false);
+        final RedeployPlan plan = RedeployPlan.of(running, RedeployPlan.Fingerprints.of(running), app(false), true);
+        assertTrue(plan.isIncremental());
+        assertTrue(plan.getRebuilt().isEmpty());
+        assertTrue(plan.getNewWebApps().isEmpty());
+    }
+
+    @Test
+    public void changedEjbModuleMeansFullRedeployment() throws IOException {
+        final AppInfo running = app(false);
+        final RedeployPlan.Fingerprints deployed = RedeployPlan.Fingerprints.of(running);
+
+        write("ejbs.jar/META-INF/ejb-jar.xml", "<ejb-jar version=\"3.1\"/>");
+        write("shop.war/index.html", "new shop");
+
+        final RedeployPlan plan = RedeployPlan.of(running, deployed, app(false), true);
+        assertFalse(plan.isIncremental());
+        assertEquals("EJB module ejbs changed", plan.getFullRedeploymentReason());
+        assertTrue(plan.getNewWebApps().isEmpty());
+    }
+
+    @Test
+    public void webModuleWithEjbsMeansFullRedeployment() throws IOException {
+        final AppInfo running = app(true);
+        final RedeployPlan.Fingerprints deployed = RedeployPlan.Fingerprints.of(running);
+
+        write("shop.war/index.html", "new shop");
+
+        final RedeployPlan plan = RedeployPlan.of(running, deployed, app(true), true);
+        assertFalse(plan.isIncremental());
+        assertEquals("web module shop holds EJBs", plan.getFullRedeploymentReason());
+    }
+
+    @Test
+    public void changedDescriptorsMeanFullRedeployment() throws IOException {
+        final AppInfo running = app(false);
+        final RedeployPlan.Fingerprints deployed = RedeployPlan.Fingerprints.of(running);
+
+        write("META-INF/resources.xml", "<resources/>");
+
+        assertEquals("application descriptors changed", RedeployPlan.of(running, deployed, app(false), true).getFullRedeploymentReason());
+    }
+
+    @Test
+    public void notFingerprinted() {
+        final RedeployPlan plan = RedeployPlan.of(app(false), null, app(false), true);
+        assertFalse(plan.isIncremental());
+        assertEquals("the modules were not fingerprinted when the application was deployed", plan.getFullRedeploymentReason());
+    }
+
+    private AppInfo app(final boolean statelessInShop) {
+        final AppInfo app = new AppInfo();
+        app.appId = "shop-app";
+        app.path = ear.getAbsolutePath();
+        app.webApps.add(webApp("shop"));
+        app.webApps.add(webApp("admin"));
+        app.ejbJars.add(ejbJar("ejbs", new File(ear, "ejbs.jar"), false, new StatelessBeanInfo()));
+        app.ejbJars.add(ejbJar("shop", new File(ear, "shop.war"), true, statelessInShop ? new StatelessBeanInfo() : new ManagedBeanInfo()));
+        app.ejbJars.add(ejbJar("admin", new File(ear, "admin.war"), true, new ManagedBeanInfo()));
+        return app;
+    }
+
+    private WebAppInfo webApp(final String name) {
+        final WebAppInfo webApp = new WebAppInfo();
+        webApp.moduleId = name;
+        webApp.path = new File(ear, name + ".war").getAbsolutePath();
+        return webApp;
+    }
+
+    private static EjbJarInfo ejbJar(final String name, final File path, final boolean webapp, final EnterpriseBeanInfo bean) {
+        final EjbJarInfo ejbJar = new EjbJarInfo();
+        ejbJar.moduleId = name;
+        ejbJar.path = path.getAbsolutePath();
+        ejbJar.webapp = webapp;
+        ejbJar.enterpriseBeans.add(bean);
+        return ejbJar;
+    }
+
+    private void write(final String path, final String content) throws IOException {
+        final File file = new File(ear, path);
+        Files.mkdirs(file.getParentFile());
+        IO.copy(content.getBytes(), file);
+    }
+}
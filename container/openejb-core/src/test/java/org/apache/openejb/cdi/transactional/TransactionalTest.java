@@ -40,6 +40,7 @@ import java.util.concurrent.atomic.AtomicInteger;
 import static javax.transaction.Transactional.TxType.MANDATORY;
 import static javax.transaction.Transactional.TxType.NOT_SUPPORTED;
 import static javax.transaction.Transactional.TxType.REQUIRED;
+import static javax.transaction.Transactional.TxType.SUPPORTS;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.fail;
 
@@ -263,6 +264,51 @@ public class TransactionalTest {
         }
     }
 
+    @Test
+    public void rollbackDecisionDependsOnTheException() throws Exception {
+        for (int i = 0; i < 2; i++) {
+            final AtomicInteger status = new AtomicInteger();
+            try {
+                bean.rollbackOnAllButAnotherException(status, new AnotherException());
+                fail();
+            } catch (final TransactionalException e) {
+                // no-op
+            }
+            assertEquals(Status.STATUS_COMMITTED, status.get());
+
+            try {
+                bean.rollbackOnAllButAnotherException(status, new AnException());
+                fail();
+            } catch (final TransactionalException e) {
+                // no-op
+            }
+            assertEquals(Status.STATUS_ROLLEDBACK, status.get());
+        }
+    }
+
+    @Test
+    public void supportsMarksCallerTransaction() throws Exception {
+        for (int i = 0; i < 2; i++) {
+            final TransactionManager transactionManager = OpenEJB.getTransactionManager();
+            transactionManager.begin();
+            try {
+                bean.supports();
+                fail();
+            } catch (final TransactionalException e) {
+                // no-op
+            }
+            assertEquals(Status.STATUS_MARKED_ROLLBACK, transactionManager.getStatus());
+            transactionManager.rollback();
+
+            try {
+                bean.supports();
+                fail();
+            } catch (final TransactionalException e) {
+                // no-op, without a transaction
+            }
+        }
+    }
+
     @Transactional(value = REQUIRED, rollbackOn = AnCheckedException.class)
     public static class TxBean {
         @Resource
@@ -355,6 +401,31 @@ public class TransactionalTest {
             }
             throw new AnotherException();
         }
+
+        @Transactional(value = REQUIRED, dontRollbackOn = AnotherException.class)
+        public void rollbackOnAllButAnotherException(final AtomicInteger status, final RuntimeException error) {
+            try {
+                OpenEJB.getTransactionManager().getTransaction().registerSynchronization(new Synchronization() {
+                    @Override
+                    public void beforeCompletion() {
+                        // no-op
+                    }
+
+                    @Override
+                    public void afterCompletion(final int state) {
+                        status.set(state);
+                    }
+                });
+            } catch (final RollbackException | SystemException e) {
+                fail();
+            }
+            throw error;
+        }
+
+        @Transactional(SUPPORTS)
+        public void supports() {
+            throw new AnException();
+        }
     }
 
     public static class AnCheckedException extends Exception {
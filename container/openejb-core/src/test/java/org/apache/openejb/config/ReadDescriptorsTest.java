@@ -17,11 +17,20 @@
 package org.apache.openejb.config;
 
 
+import org.apache.openejb.OpenEJBException;
 import org.apache.openejb.config.sys.Resource;
 import org.apache.openejb.config.sys.Resources;
+import org.apache.openejb.jee.TldTaglib;
+import org.apache.openejb.loader.Files;
+import org.apache.openejb.loader.IO;
+import org.apache.openejb.loader.SystemInstance;
 import org.junit.Assert;
 import org.junit.Test;
 
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
 public class ReadDescriptorsTest {
 
     @Test
@@ -92,4 +101,114 @@ public class ReadDescriptorsTest {
         Assert.assertNull(res.getProperties().getProperty("InitializeAfterDeployment"));
     }
 
+    @Test
+    public void sameTldIsParsedOnce() throws Exception {
+        final File dir = Files.tmpdir();
+        final File first = new File(dir, "first.tld");
+        final File second = new File(dir, "second.tld");
+        final File other = new File(dir, "other.tld");
+        IO.writeString(first, taglib("cached"));
+        IO.writeString(second, taglib("cached"));
+        IO.writeString(other, taglib("other"));
+
+        final TldTaglib taglib = ReadDescriptors.readTldTaglib(first.toURI().toURL());
+        Assert.assertNotSame(ReadDescriptors.SKIP_TAGLIB, taglib);
+        Assert.assertEquals("cached", taglib.getShortName());
+        Assert.assertSame(taglib, ReadDescriptors.readTldTaglib(second.toURI().toURL()));
+        Assert.assertEquals("other", ReadDescriptors.readTldTaglib(other.toURI().toURL()).getShortName());
+    }
+
+    @Test
+    public void parallelReading() throws Exception {
+        SystemInstance.get().setProperty(ReadDescriptors.PARALLEL_PROPERTY, "true");
+        try {
+            final AppModule appModule = new AppModule(getClass().getClassLoader(), "parallel");
+            final List<EjbModule> modules = new ArrayList<>();
+            for (int i = 0; i < 4; i++) {
+                final EjbModule module = new EjbModule(getClass().getClassLoader(), "module" + i, null, null, null);
+                module.getAltDDs().put("ejb-jar.xml", ejbJar("Bean" + i));
+                appModule.getEjbModules().add(module);
+                modules.add(module);
+            }
+            final List<Object> units = new ArrayList<>();
+            for (int i = 0; i < 3; i++) {
+                units.add(persistence("unit" + i));
+            }
+            appModule.getAltDDs().put("persistence.xml", units);
+
+            new ReadDescriptors().deploy(appModule);
+
+            for (int i = 0; i < modules.size(); i++) {
+                Assert.assertNotNull(modules.get(i).getEjbJar().getEnterpriseBean("Bean" + i));
+            }
+            Assert.assertEquals(3, appModule.getPersistenceModules().size());
+            for (int i = 0; i < 3; i++) { // in the order of the descriptors
+                Assert.assertEquals("unit" + i, appModule.getPersistenceModules().get(i).getPersistence().getPersistenceUnit().get(0).getName());
+            }
+        } finally {
+            SystemInstance.get().getProperties().remove(ReadDescriptors.PARALLEL_PROPERTY);
+        }
+    }
+
+    @Test
+    public void parallelReadingFailsOnceAllModulesAreRead() throws Exception {
+        failsOnceAllModulesAreRead(true);
+    }
+
+    @Test
+    public void serialReadingFailsOnceAllModulesAreRead() throws Exception {
+        failsOnceAllModulesAreRead(false);
+    }
+
+    private void failsOnceAllModulesAreRead(final boolean parallel) throws Exception {
+        SystemInstance.get().setProperty(ReadDescriptors.PARALLEL_PROPERTY, Boolean.toString(parallel));
+        final AppModule appModule = new AppModule(getClass().getClassLoader(), "failing");
+        try {
+            for (int i = 0; i < 4; i++) {
+                final EjbModule module = new EjbModule(getClass().getClassLoader(), "module" + i, null, null, null);
+                module.getAltDDs().put("ejb-jar.xml", i == 2 ? "<ejb-jar><enterprise-beans>broken" : ejbJar("Bean" + i));
+                appModule.getEjbModules().add(module);
+            }
+
+            new ReadDescriptors().deploy(appModule);
+            Assert.fail("the ejb-jar.xml of module2 is not valid");
+        } catch (final OpenEJBException e) {
+            Assert.assertNull(appModule.getEjbModules().get(2).getEjbJar());
+            for (final int i : new int[]{0, 1, 3}) { // whatever the number of cores
+                Assert.assertNotNull(appModule.getEjbModules().get(i).getEjbJar());
+                Assert.assertNotNull(appModule.getEjbModules().get(i).getEjbJar().getEnterpriseBean("Bean" + i));
+            }
+        } finally {
+            SystemInstance.get().getProperties().remove(ReadDescriptors.PARALLEL_PROPERTY);
+        }
+    }
+
+    private static String taglib(final String shortName) {
+        return "<taglib xmlns=\"http://java.sun.com/xml/ns/javaee\" version=\"2.1\">\n" +
+            "  <tlib-version>1.0</tlib-version>\n" +
+            "  <short-name>" + shortName + "</short-name>\n" +
+            "  <tag>\n" +
+            "    <name>" + shortName + "</name>\n" +
+            "    <tag-class>org.superbiz." + shortName + "Tag</tag-class>\n" +
+            "  </tag>\n" +
+            "</taglib>\n";
+    }
+
+    private static String ejbJar(final String bean) {
+        return "<ejb-jar xmlns=\"http://java.sun.com/xml/ns/javaee\" version=\"3.1\">\n" +
+            "  <enterprise-beans>\n" +
+            "    <session>\n" +
+            "      <ejb-name>" + bean + "</ejb-name>\n" +
+            "      <ejb-class>org.superbiz." + bean + "</ejb-class>\n" +
+            "      <session-type>Stateless</session-type>\n" +
+            "    </session>\n" +
+            "  </enterprise-beans>\n" +
+            "</ejb-jar>\n";
+    }
+
+    private static String persistence(final String unit) {
+        return "<persistence xmlns=\"http://java.sun.com/xml/ns/persistence\" version=\"2.0\">\n" +
+            "  <persistence-unit name=\"" + unit + "\"/>\n" +
+            "</persistence>\n";
+    }
 }
@@ -0,0 +1,104 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.openejb.config;
+
+import org.apache.openejb.loader.Files;
+import org.apache.openejb.loader.IO;
+import org.apache.openejb.loader.SystemInstance;
+import org.apache.xbean.finder.archive.Archive;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.InputStream;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.jar.JarOutputStream;
+import java.util.zip.ZipEntry;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class WebappAggregatedArchiveTest {
+
+    @Test
+    public void parallelScanningSeesTheSameClassesInTheSameOrder() throws Exception {
+        final File dir = Files.tmpdir();
+        final List<URL> urls = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            urls.add(jar(new File(dir, "lib" + i + ".jar"), i % 2 == 0 ? Arrays.asList(ReadDescriptors.class, FinderFactory.class) : Arrays.<Class<?>>asList(ScanUtil.class)).toURI().toURL());
+        }
+        final ConfigurableClasspathArchive.FakeModule module = new ConfigurableClasspathArchive.FakeModule(getClass().getClassLoader(), new LinkedHashMap<String, Object>());
+
+        final List<String> serialNames = new ArrayList<>();
+        final List<byte[]> serialBytecode = new ArrayList<>();
+        read(new WebappAggregatedArchive(module, urls), serialNames, serialBytecode);
+
+        final WebappAggregatedArchive archive;
+        SystemInstance.get().setProperty(WebappAggregatedArchive.PARALLEL_PROPERTY, "true");
+        try {
+            archive = new WebappAggregatedArchive(module, urls);
+        } finally {
+            SystemInstance.get().getProperties().remove(WebappAggregatedArchive.PARALLEL_PROPERTY);
+        }
+        final List<String> names = new ArrayList<>();
+        final List<byte[]> bytecode = new ArrayList<>();
+        read(archive, names, bytecode);
+
+        assertEquals(8, serialNames.size());
+        assertEquals(serialNames, names);
+        for (int i = 0; i < names.size(); i++) {
+            assertArrayEquals(names.get(i), serialBytecode.get(i), bytecode.get(i));
+        }
+
+        final Map<URL, WebappAggregatedArchive.ScanTime> times = archive.getScanTimes();
+        assertEquals(urls, new ArrayList<>(times.keySet()));
+        assertEquals(2, times.get(urls.get(0)).getClasses());
+        assertEquals(1, times.get(urls.get(1)).getClasses());
+        assertEquals(Arrays.asList(ReadDescriptors.class.getName(), FinderFactory.class.getName()), archive.getClassesMap().get(urls.get(2)));
+    }
+
+    private static void read(final Archive archive, final List<String> names, final List<byte[]> bytecode) throws Exception {
+        for (final Archive.Entry entry : archive) {
+            final ByteArrayOutputStream out = new ByteArrayOutputStream();
+            try (final InputStream in = entry.getBytecode()) {
+                IO.copy(in, out);
+            }
+            names.add(entry.getName());
+            bytecode.add(out.toByteArray());
+        }
+    }
+
+    private static File jar(final File file, final List<Class<?>> classes) throws Exception {
+        try (final JarOutputStream jar = new JarOutputStream(new FileOutputStream(file))) {
+            for (final Class<?> clazz : classes) {
+                final String name = clazz.getName().replace('.', '/') + ".class";
+                jar.putNextEntry(new ZipEntry(name));
+                try (final InputStream in = WebappAggregatedArchiveTest.class.getClassLoader().getResourceAsStream(name)) {
+                    IO.copy(in, jar);
+                }
+                jar.closeEntry();
+            }
+        }
+        return file;
+    }
+}
@@ -0,0 +1,154 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.openejb.core;
+
+import org.apache.openejb.BeanContext;
+import org.apache.openejb.jee.SingletonBean;
+import org.apache.openejb.junit.ApplicationComposer;
+import org.apache.openejb.loader.SystemInstance;
+import org.apache.openejb.spi.ContainerSystem;
+import org.apache.openejb.testing.Module;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+@RunWith(ApplicationComposer.class)
+public class ThreadContextTest {
+    private BeanContext beanContext;
+
+    @Module
+    public SingletonBean bean() {
+        return new SingletonBean(ABean.class);
+    }
+
+    @Before
+    public void findBeanContext() {
+        beanContext = SystemInstance.get().getComponent(ContainerSystem.class).getBeanContext("ABean");
+    }
+
+    @Test
+    public void slotsAndExtensions() throws Exception {
+        final ThreadContext context = new ThreadContext(beanContext, null);
+        assertNull(context.get(ThreadContext.METHOD));
+
+        // registered type, both APIs see the same slot
+        final Method run = ABean.class.getMethod("run");
+        context.set(ThreadContext.METHOD, run);
+        assertSame(run, context.get(Method.class));
+
+        // unregistered type goes to the map
+        assertNull(context.set(Extension.class, new Extension("a")));
+        assertEquals("a", context.get(Extension.class).name);
+        assertEquals("a", context.remove(Extension.class).name);
+        assertNull(context.get(Extension.class));
+
+        // registered after being set
+        context.set(Late.class, new Late());
+        final ThreadContext.Key<Late> late = ThreadContext.key(Late.class);
+        assertSame(late, ThreadContext.key(Late.class));
+        final Late value = context.get(Late.class);
+        assertSame(value, context.set(Late.class, new Late()));
+        assertNotSame(value, context.get(late));
+
+        final ThreadContext copy = new ThreadContext(context);
+        assertSame(context.get(late), copy.get(late));
+        assertSame(context.get(ThreadContext.METHOD), copy.get(ThreadContext.METHOD));
+    }
+
+    @Test
+    public void recycle() {
+        final ThreadContext first = ThreadContext.obtain(beanContext, "pk");
+        first.set(Extension.class, new Extension("first"));
+        ThreadContext.exit(ThreadContext.enter(first));
+
+        // not nested: reused and cleaned
+        final ThreadContext second = ThreadContext.obtain(beanContext, "pk2", Operation.BUSINESS);
+        assertSame(first, second);
+        assertEquals("pk2", second.getPrimaryKey());
+        assertEquals(Operation.BUSINESS, second.getCurrentOperation());
+        assertNull(second.get(Extension.class));
+
+        // nested: the recycled one is in use
+        final ThreadContext old = ThreadContext.enter(second);
+        final ThreadContext nested = ThreadContext.obtain(beanContext, null);
+        assertNotSame(second, nested);
+        ThreadContext.exit(ThreadContext.enter(nested));
+        ThreadContext.exit(old);
+
+        assertSame(second, ThreadContext.obtain(beanContext, null));
+    }
+
+    @Test
+    public void listenersSeeTheDataBeforeRecycling() {
+        final List<String> seen = new ArrayList<String>();
+        final ThreadContextListener listener = new ThreadContextListener() {
+            @Override
+            public void contextEntered(final ThreadContext oldContext, final ThreadContext newContext) {
+                seen.add("entered " + newContext.get(Extension.class).name);
+            }
+
+            @Override
+            public void contextExited(final ThreadContext exitedContext, final ThreadContext reenteredContext) {
+                seen.add("exited " + exitedContext.get(Extension.class).name);
+            }
+        };
+
+        ThreadContext.addThreadContextListener(listener);
+        try {
+            for (final String name : new String[]{"a", "b"}) {
+                final ThreadContext context = ThreadContext.obtain(beanContext, null);
+                context.set(Extension.class, new Extension(name));
+                ThreadContext.exit(ThreadContext.enter(context));
+            }
+        } finally {
+            ThreadContext.removeThreadContextListener(listener);
+        }
+
+        final List<String> expected = new ArrayList<String>();
+        expected.add("entered a");
+        expected.add("exited a");
+        expected.add("entered b");
+        expected.add("exited b");
+        assertEquals(expected, seen);
+    }
+
+    public static class ABean {
+        public void run() {
+            // no-op
+        }
+    }
+
+    public static class Extension {
+        private final String name;
+
+        public Extension(final String name) {
+            this.name = name;
+        }
+    }
+
+    public static class Late {
+    }
+}
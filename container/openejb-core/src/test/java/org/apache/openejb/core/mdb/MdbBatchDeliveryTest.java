@@ -0,0 +1,283 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.openejb.core.mdb;
+
+import junit.framework.TestCase;
+import org.apache.openejb.BeanContext;
+import org.apache.openejb.OpenEJB;
+import org.apache.openejb.assembler.classic.AppInfo;
+import org.apache.openejb.assembler.classic.Assembler;
+import org.apache.openejb.assembler.classic.SecurityServiceInfo;
+import org.apache.openejb.assembler.classic.TransactionServiceInfo;
+import org.apache.openejb.config.AppModule;
+import org.apache.openejb.config.ConfigurationFactory;
+import org.apache.openejb.config.ConnectorModule;
+import org.apache.openejb.config.EjbModule;
+import org.apache.openejb.core.ivm.naming.InitContextFactory;
+import org.apache.openejb.jee.Connector;
+import org.apache.openejb.jee.EjbJar;
+import org.apache.openejb.jee.InboundResourceadapter;
+import org.apache.openejb.jee.MessageAdapter;
+import org.apache.openejb.jee.MessageDrivenBean;
+import org.apache.openejb.jee.MessageListener;
+import org.apache.openejb.jee.ResourceAdapter;
+import org.apache.openejb.jee.oejb3.EjbDeployment;
+import org.apache.openejb.jee.oejb3.OpenejbJar;
+import org.apache.openejb.loader.SystemInstance;
+import org.apache.openejb.spi.ContainerSystem;
+
+import javax.annotation.Resource;
+import javax.resource.ResourceException;
+import javax.resource.spi.ActivationSpec;
+import javax.resource.spi.BootstrapContext;
+import javax.resource.spi.InvalidPropertyException;
+import javax.resource.spi.ResourceAdapterInternalException;
+import javax.resource.spi.UnavailableException;
+import javax.resource.spi.endpoint.MessageEndpoint;
+import javax.resource.spi.endpoint.MessageEndpointFactory;
+import javax.transaction.Status;
+import javax.transaction.Synchronization;
+import javax.transaction.TransactionSynchronizationRegistry;
+import javax.transaction.xa.XAResource;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * @version $Rev$ $Date$
+ */
+public class MdbBatchDeliveryTest extends TestCase {
+    private static final Method COUNT;
+
+    static {
+        try {
+            COUNT = Counter.class.getMethod("count", String.class);
+        } catch (final NoSuchMethodException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        OpenEJB.destroy();
+    }
+
+    public void testBatch() throws Exception {
+        deploy("BatchSize", "3", "BatchTimeout", "2 seconds");
+
+        CounterBean.commits = new CountDownLatch(2);
+        final MessageEndpoint endpoint = CounterResourceAdapter.factory.createEndpoint(null);
+        for (int i = 0; i < 5; i++) {
+            deliver(endpoint, "message" + i);
+        }
+
+        // the three first messages are committed together, the two last ones when the timeout expires
+        final List<Object> keys = CounterBean.transactions;
+        assertEquals(5, keys.size());
+        assertEquals(keys.get(0), keys.get(1));
+        assertEquals(keys.get(0), keys.get(2));
+        assertFalse(keys.get(0).equals(keys.get(3)));
+        assertEquals(keys.get(3), keys.get(4));
+        assertTrue(CounterBean.commits.await(10, TimeUnit.SECONDS));
+
+        // recorded once the commit returns
+        final MdbDeliveryStats stats = endpointFactory().getDeliveryStats();
+        for (int i = 0; i < 100 && stats.getTransactions() < 2; i++) {
+            Thread.sleep(50);
+        }
+        assertEquals(5, stats.getDelivered());
+        assertEquals(5, stats.getCommitted());
+        assertEquals(0, stats.getRolledBack());
+        assertEquals(2, stats.getTransactions());
+        assertEquals(2.5, stats.getAverageBatchSize());
+
+        endpoint.release();
+    }
+
+    public void testRollbackCompletesTheBatch() throws Exception {
+        deploy("BatchSize", "10", "BatchTimeout", "1 minute");
+
+        CounterBean.commits = new CountDownLatch(1);
+        final MessageEndpoint endpoint = CounterResourceAdapter.factory.createEndpoint(null);
+        deliver(endpoint, "first");
+        try {
+            deliver(endpoint, "rollback");
+            fail();
+        } catch (final RuntimeException e) {
+            // ok
+        }
+        deliver(endpoint, "after");
+        endpoint.release();
+
+        final MdbDeliveryStats stats = endpointFactory().getDeliveryStats();
+        assertEquals(2, stats.getDelivered());
+        assertEquals(1, stats.getFailed());
+        assertEquals(2, stats.getRolledBack());
+        assertEquals(1, stats.getCommitted());
+        assertTrue(CounterBean.commits.await(10, TimeUnit.SECONDS));
+    }
+
+    public void testPooling() throws Exception {
+        deploy("Pooling", "true", "InstanceLimit", "1");
+
+        final MessageEndpoint first = CounterResourceAdapter.factory.createEndpoint(null);
+        try {
+            CounterResourceAdapter.factory.createEndpoint(null);
+            fail();
+        } catch (final UnavailableException e) {
+            // ok, only one instance
+        }
+        deliver(first, "first");
+        first.release();
+
+        final MessageEndpoint second = CounterResourceAdapter.factory.createEndpoint(null);
+        deliver(second, "second");
+        second.release();
+
+        assertEquals(1, CounterBean.instances.get());
+        assertNotNull(endpointFactory().getInstanceFactory().getPool());
+    }
+
+    private static void deliver(final MessageEndpoint endpoint, final String message) throws Exception {
+        endpoint.beforeDelivery(COUNT);
+        try {
+            ((Counter) endpoint).count(message);
+        } finally {
+            endpoint.afterDelivery();
+        }
+    }
+
+    private static EndpointFactory endpointFactory() {
+        final BeanContext beanContext = SystemInstance.get().getComponent(ContainerSystem.class).getBeanContext("CounterBean");
+        return (EndpointFactory) beanContext.getContainerData();
+    }
+
+    private void deploy(final String... properties) throws Exception {
+        System.setProperty(javax.naming.Context.INITIAL_CONTEXT_FACTORY, InitContextFactory.class.getName());
+        CounterBean.instances.set(0);
+        CounterBean.transactions.clear();
+
+        final ConfigurationFactory config = new ConfigurationFactory();
+        final Assembler assembler = new Assembler();
+        assembler.createTransactionManager(config.configureService(TransactionServiceInfo.class));
+        assembler.createSecurityService(config.configureService(SecurityServiceInfo.class));
+
+        final AppModule app = new AppModule(getClass().getClassLoader(), "batch");
+
+        final Connector connector = new Connector("counter-ra");
+        final ResourceAdapter adapter = new ResourceAdapter(CounterResourceAdapter.class);
+        connector.setResourceAdapter(adapter);
+        final InboundResourceadapter inbound = adapter.setInboundResourceAdapter(new InboundResourceadapter());
+        final MessageAdapter messageAdapter = inbound.setMessageAdapter(new MessageAdapter());
+        messageAdapter.addMessageListener(new MessageListener(Counter.class, CounterActivationSpec.class));
+        app.getConnectorModules().add(new ConnectorModule(connector));
+
+        final EjbJar ejbJar = new EjbJar();
+        final MessageDrivenBean bean = ejbJar.addEnterpriseBean(new MessageDrivenBean(CounterBean.class));
+        final OpenejbJar openejbJar = new OpenejbJar();
+        final EjbDeployment deployment = openejbJar.addEjbDeployment(bean);
+        for (int i = 0; i < properties.length; i += 2) {
+            deployment.getProperties().setProperty(properties[i], properties[i + 1]);
+        }
+        app.getEjbModules().add(new EjbModule(ejbJar, openejbJar));
+
+        final AppInfo appInfo = config.configureApplication(app);
+        assembler.createApplication(appInfo);
+    }
+
+    public static interface Counter {
+        void count(String message);
+    }
+
+    public static class CounterBean implements Counter {
+        private static final AtomicInteger instances = new AtomicInteger();
+        private static final List<Object> transactions = new ArrayList<Object>();
+        private static volatile CountDownLatch commits = new CountDownLatch(0);
+
+        @Resource
+        private TransactionSynchronizationRegistry registry;
+
+        public CounterBean() {
+            instances.incrementAndGet();
+        }
+
+        @Override
+        public void count(final String message) {
+            final Object key = registry.getTransactionKey();
+            if (!transactions.contains(key)) {
+                registry.registerInterposedSynchronization(new Synchronization() {
+                    @Override
+                    public void beforeCompletion() {
+                        // no-op
+                    }
+
+                    @Override
+                    public void afterCompletion(final int status) {
+                        if (status == Status.STATUS_COMMITTED) {
+                            commits.countDown();
+                        }
+                    }
+                });
+            }
+            transactions.add(key);
+
+            if ("rollback".equals(message)) {
+                throw new IllegalStateException(message);
+            }
+        }
+    }
+
+    public static class CounterResourceAdapter implements javax.resource.spi.ResourceAdapter {
+        private static volatile MessageEndpointFactory factory;
+
+        public void start(final BootstrapContext bootstrapContext) throws ResourceAdapterInternalException {
+        }
+
+        public void stop() {
+        }
+
+        public void endpointActivation(final MessageEndpointFactory messageEndpointFactory, final ActivationSpec activationSpec) throws ResourceException {
+            factory = messageEndpointFactory;
+        }
+
+        public void endpointDeactivation(final MessageEndpointFactory messageEndpointFactory, final ActivationSpec activationSpec) {
+            factory = null;
+        }
+
+        public XAResource[] getXAResources(final ActivationSpec[] activationSpecs) throws ResourceException {
+            return new XAResource[0];
+        }
+    }
+
+    public static class CounterActivationSpec implements ActivationSpec {
+        private javax.resource.spi.ResourceAdapter resourceAdapter;
+
+        public void validate() throws InvalidPropertyException {
+        }
+
+        public javax.resource.spi.ResourceAdapter getResourceAdapter() {
+            return resourceAdapter;
+        }
+
+        public void setResourceAdapter(final javax.resource.spi.ResourceAdapter resourceAdapter) {
+            this.resourceAdapter = resourceAdapter;
+        }
+    }
+}
@@ -0,0 +1,116 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.openejb.core.timer;
+
+import org.apache.openejb.BeanContext;
+import org.apache.openejb.jee.EjbJar;
+import org.apache.openejb.jee.SingletonBean;
+import org.apache.openejb.junit.ApplicationComposer;
+import org.apache.openejb.loader.SystemInstance;
+import org.apache.openejb.quartz.Scheduler;
+import org.apache.openejb.spi.ContainerSystem;
+import org.apache.openejb.testing.ContainerProperties;
+import org.apache.openejb.testing.Module;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.Resource;
+import javax.ejb.Startup;
+import javax.ejb.Timeout;
+import javax.ejb.TimerConfig;
+import javax.ejb.TimerService;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(ApplicationComposer.class)
+@ContainerProperties({
+    @ContainerProperties.Property(name = EjbTimerServiceImpl.OPENEJB_TIMER_PARTITIONS, value = "2"),
+    @ContainerProperties.Property(name = EjbTimerServiceImpl.OPENEJB_TIMER_PARTITION_POOL_SIZE, value = "1")
+})
+public class PartitionedTimersTest {
+    private static final CountDownLatch FIRED = new CountDownLatch(4);
+
+    @Module
+    public EjbJar jar() {
+        return new EjbJar()
+            .enterpriseBean(new SingletonBean(Bean1.class).localBean())
+            .enterpriseBean(new SingletonBean(Bean2.class).localBean())
+            .enterpriseBean(new SingletonBean(Bean3.class).localBean())
+            .enterpriseBean(new SingletonBean(Bean4.class).localBean());
+    }
+
+    @Test
+    public void timersFireInTheirPartition() throws Exception {
+        assertTrue(FIRED.await(1, TimeUnit.MINUTES));
+
+        final Set<Scheduler> schedulers = new HashSet<>();
+        for (final BeanContext beanContext : SystemInstance.get().getComponent(ContainerSystem.class).deployments()) {
+            final Scheduler scheduler = beanContext.get(Scheduler.class);
+            if (scheduler == null) {
+                continue;
+            }
+            assertTrue(EjbTimerServiceImpl.isPartition(scheduler));
+            assertNotSame(SystemInstance.get().getComponent(Scheduler.class), scheduler);
+            schedulers.add(scheduler);
+        }
+
+        long fired = 0;
+        for (final Scheduler scheduler : schedulers) {
+            final TimerSchedulerStats stats = (TimerSchedulerStats) scheduler.getContext().get(TimerSchedulerStats.KEY);
+            assertNotNull(stats);
+            assertEquals(1, stats.getThreads());
+            fired += stats.getFired();
+        }
+        assertEquals(4, fired);
+    }
+
+    @Startup
+    public static class TimerBean {
+        @Resource
+        private TimerService ts;
+
+        @PostConstruct
+        public void run() {
+            ts.createSingleActionTimer(50, new TimerConfig(getClass().getSimpleName(), false));
+        }
+
+        @Timeout
+        public void timeout() {
+            FIRED.countDown();
+        }
+    }
+
+    public static class Bean1 extends TimerBean {
+    }
+
+    public static class Bean2 extends TimerBean {
+    }
+
+    public static class Bean3 extends TimerBean {
+    }
+
+    public static class Bean4 extends TimerBean {
+    }
+}
@@ -0,0 +1,124 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+    * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.openejb.resource;
+
+import org.apache.geronimo.connector.outbound.ConnectionInfo;
+import org.apache.geronimo.connector.outbound.ManagedConnectionInfo;
+import org.junit.Test;
+
+import java.io.Serializable;
+import java.lang.reflect.Proxy;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class AutoConnectionTrackerTest {
+
+    @Test
+    public void allHandlesProxiedByDefault() throws Exception {
+        final AutoConnectionTracker tracker = new AutoConnectionTracker();
+        final ConnectionInfo info = connection();
+
+        tracker.handleObtained(null, info, false);
+        assertNotNull(info.getConnectionProxy());
+        assertTrue(Proxy.isProxyClass(info.getConnectionProxy().getClass()));
+        assertEquals(1, tracker.getTrackedConnections());
+
+        tracker.handleReleased(null, info, null);
+        assertEquals(0, tracker.getTrackedConnections());
+    }
+
+    @Test
+    public void noSampling() throws Exception {
+        final AutoConnectionTracker tracker = new AutoConnectionTracker("test", 0, 0);
+        final ConnectionInfo info = connection();
+
+        tracker.handleObtained(null, info, false);
+        assertNull(info.getConnectionProxy());
+        assertEquals(0, tracker.getTrackedConnections());
+        assertEquals(1, tracker.getObtainedConnections());
+    }
+
+    @Test
+    public void oneOutOfN() throws Exception {
+        final AutoConnectionTracker tracker = new AutoConnectionTracker("test", 10, 0);
+
+        int proxied = 0;
+        for (int i = 0; i < 10000; i++) {
+            final ConnectionInfo info = connection();
+            tracker.handleObtained(null, info, false);
+            if (info.getConnectionProxy() != null) {
+                proxied++;
+            }
+        }
+        assertTrue(String.valueOf(proxied), proxied > 700 && proxied < 1300);
+        assertEquals(proxied, tracker.getTrackedConnections());
+    }
+
+    @Test
+    public void suspectedLeaks() throws Exception {
+        final AutoConnectionTracker tracker = new AutoConnectionTracker("test", 0, 50);
+        final ConnectionInfo released = connection();
+        final ConnectionInfo leaked = connection();
+
+        tracker.handleObtained(null, released, false);
+        tracker.handleObtained(null, leaked, false);
+        assertNull(leaked.getConnectionProxy());
+        assertEquals(2, tracker.getTrackedConnections());
+        assertEquals(0, tracker.getSuspectedLeaks().length);
+
+        Thread.sleep(100);
+        tracker.handleReleased(null, released, null);
+
+        final String[] leaks = tracker.getSuspectedLeaks();
+        assertEquals(1, leaks.length);
+        assertTrue(leaks[0], leaks[0].contains(Thread.currentThread().getName()));
+        assertTrue(leaks[0], !leaks[0].contains(" from "));
+    }
+
+    @Test
+    public void sampledLeaksHaveTheirOrigin() throws Exception {
+        final AutoConnectionTracker tracker = new AutoConnectionTracker("test", 2, 1);
+        ConnectionInfo sampled = null;
+        while (sampled == null) {
+            final ConnectionInfo info = connection();
+            tracker.handleObtained(null, info, false);
+            if (info.getConnectionProxy() != null) {
+                sampled = info;
+            } else {
+                tracker.handleReleased(null, info, null);
+            }
+        }
+
+        Thread.sleep(20);
+        final String[] leaks = tracker.getSuspectedLeaks();
+        assertEquals(1, leaks.length);
+        assertTrue(leaks[0], leaks[0].contains(" from " + getClass().getName() + ".sampledLeaksHaveTheirOrigin"));
+        assertTrue(tracker.dumpSuspectedLeaks().contains("AutoConnectionTrackerTest.sampledLeaksHaveTheirOrigin"));
+    }
+
+    private static ConnectionInfo connection() {
+        final ConnectionInfo info = new ConnectionInfo(new ManagedConnectionInfo(null, null));
+        info.setConnectionHandle(new Handle());
+        return info;
+    }
+
+    public static class Handle implements Serializable {
+    }
+}
@@ -30,10 +30,11 @@ import javax.sql.CommonDataSource;
 import javax.sql.DataSource;
 import java.io.Flushable;
 import java.io.IOException;
-import java.lang.reflect.Proxy;
+import java.sql.Connection;
 import java.util.Properties;
 
 import static org.hamcrest.CoreMatchers.instanceOf;
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNotSame;
@@ -41,7 +42,7 @@ import static org.junit.Assert.assertThat;
 import static org.junit.Assert.assertTrue;
 
 @RunWith(ApplicationComposer.class)
-public class FlushableDataSourceHandlerTest {
+public class FlushableDataSourceTest {
     @Resource
     private DataSource ds;
 
@@ -49,15 +50,42 @@ public class FlushableDataSourceHandlerTest {
     public void checkIt() throws IOException {
         assertThat(ds, instanceOf(Flushable.class));
         assertThat(ds, instanceOf(DataSource.class));
-        final FlushableDataSourceHandler handler = FlushableDataSourceHandler.class.cast(Proxy.getInvocationHandler(ds));
-        final CommonDataSource delegate = handler.getDelegate();
+        final FlushableDataSource flushable = FlushableDataSource.class.cast(ds);
+        final CommonDataSource delegate = flushable.getDelegate();
         assertNotNull(delegate);
         assertFalse(BasicDataSource.class.cast(delegate).isClosed());
         Flushable.class.cast(ds).flush();
         assertTrue(BasicDataSource.class.cast(delegate).isClosed());
-        final CommonDataSource newDelegate = handler.getDelegate();
+        final CommonDataSource newDelegate = flushable.getDelegate();
         assertFalse(BasicDataSource.class.cast(newDelegate).isClosed());
         assertNotSame(newDelegate, delegate);
+        assertEquals(1, flushable.getEpoch());
+    }
+
+    @Test
+    public void retiredPoolIsDrained() throws Exception {
+        final FlushableDataSource flushable = FlushableDataSource.class.cast(ds);
+        final CommonDataSource delegate = flushable.getDelegate();
+
+        final Connection inFlight = ds.getConnection();
+        flushable.flush();
+
+        // the connection taken before the flush is still usable, its pool waits for it
+        assertFalse(BasicDataSource.class.cast(delegate).isClosed());
+        assertEquals(1, flushable.getRetiredPools());
+        assertEquals(1, flushable.getRetiredActiveConnections());
+        assertFalse(inFlight.isClosed());
+        inFlight.getMetaData();
+
+        final Connection connection = ds.getConnection(); // from the new pool
+        connection.close();
+
+        inFlight.close();
+        for (int i = 0; i < 100 && flushable.getRetiredPools() > 0; i++) {
+            Thread.sleep(50);
+        }
+        assertEquals(0, flushable.getRetiredPools());
+        assertTrue(BasicDataSource.class.cast(delegate).isClosed());
     }
 
     @Configuration
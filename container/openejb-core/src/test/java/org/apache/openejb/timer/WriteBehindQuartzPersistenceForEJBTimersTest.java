@@ -0,0 +1,194 @@
+/**
+ *  Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  See the NOTICE file distributed with
+ *  this work for additional information regarding copyright ownership.
+ *  The ASF licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.apache.openejb.timer;
+
+import org.apache.openejb.config.AppModule;
+import org.apache.openejb.config.EjbModule;
+import org.apache.openejb.core.timer.EjbTimerServiceImpl;
+import org.apache.openejb.jee.EjbJar;
+import org.apache.openejb.jee.SingletonBean;
+import org.apache.openejb.jee.oejb3.EjbDeployment;
+import org.apache.openejb.jee.oejb3.OpenejbJar;
+import org.apache.openejb.junit.ApplicationComposer;
+import org.apache.openejb.quartz.impl.jdbcjobstore.HSQLDBDelegate;
+import org.apache.openejb.quartz.impl.jdbcjobstore.JobStoreCMT;
+import org.apache.openejb.quartz.simpl.SimpleThreadPool;
+import org.apache.openejb.testing.Configuration;
+import org.apache.openejb.testing.Module;
+import org.apache.openejb.testng.PropertiesBuilder;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import javax.annotation.Resource;
+import javax.ejb.ApplicationException;
+import javax.ejb.EJB;
+import javax.ejb.Schedule;
+import javax.ejb.Singleton;
+import javax.ejb.Timeout;
+import javax.ejb.Timer;
+import javax.ejb.TimerConfig;
+import javax.ejb.TimerService;
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Collection;
+import java.util.Properties;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+@RunWith(ApplicationComposer.class)
+public class WriteBehindQuartzPersistenceForEJBTimersTest {
+    @EJB
+    private WriteBehindEjb writeBehind;
+
+    @Test
+    public void timersOfATransactionAreStoredTogether() throws Exception {
+        // the @Schedule ones, scheduled together on startup
+        assertEquals(2, writeBehind.timers().size());
+        assertEquals(2, writeBehind.storedTriggers());
+
+        writeBehind.createTimers(20, 5);
+        assertEquals(17, writeBehind.timers().size());
+        assertEquals(17, writeBehind.storedTriggers());
+
+        try {
+            writeBehind.createTimersAndRollback(10);
+            fail();
+        } catch (final Rollback expected) {
+            // no-op
+        }
+        assertEquals(17, writeBehind.timers().size());
+        assertEquals(17, writeBehind.storedTriggers());
+
+        writeBehind.cancelAll();
+        assertEquals(0, writeBehind.timers().size());
+        assertEquals(0, writeBehind.storedTriggers());
+    }
+
+    @Module
+    public AppModule application() {
+        final EjbModule ejbModule = new EjbModule(new EjbJar(), new OpenejbJar());
+        final EjbDeployment deployment = ejbModule.getOpenejbJar().addEjbDeployment(
+            ejbModule.getEjbJar().addEnterpriseBean(new SingletonBean(WriteBehindEjb.class).localBean()));
+        deployment.getProperties().put(EjbTimerServiceImpl.EJB_TIMER_WRITE_BEHIND, "true");
+
+        final Properties quartzConfig = new PropertiesBuilder()
+            .p("org.apache.openejb.quartz.scheduler.instanceName", "WriteBehindTestScheduler")
+            .p("org.apache.openejb.quartz.scheduler.instanceId", "AUTO")
+            .p("org.apache.openejb.quartz.threadPool.class", SimpleThreadPool.class.getName())
+            .p("org.apache.openejb.quartz.threadPool.threadCount", "4")
+            .p("org.apache.openejb.quartz.jobStore.class", JobStoreCMT.class.getName())
+            .p("org.apache.openejb.quartz.jobStore.driverDelegateClass", HSQLDBDelegate.class.getName())
+            .p("org.apache.openejb.quartz.jobStore.dataSource", "QUARTZ")
+            .p("org.apache.openejb.quartz.jobStore.nonManagedTXDataSource", "QUARTZ_NOTX")
+            .p("org.apache.openejb.quartz.jobStore.tablePrefix", "qrtz_")
+            .p("org.apache.openejb.quartz.dataSource.QUARTZ.jndiURL", "openejb:Resource/QuartzPersistenceForEJBTimersDB")
+            .p("org.apache.openejb.quartz.dataSource.QUARTZ_NOTX.jndiURL", "openejb:Resource/QuartzPersistenceForEJBTimersDBNoTx")
+            .build();
+
+        final AppModule appModule = new AppModule(Thread.currentThread().getContextClassLoader(), null);
+        appModule.getEjbModules().add(ejbModule);
+        appModule.getProperties().putAll(quartzConfig);
+        return appModule;
+    }
+
+    @Configuration
+    public Properties configuration() {
+        return new PropertiesBuilder()
+            // same resource ids to get src/test/resources/import-QuartzPersistenceForEJBTimersDB.sql but another database
+            .p("QuartzPersistenceForEJBTimersDB", "new://Resource?type=DataSource")
+            .p("QuartzPersistenceForEJBTimersDB.JtaManaged", "true")
+            .p("QuartzPersistenceForEJBTimersDB.JdbcUrl", "jdbc:hsqldb:mem:WriteBehindQuartzPersistenceForEJBTimersDB")
+            .p("QuartzPersistenceForEJBTimersDB.UserName", "SA")
+            .p("QuartzPersistenceForEJBTimersDB.Password", "")
+
+            .p("QuartzPersistenceForEJBTimersDBNoTx", "new://Resource?type=DataSource")
+            .p("QuartzPersistenceForEJBTimersDBNoTx.JtaManaged", "false")
+            .p("QuartzPersistenceForEJBTimersDBNoTx.JdbcUrl", "jdbc:hsqldb:mem:WriteBehindQuartzPersistenceForEJBTimersDB")
+            .p("QuartzPersistenceForEJBTimersDBNoTx.UserName", "SA")
+            .p("QuartzPersistenceForEJBTimersDBNoTx.Password", "")
+            .build();
+    }
+
+    @ApplicationException(rollback = true)
+    public static class Rollback extends Exception {
+    }
+
+    public abstract static class TimedEjb {
+        @Resource
+        private TimerService timerService;
+
+        @Resource(name = "QuartzPersistenceForEJBTimersDBNoTx")
+        private DataSource dataSource;
+
+        @Timeout
+        public void timeout(final Timer timer) {
+            // no-op
+        }
+
+        public Collection<Timer> timers() {
+            return timerService.getTimers();
+        }
+
+        public void createTimers(final int count, final int cancelled) {
+            for (int i = 0; i < count; i++) {
+                final Timer timer = timerService.createSingleActionTimer(3600000, new TimerConfig("timer-" + i, true));
+                if (i < cancelled) {
+                    timer.cancel();
+                }
+            }
+        }
+
+        public void createTimersAndRollback(final int count) throws Rollback {
+            createTimers(count, 0);
+            throw new Rollback();
+        }
+
+        public void cancelAll() {
+            for (final Timer timer : timerService.getTimers()) {
+                timer.cancel();
+            }
+        }
+
+        public int storedTriggers() throws SQLException {
+            try (final Connection connection = dataSource.getConnection();
+                 final PreparedStatement statement = connection.prepareStatement("SELECT COUNT(*) FROM qrtz_triggers WHERE TRIGGER_NAME LIKE ?")) {
+                statement.setString(1, "OPEN_EJB_TIMEOUT_TRIGGER_" + getClass().getSimpleName() + "_%");
+                try (final ResultSet rs = statement.executeQuery()) {
+                    rs.next();
+                    return rs.getInt(1);
+                }
+            }
+        }
+    }
+
+    @Singleton
+    public static class WriteBehindEjb extends TimedEjb {
+        @Schedule(hour = "3", persistent = true)
+        public void nightly() {
+            // no-op
+        }
+
+        @Schedule(hour = "4", persistent = true)
+        public void later() {
+            // no-op
+        }
+    }
+}
@@ -0,0 +1,203 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.openejb.util;
+
+import junit.framework.TestCase;
+import org.apache.openejb.loader.SystemInstance;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * @version $Rev$ $Date$
+ */
+public class LoggerTest extends TestCase {
+    private static final String RESOURCES = "org.apache.openejb.util.resources";
+
+    private RecordingStream stream;
+    private Logger logger;
+
+    @Override
+    protected void setUp() throws Exception {
+        SystemInstance.get().setProperty("openejb.log.async", "false");
+        stream = new RecordingStream();
+        logger = new Logger(LogCategory.OPENEJB, stream, RESOURCES);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        SystemInstance.reset();
+    }
+
+    public void testDeferredArgument() {
+        final AtomicInteger computed = new AtomicInteger();
+        final Logger.Deferred deferred = new Logger.Deferred() {
+            @Override
+            public Object get() {
+                computed.incrementAndGet();
+                return "computed";
+            }
+        };
+
+        assertEquals("value {0}", logger.debug("value {0}", deferred));
+        assertEquals(0, computed.get());
+        assertTrue(stream.messages.isEmpty());
+
+        stream.debug = true;
+        assertEquals("value computed", logger.debug("value {0}", deferred));
+        assertEquals(1, computed.get());
+        assertEquals("value computed", stream.messages.get(0));
+    }
+
+    public void testMessages() {
+        assertEquals("OpenEJB 1.0", logger.info("startup.banner.1", "1.0"));
+        assertEquals("a b", logger.info("{0} {1}", "a", "b"));
+        assertEquals("a b c", logger.info("{0} {1} {2}", "a", "b", "c"));
+        assertEquals("plain message", logger.info("plain message"));
+    }
+
+    public void testThrowableFirstArgument() {
+        final Exception error = new Exception();
+        assertEquals("failed a", logger.error("failed {0}", error, "a"));
+        assertSame(error, stream.thrown.get(0));
+    }
+
+    public void testInstancesAreCached() {
+        final Logger logger = Logger.getInstance(LogCategory.OPENEJB.createChild("test"), RESOURCES);
+        assertSame(logger, Logger.getInstance(LogCategory.OPENEJB.createChild("test"), RESOURCES));
+        assertSame(logger.getChildLogger("child"), logger.getChildLogger("child"));
+    }
+
+    /**
+     * Logging with a disabled level mustn't allocate anything with the fixed arity methods
+     */
+    public void testNoGarbageWhenDisabled() {
+        final ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (!(bean instanceof com.sun.management.ThreadMXBean)) {
+            return;
+        }
+
+        final Object arg0 = "a";
+        final Object arg1 = "b";
+        for (int i = 0; i < 100000; i++) { // warm up
+            logger.debug("message {0}", arg0);
+            logger.debug("message {0} {1}", arg0, arg1);
+        }
+
+        final long threadId = Thread.currentThread().getId();
+        final com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) bean;
+        final long before = threads.getThreadAllocatedBytes(threadId);
+        for (int i = 0; i < 1000000; i++) {
+            logger.debug("message {0}", arg0);
+            logger.debug("message {0} {1}", arg0, arg1);
+        }
+        final long allocated = threads.getThreadAllocatedBytes(threadId) - before;
+
+        // a single allocation per call would be several megabytes
+        assertTrue("allocated " + allocated + " bytes", allocated < 16 * 1024);
+        assertTrue(stream.messages.isEmpty());
+    }
+
+    private static class RecordingStream implements LogStream {
+        private final List<String> messages = new ArrayList<String>();
+        private final List<Throwable> thrown = new ArrayList<Throwable>();
+        private boolean debug;
+
+        private void record(final String message, final Throwable t) {
+            messages.add(message);
+            thrown.add(t);
+        }
+
+        @Override
+        public boolean isFatalEnabled() {
+            return true;
+        }
+
+        @Override
+        public void fatal(final String message) {
+            record(message, null);
+        }
+
+        @Override
+        public void fatal(final String message, final Throwable t) {
+            record(message, t);
+        }
+
+        @Override
+        public boolean isErrorEnabled() {
+            return true;
+        }
+
+        @Override
+        public void error(final String message) {
+            record(message, null);
+        }
+
+        @Override
+        public void error(final String message, final Throwable t) {
+            record(message, t);
+        }
+
+        @Override
+        public boolean isWarnEnabled() {
+            return true;
+        }
+
+        @Override
+        public void warn(final String message) {
+            record(message, null);
+        }
+
+        @Override
+        public void warn(final String message, final Throwable t) {
+            record(message, t);
+        }
+
+        @Override
+        public boolean isInfoEnabled() {
+            return true;
+        }
+
+        @Override
+        public void info(final String message) {
+            record(message, null);
+        }
+
+        @Override
+        public void info(final String message, final Throwable t) {
+            record(message, t);
+        }
+
+        @Override
+        public boolean isDebugEnabled() {
+            return debug;
+        }
+
+        @Override
+        public void debug(final String message) {
+            record(message, null);
+        }
+
+        @Override
+        public void debug(final String message, final Throwable t) {
+            record(message, t);
+        }
+    }
+}
@@ -0,0 +1,35 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+    * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.openejb.sxc;
+
+import org.apache.openejb.jee.Connector;
+import org.junit.Test;
+
+import java.net.URL;
+
+import static org.junit.Assert.assertEquals;
+
+public class ConnectorXmlTest {
+    @Test
+    public void unmarshallConnector16() throws Exception {
+        final URL url = getClass().getClassLoader().getResource("connector-1.6-example.xml");
+        final Connector connector = ConnectorXml.unmarshal(url);
+        assertEquals("1.6", connector.getVersion());
+        assertEquals("vendor-name0", connector.getVendorName());
+        assertEquals("resourceadapter-class0", connector.getResourceAdapter().getResourceAdapterClass());
+    }
+}
@@ -44,7 +44,7 @@ import java.io.IOException;
  * @version $Rev$ $Date$
  */
 public class JaxbOpenejbJar3 {
-    private static JAXBContext jaxbContext;
+    private static volatile JAXBContext jaxbContext;
 
     public static <T> String marshal(final Class<T> type, final Object object) throws JAXBException {
         final ByteArrayOutputStream baos = new ByteArrayOutputStream();
@@ -0,0 +1,79 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.openejb.loader;
+
+import java.util.Map;
+
+/**
+ * Cached access to a {@link SystemInstance} component for code looking it up on each invocation.
+ * <p/>
+ * Handles are meant to be kept in static fields: the cached value is dropped as soon as
+ * {@link SystemInstance#setComponent(Class, Object)} or {@link SystemInstance#removeComponent(Class)}
+ * is called or the {@link SystemInstance} is reset, so a hit costs a few volatile reads and no map lookup.
+ * Misses are not cached and go through {@link SystemInstance#getComponent(Class)}.
+ */
+public final class ComponentHandle<T> {
+    private final Class<T> type;
+    private volatile Cached<T> cached;
+
+    public ComponentHandle(final Class<T> type) {
+        this.type = type;
+    }
+
+    public static <T> ComponentHandle<T> of(final Class<T> type) {
+        return new ComponentHandle<T>(type);
+    }
+
+    public T get() {
+        final SystemInstance system = SystemInstance.get();
+        final Map<Class, Object> components = system.getComponents();
+
+        final Cached<T> current = cached;
+        if (current != null && current.components == components) {
+            return current.value;
+        }
+
+        final Object value = components.get(type);
+        if (value == null) { // maybe created from a property, cached next time
+            return system.getComponent(type);
+        }
+
+        // bound to the map the value was read from so a concurrent update can't be hidden
+        final T component = type.cast(value);
+        cached = new Cached<T>(components, component);
+        return component;
+    }
+
+    public Class<T> getType() {
+        return type;
+    }
+
+    @Override
+    public String toString() {
+        return "ComponentHandle{" + type.getName() + "}";
+    }
+
+    private static final class Cached<T> {
+        private final Map<Class, Object> components;
+        private final T value;
+
+        private Cached(final Map<Class, Object> components, final T value) {
+            this.components = components;
+            this.value = value;
+        }
+    }
+}
@@ -54,7 +54,12 @@ public final class SystemInstance {
     private final FileUtils home;
     private final FileUtils base;
     private final ClassLoader classLoader;
-    private final Map<Class, Object> components;
+    /**
+     * Copy on write: readers never lock, writers publish a new map under componentsLock.
+     * The map instance is also the version {@link ComponentHandle} uses to know its cached value is stale.
+     */
+    private volatile Map<Class, Object> components;
+    private final Object componentsLock = new Object();
     private final ClassPath classPath;
     private final ObserverManager observerManager = new ObserverManager();
 
@@ -216,20 +221,30 @@ public final class SystemInstance {
 
         final String classname = getProperty(type.getName());
         if (classname != null) {
-            try {
-                final T instance = type.cast(Thread.currentThread().getContextClassLoader()
-                    .loadClass(classname).newInstance());
-                components.put(type, instance);
-                return instance;
-            } catch (final Exception e) {
-                // no-op
+            synchronized (componentsLock) {
+                final T existing = (T) components.get(type);
+                if (existing != null) { // created by a concurrent lookup
+                    return existing;
+                }
+
+                try {
+                    final T instance = type.cast(Thread.currentThread().getContextClassLoader()
+                        .loadClass(classname).newInstance());
+                    publish(type, instance);
+                    return instance;
+                } catch (final Exception e) {
+                    // no-op
+                }
             }
         }
         return null;
     }
 
     public <T> T removeComponent(final Class<T> type) {
-        final T component = (T) components.remove(type);
+        final T component;
+        synchronized (componentsLock) {
+            component = (T) publish(type, null);
+        }
 
         if (component != null) {
             fireEvent(new ComponentRemoved(type, component));
@@ -242,10 +257,13 @@ public final class SystemInstance {
      * @param type the class type of the component required
      */
     public <T> T setComponent(final Class<T> type, final T value) {
-        final T removed = (T) components.put(type, value);
+        final T removed;
+        synchronized (componentsLock) {
+            removed = (T) publish(type, value);
+        }
 
         if (removed != null) {
-            fireEvent(new ComponentRemoved(type, value));
+            fireEvent(new ComponentRemoved(type, removed));
         }
 
         if (value != null) {
@@ -255,7 +273,22 @@ public final class SystemInstance {
         return removed;
     }
 
-    private static SystemInstance system;
+    /**
+     * @return the current components, the instance changes each time a component is set or removed
+     */
+    Map<Class, Object> getComponents() {
+        return components;
+    }
+
+    // must be called holding componentsLock
+    private Object publish(final Class<?> type, final Object value) {
+        final Map<Class, Object> copy = new HashMap<Class, Object>(components);
+        final Object previous = value == null ? copy.remove(type) : copy.put(type, value);
+        components = copy;
+        return previous;
+    }
+
+    private static volatile SystemInstance system;
 
     static {
         reset();
@@ -294,7 +327,9 @@ public final class SystemInstance {
 
     private static void initDefaultComponents() {
         final SystemInstance systemInstance = get();
-        systemInstance.components.put(ProvisioningResolver.class, new ProvisioningResolver());
+        synchronized (systemInstance.componentsLock) {
+            systemInstance.publish(ProvisioningResolver.class, new ProvisioningResolver());
+        }
     }
 
     private static void readUserSystemProperties() {
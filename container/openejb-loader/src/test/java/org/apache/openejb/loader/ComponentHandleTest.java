@@ -0,0 +1,162 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.openejb.loader;
+
+import junit.framework.TestCase;
+import org.apache.openejb.loader.event.ComponentAdded;
+import org.apache.openejb.loader.event.ComponentRemoved;
+import org.apache.openejb.observer.Observes;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * @version $Rev$ $Date$
+ */
+public class ComponentHandleTest extends TestCase {
+
+    private static final ComponentHandle<Color> COLOR = ComponentHandle.of(Color.class);
+
+    @Override
+    protected void tearDown() throws Exception {
+        SystemInstance.reset();
+    }
+
+    public void testInvalidation() {
+        assertNull(COLOR.get());
+
+        final Color red = new Color("red");
+        SystemInstance.get().setComponent(Color.class, red);
+        assertSame(red, COLOR.get());
+        assertSame(red, COLOR.get());
+
+        final Color blue = new Color("blue");
+        SystemInstance.get().setComponent(Color.class, blue);
+        assertSame(blue, COLOR.get());
+
+        SystemInstance.get().removeComponent(Color.class);
+        assertNull(COLOR.get());
+    }
+
+    public void testReset() {
+        final Color red = new Color("red");
+        SystemInstance.get().setComponent(Color.class, red);
+        assertSame(red, COLOR.get());
+
+        SystemInstance.reset();
+        assertNull(COLOR.get());
+    }
+
+    public void testCreatedFromProperty() {
+        SystemInstance.get().setProperty(Color.class.getName(), Green.class.getName());
+        final Color green = COLOR.get();
+        assertNotNull(green);
+        assertSame(green, COLOR.get());
+        assertSame(green, SystemInstance.get().getComponent(Color.class));
+    }
+
+    public void testEvents() {
+        final Events events = new Events();
+        SystemInstance.get().addObserver(events);
+
+        SystemInstance.get().setComponent(Color.class, new Color("red"));
+        SystemInstance.get().setComponent(Color.class, new Color("blue"));
+        SystemInstance.get().removeComponent(Color.class);
+
+        final List<Object> expected = new ArrayList<Object>();
+        expected.add("added red");
+        expected.add("removed red");
+        expected.add("added blue");
+        expected.add("removed blue");
+        assertEquals(expected, events.events);
+    }
+
+    public void testConcurrentUpdates() throws Exception {
+        final int threads = 8;
+        final CountDownLatch start = new CountDownLatch(1);
+        final CountDownLatch done = new CountDownLatch(threads);
+        final AtomicReference<Throwable> error = new AtomicReference<Throwable>();
+
+        for (int i = 0; i < threads; i++) {
+            final boolean writer = i % 2 == 0;
+            new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                        for (int j = 0; j < 10000; j++) {
+                            if (writer) {
+                                final Color color = new Color(getName() + j);
+                                SystemInstance.get().setComponent(Color.class, color);
+                                final Color read = COLOR.get();
+                                assertNotNull(read);
+                            } else {
+                                COLOR.get();
+                                SystemInstance.get().getComponent(ComponentHandleTest.class);
+                            }
+                        }
+                    } catch (final Throwable t) {
+                        error.set(t);
+                    } finally {
+                        done.countDown();
+                    }
+                }
+            }.start();
+        }
+
+        start.countDown();
+        done.await();
+        assertNull(error.get());
+
+        final Color last = new Color("last");
+        SystemInstance.get().setComponent(Color.class, last);
+        assertSame(last, COLOR.get());
+    }
+
+    public static class Events {
+        private final List<Object> events = new ArrayList<Object>();
+
+        public void added(@Observes final ComponentAdded<?> event) {
+            events.add("added " + event.getComponent());
+        }
+
+        public void removed(@Observes final ComponentRemoved<?> event) {
+            events.add("removed " + event.getComponent());
+        }
+    }
+
+    public static class Color {
+        private final String name;
+
+        public Color(final String name) {
+            this.name = name;
+        }
+
+        @Override
+        public String toString() {
+            return name;
+        }
+    }
+
+    public static class Green extends Color {
+        public Green() {
+            super("green");
+        }
+    }
+}
@@ -0,0 +1,68 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.openejb.client;
+
+import org.apache.openejb.client.proxy.ProxyManager;
+
+import javax.ejb.NoSuchEJBException;
+import java.lang.reflect.Method;
+import java.util.UUID;
+
+/**
+ * Invokes any business method of a remote proxy without blocking the calling thread:
+ *
+ * <pre>
+ * final Method find = Catalog.class.getMethod("find", String.class);
+ * AsyncInvoker.&lt;Item&gt;invoke(catalog, find, "42").whenComplete(callback);
+ * </pre>
+ *
+ * The failures are the ones the proxy would have thrown, wrapped by get() in an ExecutionException.
+ * Set openejb.client.async.nonblocking to true to get the same behavior for @Asynchronous methods
+ * called directly on the proxy, the returned Future is then a {@link RemoteFuture}.
+ *
+ * @version $Rev$ $Date$
+ */
+public final class AsyncInvoker {
+
+    private AsyncInvoker() {
+        // no-op
+    }
+
+    @SuppressWarnings("unchecked")
+    public static <T> RemoteFuture<T> invoke(final Object proxy, final Method method, final Object... args) {
+        final EJBObjectHandler handler = getHandler(proxy);
+        if (handler.isInvalidReference.get()) {
+            final RemoteFuture<T> future = new RemoteFuture<T>();
+            future.fail(new NoSuchEJBException("reference is invalid"));
+            return future;
+        }
+
+        final boolean asynchronous = handler.ejb.isAsynchronousMethod(method);
+        final RemoteFuture<?> future = handler.businessMethodAsync(method, args, asynchronous ? UUID.randomUUID().toString() : null);
+        return (RemoteFuture<T>) future;
+    }
+
+    private static EJBObjectHandler getHandler(final Object proxy) {
+        if (proxy != null && ProxyManager.isProxyClass(proxy.getClass())) {
+            final Object handler = ProxyManager.getInvocationHandler(proxy);
+            if (handler instanceof EJBObjectHandler) {
+                return (EJBObjectHandler) handler;
+            }
+        }
+        throw new IllegalArgumentException("Not a remote EJB proxy: " + proxy);
+    }
+}
@@ -16,6 +16,8 @@
  */
 package org.apache.openejb.client;
 
+import org.apache.openejb.client.event.AsyncRequestRejected;
+import org.apache.openejb.client.event.AsyncRequestTimeout;
 import org.apache.openejb.client.event.ClientVersion;
 import org.apache.openejb.client.event.ClusterMetaDataUpdated;
 import org.apache.openejb.client.event.ObserverAdded;
@@ -43,6 +45,9 @@ import java.util.Properties;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeoutException;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -51,6 +56,9 @@ import static org.apache.openejb.client.Exceptions.newIOException;
 public class Client {
 
     public static final String OPENEJB_CLIENT_RETRY_CONDITION_MAX = "openejb.client.retry.condition.max";
+    public static final String OPENEJB_CLIENT_ASYNC_MAX_IN_FLIGHT = "openejb.client.async.max-in-flight";
+    public static final String OPENEJB_CLIENT_ASYNC_TIMEOUT = "openejb.client.async.timeout";
+    public static final String OPENEJB_CLIENT_ASYNC_NONBLOCKING = "openejb.client.async.nonblocking";
     private static final String OPENEJB_CLIENT_COMPATIBILITY_VERSION = "openejb.client.protocol.version";
 
     private static final Logger logger = Logger.getLogger("OpenEJB.client");
@@ -144,6 +152,110 @@ public class Client {
         }
     }
 
+    /**
+     * Writes the request and returns without waiting for the response, see {@link ResponseSelector}.
+     *
+     * Each request in flight keeps its own connection until the response is read so the
+     * connection pool of the server should be sized for openejb.client.async.max-in-flight
+     * (256 by default), above that limit the returned future fails right away with a
+     * RejectedExecutionException. openejb.client.async.timeout (milliseconds, none by default)
+     * fails requests still waiting for their response, the connection is then dropped.
+     *
+     * Unlike {@link #request(Request, Response, ServerMetaData)} a request which failed once
+     * written is not retried on another server, it may already be executing.
+     */
+    public static <T extends Response> RemoteFuture<T> requestAsync(final Request req, final T res, final ServerMetaData server) {
+        if (server == null) {
+            throw new IllegalArgumentException("Server instance cannot be null");
+        }
+
+        final RemoteFuture<T> future = new RemoteFuture<T>();
+        final Context context = getContext(server);
+        final Semaphore inFlight = context.getInFlight();
+        if (!inFlight.tryAcquire()) {
+            final int max = context.getOptions().get(OPENEJB_CLIENT_ASYNC_MAX_IN_FLIGHT, 256);
+            fireEvent(new AsyncRequestRejected(server.getLocation(), req, max));
+            future.fail(new RejectedExecutionException("Too many asynchronous requests in flight to " + server.getLocation() + " (" + max + ")"));
+            return future;
+        }
+
+        final ClusterMetaData cluster = getClusterMetaData(server);
+        final ProtocolMetaData protocolRequest = (null != COMPATIBLE_META_DATA ? COMPATIBLE_META_DATA : PROTOCOL_META_DATA);
+
+        final Connection conn;
+        try {
+            conn = ConnectionManager.getConnection(cluster, server, req);
+        } catch (final IOException e) {
+            inFlight.release();
+            future.fail(new RemoteException("Unable to connect", e));
+            return future;
+        } finally {
+            failed.remove();
+        }
+
+        try {
+            final OutputStream out = conn.getOutputStream();
+            writeRequest(out, protocolRequest, req, server, cluster);
+        } catch (final Throwable e) {
+            fireEvent(new RequestFailed(conn.getURI(), req, e));
+            conn.discard();
+            inFlight.release();
+            future.fail(e instanceof RemoteException ? e : new RemoteException("Error while communicating with server: ", e));
+            return future;
+        }
+
+        final long timeout = context.getOptions().get(OPENEJB_CLIENT_ASYNC_TIMEOUT, 0L);
+        // the response classes are resolved as the caller would have
+        final ClassLoader loader = Thread.currentThread().getContextClassLoader();
+        final ResponseSelector.Pending pending = new ResponseSelector.Pending(conn, timeout) {
+            @Override
+            protected void receive() throws Throwable {
+                final Thread thread = Thread.currentThread();
+                final ClassLoader old = thread.getContextClassLoader();
+                thread.setContextClassLoader(loader);
+                try {
+                    readResponse(conn.getInputStream(), res, server);
+                } finally {
+                    thread.setContextClassLoader(old);
+                }
+            }
+
+            @Override
+            protected void onResponse() {
+                try {
+                    conn.close();
+                } catch (final Throwable t) {
+                    logger.log(Level.WARNING, "Error closing connection with server: " + t.getMessage(), t);
+                }
+                inFlight.release();
+                future.complete(res);
+            }
+
+            @Override
+            protected void onTimeout() {
+                fireEvent(new AsyncRequestTimeout(conn.getURI(), req, timeout));
+                conn.discard();
+                inFlight.release();
+                future.fail(new RemoteException("No response from " + conn.getURI() + " after " + timeout + "ms", new TimeoutException()));
+            }
+
+            @Override
+            protected void onFailure(final Throwable e) {
+                fireEvent(new RequestFailed(conn.getURI(), req, e));
+                conn.discard();
+                inFlight.release();
+                future.fail(e instanceof RemoteException ? e : new RemoteException("Error while communicating with server: ", e));
+            }
+        };
+
+        try {
+            ResponseSelector.get().await(pending);
+        } catch (final IOException e) {
+            pending.onFailure(e);
+        }
+        return future;
+    }
+
     protected Response processRequest(final Request req, final Response res, final ServerMetaData server) throws RemoteException {
 
         if (server == null) {
@@ -184,76 +296,7 @@ public class Client {
                 throw newIOException("Cannot open output stream to server: ", e);
             }
 
-            /*----------------------------------*/
-            /* Write the protocol magic         */
-            /*----------------------------------*/
-            try {
-                protocolRequest.writeExternal(out);
-                out.flush();
-            } catch (final IOException e) {
-                throw newIOException("Cannot write the protocol metadata to the server: ", e);
-            }
-
-            /*----------------------------------*/
-            /* Get output streams */
-            /*----------------------------------*/
-            final ObjectOutput objectOut;
-            try {
-                objectOut = new ObjectOutputStream(out);
-            } catch (final IOException e) {
-                throw newIOException("Cannot open object output stream to server: ", e);
-            }
-
-            /*----------------------------------*/
-            /* Write ServerMetaData */
-            /*----------------------------------*/
-            try {
-                server.setMetaData(protocolRequest);
-                server.writeExternal(objectOut);
-            } catch (final IOException e) {
-                throw newIOException("Cannot write the ServerMetaData to the server: ", e);
-            }
-
-            /*----------------------------------*/
-            /* Write ClusterMetaData */
-            /*----------------------------------*/
-            try {
-
-                final ClusterRequest clusterRequest = new ClusterRequest(cluster);
-                clusterRequest.setMetaData(protocolRequest);
-                objectOut.write(clusterRequest.getRequestType().getCode());
-                clusterRequest.writeExternal(objectOut);
-            } catch (final Throwable e) {
-                throw newIOException("Cannot write the ClusterMetaData to the server: ", e);
-            }
-
-            /*----------------------------------*/
-            /* Write request type */
-            /*----------------------------------*/
-            try {
-                objectOut.write(req.getRequestType().getCode());
-            } catch (final IOException e) {
-                throw newIOException("Cannot write the request type to the server: ", e);
-            }
-
-            /*----------------------------------*/
-            /* Write request */
-            /*----------------------------------*/
-            try {
-
-                req.setMetaData(protocolRequest);
-                req.writeExternal(objectOut);
-                objectOut.flush();
-                out.flush();
-
-            } catch (final java.io.NotSerializableException e) {
-
-                throw new IllegalArgumentException("Object is not serializable: " + e.getMessage());
-
-            } catch (final IOException e) {
-
-                throw newIOException("Cannot write the request to the server: " + e.getMessage(), e);
-            }
+            writeRequest(out, protocolRequest, req, server, cluster);
 
             /*----------------------------------*/
             /* Get input streams               */
@@ -267,71 +310,7 @@ public class Client {
                 throw newIOException("Cannot open input stream to server: ", e);
             }
 
-            //Determine the server response protocol for reading
-            final ProtocolMetaData protocolResponse = new ProtocolMetaData();
-            try {
-
-                protocolResponse.readExternal(in);
-
-            } catch (final EOFException e) {
-
-                throw newIOException("Prematurely reached the end of the stream.  " + protocolResponse.getSpec() + " : " + e.getMessage(), e);
-
-            } catch (final IOException e) {
-
-                throw newIOException("Cannot determine server protocol version: Received " + protocolResponse.getSpec() + " : " + e.getMessage(), e);
-            }
-
-            final ObjectInput objectIn;
-            try {
-
-                objectIn = new EjbObjectInputStream(in);
-
-            } catch (final IOException e) {
-                throw newIOException("Cannot open object input stream to server (" + protocolResponse.getSpec() + ") : " + e.getMessage(), e);
-            }
-
-            /*----------------------------------*/
-            /* Read cluster response */
-            /*----------------------------------*/
-            try {
-                final ClusterResponse clusterResponse = new ClusterResponse();
-                clusterResponse.setMetaData(protocolResponse);
-                clusterResponse.readExternal(objectIn);
-                switch (clusterResponse.getResponseCode()) {
-                    case UPDATE: {
-                        setClusterMetaData(server, clusterResponse.getUpdatedMetaData());
-                    }
-                    break;
-                    case FAILURE: {
-                        throw clusterResponse.getFailure();
-                    }
-                }
-            } catch (final ClassNotFoundException e) {
-                throw new RemoteException("Cannot read the cluster response from the server.  The class for an object being returned is not located in this system:", e);
-
-            } catch (final IOException e) {
-                throw newIOException("Cannot read the cluster response from the server (" + protocolResponse.getSpec() + ") : " + e.getMessage(), e);
-
-            } catch (final Throwable e) {
-                throw new RemoteException("Error reading cluster response from server (" + protocolResponse.getSpec() + ") : " + e.getMessage(), e);
-            }
-
-            /*----------------------------------*/
-            /* Read response */
-            /*----------------------------------*/
-            try {
-                res.setMetaData(protocolResponse);
-                res.readExternal(objectIn);
-            } catch (final ClassNotFoundException e) {
-                throw new RemoteException("Cannot read the response from the server.  The class for an object being returned is not located in this system:", e);
-
-            } catch (final IOException e) {
-                throw newIOException("Cannot read the response from the server (" + protocolResponse.getSpec() + ") : " + e.getMessage(), e);
-
-            } catch (final Throwable e) {
-                throw new RemoteException("Error reading response from server (" + protocolResponse.getSpec() + ") : " + e.getMessage(), e);
-            }
+            readResponse(in, res, server);
 
             if (retryConditions.size() > 0) {
                 if (res instanceof EJBResponse) {
@@ -424,6 +403,155 @@ public class Client {
         return res;
     }
 
+    static void writeRequest(final OutputStream out, final ProtocolMetaData protocolRequest, final Request req,
+                             final ServerMetaData server, final ClusterMetaData cluster) throws IOException {
+        /*----------------------------------*/
+        /* Write the protocol magic         */
+        /*----------------------------------*/
+        try {
+            protocolRequest.writeExternal(out);
+            out.flush();
+        } catch (final IOException e) {
+            throw newIOException("Cannot write the protocol metadata to the server: ", e);
+        }
+
+        /*----------------------------------*/
+        /* Get output streams */
+        /*----------------------------------*/
+        final ObjectOutput objectOut;
+        try {
+            objectOut = new ObjectOutputStream(out);
+        } catch (final IOException e) {
+            throw newIOException("Cannot open object output stream to server: ", e);
+        }
+
+        /*----------------------------------*/
+        /* Write ServerMetaData */
+        /*----------------------------------*/
+        try {
+            server.setMetaData(protocolRequest);
+            server.writeExternal(objectOut);
+        } catch (final IOException e) {
+            throw newIOException("Cannot write the ServerMetaData to the server: ", e);
+        }
+
+        /*----------------------------------*/
+        /* Write ClusterMetaData */
+        /*----------------------------------*/
+        try {
+
+            final ClusterRequest clusterRequest = new ClusterRequest(cluster);
+            clusterRequest.setMetaData(protocolRequest);
+            objectOut.write(clusterRequest.getRequestType().getCode());
+            clusterRequest.writeExternal(objectOut);
+        } catch (final Throwable e) {
+            throw newIOException("Cannot write the ClusterMetaData to the server: ", e);
+        }
+
+        /*----------------------------------*/
+        /* Write request type */
+        /*----------------------------------*/
+        try {
+            objectOut.write(req.getRequestType().getCode());
+        } catch (final IOException e) {
+            throw newIOException("Cannot write the request type to the server: ", e);
+        }
+
+        /*----------------------------------*/
+        /* Write request */
+        /*----------------------------------*/
+        try {
+
+            if (req instanceof EJBRequest) {
+                final Options options = getContext(server).getOptions();
+                ((EJBRequest) req).setCompression(Compression.Codec.parse(options.get(Compression.OPENEJB_CLIENT_COMPRESSION, "none")),
+                    options.get(Compression.OPENEJB_CLIENT_COMPRESSION_THRESHOLD, Compression.DEFAULT_THRESHOLD));
+            }
+
+            req.setMetaData(protocolRequest);
+            req.writeExternal(objectOut);
+            objectOut.flush();
+            out.flush();
+
+        } catch (final java.io.NotSerializableException e) {
+
+            throw new IllegalArgumentException("Object is not serializable: " + e.getMessage());
+
+        } catch (final IOException e) {
+
+            throw newIOException("Cannot write the request to the server: " + e.getMessage(), e);
+        }
+    }
+
+    static void readResponse(final InputStream in, final Response res, final ServerMetaData server) throws IOException {
+        //Determine the server response protocol for reading
+        final ProtocolMetaData protocolResponse = new ProtocolMetaData();
+        try {
+
+            protocolResponse.readExternal(in);
+
+        } catch (final EOFException e) {
+
+            throw newIOException("Prematurely reached the end of the stream.  " + protocolResponse.getSpec() + " : " + e.getMessage(), e);
+
+        } catch (final IOException e) {
+
+            throw newIOException("Cannot determine server protocol version: Received " + protocolResponse.getSpec() + " : " + e.getMessage(), e);
+        }
+
+        final ObjectInput objectIn;
+        try {
+
+            objectIn = new EjbObjectInputStream(in);
+
+        } catch (final IOException e) {
+            throw newIOException("Cannot open object input stream to server (" + protocolResponse.getSpec() + ") : " + e.getMessage(), e);
+        }
+
+        /*----------------------------------*/
+        /* Read cluster response */
+        /*----------------------------------*/
+        try {
+            final ClusterResponse clusterResponse = new ClusterResponse();
+            clusterResponse.setMetaData(protocolResponse);
+            clusterResponse.readExternal(objectIn);
+            getContext(server).getLookupCache().setDeploymentVersion(clusterResponse.getDeploymentVersion());
+            switch (clusterResponse.getResponseCode()) {
+                case UPDATE: {
+                    setClusterMetaData(server, clusterResponse.getUpdatedMetaData());
+                }
+                break;
+                case FAILURE: {
+                    throw clusterResponse.getFailure();
+                }
+            }
+        } catch (final ClassNotFoundException e) {
+            throw new RemoteException("Cannot read the cluster response from the server.  The class for an object being returned is not located in this system:", e);
+
+        } catch (final IOException e) {
+            throw newIOException("Cannot read the cluster response from the server (" + protocolResponse.getSpec() + ") : " + e.getMessage(), e);
+
+        } catch (final Throwable e) {
+            throw new RemoteException("Error reading cluster response from server (" + protocolResponse.getSpec() + ") : " + e.getMessage(), e);
+        }
+
+        /*----------------------------------*/
+        /* Read response */
+        /*----------------------------------*/
+        try {
+            res.setMetaData(protocolResponse);
+            res.readExternal(objectIn);
+        } catch (final ClassNotFoundException e) {
+            throw new RemoteException("Cannot read the response from the server.  The class for an object being returned is not located in this system:", e);
+
+        } catch (final IOException e) {
+            throw newIOException("Cannot read the response from the server (" + protocolResponse.getSpec() + ") : " + e.getMessage(), e);
+
+        } catch (final Throwable e) {
+            throw new RemoteException("Error reading response from server (" + protocolResponse.getSpec() + ") : " + e.getMessage(), e);
+        }
+    }
+
     public static Set<URI> getFailed() {
         Set<URI> set = failed.get();
         if (set == null) {
@@ -465,10 +593,13 @@ public class Client {
         private final ServerMetaData serverMetaData;
         private ClusterMetaData clusterMetaData;
         private Options options;
+        private final LookupCache lookupCache;
+        private Semaphore inFlight;
 
         private Context(final ServerMetaData serverMetaData) {
             this.serverMetaData = serverMetaData;
             this.clusterMetaData = new ClusterMetaData(0, serverMetaData.getLocation());
+            this.lookupCache = new LookupCache(serverMetaData.getLocation());
 
             options = new Options(properties, new Options(System.getProperties()));
         }
@@ -522,6 +653,17 @@ public class Client {
             return options;
         }
 
+        public LookupCache getLookupCache() {
+            return lookupCache;
+        }
+
+        public synchronized Semaphore getInFlight() {
+            if (inFlight == null) {
+                inFlight = new Semaphore(options.get(OPENEJB_CLIENT_ASYNC_MAX_IN_FLIGHT, 256));
+            }
+            return inFlight;
+        }
+
         public Set<URI> diff(final Set<URI> a, final Set<URI> b) {
             final Set<URI> diffs = new HashSet<URI>();
             for (final URI uri : b) {
@@ -36,6 +36,7 @@ public class ClusterResponse implements Response {
     private Code responseCode;
     private ClusterMetaData updatedMetaData;
     private Throwable failure;
+    private long deploymentVersion = LookupCache.UNKNOWN_VERSION;
     private transient ProtocolMetaData metaData;
 
     public ClusterResponse(final Code responseCode) {
@@ -76,11 +77,23 @@ public class ClusterResponse implements Response {
         this.failure = failure;
     }
 
+    public long getDeploymentVersion() {
+        return deploymentVersion;
+    }
+
+    public void setDeploymentVersion(final long deploymentVersion) {
+        this.deploymentVersion = deploymentVersion;
+    }
+
     @Override
     public void readExternal(final ObjectInput in) throws IOException, ClassNotFoundException {
         final byte i = in.readByte();
         responseCode = Code.values()[i];
 
+        if (null == metaData || metaData.isAtLeast(4, 7)) {
+            deploymentVersion = in.readLong();
+        }
+
         switch (responseCode) {
             case CURRENT:
                 break;
@@ -100,6 +113,10 @@ public class ClusterResponse implements Response {
     public void writeExternal(final ObjectOutput out) throws IOException {
         out.writeByte(responseCode.ordinal());
 
+        if (null == metaData || metaData.isAtLeast(4, 7)) {
+            out.writeLong(deploymentVersion);
+        }
+
         switch (responseCode) {
             case CURRENT:
                 break;
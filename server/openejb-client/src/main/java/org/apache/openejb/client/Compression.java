@@ -0,0 +1,361 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.openejb.client;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
+import java.io.ObjectOutputStream;
+import java.util.Arrays;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Compression of the large parts of the ejbd messages, the method parameters of a request and
+ * the result of its response, decided for each message.
+ *
+ * The client asks for a codec with each request (openejb.client.compression=fast or deflate),
+ * the server answers with it, or a cheaper one, if the result serializes to more than its threshold.
+ * Smaller payloads and the ones which don't compress are sent as they are.
+ *
+ * The codecs are deflate at two levels: fast is the cheapest level, a fraction of the cpu of
+ * deflate which is the level gzip uses. The deflaters are reused by each thread.
+ *
+ * @version $Rev$ $Date$
+ */
+public final class Compression {
+
+    public static final String OPENEJB_CLIENT_COMPRESSION = "openejb.client.compression";
+    public static final String OPENEJB_CLIENT_COMPRESSION_THRESHOLD = "openejb.client.compression.threshold";
+    public static final int DEFAULT_THRESHOLD = 64 * 1024;
+
+    // payload markers, the codec ordinals for the compressed ones
+    private static final byte INLINE = 0;
+    private static final byte SERIALIZED = 3;
+
+    // deflate can't do better, a larger size announced is a corrupted or hostile stream
+    private static final int MAX_RATIO = 1032;
+
+    private static final int KEPT_BUFFER_SIZE = 1024 * 1024;
+
+    private static final ThreadLocal<Codecs> codecs = new ThreadLocal<Codecs>() {
+        @Override
+        protected Codecs initialValue() {
+            return new Codecs();
+        }
+    };
+
+    private Compression() {
+        // no-op
+    }
+
+    public enum Codec {
+        NONE(Deflater.NO_COMPRESSION),
+        FAST(Deflater.BEST_SPEED),
+        DEFLATE(Deflater.DEFAULT_COMPRESSION);
+
+        private final int level;
+
+        Codec(final int level) {
+            this.level = level;
+        }
+
+        public static Codec valueOf(final int ordinal) {
+            final Codec[] values = values();
+            return ordinal >= 0 && ordinal < values.length ? values[ordinal] : NONE;
+        }
+
+        /**
+         * @return NONE for an unknown or empty name
+         */
+        public static Codec parse(final String name) {
+            if (name == null) {
+                return NONE;
+            }
+            for (final Codec codec : values()) {
+                if (codec.name().equalsIgnoreCase(name.trim())) {
+                    return codec;
+                }
+            }
+            return NONE;
+        }
+    }
+
+    /**
+     * Writes a part of a message, the other side reads it with {@link #open(ObjectInput, Sample)}
+     */
+    public interface Payload {
+
+        void writeTo(ObjectOutput out) throws IOException;
+    }
+
+    /**
+     * What compressing or inflating one payload did, only for buffered payloads
+     */
+    public static final class Sample {
+
+        private Codec codec = Codec.NONE;
+        private int size;
+        private int compressedSize;
+        private long time;
+
+        public Codec getCodec() {
+            return codec;
+        }
+
+        public int getSize() {
+            return size;
+        }
+
+        /**
+         * @return the size sent, the size if the payload wasn't compressed
+         */
+        public int getCompressedSize() {
+            return compressedSize;
+        }
+
+        /**
+         * @return nanoseconds spent (de)compressing
+         */
+        public long getTime() {
+            return time;
+        }
+
+        @Override
+        public String toString() {
+            return "Sample{" +
+                "codec=" + codec +
+                ", size=" + size +
+                ", compressedSize=" + compressedSize +
+                ", time=" + time + "ns" +
+                '}';
+        }
+    }
+
+    public static Sample write(final ObjectOutput out, final Object value, final Codec codec, final int threshold) throws IOException {
+        return write(out, new Payload() {
+            @Override
+            public void writeTo(final ObjectOutput out) throws IOException {
+                out.writeObject(value);
+            }
+        }, codec, threshold);
+    }
+
+    /**
+     * @return null if the payload was written inline, not buffered
+     */
+    public static Sample write(final ObjectOutput out, final Payload payload, final Codec codec, final int threshold) throws IOException {
+        if (codec == null || codec == Codec.NONE) {
+            out.writeByte(INLINE);
+            payload.writeTo(out);
+            return null;
+        }
+
+        final Codecs buffers = codecs.get();
+        try {
+            final Buffer serialized = buffers.serialized;
+            final ObjectOutputStream oos = new ObjectOutputStream(serialized);
+            payload.writeTo(oos);
+            oos.close();
+
+            final Sample sample = new Sample();
+            sample.size = serialized.size();
+
+            if (sample.size >= threshold) {
+                final long start = System.nanoTime();
+                final int compressed = buffers.deflate(codec, serialized.buffer(), sample.size);
+                sample.time = System.nanoTime() - start;
+
+                if (compressed < sample.size) {
+                    sample.codec = codec;
+                    sample.compressedSize = compressed;
+
+                    out.writeByte(codec.ordinal());
+                    out.writeInt(sample.size);
+                    out.writeInt(compressed);
+                    out.write(buffers.compressed, 0, compressed);
+                    return sample;
+                }
+            }
+
+            sample.compressedSize = sample.size;
+            out.writeByte(SERIALIZED);
+            out.writeInt(sample.size);
+            out.write(serialized.buffer(), 0, sample.size);
+            return sample;
+        } finally {
+            buffers.release();
+        }
+    }
+
+    /**
+     * @param sample filled with what was done to read the payload if not null
+     * @return the stream to read the payload from, in itself if it was written inline
+     */
+    public static ObjectInput open(final ObjectInput in, final Sample sample) throws IOException {
+        final byte marker = in.readByte();
+        if (marker == INLINE) {
+            return in;
+        }
+
+        final byte[] bytes;
+        if (marker == SERIALIZED) {
+            final int size = in.readInt();
+            bytes = readFully(in, size);
+
+            if (sample != null) {
+                sample.size = size;
+                sample.compressedSize = size;
+            }
+        } else {
+            final Codec codec = Codec.valueOf(marker);
+            if (codec == Codec.NONE) {
+                throw new IOException("Unknown payload encoding " + marker);
+            }
+
+            final int size = in.readInt();
+            final int compressedSize = in.readInt();
+            if (size < 0 || compressedSize < 0 || size > (long) compressedSize * MAX_RATIO) {
+                throw new IOException("Invalid compressed payload of " + compressedSize + " bytes for " + size + " bytes");
+            }
+            final byte[] compressed = readFully(in, compressedSize);
+
+            final long start = System.nanoTime();
+            bytes = codecs.get().inflate(compressed, size);
+
+            if (sample != null) {
+                sample.codec = codec;
+                sample.size = size;
+                sample.compressedSize = compressedSize;
+                sample.time = System.nanoTime() - start;
+            }
+        }
+
+        return new EjbObjectInputStream(new ByteArrayInputStream(bytes));
+    }
+
+    /**
+     * Grows with what is actually read so a size announced by a corrupted stream can't exhaust the memory
+     */
+    private static byte[] readFully(final ObjectInput in, final int size) throws IOException {
+        if (size < 0) {
+            throw new IOException("Invalid payload size " + size);
+        }
+
+        byte[] bytes = new byte[Math.min(size, 64 * 1024)];
+        int read = 0;
+        while (read < size) {
+            if (read == bytes.length) {
+                bytes = Arrays.copyOf(bytes, (int) Math.min(size, bytes.length * 2L));
+            }
+            final int n = in.read(bytes, read, bytes.length - read);
+            if (n < 0) {
+                throw new IOException("Payload truncated, read " + read + " of " + size + " bytes");
+            }
+            read += n;
+        }
+        return bytes;
+    }
+
+    private static final class Buffer extends ByteArrayOutputStream {
+
+        private Buffer() {
+            super(8 * 1024);
+        }
+
+        private byte[] buffer() {
+            return buf;
+        }
+
+        private void release() {
+            if (buf.length > KEPT_BUFFER_SIZE) {
+                buf = new byte[8 * 1024];
+            }
+            reset();
+        }
+    }
+
+    private static final class Codecs {
+
+        private final Buffer serialized = new Buffer();
+        private final Deflater[] deflaters = new Deflater[Codec.values().length];
+        private Inflater inflater;
+        private byte[] compressed = new byte[8 * 1024];
+
+        private int deflate(final Codec codec, final byte[] data, final int length) {
+            Deflater deflater = deflaters[codec.ordinal()];
+            if (deflater == null) {
+                deflater = new Deflater(codec.level, true);
+                deflaters[codec.ordinal()] = deflater;
+            } else {
+                deflater.reset();
+            }
+
+            if (compressed.length < length) {
+                compressed = new byte[length];
+            }
+
+            deflater.setInput(data, 0, length);
+            deflater.finish();
+            int size = 0;
+            while (!deflater.finished() && size < length) {
+                size += deflater.deflate(compressed, size, length - size);
+            }
+            return deflater.finished() ? size : length; // didn't fit, not worth it
+        }
+
+        private byte[] inflate(final byte[] data, final int size) throws IOException {
+            if (inflater == null) {
+                inflater = new Inflater(true);
+            } else {
+                inflater.reset();
+            }
+
+            // raw deflate needs an extra byte to see the end of the data
+            final byte[] input = Arrays.copyOf(data, data.length + 1);
+            inflater.setInput(input);
+
+            final byte[] bytes = new byte[size];
+            try {
+                int read = 0;
+                while (read < size) {
+                    final int n = inflater.inflate(bytes, read, size - read);
+                    if (n == 0 && (inflater.finished() || inflater.needsInput() || inflater.needsDictionary())) {
+                        break;
+                    }
+                    read += n;
+                }
+                if (read != size) {
+                    throw new IOException("Compressed payload inflated to " + read + " bytes instead of " + size);
+                }
+            } catch (final DataFormatException e) {
+                throw new IOException("Corrupted compressed payload", e);
+            }
+            return bytes;
+        }
+
+        private void release() {
+            serialized.release();
+            if (compressed.length > KEPT_BUFFER_SIZE) {
+                compressed = new byte[8 * 1024];
+            }
+        }
+    }
+}
@@ -121,6 +121,16 @@ public class ConnectionManager {
         }
     }
 
+    /**
+     * Opens connections to this server ahead of the first requests, if its connection factory pools them.
+     */
+    public static void warmUp(final URI uri, final int connections) {
+        final ConnectionFactory factory = factories.get(uri.getScheme());
+        if (factory instanceof SocketConnectionFactory) {
+            ((SocketConnectionFactory) factory).warmUp(uri, connections);
+        }
+    }
+
     public static void registerFactory(final String scheme, final ConnectionFactory factory) {
         factories.register(scheme, factory);
         Client.fireEvent(new ConnectionFactoryAdded(scheme, factory));
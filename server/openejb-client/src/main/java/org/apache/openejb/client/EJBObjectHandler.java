@@ -203,38 +203,45 @@ public abstract class EJBObjectHandler extends EJBInvocationHandler {
 
             }
 
-        } catch (SystemException e) {
+        } catch (Throwable throwable) {
+            throw toClientException(throwable, m);
+        }
+    }
+
+    /**
+     * @return what the client sees for an invocation which failed with throwable
+     */
+    protected Throwable toClientException(final Throwable throwable, final Method m) {
+        if (throwable instanceof SystemException) {
             invalidateAllHandlers(getRegistryId());
-            throw convertException(getCause(e), m);
+            return convertException(getCause(throwable), m);
             /*
             * Application exceptions must be reported dirctly to the client. They
             * do not impact the viability of the proxy.
             */
-        } catch (ApplicationException ae) {
-            throw convertException(getCause(ae), m);
+        } else if (throwable instanceof ApplicationException) {
+            return convertException(getCause(throwable), m);
             /*
             * A system exception would be highly unusual and would indicate a sever
             * problem with the container system.
             */
-        } catch (SystemError se) {
+        } else if (throwable instanceof SystemError) {
             invalidateReference();
             if (remote) {
-                throw new RemoteException("Container has suffered a SystemException", getCause(se));
+                return new RemoteException("Container has suffered a SystemException", getCause(throwable));
             } else {
-                throw new EJBException("Container has suffered a SystemException").initCause(getCause(se));
+                return new EJBException("Container has suffered a SystemException").initCause(getCause(throwable));
             }
-        } catch (Throwable throwable) {
-            if (remote) {
-                if (throwable instanceof RemoteException) {
-                    throw throwable;
-                }
-                throw new RemoteException("Unknown Container Exception: " + throwable.getClass().getName() + ": " + throwable.getMessage(), getCause(throwable));
-            } else {
-                if (throwable instanceof EJBException) {
-                    throw throwable;
-                }
-                throw new EJBException("Unknown Container Exception: " + throwable.getClass().getName() + ": " + throwable.getMessage()).initCause(getCause(throwable));
+        } else if (remote) {
+            if (throwable instanceof RemoteException) {
+                return throwable;
             }
+            return new RemoteException("Unknown Container Exception: " + throwable.getClass().getName() + ": " + throwable.getMessage(), getCause(throwable));
+        } else {
+            if (throwable instanceof EJBException) {
+                return throwable;
+            }
+            return new EJBException("Unknown Container Exception: " + throwable.getClass().getName() + ": " + throwable.getMessage()).initCause(getCause(throwable));
         }
     }
 
@@ -261,6 +268,9 @@ public abstract class EJBObjectHandler extends EJBInvocationHandler {
     protected Object businessMethod(final Method method, final Object[] args, final Object proxy) throws Throwable {
 
         if (ejb.isAsynchronousMethod(method)) {
+            if (Client.getContext(server).getOptions().get(Client.OPENEJB_CLIENT_ASYNC_NONBLOCKING, false)) {
+                return businessMethodAsync(method, args, UUID.randomUUID().toString());
+            }
             try {
                 final String requestId = UUID.randomUUID().toString();
                 final EJBResponse response = new EJBResponse();
@@ -288,6 +298,79 @@ public abstract class EJBObjectHandler extends EJBInvocationHandler {
         return _handleBusinessMethodResponse(res);
     }
 
+    /**
+     * Sends the invocation without waiting for the server, see {@link Client#requestAsync(Request, Response, ServerMetaData)}.
+     *
+     * @param requestId set for @Asynchronous methods so the invocation can be flagged as cancelled on the server
+     */
+    protected RemoteFuture<Object> businessMethodAsync(final Method method, final Object[] args, final String requestId) {
+        final EJBRequest req = new EJBRequest(RequestMethodCode.EJB_OBJECT_BUSINESS_METHOD, ejb, method, args, primaryKey, client.getSerializer());
+
+        final EJBRequest.Body body = req.getBody();
+        body.setRequestId(requestId);
+        body.setAuthentication(this.authenticationInfo);
+        req.setClientIdentity(getClientIdentity());
+        req.setServerHash(server.buildHash());
+
+        final RemoteFuture<Object> result;
+        if (requestId == null) {
+            result = new RemoteFuture<Object>();
+        } else {
+            result = new RemoteFuture<Object>() {
+                private final AtomicBoolean lastMayInterruptIfRunningValue = new AtomicBoolean(false);
+
+                @Override
+                public boolean cancel(final boolean mayInterruptIfRunning) {
+                    // the invocation is already dispatched so as in FutureAdapter it is only flagged on the server
+                    if (!isDone() && lastMayInterruptIfRunningValue.getAndSet(mayInterruptIfRunning) != mayInterruptIfRunning) {
+                        requestCancel(requestId, mayInterruptIfRunning);
+                    }
+                    return false;
+                }
+            };
+        }
+
+        Client.requestAsync(req, new EJBResponse(), server).whenComplete(new RemoteFuture.Callback<EJBResponse>() {
+            @Override
+            public void completed(final EJBResponse res) {
+                if (null != res.getServer()) {
+                    server.merge(res.getServer());
+                }
+                try {
+                    result.complete(_handleBusinessMethodResponse(res));
+                } catch (final Throwable t) {
+                    result.fail(toClientException(t, method));
+                }
+            }
+
+            @Override
+            public void failed(final Throwable cause) {
+                result.fail(toClientException(cause, method));
+            }
+        });
+        return result;
+    }
+
+    private void requestCancel(final String requestId, final boolean mayInterruptIfRunning) {
+        final EJBRequest req = new EJBRequest(RequestMethodCode.FUTURE_CANCEL,
+            ejb,
+            CANCEL,
+            new Object[]{mayInterruptIfRunning},
+            primaryKey,
+            client.getSerializer());
+        req.getBody().setRequestId(requestId);
+        try {
+            final EJBResponse res = request(req);
+            if (res.getResponseCode() != ResponseCodes.EJB_OK) {
+                //TODO how do we notify the user that we fail to configure the value ?
+                Logger.getLogger(this.getClass().getName()).info("Unexpected response on cancel: " + res);
+            }
+        } catch (Exception e) {
+            //TODO how to handle
+            Logger.getLogger(this.getClass().getName()).log(Level.INFO, "Unexpected error on cancel", e);
+        }
+    }
+
     private Object _businessMethod(final Method method, final Object[] args, final Object proxy, final String requestId, final EJBResponse response) throws Throwable {
         final EJBRequest req = new EJBRequest(RequestMethodCode.EJB_OBJECT_BUSINESS_METHOD, ejb, method, args, primaryKey, client.getSerializer());
 
@@ -371,7 +454,7 @@ public abstract class EJBObjectHandler extends EJBInvocationHandler {
             this.response = response;
         }
 
-        @SuppressWarnings({"SuspiciousMethodCalls", "UnnecessaryBoxing"})
+        @SuppressWarnings("SuspiciousMethodCalls")
         @Override
         public boolean cancel(final boolean mayInterruptIfRunning) {
             /* In EJB 3.1 spec 3.4.8.1.1
@@ -406,24 +489,7 @@ public abstract class EJBObjectHandler extends EJBInvocationHandler {
                     if (lastMayInterruptIfRunningValue.getAndSet(mayInterruptIfRunning) == mayInterruptIfRunning) {
                         return false;
                     }
-                    final EJBRequest req = new EJBRequest(RequestMethodCode.FUTURE_CANCEL,
-                        ejb,
-                        CANCEL,
-                        new Object[]{Boolean.valueOf(mayInterruptIfRunning)},
-                        primaryKey,
-                        client.getSerializer());
-                    req.getBody().setRequestId(requestId);
-                    try {
-                        final EJBResponse res = request(req);
-                        if (res.getResponseCode() != ResponseCodes.EJB_OK) {
-                            //TODO how do we notify the user that we fail to configure the value ?
-                            Logger.getLogger(this.getClass().getName()).info("Unexpected response on cancel: " + res);
-                        }
-                    } catch (Exception e) {
-                        //TODO how to handle
-                        Logger.getLogger(this.getClass().getName()).log(Level.INFO, "Unexpected error on cancel", e);
-                        return false;
-                    }
+                    requestCancel(requestId, mayInterruptIfRunning);
                 }
                 return false;
             }
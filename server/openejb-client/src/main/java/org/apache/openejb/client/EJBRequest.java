@@ -164,6 +164,14 @@ public class EJBRequest implements ClusterableRequest {
         this.body = body;
     }
 
+    /**
+     * @param codec     compresses the method parameters and asks the server to compress the result with it
+     * @param threshold size of the serialized parameters from which they are compressed
+     */
+    public void setCompression(final Compression.Codec codec, final int threshold) {
+        this.body.setCompression(codec, threshold);
+    }
+
     public byte getVersion() {
         return this.body.getVersion();
     }
@@ -307,6 +315,14 @@ public class EJBRequest implements ClusterableRequest {
         body.writeExternal(out);
     }
 
+    public interface MethodResolver {
+
+        /**
+         * Same contract as {@link Class#getMethod(String, Class[])}
+         */
+        Method resolve(Class interfaceClass, String name, Class[] parameterTypes) throws NoSuchMethodException;
+    }
+
     public static class Body implements java.io.Externalizable {
 
         private static final long serialVersionUID = -5364100745236348268L;
@@ -325,6 +341,10 @@ public class EJBRequest implements ClusterableRequest {
 
         private transient JNDIContext.AuthenticationInfo authentication;
         private transient ProtocolMetaData metaData;
+        private transient MethodResolver methodResolver;
+        private transient Compression.Codec compression = Compression.Codec.NONE;
+        private transient int compressionThreshold = Compression.DEFAULT_THRESHOLD;
+        private transient Compression.Sample compressionSample;
 
         public Body(final EJBMetaDataImpl ejb) {
             this.ejb = ejb;
@@ -341,6 +361,32 @@ public class EJBRequest implements ClusterableRequest {
             return version;
         }
 
+        /**
+         * Server side only, resolves the method read by {@link #readExternal(java.io.ObjectInput)}
+         */
+        public void setMethodResolver(final MethodResolver methodResolver) {
+            this.methodResolver = methodResolver;
+        }
+
+        public void setCompression(final Compression.Codec codec, final int threshold) {
+            this.compression = codec;
+            this.compressionThreshold = threshold;
+        }
+
+        /**
+         * @return the codec the client asked for, the one its response can be compressed with
+         */
+        public Compression.Codec getCompression() {
+            return compression;
+        }
+
+        /**
+         * @return how the method parameters were (de)compressed, null if they were sent inline
+         */
+        public Compression.Sample getCompressionSample() {
+            return compressionSample;
+        }
+
         public void setAuthentication(final JNDIContext.AuthenticationInfo authentication) {
             this.authentication = authentication;
         }
@@ -445,8 +491,18 @@ public class EJBRequest implements ClusterableRequest {
 
             methodName = in.readUTF();
 
+            compressionSample = null;
             try {
-                readMethodParameters(in);
+                if (null == metaData || metaData.isAtLeast(4, 8)) {
+                    final Compression.Sample sample = new Compression.Sample();
+                    final ObjectInput parameters = Compression.open(in, sample);
+                    if (parameters != in) {
+                        compressionSample = sample;
+                    }
+                    readMethodParameters(parameters);
+                } else {
+                    readMethodParameters(in);
+                }
             } catch (ClassNotFoundException cnfe) {
                 if (result == null) {
                     result = cnfe;
@@ -456,7 +512,11 @@ public class EJBRequest implements ClusterableRequest {
             if (interfaceClass != null) {
                 try {
                     //noinspection unchecked
-                    methodInstance = interfaceClass.getMethod(methodName, methodParamTypes);
+                    if (methodResolver != null) {
+                        methodInstance = methodResolver.resolve(interfaceClass, methodName, methodParamTypes);
+                    } else {
+                        methodInstance = interfaceClass.getMethod(methodName, methodParamTypes);
+                    }
                 } catch (NoSuchMethodException nsme) {
                     if (result == null) {
                         throw new ClassNotFoundException(interfaceClass.getSimpleName() + "#" + methodName + " is not valid");
@@ -470,6 +530,12 @@ public class EJBRequest implements ClusterableRequest {
                 authentication = null;
             }
 
+            if (null == metaData || metaData.isAtLeast(4, 8)) {
+                compression = Compression.Codec.valueOf(in.readByte());
+            } else {
+                compression = Compression.Codec.NONE;
+            }
+
             if (result != null) {
                 throw result;
             }
@@ -491,12 +557,25 @@ public class EJBRequest implements ClusterableRequest {
 
             out.writeUTF(methodName);
 
-            writeMethodParameters(out, methodParamTypes, methodParameters);
+            if (null == metaData || metaData.isAtLeast(4, 8)) {
+                compressionSample = Compression.write(out, new Compression.Payload() {
+                    @Override
+                    public void writeTo(final ObjectOutput out) throws IOException {
+                        writeMethodParameters(out, methodParamTypes, methodParameters);
+                    }
+                }, compression, compressionThreshold);
+            } else {
+                writeMethodParameters(out, methodParamTypes, methodParameters);
+            }
 
             if (null == metaData || metaData.isAtLeast(4, 6)) {
                 out.writeObject(authentication);
             }
 
+            if (null == metaData || metaData.isAtLeast(4, 8)) {
+                out.writeByte(compression.ordinal());
+            }
+
             out.flush();
         }
 
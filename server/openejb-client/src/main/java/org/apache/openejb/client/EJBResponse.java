@@ -38,6 +38,9 @@ public class EJBResponse implements ClusterableResponse {
     private transient final int timesLength = times.length;
     private transient EJBRequest request;
     private transient ProtocolMetaData metaData;
+    private transient Compression.Codec compression = Compression.Codec.NONE;
+    private transient int compressionThreshold = Compression.DEFAULT_THRESHOLD;
+    private transient Compression.Sample compressionSample;
 
     public EJBResponse() {
     }
@@ -78,6 +81,22 @@ public class EJBResponse implements ClusterableResponse {
         return server;
     }
 
+    /**
+     * @param codec     compresses the result if it serializes to more than the threshold
+     * @param threshold size in bytes
+     */
+    public void setCompression(final Compression.Codec codec, final int threshold) {
+        this.compression = codec;
+        this.compressionThreshold = threshold;
+    }
+
+    /**
+     * @return how the result was (de)compressed, null if it was sent inline
+     */
+    public Compression.Sample getCompressionSample() {
+        return compressionSample;
+    }
+
     public String toString() {
 
         final StringBuffer s;
@@ -143,7 +162,17 @@ public class EJBResponse implements ClusterableResponse {
 
         responseCode = in.readByte();
 
-        result = in.readObject();
+        compressionSample = null;
+        if (null == metaData || metaData.isAtLeast(4, 8)) {
+            final Compression.Sample sample = new Compression.Sample();
+            final ObjectInput payload = Compression.open(in, sample);
+            if (payload != in) {
+                compressionSample = sample;
+            }
+            result = payload.readObject();
+        } else {
+            result = in.readObject();
+        }
 
         if (version >= 2) {
 
@@ -183,7 +212,11 @@ public class EJBResponse implements ClusterableResponse {
         }
 
         start(Time.SERIALIZATION);
-        out.writeObject(result);
+        if (null == metaData || metaData.isAtLeast(4, 8)) {
+            compressionSample = Compression.write(out, result, compression, compressionThreshold);
+        } else {
+            out.writeObject(result);
+        }
         stop(Time.SERIALIZATION);
         stop(Time.TOTAL);
 
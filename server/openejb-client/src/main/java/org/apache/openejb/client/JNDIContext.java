@@ -253,9 +253,15 @@ public class JNDIContext implements InitialContextFactory, Context {
 
         final String strategy = context.getOptions().get("openejb.client.connection.strategy", "default");
         context.getClusterMetaData().setConnectionStrategy(strategy);
+        context.getLookupCache().setTimeToLive(context.getOptions().get(LookupCache.TIME_TO_LIVE, context.getLookupCache().getTimeToLive()));
 
         Client.fireEvent(new RemoteInitialContextCreated(location));
 
+        final int warmUp = context.getOptions().get(SocketConnectionFactory.PROPERTY_POOL_WARM_UP, 0);
+        if (warmUp > 0) {
+            ConnectionManager.warmUp(location, warmUp);
+        }
+
         //TODO:1: Either aggressively initiate authentication or wait for the
         //        server to send us an authentication challange.
         if (userID != null) {
@@ -389,20 +395,24 @@ public class JNDIContext implements InitialContextFactory, Context {
             return getDefaultOrb();
         }
 
-        final JNDIRequest req = new JNDIRequest();
-        req.setRequestMethod(RequestMethodCode.JNDI_LOOKUP);
-        req.setRequestString(name);
-        req.setModuleId(moduleId);
+        final LookupCache cache = Client.getContext(server).getLookupCache();
+        JNDIResponse res = cache.get(moduleId, name);
+        if (res == null) {
+            final JNDIRequest req = new JNDIRequest();
+            req.setRequestMethod(RequestMethodCode.JNDI_LOOKUP);
+            req.setRequestString(name);
+            req.setModuleId(moduleId);
 
-        final JNDIResponse res;
-        try {
-            res = request(req);
-        } catch (Exception e) {
-            if (e instanceof RemoteException && e.getCause() instanceof ConnectException) {
-                e = (Exception) e.getCause();
-                throw (ServiceUnavailableException) new ServiceUnavailableException("Cannot lookup '" + name + "'.").initCause(e);
+            try {
+                res = request(req);
+            } catch (Exception e) {
+                if (e instanceof RemoteException && e.getCause() instanceof ConnectException) {
+                    e = (Exception) e.getCause();
+                    throw (ServiceUnavailableException) new ServiceUnavailableException("Cannot lookup '" + name + "'.").initCause(e);
+                }
+                throw (NamingException) new NamingException("Cannot lookup '" + name + "'.").initCause(e);
             }
-            throw (NamingException) new NamingException("Cannot lookup '" + name + "'.").initCause(e);
+            cache.put(moduleId, name, res);
         }
 
         switch (res.getResponseCode()) {
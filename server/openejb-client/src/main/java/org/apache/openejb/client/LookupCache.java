@@ -0,0 +1,184 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.apache.openejb.client;
+
+import org.apache.openejb.client.event.LookupCacheHit;
+import org.apache.openejb.client.event.LookupCacheInvalidated;
+import org.apache.openejb.client.event.LookupCacheMiss;
+
+import java.net.URI;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Remote lookups resolved by a server, shared by all the JNDIContext using it.
+ * <p/>
+ * Only the responses which don't depend on the caller are kept (business objects metadata
+ * and sub contexts) for {@link #TIME_TO_LIVE} milliseconds. Stateful beans are not cached since
+ * each lookup creates a new session. The server sends the version of its deployments with the
+ * cluster response of every request, when it changes the cache is cleared.
+ * Servers not sending it (older protocol) are never cached since nothing would invalidate the entries.
+ *
+ * @version $Rev$ $Date$
+ */
+public class LookupCache {
+
+    public static final String TIME_TO_LIVE = "openejb.client.jndi.cache.ttl";
+    public static final long UNKNOWN_VERSION = -1;
+
+    private final ConcurrentMap<Key, Entry> entries = new ConcurrentHashMap<Key, Entry>();
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final URI server;
+    private volatile long timeToLive = 60000;
+    private volatile long deploymentVersion = UNKNOWN_VERSION;
+
+    public LookupCache(final URI server) {
+        this.server = server;
+    }
+
+    public JNDIResponse get(final String moduleId, final String name) {
+        if (timeToLive <= 0) {
+            return null;
+        }
+
+        final Key key = new Key(moduleId, name);
+        final Entry entry = entries.get(key);
+        if (entry == null || entry.expiration < System.currentTimeMillis()) {
+            if (entry != null) {
+                entries.remove(key, entry);
+            }
+            Client.fireEvent(new LookupCacheMiss(server, name, hits.get(), misses.incrementAndGet()));
+            return null;
+        }
+
+        Client.fireEvent(new LookupCacheHit(server, name, hits.incrementAndGet(), misses.get()));
+        return entry.response;
+    }
+
+    public void put(final String moduleId, final String name, final JNDIResponse response) {
+        if (!isActive()) {
+            return;
+        }
+
+        switch (response.getResponseCode()) {
+            case ResponseCodes.JNDI_BUSINESS_OBJECT:
+                if (EJBMetaDataImpl.class.cast(response.getResult()).getPrimaryKey() != null) {
+                    return; // a stateful session created for this lookup, the next one needs its own
+                }
+                entries.put(new Key(moduleId, name), new Entry(response, System.currentTimeMillis() + timeToLive));
+                break;
+            case ResponseCodes.JNDI_CONTEXT:
+                entries.put(new Key(moduleId, name), new Entry(response, System.currentTimeMillis() + timeToLive));
+                break;
+            default:
+                // can depend on the caller or not be reusable (homes keep their proxy)
+        }
+    }
+
+    private boolean isActive() {
+        return timeToLive > 0 && deploymentVersion != UNKNOWN_VERSION;
+    }
+
+    public void setDeploymentVersion(final long version) {
+        final long previous = deploymentVersion;
+        if (version == UNKNOWN_VERSION || version == previous) {
+            return;
+        }
+
+        deploymentVersion = version;
+        if (previous != UNKNOWN_VERSION) {
+            final int size = entries.size();
+            entries.clear();
+            Client.fireEvent(new LookupCacheInvalidated(server, previous, version, size, hits.get(), misses.get()));
+        }
+    }
+
+    public long getDeploymentVersion() {
+        return deploymentVersion;
+    }
+
+    public void setTimeToLive(final long timeToLive) {
+        this.timeToLive = timeToLive;
+        if (timeToLive <= 0) {
+            entries.clear();
+        }
+    }
+
+    public long getTimeToLive() {
+        return timeToLive;
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    public void clear() {
+        entries.clear();
+    }
+
+    private static final class Key {
+
+        private final String moduleId;
+        private final String name;
+        private final int hash;
+
+        private Key(final String moduleId, final String name) {
+            this.moduleId = moduleId;
+            this.name = name;
+            this.hash = 31 * (moduleId != null ? moduleId.hashCode() : 0) + name.hashCode();
+        }
+
+        @Override
+        public boolean equals(final Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (o == null || getClass() != o.getClass()) {
+                return false;
+            }
+
+            final Key key = (Key) o;
+            return name.equals(key.name) && (moduleId != null ? moduleId.equals(key.moduleId) : key.moduleId == null);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+
+    private static final class Entry {
+
+        private final JNDIResponse response;
+        private final long expiration;
+
+        private Entry(final JNDIResponse response, final long expiration) {
+            this.response = response;
+            this.expiration = expiration;
+        }
+    }
+}
@@ -0,0 +1,174 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.openejb.client;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Result of a remote invocation sent without waiting for its response.
+ *
+ * No thread is tied to the invocation while the server works on it, callbacks registered with
+ * {@link #whenComplete(Callback)} are notified once the response is read, on one of the client
+ * reader threads, so they should hand off anything long or blocking.
+ *
+ * Cancelling only releases the caller, the invocation already reached the server and its
+ * response is dropped when it arrives.
+ *
+ * @version $Rev$ $Date$
+ */
+public class RemoteFuture<T> implements Future<T> {
+
+    private static final Logger logger = Logger.getLogger("OpenEJB.client");
+
+    private static final int PENDING = 0;
+    private static final int COMPLETED = 1;
+    private static final int FAILED = 2;
+    private static final int CANCELLED = 3;
+
+    private final CountDownLatch done = new CountDownLatch(1);
+    private final List<Callback<? super T>> callbacks = new ArrayList<Callback<? super T>>(1);
+    private volatile int state = PENDING;
+    private T result;
+    private Throwable failure;
+
+    public RemoteFuture<T> whenComplete(final Callback<? super T> callback) {
+        synchronized (this) {
+            if (state == PENDING) {
+                callbacks.add(callback);
+                return this;
+            }
+        }
+        call(callback);
+        return this;
+    }
+
+    boolean complete(final T result) {
+        synchronized (this) {
+            if (state != PENDING) {
+                return false;
+            }
+            this.result = result;
+            state = COMPLETED;
+        }
+        done();
+        return true;
+    }
+
+    boolean fail(final Throwable failure) {
+        synchronized (this) {
+            if (state != PENDING) {
+                return false;
+            }
+            this.failure = failure;
+            state = FAILED;
+        }
+        done();
+        return true;
+    }
+
+    @Override
+    public boolean cancel(final boolean mayInterruptIfRunning) {
+        synchronized (this) {
+            if (state != PENDING) {
+                return false;
+            }
+            failure = new CancellationException();
+            state = CANCELLED;
+        }
+        done();
+        return true;
+    }
+
+    @Override
+    public boolean isCancelled() {
+        return state == CANCELLED;
+    }
+
+    @Override
+    public boolean isDone() {
+        return state != PENDING;
+    }
+
+    @Override
+    public T get() throws InterruptedException, ExecutionException {
+        done.await();
+        return report();
+    }
+
+    @Override
+    public T get(final long timeout, final TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException {
+        if (!done.await(timeout, unit)) {
+            throw new TimeoutException();
+        }
+        return report();
+    }
+
+    private T report() throws ExecutionException {
+        switch (state) {
+            case COMPLETED:
+                return result;
+            case CANCELLED:
+                throw new CancellationException();
+            default:
+                throw new ExecutionException(failure);
+        }
+    }
+
+    private void done() {
+        done.countDown();
+
+        final List<Callback<? super T>> registered;
+        synchronized (this) {
+            registered = new ArrayList<Callback<? super T>>(callbacks);
+            callbacks.clear();
+        }
+        for (final Callback<? super T> callback : registered) {
+            call(callback);
+        }
+    }
+
+    private void call(final Callback<? super T> callback) {
+        try {
+            if (state == COMPLETED) {
+                callback.completed(result);
+            } else {
+                callback.failed(failure);
+            }
+        } catch (final Throwable e) {
+            logger.log(Level.WARNING, "Callback " + callback + " failed: " + e.getMessage(), e);
+        }
+    }
+
+    public interface Callback<T> {
+
+        void completed(T result);
+
+        /**
+         * @param cause the exception get() would wrap, a CancellationException if the future was cancelled
+         */
+        void failed(Throwable cause);
+    }
+}
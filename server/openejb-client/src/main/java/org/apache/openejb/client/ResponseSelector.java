@@ -0,0 +1,321 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.openejb.client;
+
+import java.io.IOException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Waits for the responses of the asynchronous requests.
+ *
+ * Connections backed by a socket channel are registered on a single selector so a pending request
+ * costs no thread, its response is read by one of the few reader threads once it started to arrive.
+ * Other connections (ejbds, http, selectable sockets disabled) can only be read by blocking so a
+ * thread waits for each of them, the in-flight limit of the server bounds how many. Their deadline
+ * is still watched by the selector thread, which fails them and discards their connection.
+ */
+class ResponseSelector implements Runnable {
+
+    public static final String OPENEJB_CLIENT_ASYNC_THREADS = "openejb.client.async.threads";
+
+    private static final Logger logger = Logger.getLogger("OpenEJB.client");
+
+    private static ResponseSelector instance;
+
+    private final Selector selector;
+    private final Queue<Pending> registrations = new ConcurrentLinkedQueue<Pending>();
+    private final Set<Pending> blocking = Collections.newSetFromMap(new ConcurrentHashMap<Pending, Boolean>());
+    private final ExecutorService readers;
+    private final ExecutorService waiters;
+
+    private ResponseSelector() throws IOException {
+        final int threads = Integer.getInteger(OPENEJB_CLIENT_ASYNC_THREADS, Math.max(2, Runtime.getRuntime().availableProcessors()));
+        this.selector = Selector.open();
+        this.readers = new ThreadPoolExecutor(threads, threads, 1, TimeUnit.MINUTES, new LinkedBlockingQueue<Runnable>(), new DaemonThreadFactory("OpenEJB.Client.Async."));
+        this.waiters = new ThreadPoolExecutor(0, Integer.MAX_VALUE, 1, TimeUnit.MINUTES, new SynchronousQueue<Runnable>(), new DaemonThreadFactory("OpenEJB.Client.Async.Blocking."));
+
+        final Thread thread = new Thread(this, "OpenEJB.Client.Selector");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    public static synchronized ResponseSelector get() throws IOException {
+        if (instance == null) {
+            instance = new ResponseSelector();
+        }
+        return instance;
+    }
+
+    public void await(final Pending pending) {
+        final SocketChannel channel = pending.getChannel();
+        if (channel == null) {
+            if (pending.deadline != 0) {
+                blocking.add(pending);
+                selector.wakeup(); // computes its wait again
+            }
+            waiters.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        pending.readBlocking();
+                    } finally {
+                        blocking.remove(pending);
+                    }
+                }
+            });
+            return;
+        }
+
+        registrations.add(pending);
+        selector.wakeup();
+    }
+
+    @Override
+    public void run() {
+        while (true) {
+            try {
+                select();
+            } catch (final Throwable e) {
+                logger.log(Level.WARNING, "Error waiting for asynchronous responses: " + e.getMessage(), e);
+            }
+        }
+    }
+
+    private void select() throws IOException {
+        final long wait = expire();
+
+        if (selector.selectedKeys().isEmpty()) {
+            selector.select(wait);
+        } else {
+            selector.selectNow();
+        }
+
+        Pending pending;
+        while ((pending = registrations.poll()) != null) {
+            try {
+                final SocketChannel channel = pending.getChannel();
+                channel.configureBlocking(false);
+                channel.register(selector, SelectionKey.OP_READ, pending);
+            } catch (final Throwable e) {
+                readers.execute(pending.failure(e));
+            }
+        }
+
+        final List<Pending> ready = new ArrayList<Pending>();
+        final Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+        while (keys.hasNext()) {
+            final SelectionKey key = keys.next();
+            keys.remove();
+            key.cancel();
+            ready.add((Pending) key.attachment());
+        }
+
+        if (ready.isEmpty()) {
+            return;
+        }
+
+        // deregisters the cancelled keys, a channel can't go back to blocking mode before
+        selector.selectNow();
+
+        for (final Pending p : ready) {
+            try {
+                p.getChannel().configureBlocking(true);
+                readers.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        p.read();
+                    }
+                });
+            } catch (final Throwable e) {
+                readers.execute(p.failure(e));
+            }
+        }
+    }
+
+    /**
+     * @return how long the selector can wait for the next deadline, 0 if there is none
+     */
+    private long expire() {
+        final long now = System.currentTimeMillis();
+        long wait = 0;
+        for (final SelectionKey key : selector.keys()) {
+            if (!key.isValid()) {
+                continue;
+            }
+
+            final Pending pending = (Pending) key.attachment();
+            if (pending.deadline == 0) {
+                continue;
+            }
+
+            final long remaining = pending.deadline - now;
+            if (remaining <= 0) {
+                key.cancel();
+                readers.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        pending.expired();
+                    }
+                });
+            } else if (wait == 0 || remaining < wait) {
+                wait = remaining;
+            }
+        }
+
+        // the waiter thread is blocked in the read, discarding the connection unblocks it
+        for (final Pending pending : blocking) {
+            final long remaining = pending.deadline - now;
+            if (remaining <= 0) {
+                blocking.remove(pending);
+                readers.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        pending.expired();
+                    }
+                });
+            } else if (wait == 0 || remaining < wait) {
+                wait = remaining;
+            }
+        }
+        return wait;
+    }
+
+    /**
+     * A request written to its connection and waiting for the response.
+     * Exactly one of onResponse(), onTimeout() or onFailure() is run.
+     */
+    abstract static class Pending {
+
+        private final Connection connection;
+        private final long deadline;
+        private final AtomicBoolean done = new AtomicBoolean();
+
+        protected Pending(final Connection connection, final long timeout) {
+            this.connection = connection;
+            this.deadline = timeout > 0 ? System.currentTimeMillis() + timeout : 0;
+        }
+
+        public Connection getConnection() {
+            return connection;
+        }
+
+        private SocketChannel getChannel() {
+            if (connection instanceof SocketConnectionFactory.SocketConnection) {
+                return ((SocketConnectionFactory.SocketConnection) connection).getChannel();
+            }
+            return null;
+        }
+
+        private void read() {
+            if (done.compareAndSet(false, true)) {
+                try {
+                    receive();
+                } catch (final Throwable e) {
+                    onFailure(e);
+                    return;
+                }
+                onResponse();
+            }
+        }
+
+        /**
+         * Blocks until the response is read, the deadline can pass meanwhile so the read doesn't
+         * claim the request, whichever of the response and the timeout completes first wins.
+         */
+        private void readBlocking() {
+            try {
+                receive();
+            } catch (final Throwable e) {
+                if (done.compareAndSet(false, true)) {
+                    onFailure(e);
+                }
+                return;
+            }
+            if (done.compareAndSet(false, true)) {
+                onResponse();
+            }
+        }
+
+        private void expired() {
+            if (done.compareAndSet(false, true)) {
+                onTimeout();
+            }
+        }
+
+        private Runnable failure(final Throwable error) {
+            return new Runnable() {
+                @Override
+                public void run() {
+                    if (done.compareAndSet(false, true)) {
+                        onFailure(error);
+                    }
+                }
+            };
+        }
+
+        /**
+         * The response is arriving, the connection is back in blocking mode and can be read.
+         */
+        protected abstract void receive() throws Throwable;
+
+        /**
+         * The response was received.
+         */
+        protected abstract void onResponse();
+
+        protected abstract void onTimeout();
+
+        protected abstract void onFailure(Throwable error);
+    }
+
+    private static class DaemonThreadFactory implements ThreadFactory {
+
+        private final AtomicInteger i = new AtomicInteger(0);
+        private final String prefix;
+
+        private DaemonThreadFactory(final String prefix) {
+            this.prefix = prefix;
+        }
+
+        @Override
+        public Thread newThread(final Runnable r) {
+            final Thread t = new Thread(r, prefix + i.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        }
+    }
+}
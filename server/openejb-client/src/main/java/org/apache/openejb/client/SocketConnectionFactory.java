@@ -16,9 +16,13 @@
  */
 package org.apache.openejb.client;
 
+import org.apache.openejb.client.event.ConnectionEvicted;
 import org.apache.openejb.client.event.ConnectionOpened;
 import org.apache.openejb.client.event.ConnectionPoolCreated;
+import org.apache.openejb.client.event.ConnectionPoolResized;
 import org.apache.openejb.client.event.ConnectionPoolTimeout;
+import org.apache.openejb.client.event.ConnectionPoolWaited;
+import org.apache.openejb.client.event.ConnectionPoolWarmedUp;
 
 import javax.net.ssl.SSLSocket;
 import javax.net.ssl.SSLSocketFactory;
@@ -32,14 +36,17 @@ import java.net.ConnectException;
 import java.net.InetSocketAddress;
 import java.net.Socket;
 import java.net.URI;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
 import java.util.Map;
 import java.util.Properties;
-import java.util.Stack;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeUnit;
-import java.util.concurrent.locks.Lock;
-import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.zip.GZIPInputStream;
 
 public class SocketConnectionFactory implements ConnectionFactory {
@@ -52,25 +59,41 @@ public class SocketConnectionFactory implements ConnectionFactory {
     private static final String PROPERTY_POOL_TIMEOUT2 = "openejb.client.connectionpool.timeout";
     public static final String PROPERTY_POOL_SIZE = "openejb.client.connection.pool.size";
     private static final String PROPERTY_POOL_SIZE2 = "openejb.client.connectionpool.size";
+    public static final String PROPERTY_POOL_MAX_SIZE = "openejb.client.connection.pool.max-size";
+    public static final String PROPERTY_POOL_GROW_AFTER = "openejb.client.connection.pool.grow-after";
+    public static final String PROPERTY_POOL_IDLE_TIMEOUT = "openejb.client.connection.pool.idle-timeout";
+    public static final String PROPERTY_POOL_WARM_UP = "openejb.client.connection.pool.warm-up";
     public static final String PROPERTY_KEEPALIVE = "openejb.client.keepalive";
+    public static final String PROPERTY_SOCKET_SELECTABLE = "openejb.client.connection.socket.selectable";
     public static final String ENABLED_CIPHER_SUITES = "openejb.client.enabledCipherSuites";
 
     private static final Map<URI, Pool> connections = new ConcurrentHashMap<URI, Pool>();
     private int size = 5;
+    private int maxSize;
+    private long growAfter = 50;
+    private long idleTimeout;
     private long timeoutPool = 1000;
     private int timeoutConnect = 1000;
     private int timeoutRead = 14400000;
     private int timeoutLinger;
     private String[] enabledCipherSuites;
+    private boolean selectable;
 
     public SocketConnectionFactory() {
 
         this.size = this.getSize();
         this.timeoutPool = this.getTimeoutPool();
+
+        // the pool grows only when asked to, the failover relies on the size by default
+        final Properties p = System.getProperties();
+        this.maxSize = Math.max(this.size, getInt(p, PROPERTY_POOL_MAX_SIZE, this.size));
+        this.growAfter = getLong(p, PROPERTY_POOL_GROW_AFTER, this.growAfter);
+        this.idleTimeout = getLong(p, PROPERTY_POOL_IDLE_TIMEOUT, this.idleTimeout);
         this.timeoutConnect = this.getTimeoutSocket();
         this.timeoutLinger = this.getTimeoutLinger();
         this.timeoutRead = this.getTimeoutRead();
         this.enabledCipherSuites = this.getEnabledCipherSuites();
+        this.selectable = Boolean.getBoolean(PROPERTY_SOCKET_SELECTABLE);
 
         try {
             String property = System.getProperty(PROPERTY_KEEPALIVE);
@@ -161,16 +184,14 @@ public class SocketConnectionFactory implements ConnectionFactory {
                 conn = new SocketConnection(uri, pool);
                 conn.open(uri);
             } catch (IOException e) {
-
+                // open() discarded it, the slot is back in the pool
                 conn.cleanUp();
-
-                pool.put(null);
                 throw e;
             }
         }
 
         try {
-            if (!conn.lock.tryLock(2, TimeUnit.SECONDS)) {
+            if (!conn.lock.tryAcquire(2, TimeUnit.SECONDS)) {
                 throw new InterruptedException();
             }
         } catch (InterruptedException e) {
@@ -212,20 +233,55 @@ public class SocketConnectionFactory implements ConnectionFactory {
     private Pool getPool(final URI uri) {
         Pool pool = connections.get(uri);
         if (pool == null) {
-            pool = new Pool(uri, this.getSize(), this.timeoutPool);
+            final int size = this.getSize();
+            pool = new Pool(uri, size, Math.max(size, this.maxSize), this.timeoutPool, this.growAfter, this.idleTimeout);
             connections.put(uri, pool);
         }
         return pool;
     }
 
+    /**
+     * Opens connections to the server in the background until the pool holds the given number of
+     * idle ones, so the first requests don't pay for them. Never takes a connection a caller is waiting for.
+     */
+    public void warmUp(final URI uri, final int count) {
+        final Pool pool = this.getPool(uri);
+        if (pool.idle() >= count) {
+            return;
+        }
+
+        final Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                int opened = 0;
+                while (pool.idle() < count && pool.tryGetSlot()) {
+                    final SocketConnection conn = new SocketConnection(uri, pool);
+                    try {
+                        conn.open(uri);
+                    } catch (IOException e) {
+                        conn.cleanUp();
+                        break;
+                    }
+                    pool.put(conn);
+                    opened++;
+                }
+                Client.fireEvent(new ConnectionPoolWarmedUp(uri, opened, pool.idle()));
+            }
+        }, "OpenEJB.Client.WarmUp." + uri.getHost() + ":" + uri.getPort());
+        thread.setDaemon(true);
+        thread.start();
+    }
+
     class SocketConnection implements Connection {
 
         private Socket socket = null;
         private final URI uri;
 
         private boolean discarded;
+        private long lastUsed;
         private final Pool pool;
-        private final Lock lock = new ReentrantLock();
+        // not a Lock, asynchronous requests release the connection from another thread
+        private final Semaphore lock = new Semaphore(1);
         private OutputStream out;
         private InputStream in;
         private boolean gzip = false;
@@ -287,6 +343,9 @@ public class SocketConnectionFactory implements ConnectionFactory {
                     this.socket = sslSocket;
                     sslSocket.setEnabledCipherSuites(SocketConnectionFactory.this.enabledCipherSuites);
 
+                } else if (SocketConnectionFactory.this.selectable) {
+                    // lets asynchronous requests wait for the response without a thread, see ResponseSelector
+                    this.socket = SocketChannel.open().socket();
                 } else {
                     this.socket = new Socket();
                 }
@@ -359,13 +418,15 @@ public class SocketConnectionFactory implements ConnectionFactory {
             }
 
             this.pool.put(this);
-            try {
-                this.lock.unlock();
-            } catch (IllegalMonitorStateException e) {
-                //Ignore
+            if (this.lock.availablePermits() == 0) {
+                this.lock.release();
             }
         }
 
+        SocketChannel getChannel() {
+            return this.socket == null ? null : this.socket.getChannel();
+        }
+
         @Override
         public InputStream getInputStream() throws IOException {
             /*----------------------------------*/
@@ -437,59 +498,166 @@ public class SocketConnectionFactory implements ConnectionFactory {
         }
     }
 
+    /**
+     * Connections to one server, most recently used first so the ones left idle are the oldest.
+     *
+     * Each permit of the semaphore is a slot, holding an idle connection or not yet connected. When
+     * callers wait longer than growAfter the pool grows a slot at a time up to maxSize, and it shrinks
+     * back to its initial size as connections stay idle longer than idleTimeout.
+     */
     private static class Pool {
 
         private final Semaphore semaphore;
-        private final Stack<SocketConnection> pool;
+        private final Deque<SocketConnection> pool = new ArrayDeque<SocketConnection>();
         private final long timeout;
         private final TimeUnit timeUnit;
-        private final int size;
+        private final int minSize;
+        private final int maxSize;
+        private final long growAfter;
+        private final long idleTimeout;
+        private final AtomicInteger size;
         private final URI uri;
 
-        private Pool(final URI uri, final int size, final long timeout) {
+        private Pool(final URI uri, final int size, final int maxSize, final long timeout, final long growAfter, final long idleTimeout) {
             this.uri = uri;
-            this.size = size;
+            this.minSize = size;
+            this.maxSize = maxSize;
+            this.size = new AtomicInteger(size);
             this.semaphore = new Semaphore(size);
-            this.pool = new Stack<SocketConnection>();
             this.timeout = timeout;
             this.timeUnit = TimeUnit.MILLISECONDS;
-
-            for (int i = 0; i < size; i++) {
-                this.pool.push(null);
-            }
+            this.growAfter = growAfter;
+            this.idleTimeout = idleTimeout;
 
             Client.fireEvent(new ConnectionPoolCreated(uri, size, timeout, this.timeUnit));
         }
 
+        /**
+         * @return an idle connection, null if the slot given to the caller has none yet
+         */
         public SocketConnection get() throws IOException {
+            if (this.semaphore.tryAcquire()) {
+                return this.take();
+            }
+
+            final long start = System.nanoTime();
             try {
-                if (this.semaphore.tryAcquire(this.timeout, this.timeUnit)) {
-                    return this.pool.pop();
+                if (this.size.get() < this.maxSize) {
+                    if (this.semaphore.tryAcquire(Math.min(this.growAfter, this.timeout), this.timeUnit)) {
+                        return this.waited(start);
+                    }
+                    if (this.grow()) {
+                        this.waited(start);
+                        return null; // the new slot gets its permit when the connection is put back
+                    }
+                }
+
+                final long remaining = this.timeout - this.timeUnit.convert(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+                if (this.semaphore.tryAcquire(Math.max(0, remaining), this.timeUnit)) {
+                    return this.waited(start);
                 }
             } catch (InterruptedException e) {
                 Thread.interrupted();
             }
 
+            final int size = this.size.get();
             final ConnectionPoolTimeoutException exception = new ConnectionPoolTimeoutException("No connections available in pool (size " +
-                this.size +
+                size +
                 ").  Waited for " +
                 this.timeout +
                 " milliseconds for a connection.");
             exception.fillInStackTrace();
-            Client.fireEvent(new ConnectionPoolTimeout(this.uri, this.size, this.timeout, this.timeUnit, exception));
+            Client.fireEvent(new ConnectionPoolTimeout(this.uri, size, this.timeout, this.timeUnit, exception));
             throw exception;
         }
 
+        /**
+         * Takes a slot only if one is free right away
+         */
+        public boolean tryGetSlot() {
+            return this.semaphore.tryAcquire();
+        }
+
         public void put(final SocketConnection connection) {
-            this.pool.push(connection);
+            if (connection != null) {
+                connection.lastUsed = System.currentTimeMillis();
+                synchronized (this.pool) {
+                    this.pool.addFirst(connection);
+                }
+            }
             this.semaphore.release();
         }
 
+        public int idle() {
+            synchronized (this.pool) {
+                return this.pool.size();
+            }
+        }
+
+        private SocketConnection waited(final long start) {
+            Client.fireEvent(new ConnectionPoolWaited(this.uri, this.size.get(), this.timeUnit.convert(System.nanoTime() - start, TimeUnit.NANOSECONDS), this.timeUnit));
+            return this.take();
+        }
+
+        private boolean grow() {
+            int current;
+            do {
+                current = this.size.get();
+                if (current >= this.maxSize) {
+                    return false;
+                }
+            } while (!this.size.compareAndSet(current, current + 1));
+
+            Client.fireEvent(new ConnectionPoolResized(this.uri, current, current + 1));
+            return true;
+        }
+
+        private SocketConnection take() {
+            this.evict();
+            synchronized (this.pool) {
+                return this.pool.pollFirst();
+            }
+        }
+
+        /**
+         * Closes the connections left idle too long, giving back the slots the pool grew
+         */
+        private void evict() {
+            if (this.idleTimeout <= 0) {
+                return;
+            }
+
+            final long now = System.currentTimeMillis();
+            final List<SocketConnection> evicted = new ArrayList<SocketConnection>();
+            synchronized (this.pool) {
+                SocketConnection oldest;
+                while ((oldest = this.pool.peekLast()) != null && now - oldest.lastUsed > this.idleTimeout) {
+                    evicted.add(this.pool.pollLast());
+                }
+            }
+
+            for (final SocketConnection connection : evicted) {
+                connection.discarded = true;
+                connection.cleanUp();
+                Client.fireEvent(new ConnectionEvicted(this.uri, now - connection.lastUsed, this.timeUnit));
+
+                final int current = this.size.get();
+                if (current > this.minSize && this.semaphore.tryAcquire()) {
+                    if (this.size.compareAndSet(current, current - 1)) {
+                        Client.fireEvent(new ConnectionPoolResized(this.uri, current, current - 1));
+                    } else {
+                        this.semaphore.release();
+                    }
+                }
+            }
+        }
+
         @Override
         public String toString() {
             return "Pool{" +
-                "size=" + this.size +
+                "size=" + this.size.get() +
                 ", available=" + this.semaphore.availablePermits() +
+                ", idle=" + this.idle() +
                 ", uri=" + this.uri +
                 '}';
         }
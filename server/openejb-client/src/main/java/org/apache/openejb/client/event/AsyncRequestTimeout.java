@@ -0,0 +1,58 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.apache.openejb.client.event;
+
+import org.apache.openejb.client.Request;
+
+import java.net.URI;
+
+/**
+ * @version $Rev$ $Date$
+ */
+@Log(Log.Level.WARNING)
+public class AsyncRequestTimeout {
+
+    private final URI server;
+    private final Request request;
+    private final long timeout;
+
+    public AsyncRequestTimeout(final URI server, final Request request, final long timeout) {
+        this.server = server;
+        this.request = request;
+        this.timeout = timeout;
+    }
+
+    public URI getServer() {
+        return server;
+    }
+
+    public Request getRequest() {
+        return request;
+    }
+
+    public long getTimeout() {
+        return timeout;
+    }
+
+    @Override
+    public String toString() {
+        return "AsyncRequestTimeout{" +
+            "server=" + server +
+            ", timeout=" + timeout + "ms" +
+            "} " + request;
+    }
+}
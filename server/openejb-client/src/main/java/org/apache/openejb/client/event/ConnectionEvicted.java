@@ -0,0 +1,59 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.apache.openejb.client.event;
+
+import java.net.URI;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A pooled connection stayed unused longer than the idle timeout and was closed.
+ *
+ * @version $Rev$ $Date$
+ */
+@Log(Log.Level.FINE)
+public class ConnectionEvicted {
+
+    private final URI uri;
+    private final long idle;
+    private final TimeUnit timeUnit;
+
+    public ConnectionEvicted(final URI uri, final long idle, final TimeUnit timeUnit) {
+        this.uri = uri;
+        this.idle = idle;
+        this.timeUnit = timeUnit;
+    }
+
+    public URI getUri() {
+        return uri;
+    }
+
+    public long getIdle() {
+        return idle;
+    }
+
+    public TimeUnit getTimeUnit() {
+        return timeUnit;
+    }
+
+    @Override
+    public String toString() {
+        return "ConnectionEvicted{" +
+            "uri=" + uri +
+            ", idle='" + idle + " " + timeUnit + "'" +
+            '}';
+    }
+}
@@ -0,0 +1,59 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.apache.openejb.client.event;
+
+import java.net.URI;
+
+/**
+ * The pool grew as callers waited for a connection or shrank as its idle connections were evicted.
+ *
+ * @version $Rev$ $Date$
+ */
+@Log(Log.Level.FINE)
+public class ConnectionPoolResized {
+
+    private final URI uri;
+    private final int previousSize;
+    private final int size;
+
+    public ConnectionPoolResized(final URI uri, final int previousSize, final int size) {
+        this.uri = uri;
+        this.previousSize = previousSize;
+        this.size = size;
+    }
+
+    public URI getUri() {
+        return uri;
+    }
+
+    public int getPreviousSize() {
+        return previousSize;
+    }
+
+    public int getSize() {
+        return size;
+    }
+
+    @Override
+    public String toString() {
+        return "ConnectionPoolResized{" +
+            "uri=" + uri +
+            ", previousSize=" + previousSize +
+            ", size=" + size +
+            '}';
+    }
+}
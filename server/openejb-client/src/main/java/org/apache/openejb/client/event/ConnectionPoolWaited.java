@@ -0,0 +1,66 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.apache.openejb.client.event;
+
+import java.net.URI;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * All the connections of the pool were in use, the caller waited before getting one.
+ *
+ * @version $Rev$ $Date$
+ */
+@Log(Log.Level.FINER)
+public class ConnectionPoolWaited {
+
+    private final URI uri;
+    private final int size;
+    private final long time;
+    private final TimeUnit timeUnit;
+
+    public ConnectionPoolWaited(final URI uri, final int size, final long time, final TimeUnit timeUnit) {
+        this.uri = uri;
+        this.size = size;
+        this.time = time;
+        this.timeUnit = timeUnit;
+    }
+
+    public URI getUri() {
+        return uri;
+    }
+
+    public int getSize() {
+        return size;
+    }
+
+    public long getTime() {
+        return time;
+    }
+
+    public TimeUnit getTimeUnit() {
+        return timeUnit;
+    }
+
+    @Override
+    public String toString() {
+        return "ConnectionPoolWaited{" +
+            "uri=" + uri +
+            ", size=" + size +
+            ", time='" + time + " " + timeUnit + "'" +
+            '}';
+    }
+}
@@ -0,0 +1,63 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.apache.openejb.client.event;
+
+import java.net.URI;
+
+/**
+ * @version $Rev$ $Date$
+ */
+@Log(Log.Level.FINE)
+public class ConnectionPoolWarmedUp {
+
+    private final URI uri;
+    private final int opened;
+    private final int idle;
+
+    public ConnectionPoolWarmedUp(final URI uri, final int opened, final int idle) {
+        this.uri = uri;
+        this.opened = opened;
+        this.idle = idle;
+    }
+
+    public URI getUri() {
+        return uri;
+    }
+
+    /**
+     * @return the connections opened by the warm up
+     */
+    public int getOpened() {
+        return opened;
+    }
+
+    /**
+     * @return the connections ready in the pool once warmed up
+     */
+    public int getIdle() {
+        return idle;
+    }
+
+    @Override
+    public String toString() {
+        return "ConnectionPoolWarmedUp{" +
+            "uri=" + uri +
+            ", opened=" + opened +
+            ", idle=" + idle +
+            '}';
+    }
+}
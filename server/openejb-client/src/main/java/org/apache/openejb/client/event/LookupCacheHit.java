@@ -0,0 +1,64 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.apache.openejb.client.event;
+
+import java.net.URI;
+
+/**
+ * @version $Rev$ $Date$
+ */
+@Log(Log.Level.FINEST)
+public class LookupCacheHit {
+
+    private final URI server;
+    private final String name;
+    private final long hits;
+    private final long misses;
+
+    public LookupCacheHit(final URI server, final String name, final long hits, final long misses) {
+        this.server = server;
+        this.name = name;
+        this.hits = hits;
+        this.misses = misses;
+    }
+
+    public URI getServer() {
+        return server;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public long getHits() {
+        return hits;
+    }
+
+    public long getMisses() {
+        return misses;
+    }
+
+    @Override
+    public String toString() {
+        return "LookupCacheHit{" +
+            "server=" + server +
+            ", name='" + name + "'" +
+            ", hits=" + hits +
+            ", misses=" + misses +
+            '}';
+    }
+}
@@ -0,0 +1,79 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.apache.openejb.client.event;
+
+import java.net.URI;
+
+/**
+ * The deployments of the server changed, the looked up names will be resolved again.
+ *
+ * @version $Rev$ $Date$
+ */
+@Log(Log.Level.FINE)
+public class LookupCacheInvalidated {
+
+    private final URI server;
+    private final long previousVersion;
+    private final long version;
+    private final int size;
+    private final long hits;
+    private final long misses;
+
+    public LookupCacheInvalidated(final URI server, final long previousVersion, final long version, final int size, final long hits, final long misses) {
+        this.server = server;
+        this.previousVersion = previousVersion;
+        this.version = version;
+        this.size = size;
+        this.hits = hits;
+        this.misses = misses;
+    }
+
+    public URI getServer() {
+        return server;
+    }
+
+    public long getPreviousVersion() {
+        return previousVersion;
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    public int getSize() {
+        return size;
+    }
+
+    public long getHits() {
+        return hits;
+    }
+
+    public long getMisses() {
+        return misses;
+    }
+
+    @Override
+    public String toString() {
+        return "LookupCacheInvalidated{" +
+            "server=" + server +
+            ", version=" + previousVersion + " -> " + version +
+            ", size=" + size +
+            ", hits=" + hits +
+            ", misses=" + misses +
+            '}';
+    }
+}
@@ -0,0 +1,303 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.openejb.client;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.URI;
+import java.rmi.RemoteException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class AsyncRequestTest extends Assert {
+
+    private static final int REQUESTS = 50;
+
+    private SlowServer server;
+
+    @BeforeClass
+    public static void registerFactory() {
+        System.setProperty(SocketConnectionFactory.PROPERTY_SOCKET_SELECTABLE, "true");
+        System.setProperty(SocketConnectionFactory.PROPERTY_POOL_SIZE, Integer.toString(REQUESTS));
+        try {
+            ConnectionManager.registerFactory("asyncejbd", new SocketConnectionFactory());
+        } finally {
+            System.clearProperty(SocketConnectionFactory.PROPERTY_SOCKET_SELECTABLE);
+            System.clearProperty(SocketConnectionFactory.PROPERTY_POOL_SIZE);
+        }
+        ConnectionManager.registerFactory("blockingejbd", new SocketConnectionFactory());
+    }
+
+    @After
+    public void stop() throws IOException {
+        if (server != null) {
+            server.close();
+        }
+    }
+
+    @Test
+    public void requestsInFlightWithoutThreads() throws Exception {
+        server = new SlowServer(REQUESTS);
+        final ServerMetaData metaData = server.metaData();
+
+        final CountDownLatch completed = new CountDownLatch(REQUESTS);
+        final AtomicInteger failures = new AtomicInteger();
+        final List<RemoteFuture<JNDIResponse>> futures = new ArrayList<RemoteFuture<JNDIResponse>>();
+        for (int i = 0; i < REQUESTS; i++) {
+            final RemoteFuture<JNDIResponse> future = Client.requestAsync(new JNDIRequest(RequestMethodCode.JNDI_LOOKUP, "name" + i), new JNDIResponse(), metaData);
+            future.whenComplete(new RemoteFuture.Callback<JNDIResponse>() {
+                @Override
+                public void completed(final JNDIResponse result) {
+                    completed.countDown();
+                }
+
+                @Override
+                public void failed(final Throwable cause) {
+                    failures.incrementAndGet();
+                    completed.countDown();
+                }
+            });
+            futures.add(future);
+        }
+
+        // the server only answers once it got all of them
+        assertTrue(completed.await(30, TimeUnit.SECONDS));
+        assertEquals(0, failures.get());
+        for (int i = 0; i < REQUESTS; i++) {
+            assertEquals("name" + i, futures.get(i).get().getResult());
+        }
+        assertEquals(0, threads("OpenEJB.Client.Async.Blocking."));
+
+        // connections went back to the pool
+        assertEquals("again", Client.requestAsync(new JNDIRequest(RequestMethodCode.JNDI_LOOKUP, "again"), new JNDIResponse(), metaData).get(30, TimeUnit.SECONDS).getResult());
+        assertEquals(REQUESTS, server.connections.get());
+
+        // and can still be used by blocking requests
+        final JNDIResponse response = new JNDIResponse();
+        Client.request(new JNDIRequest(RequestMethodCode.JNDI_LOOKUP, "blocking"), response, metaData);
+        assertEquals("blocking", response.getResult());
+    }
+
+    @Test
+    public void inFlightLimit() throws Exception {
+        server = new SlowServer(Integer.MAX_VALUE);
+        final ServerMetaData metaData = server.metaData();
+        Client.getContext(metaData).getProperties().setProperty(Client.OPENEJB_CLIENT_ASYNC_MAX_IN_FLIGHT, "2");
+        Client.getContext(metaData).getProperties().setProperty(Client.OPENEJB_CLIENT_ASYNC_TIMEOUT, "500");
+
+        Client.requestAsync(new JNDIRequest(RequestMethodCode.JNDI_LOOKUP, "a"), new JNDIResponse(), metaData);
+        Client.requestAsync(new JNDIRequest(RequestMethodCode.JNDI_LOOKUP, "b"), new JNDIResponse(), metaData);
+        final RemoteFuture<JNDIResponse> rejected = Client.requestAsync(new JNDIRequest(RequestMethodCode.JNDI_LOOKUP, "c"), new JNDIResponse(), metaData);
+
+        assertTrue(rejected.isDone());
+        try {
+            rejected.get();
+            fail();
+        } catch (final ExecutionException e) {
+            assertTrue(e.getCause() instanceof RejectedExecutionException);
+        }
+    }
+
+    @Test
+    public void timeout() throws Exception {
+        server = new SlowServer(Integer.MAX_VALUE);
+        final ServerMetaData metaData = server.metaData();
+        Client.getContext(metaData).getProperties().setProperty(Client.OPENEJB_CLIENT_ASYNC_TIMEOUT, "200");
+
+        final RemoteFuture<JNDIResponse> future = Client.requestAsync(new JNDIRequest(RequestMethodCode.JNDI_LOOKUP, "never"), new JNDIResponse(), metaData);
+        try {
+            future.get(30, TimeUnit.SECONDS);
+            fail();
+        } catch (final ExecutionException e) {
+            assertTrue(e.getCause() instanceof RemoteException);
+            assertTrue(e.getCause().getCause() instanceof TimeoutException);
+        }
+
+        // the permit was given back
+        assertEquals(256, Client.getContext(metaData).getInFlight().availablePermits());
+    }
+
+    @Test
+    public void timeoutWithoutChannel() throws Exception {
+        server = new SlowServer(Integer.MAX_VALUE);
+        final ServerMetaData metaData = server.metaData("blockingejbd");
+        Client.getContext(metaData).getProperties().setProperty(Client.OPENEJB_CLIENT_ASYNC_TIMEOUT, "200");
+
+        final RemoteFuture<JNDIResponse> future = Client.requestAsync(new JNDIRequest(RequestMethodCode.JNDI_LOOKUP, "never"), new JNDIResponse(), metaData);
+        try {
+            future.get(30, TimeUnit.SECONDS);
+            fail();
+        } catch (final ExecutionException e) {
+            assertTrue(e.getCause() instanceof RemoteException);
+            assertTrue(e.getCause().getCause() instanceof TimeoutException);
+        }
+
+        // the discarded connection released the waiting thread, which didn't complete the request again
+        for (int i = 0; i < 100 && threadsReading("OpenEJB.Client.Async.Blocking.") > 0; i++) {
+            Thread.sleep(50);
+        }
+        assertEquals(0, threadsReading("OpenEJB.Client.Async.Blocking."));
+        assertEquals(256, Client.getContext(metaData).getInFlight().availablePermits());
+    }
+
+    @Test
+    public void cancelReleasesTheCaller() throws Exception {
+        server = new SlowServer(Integer.MAX_VALUE);
+        final RemoteFuture<JNDIResponse> future = Client.requestAsync(new JNDIRequest(RequestMethodCode.JNDI_LOOKUP, "cancelled"), new JNDIResponse(), server.metaData());
+
+        final AtomicInteger cancelled = new AtomicInteger();
+        future.whenComplete(new RemoteFuture.Callback<JNDIResponse>() {
+            @Override
+            public void completed(final JNDIResponse result) {
+            }
+
+            @Override
+            public void failed(final Throwable cause) {
+                cancelled.incrementAndGet();
+            }
+        });
+
+        assertTrue(future.cancel(false));
+        assertTrue(future.isCancelled());
+        assertEquals(1, cancelled.get());
+        assertFalse(future.cancel(false));
+    }
+
+    private static int threads(final String prefix) {
+        int count = 0;
+        for (final Thread thread : Thread.getAllStackTraces().keySet()) {
+            if (thread.getName().startsWith(prefix)) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private static int threadsReading(final String prefix) {
+        int count = 0;
+        for (final Thread thread : Thread.getAllStackTraces().keySet()) {
+            if (thread.getName().startsWith(prefix) && thread.getState() == Thread.State.RUNNABLE) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Speaks just enough ejbd to answer JNDI lookups with the looked up name, once the expected
+     * number of requests arrived.
+     */
+    private static class SlowServer implements Runnable {
+
+        private final ServerSocket socket;
+        private final CountDownLatch received;
+        private final AtomicInteger connections = new AtomicInteger();
+
+        private SlowServer(final int expected) throws IOException {
+            this.socket = new ServerSocket(0);
+            this.received = new CountDownLatch(expected);
+            final Thread thread = new Thread(this, "slow-server");
+            thread.setDaemon(true);
+            thread.start();
+        }
+
+        private ServerMetaData metaData() {
+            return metaData("asyncejbd");
+        }
+
+        private ServerMetaData metaData(final String scheme) {
+            return new ServerMetaData(URI.create(scheme + "://127.0.0.1:" + socket.getLocalPort()));
+        }
+
+        @Override
+        public void run() {
+            while (!socket.isClosed()) {
+                try {
+                    final Socket client = socket.accept();
+                    connections.incrementAndGet();
+                    final Thread thread = new Thread(new Runnable() {
+                        @Override
+                        public void run() {
+                            serve(client);
+                        }
+                    });
+                    thread.setDaemon(true);
+                    thread.start();
+                } catch (final IOException e) {
+                    // closed
+                }
+            }
+        }
+
+        private void serve(final Socket client) {
+            try {
+                final InputStream in = new BufferedInputStream(client.getInputStream());
+                final OutputStream out = new BufferedOutputStream(client.getOutputStream());
+                while (in.read() != -1) { // keep alive
+                    new ProtocolMetaData().readExternal(in);
+                    final ObjectInputStream ois = new ObjectInputStream(in);
+                    new ServerMetaData().readExternal(ois);
+                    ois.read();
+                    new ClusterRequest().readExternal(ois);
+                    ois.read();
+                    final JNDIRequest request = new JNDIRequest();
+                    request.readExternal(ois);
+
+                    received.countDown();
+                    received.await();
+
+                    new ProtocolMetaData().writeExternal(out);
+                    final ObjectOutputStream oos = new ObjectOutputStream(out);
+                    new ClusterResponse(ClusterResponse.Code.CURRENT).writeExternal(oos);
+                    new JNDIResponse(ResponseCodes.JNDI_OK, request.getRequestString()).writeExternal(oos);
+                    oos.flush();
+                    out.flush();
+                }
+            } catch (final Exception e) {
+                // client went away
+            } finally {
+                try {
+                    client.close();
+                } catch (final IOException e) {
+                    // no-op
+                }
+            }
+        }
+
+        private void close() throws IOException {
+            socket.close();
+        }
+    }
+}
@@ -0,0 +1,188 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.openejb.client;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.lang.reflect.Method;
+import java.util.Arrays;
+import java.util.Random;
+
+public class CompressionTest extends Assert {
+
+    public interface Repository {
+
+        String store(String document);
+    }
+
+    @Test
+    public void largeParametersAreCompressed() throws Exception {
+        final String document = document(200 * 1024);
+        final EJBRequest request = request(document);
+        request.setCompression(Compression.Codec.FAST, 1024);
+
+        final EJBRequest actual = roundTrip(request);
+        assertEquals(document, actual.getMethodParameters()[0]);
+
+        final Compression.Sample sample = actual.getBody().getCompressionSample();
+        assertNotNull(sample);
+        assertEquals(Compression.Codec.FAST, sample.getCodec());
+        assertTrue(sample.toString(), sample.getCompressedSize() * 10 < sample.getSize());
+
+        // the server may answer with the codec the client asked for
+        assertEquals(Compression.Codec.FAST, actual.getBody().getCompression());
+    }
+
+    @Test
+    public void smallParametersAreNotCompressed() throws Exception {
+        final EJBRequest request = request("small");
+        request.setCompression(Compression.Codec.DEFLATE, 1024);
+
+        final EJBRequest actual = roundTrip(request);
+        assertEquals("small", actual.getMethodParameters()[0]);
+
+        final Compression.Sample sample = actual.getBody().getCompressionSample();
+        assertNotNull(sample);
+        assertEquals(Compression.Codec.NONE, sample.getCodec());
+        assertEquals(sample.getSize(), sample.getCompressedSize());
+        assertEquals(Compression.Codec.DEFLATE, actual.getBody().getCompression());
+    }
+
+    @Test
+    public void noCompressionByDefault() throws Exception {
+        final String document = document(200 * 1024);
+
+        final EJBRequest actual = roundTrip(request(document));
+        assertEquals(document, actual.getMethodParameters()[0]);
+        assertNull(actual.getBody().getCompressionSample());
+        assertEquals(Compression.Codec.NONE, actual.getBody().getCompression());
+    }
+
+    @Test
+    public void incompressibleResultIsSentAsIs() throws Exception {
+        final byte[] noise = new byte[128 * 1024];
+        new Random(42).nextBytes(noise);
+
+        final EJBResponse actual = roundTrip(response(noise, Compression.Codec.DEFLATE));
+        assertTrue(Arrays.equals(noise, (byte[]) actual.getResult()));
+        assertEquals(Compression.Codec.NONE, actual.getCompressionSample().getCodec());
+    }
+
+    @Test
+    public void largeResultIsCompressed() throws Exception {
+        final String document = document(500 * 1024);
+
+        final EJBResponse response = response(document, Compression.Codec.DEFLATE);
+        final EJBResponse actual = roundTrip(response);
+        assertEquals(document, actual.getResult());
+
+        assertEquals(Compression.Codec.DEFLATE, response.getCompressionSample().getCodec());
+        assertEquals(Compression.Codec.DEFLATE, actual.getCompressionSample().getCodec());
+        assertEquals(response.getCompressionSample().getCompressedSize(), actual.getCompressionSample().getCompressedSize());
+        assertTrue(actual.getCompressionSample().getCompressedSize() * 10 < actual.getCompressionSample().getSize());
+    }
+
+    @Test
+    public void olderProtocolIsNotCompressed() throws Exception {
+        final String document = document(200 * 1024);
+        final EJBResponse response = response(document, Compression.Codec.FAST);
+        response.setMetaData(new ProtocolMetaData("4.7"));
+
+        final EJBResponse actual = new EJBResponse();
+        actual.setMetaData(new ProtocolMetaData("4.7"));
+        read(write(response), actual);
+        assertEquals(document, actual.getResult());
+        assertNull(response.getCompressionSample());
+    }
+
+    @Test
+    public void corruptedSizeIsRejected() throws Exception {
+        final ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        final ObjectOutputStream out = new ObjectOutputStream(baos);
+        out.writeByte(Compression.Codec.FAST.ordinal());
+        out.writeInt(Integer.MAX_VALUE);
+        out.writeInt(16);
+        out.write(new byte[16]);
+        out.close();
+
+        try {
+            Compression.open(new ObjectInputStream(new ByteArrayInputStream(baos.toByteArray())), null);
+            fail("a 2GB payload was announced by 16 bytes");
+        } catch (final IOException e) {
+            // expected
+        }
+    }
+
+    private static String document(final int size) {
+        final StringBuilder sb = new StringBuilder(size);
+        for (int i = 0; sb.length() < size; i++) {
+            sb.append("<entry id=\"").append(i).append("\"><name>entry ").append(i % 100).append("</name></entry>\n");
+        }
+        return sb.toString();
+    }
+
+    private static EJBRequest request(final String document) throws NoSuchMethodException {
+        final EJBMetaDataImpl ejb = new EJBMetaDataImpl(null, null, null, "STATELESS", "RepositoryBean", InterfaceType.BUSINESS_REMOTE,
+            Arrays.<Class>asList(Repository.class), null);
+        final Method method = Repository.class.getMethod("store", String.class);
+        return new EJBRequest(RequestMethodCode.EJB_OBJECT_BUSINESS_METHOD, ejb, method, new Object[]{document}, null, null);
+    }
+
+    private static EJBResponse response(final Object result, final Compression.Codec codec) {
+        final EJBResponse response = new EJBResponse();
+        response.setResponse(EJBResponse.VERSION, ResponseCodes.EJB_OK, result);
+        response.setCompression(codec, 1024);
+        return response;
+    }
+
+    private static EJBRequest roundTrip(final EJBRequest request) throws Exception {
+        final ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        final ObjectOutputStream out = new ObjectOutputStream(baos);
+        request.writeExternal(out);
+        out.close();
+
+        final ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(baos.toByteArray()));
+        final EJBRequest actual = new EJBRequest();
+        actual.readExternal(in);
+        actual.getBody().readExternal(in);
+        return actual;
+    }
+
+    private static EJBResponse roundTrip(final EJBResponse response) throws Exception {
+        final EJBResponse actual = new EJBResponse();
+        read(write(response), actual);
+        return actual;
+    }
+
+    private static byte[] write(final EJBResponse response) throws IOException {
+        final ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        final ObjectOutputStream out = new ObjectOutputStream(baos);
+        response.writeExternal(out);
+        out.close();
+        return baos.toByteArray();
+    }
+
+    private static void read(final byte[] bytes, final EJBResponse response) throws Exception {
+        response.readExternal(new ObjectInputStream(new ByteArrayInputStream(bytes)));
+    }
+}
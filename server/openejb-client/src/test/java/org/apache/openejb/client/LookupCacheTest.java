@@ -0,0 +1,261 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.openejb.client;
+
+import org.apache.openejb.client.event.LookupCacheHit;
+import org.apache.openejb.client.event.LookupCacheInvalidated;
+import org.apache.openejb.client.event.LookupCacheMiss;
+import org.apache.openejb.client.event.Observes;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.naming.InitialContext;
+import javax.naming.NamingException;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInput;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.net.URI;
+import java.util.Collections;
+import java.util.Properties;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class LookupCacheTest extends Assert {
+
+    private static final AtomicInteger requests = new AtomicInteger();
+    private static volatile long serverVersion;
+
+    private final CacheObserver observer = new CacheObserver();
+
+    @Before
+    public void setup() {
+        ConnectionManager.registerFactory("lookupcache", new MockConnectionFactory());
+        ConnectionManager.registerFactory("lookupcachesfsb", new StatefulConnectionFactory());
+        Client.addEventObserver(observer);
+        requests.set(0);
+        serverVersion = 1;
+    }
+
+    @After
+    public void cleanup() {
+        Client.removeEventObserver(observer);
+    }
+
+    @Test
+    public void lookupsAreCached() throws Exception {
+        final InitialContext context = getContext("lookupcache://cached:4201", null);
+
+        context.lookup("foo");
+        context.lookup("foo");
+        getContext("lookupcache://cached:4201", null).lookup("foo");
+
+        assertEquals(1, requests.get());
+        assertEquals(1, observer.misses.get());
+        assertEquals(2, observer.hits.get());
+
+        context.lookup("bar");
+        assertEquals(2, requests.get());
+    }
+
+    @Test
+    public void statefulLookupsAreNotCached() throws Exception {
+        final InitialContext context = getContext("lookupcachesfsb://stateful:4201", null);
+
+        final Object first = context.lookup("Counter");
+        final Object second = context.lookup("Counter");
+
+        assertEquals(2, requests.get());
+        assertEquals(0, observer.hits.get());
+        assertEquals(1, sessionOf(first));
+        assertEquals(2, sessionOf(second));
+    }
+
+    @Test
+    public void deploymentChangeInvalidates() throws Exception {
+        final InitialContext context = getContext("lookupcache://invalidated:4201", null);
+
+        context.lookup("foo");
+        context.lookup("foo");
+        assertEquals(1, requests.get());
+
+        serverVersion = 2; // a new application was deployed, seen with the next request
+        context.lookup("bar");
+        assertEquals(1, observer.invalidations.get());
+
+        context.lookup("foo");
+        assertEquals(3, requests.get());
+        context.lookup("foo");
+        assertEquals(3, requests.get());
+    }
+
+    @Test
+    public void disabled() throws Exception {
+        final InitialContext context = getContext("lookupcache://disabled:4201", "0");
+
+        context.lookup("foo");
+        context.lookup("foo");
+
+        assertEquals(2, requests.get());
+        assertEquals(0, observer.hits.get());
+    }
+
+    @Test
+    public void notCachedWithoutServerVersion() throws Exception {
+        serverVersion = LookupCache.UNKNOWN_VERSION;
+        final InitialContext context = getContext("lookupcache://old:4201", null);
+
+        context.lookup("foo");
+        context.lookup("foo");
+
+        assertEquals(2, requests.get());
+    }
+
+    @Test
+    public void versionNotSentToOlderProtocol() throws Exception {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        final ObjectOutputStream oos = new ObjectOutputStream(out);
+        final ClusterResponse old = new ClusterResponse(ClusterResponse.Code.CURRENT);
+        old.setDeploymentVersion(5);
+        old.setMetaData(new ProtocolMetaData("4.6"));
+        old.writeExternal(oos);
+        final ClusterResponse current = new ClusterResponse(ClusterResponse.Code.CURRENT);
+        current.setDeploymentVersion(5);
+        current.writeExternal(oos);
+        oos.close();
+
+        final ObjectInput in = new ObjectInputStream(new ByteArrayInputStream(out.toByteArray()));
+        final ClusterResponse readOld = new ClusterResponse();
+        readOld.setMetaData(new ProtocolMetaData("4.6"));
+        readOld.readExternal(in);
+        assertEquals(LookupCache.UNKNOWN_VERSION, readOld.getDeploymentVersion());
+
+        final ClusterResponse readCurrent = new ClusterResponse();
+        readCurrent.setMetaData(new ProtocolMetaData());
+        readCurrent.readExternal(in);
+        assertEquals(5, readCurrent.getDeploymentVersion());
+    }
+
+    private static Object sessionOf(final Object proxy) {
+        return EJBObjectProxy.class.cast(proxy).getEJBObjectHandler().getPrimaryKey();
+    }
+
+    private InitialContext getContext(final String uri, final String ttl) throws NamingException {
+        final Properties p = new Properties();
+        p.put("java.naming.factory.initial", "org.apache.openejb.client.RemoteInitialContextFactory");
+        p.put("java.naming.provider.url", uri);
+        if (ttl != null) {
+            p.put(LookupCache.TIME_TO_LIVE, ttl);
+        }
+
+        return new InitialContext(p);
+    }
+
+    public static class CacheObserver {
+
+        private final AtomicInteger hits = new AtomicInteger();
+        private final AtomicInteger misses = new AtomicInteger();
+        private final AtomicInteger invalidations = new AtomicInteger();
+
+        public void hit(@Observes final LookupCacheHit event) {
+            hits.incrementAndGet();
+        }
+
+        public void miss(@Observes final LookupCacheMiss event) {
+            misses.incrementAndGet();
+        }
+
+        public void invalidated(@Observes final LookupCacheInvalidated event) {
+            invalidations.incrementAndGet();
+        }
+    }
+
+    public interface Counter {
+        int next();
+    }
+
+    public static class StatefulConnectionFactory extends MockConnectionFactory {
+
+        private final AtomicInteger sessions = new AtomicInteger();
+
+        @Override
+        protected JNDIResponse response() {
+            final EJBMetaDataImpl metaData = new EJBMetaDataImpl(null, null, null, "STATEFUL", "Counter",
+                InterfaceType.BUSINESS_REMOTE, Collections.<Class>singletonList(Counter.class), null);
+            metaData.setPrimaryKey(sessions.incrementAndGet());
+            return new JNDIResponse(ResponseCodes.JNDI_BUSINESS_OBJECT, metaData);
+        }
+    }
+
+    public static class MockConnectionFactory implements ConnectionFactory {
+
+        protected JNDIResponse response() {
+            return new JNDIResponse(ResponseCodes.JNDI_CONTEXT, null);
+        }
+
+        @Override
+        public Connection getConnection(final URI uri) throws IOException {
+            requests.incrementAndGet();
+            final JNDIResponse response = response();
+            return new Connection() {
+                private final ByteArrayInputStream in;
+                private final ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+                {
+                    new ProtocolMetaData().writeExternal(out);
+                    final ObjectOutputStream oos = new ObjectOutputStream(out);
+                    final ClusterResponse clusterResponse = new ClusterResponse(ClusterResponse.Code.CURRENT);
+                    clusterResponse.setDeploymentVersion(serverVersion);
+                    clusterResponse.writeExternal(oos);
+                    response.writeExternal(oos);
+                    oos.close();
+
+                    in = new ByteArrayInputStream(out.toByteArray());
+                    out.reset();
+                }
+
+                @Override
+                public URI getURI() {
+                    return uri;
+                }
+
+                @Override
+                public void discard() {
+                }
+
+                @Override
+                public void close() throws IOException {
+                }
+
+                @Override
+                public InputStream getInputStream() throws IOException {
+                    return in;
+                }
+
+                @Override
+                public OutputStream getOutputStream() throws IOException {
+                    return out;
+                }
+            };
+        }
+    }
+}
@@ -0,0 +1,241 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.openejb.client;
+
+import org.apache.openejb.client.event.ConnectionEvicted;
+import org.apache.openejb.client.event.ConnectionPoolResized;
+import org.apache.openejb.client.event.ConnectionPoolTimeout;
+import org.apache.openejb.client.event.ConnectionPoolWaited;
+import org.apache.openejb.client.event.ConnectionPoolWarmedUp;
+import org.apache.openejb.client.event.Observes;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class SocketConnectionPoolTest extends Assert {
+
+    private final PoolObserver observer = new PoolObserver();
+    private Acceptor server;
+
+    @Before
+    public void setup() throws IOException {
+        server = new Acceptor();
+        Client.addEventObserver(observer);
+    }
+
+    @After
+    public void cleanup() throws IOException {
+        Client.removeEventObserver(observer);
+        System.clearProperty(SocketConnectionFactory.PROPERTY_POOL_SIZE);
+        System.clearProperty(SocketConnectionFactory.PROPERTY_POOL_MAX_SIZE);
+        System.clearProperty(SocketConnectionFactory.PROPERTY_POOL_TIMEOUT);
+        System.clearProperty(SocketConnectionFactory.PROPERTY_POOL_GROW_AFTER);
+        System.clearProperty(SocketConnectionFactory.PROPERTY_POOL_IDLE_TIMEOUT);
+        server.close();
+    }
+
+    @Test
+    public void fixedSizeByDefault() throws Exception {
+        final SocketConnectionFactory factory = factory(1, 0, 0);
+
+        final Connection first = factory.getConnection(server.uri);
+        try {
+            factory.getConnection(server.uri);
+            fail("the pool grew");
+        } catch (final ConnectionPoolTimeoutException e) {
+            // expected
+        }
+        assertEquals(1, observer.timeouts.get());
+        assertEquals(0, observer.resized.size());
+
+        first.close();
+        factory.getConnection(server.uri).close();
+        assertEquals(1, server.accepted(1));
+    }
+
+    @Test
+    public void growsWhenCallersWait() throws Exception {
+        final SocketConnectionFactory factory = factory(1, 2, 0);
+
+        final Connection first = factory.getConnection(server.uri);
+        final Connection second = factory.getConnection(server.uri);
+        assertEquals(2, server.accepted(2));
+        assertEquals(1, observer.waits.get());
+        assertEquals(1, observer.resized.size());
+        assertEquals(2, observer.resized.get(0).getSize());
+
+        // at its max size, waits for one of the two
+        try {
+            factory.getConnection(server.uri);
+            fail("the pool grew past its max size");
+        } catch (final ConnectionPoolTimeoutException e) {
+            // expected
+        }
+
+        first.close();
+        second.close();
+        factory.getConnection(server.uri).close();
+        factory.getConnection(server.uri).close();
+        assertEquals(2, server.accepted(2));
+    }
+
+    @Test
+    public void idleConnectionsAreEvicted() throws Exception {
+        final SocketConnectionFactory factory = factory(1, 2, 100);
+
+        final Connection first = factory.getConnection(server.uri);
+        final Connection second = factory.getConnection(server.uri);
+        first.close();
+        second.close();
+
+        Thread.sleep(300);
+
+        // both idle for too long, the pool is back to its initial size with a new connection
+        factory.getConnection(server.uri).close();
+        assertEquals(2, observer.evicted.get());
+        assertEquals(3, server.accepted(3));
+        assertEquals(1, observer.resized.get(observer.resized.size() - 1).getSize());
+
+        final Connection third = factory.getConnection(server.uri);
+        try {
+            factory.getConnection(server.uri).close(); // can grow again
+        } finally {
+            third.close();
+        }
+    }
+
+    @Test
+    public void warmUp() throws Exception {
+        final SocketConnectionFactory factory = factory(5, 0, 0);
+
+        factory.warmUp(server.uri, 3);
+        assertTrue(observer.warmedUp.await(10, TimeUnit.SECONDS));
+        assertEquals(3, server.accepted(3));
+
+        final List<Connection> connections = new ArrayList<Connection>();
+        for (int i = 0; i < 3; i++) {
+            connections.add(factory.getConnection(server.uri));
+        }
+        assertEquals(3, server.accepted(3));
+        for (final Connection connection : connections) {
+            connection.close();
+        }
+    }
+
+    private static SocketConnectionFactory factory(final int size, final int maxSize, final long idleTimeout) {
+        System.setProperty(SocketConnectionFactory.PROPERTY_POOL_SIZE, Integer.toString(size));
+        System.setProperty(SocketConnectionFactory.PROPERTY_POOL_MAX_SIZE, Integer.toString(maxSize));
+        System.setProperty(SocketConnectionFactory.PROPERTY_POOL_TIMEOUT, "200");
+        System.setProperty(SocketConnectionFactory.PROPERTY_POOL_GROW_AFTER, "20");
+        System.setProperty(SocketConnectionFactory.PROPERTY_POOL_IDLE_TIMEOUT, Long.toString(idleTimeout));
+        return new SocketConnectionFactory();
+    }
+
+    public static class PoolObserver {
+
+        private final AtomicInteger timeouts = new AtomicInteger();
+        private final AtomicInteger waits = new AtomicInteger();
+        private final AtomicInteger evicted = new AtomicInteger();
+        private final List<ConnectionPoolResized> resized = new ArrayList<ConnectionPoolResized>();
+        private final CountDownLatch warmedUp = new CountDownLatch(1);
+
+        public void timeout(@Observes final ConnectionPoolTimeout event) {
+            timeouts.incrementAndGet();
+        }
+
+        public void waited(@Observes final ConnectionPoolWaited event) {
+            waits.incrementAndGet();
+        }
+
+        public void evicted(@Observes final ConnectionEvicted event) {
+            evicted.incrementAndGet();
+        }
+
+        public synchronized void resized(@Observes final ConnectionPoolResized event) {
+            resized.add(event);
+        }
+
+        public void warmedUp(@Observes final ConnectionPoolWarmedUp event) {
+            warmedUp.countDown();
+        }
+    }
+
+    /**
+     * Accepts and keeps the connections, enough as long as no request is sent.
+     */
+    private static class Acceptor implements Runnable {
+
+        private final ServerSocket socket;
+        private final URI uri;
+        private final AtomicInteger accepted = new AtomicInteger();
+        private final List<Socket> sockets = new ArrayList<Socket>();
+
+        private Acceptor() throws IOException {
+            socket = new ServerSocket(0);
+            uri = URI.create("ejbd://127.0.0.1:" + socket.getLocalPort());
+            final Thread thread = new Thread(this, "acceptor");
+            thread.setDaemon(true);
+            thread.start();
+        }
+
+        @Override
+        public void run() {
+            while (!socket.isClosed()) {
+                try {
+                    final Socket accepted = socket.accept();
+                    synchronized (sockets) {
+                        sockets.add(accepted);
+                    }
+                    this.accepted.incrementAndGet();
+                } catch (final IOException e) {
+                    // closed
+                }
+            }
+        }
+
+        /**
+         * @return the accepted connections, once they reached the expected count or after a while
+         */
+        private int accepted(final int expected) throws InterruptedException {
+            for (int i = 0; i < 100 && accepted.get() < expected; i++) {
+                Thread.sleep(50);
+            }
+            Thread.sleep(50); // would have caught one too many
+            return accepted.get();
+        }
+
+        private void close() throws IOException {
+            socket.close();
+            synchronized (sockets) {
+                for (final Socket s : sockets) {
+                    s.close();
+                }
+            }
+        }
+    }
+}
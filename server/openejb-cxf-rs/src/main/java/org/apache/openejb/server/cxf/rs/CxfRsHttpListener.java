@@ -23,7 +23,6 @@ import org.apache.cxf.endpoint.EndpointException;
 import org.apache.cxf.endpoint.ManagedEndpoint;
 import org.apache.cxf.endpoint.Server;
 import org.apache.cxf.endpoint.ServerImpl;
-import org.apache.cxf.helpers.IOUtils;
 import org.apache.cxf.jaxrs.JAXRSServerFactoryBean;
 import org.apache.cxf.jaxrs.JAXRSServiceImpl;
 import org.apache.cxf.jaxrs.ext.ResourceComparator;
@@ -91,7 +90,6 @@ import javax.management.ObjectName;
 import javax.management.openmbean.TabularData;
 import javax.naming.Context;
 import javax.servlet.ServletException;
-import javax.servlet.ServletOutputStream;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import javax.ws.rs.ConstrainedTo;
@@ -138,7 +136,6 @@ public class CxfRsHttpListener implements RsHttpListener {
     public static final boolean TRY_STATIC_RESOURCES = "true".equalsIgnoreCase(SystemInstance.get().getProperty("openejb.jaxrs.static-first", "true"));
     private static final boolean FAIL_ON_CONSTRAINED_TO = "true".equalsIgnoreCase(SystemInstance.get().getProperty("openejb.jaxrs.fail-on-constrainedto", "true"));
 
-    private static final Map<String, String> STATIC_CONTENT_TYPES;
     private static final String[] DEFAULT_WELCOME_FILES = new String[]{ "/index.html", "/index.htm" };
 
     private final DestinationFactory transportFactory;
@@ -148,26 +145,14 @@ public class CxfRsHttpListener implements RsHttpListener {
     private String context = "";
     private String servlet = "";
     private final Collection<Pattern> staticResourcesList = new CopyOnWriteArrayList<>();
+    private volatile Pattern staticResourcesPattern;
+    private final StaticResourceCache staticResourceCache = new StaticResourceCache();
     private final List<ObjectName> jmxNames = new ArrayList<>();
     private final Collection<CreationalContext<?>> toRelease = new LinkedHashSet<>();
     private final Collection<CdiSingletonResourceProvider> singletons = new LinkedHashSet<>();
 
     private static final char[] URL_SEP = new char[] { '?', '#', ';' };
 
-    static {
-        STATIC_CONTENT_TYPES = new HashMap<>();
-        STATIC_CONTENT_TYPES.put("html", "text/html");
-        STATIC_CONTENT_TYPES.put("htm", "text/html");
-        STATIC_CONTENT_TYPES.put("xhtml", "text/html");
-        STATIC_CONTENT_TYPES.put("txt", "text/plain");
-        STATIC_CONTENT_TYPES.put("css", "text/css");
-        STATIC_CONTENT_TYPES.put("jpg", "image/jpg");
-        STATIC_CONTENT_TYPES.put("png", "image/png");
-        STATIC_CONTENT_TYPES.put("ico", "image/ico");
-        STATIC_CONTENT_TYPES.put("pdf", "application/pdf");
-        STATIC_CONTENT_TYPES.put("xsd", "application/xml");
-    }
-
     private String pattern;
 
     public CxfRsHttpListener(final DestinationFactory destinationFactory, final String star) {
@@ -192,11 +177,12 @@ public class CxfRsHttpListener implements RsHttpListener {
         if (TRY_STATIC_RESOURCES || (matchedStatic = matchPath(httpRequest))) {
             final String pathInfo = httpRequest.getPathInfo();
             if (serveStaticContent(httpRequest, httpResponse, pathInfo)) {
-                if (matchedStatic) { // we should have gotten the resource
-                    throw new ServletException("Static resource " + pathInfo + " is not available");
-                }
-                return; // ok that's a surely rest service
+                return;
             }
+            if (matchedStatic) { // we should have gotten the resource
+                throw new ServletException("Static resource " + pathInfo + " is not available");
+            }
+            // ok that's a surely rest service
         }
 
         doInvoke(httpRequest, httpResponse);
@@ -225,7 +211,8 @@ public class CxfRsHttpListener implements RsHttpListener {
     }
 
     public boolean matchPath(final HttpServletRequest request) {
-        if (staticResourcesList.isEmpty()) {
+        final Pattern pattern = staticResourcesPattern;
+        if (pattern == null) {
             return false;
         }
 
@@ -233,15 +220,23 @@ public class CxfRsHttpListener implements RsHttpListener {
         if (path == null || path.isEmpty()) {
             path = "/";
         }
-        for (final Pattern pattern : staticResourcesList) {
-            if (pattern.matcher(path).matches()) {
-                return true;
-            }
-        }
-        return false;
+        return pattern.matcher(path).matches();
     }
 
     public InputStream findStaticContent(final HttpServletRequest request, final String[] welcomeFiles) throws ServletException {
+        final StaticResourceCache.Resource resource = findStaticResource(request, welcomeFiles);
+        return resource == null ? null : resource.open(request.getServletContext());
+    }
+
+    /**
+     * Same as {@link #findStaticContent(HttpServletRequest, String[])} but does not open the resource,
+     * use it when only the existence matters.
+     */
+    public boolean hasStaticContent(final HttpServletRequest request, final String[] welcomeFiles) {
+        return findStaticResource(request, welcomeFiles) != null;
+    }
+
+    private StaticResourceCache.Resource findStaticResource(final HttpServletRequest request, final String[] welcomeFiles) {
         String pathInfo = request.getRequestURI().substring(request.getContextPath().length());
         for (final char c : URL_SEP) {
             final int indexOf = pathInfo.indexOf(c);
@@ -249,38 +244,18 @@ public class CxfRsHttpListener implements RsHttpListener {
                 pathInfo = pathInfo.substring(0, indexOf);
             }
         }
-        InputStream is = request.getServletContext().getResourceAsStream(pathInfo);
-        if (is == null && ("/".equals(pathInfo) || pathInfo.isEmpty())) {
-            for (final String n : welcomeFiles) {
-                is = request.getServletContext().getResourceAsStream(n);
-                if (is != null) {
-                    break;
-                }
-            }
-        }
-        return is;
+        return staticResourceCache.find(request.getServletContext(), pathInfo, welcomeFiles);
     }
 
     public boolean serveStaticContent(final HttpServletRequest request,
                                       final HttpServletResponse response,
                                       final String pathInfo) throws ServletException {
-        final InputStream is = findStaticContent(request, DEFAULT_WELCOME_FILES);
-        if (is == null) {
+        final StaticResourceCache.Resource resource = findStaticResource(request, DEFAULT_WELCOME_FILES);
+        if (resource == null) {
             return false;
         }
         try {
-            final int ind = pathInfo.lastIndexOf(".");
-            if (ind != -1 && ind < pathInfo.length()) {
-                final String type = STATIC_CONTENT_TYPES.get(pathInfo.substring(ind + 1));
-                if (type != null) {
-                    response.setContentType(type);
-                }
-            }
-
-            final ServletOutputStream os = response.getOutputStream();
-            IOUtils.copy(is, os);
-            os.flush();
-            response.setStatus(HttpURLConnection.HTTP_OK);
+            resource.serve(request, response);
         } catch (final IOException ex) {
             throw new ServletException("Static resource " + pathInfo + " can not be written to the output stream");
         }
@@ -812,6 +787,7 @@ public class CxfRsHttpListener implements RsHttpListener {
                     staticResourcesList.add(Pattern.compile(trimmed));
                 }
             }
+            staticResourcesPattern = StaticResourceCache.combine(staticResourcesList);
         }
 
         // providers
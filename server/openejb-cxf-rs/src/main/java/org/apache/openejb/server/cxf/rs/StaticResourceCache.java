@@ -0,0 +1,522 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.openejb.server.cxf.rs;
+
+import org.apache.openejb.loader.IO;
+import org.apache.openejb.loader.SystemInstance;
+import org.apache.openejb.util.Duration;
+
+import javax.servlet.ServletContext;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLConnection;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TimeZone;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
+import java.util.zip.CRC32;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Remembers what {@link ServletContext#getResourceAsStream(String)} returned for a path so that
+ * static resources are served from memory with validators (ETag/Last-Modified) and an optional
+ * gzip variant, and so that REST calls, which are looked up as static resources first when
+ * {@link CxfRsHttpListener#TRY_STATIC_RESOURCES} is on, only pay for the miss once.
+ *
+ * Entries are revalidated after {@code openejb.jaxrs.static-cache.ttl} (a negative value means never).
+ * The resources found are kept in a LRU bounded by {@code openejb.jaxrs.static-cache.max-entries} and by
+ * the bytes they hold, {@code openejb.jaxrs.static-cache.max-bytes}. The paths not found, REST calls
+ * with path parameters included, are kept in a separate smaller LRU
+ * ({@code openejb.jaxrs.static-cache.max-misses}) so they never evict content.
+ */
+public class StaticResourceCache {
+
+    public static final String CACHE_PREFIX = "openejb.jaxrs.static-cache";
+
+    private static final Map<String, String> CONTENT_TYPES = new HashMap<>();
+    private static final Collection<String> COMPRESSIBLE_TYPES = Arrays.asList(
+        "text/html", "text/plain", "text/css", "application/xml", "application/javascript");
+
+    static {
+        CONTENT_TYPES.put("html", "text/html");
+        CONTENT_TYPES.put("htm", "text/html");
+        CONTENT_TYPES.put("xhtml", "text/html");
+        CONTENT_TYPES.put("txt", "text/plain");
+        CONTENT_TYPES.put("css", "text/css");
+        CONTENT_TYPES.put("jpg", "image/jpg");
+        CONTENT_TYPES.put("png", "image/png");
+        CONTENT_TYPES.put("ico", "image/ico");
+        CONTENT_TYPES.put("pdf", "application/pdf");
+        CONTENT_TYPES.put("xsd", "application/xml");
+    }
+
+    /**
+     * Compressing tiny files is not worth the header
+     */
+    private static final int MIN_COMPRESS_SIZE = 1024;
+
+    private final boolean enabled;
+    private final long ttl;
+    private final int maxSize;
+    private final int maxEntries;
+    private final long maxBytes;
+    private final Map<String, Resource> resources = new LinkedHashMap<>(16, .75f, true); // guarded by itself
+    private final Map<String, Resource> notFound; // guarded by resources
+    private long bytes; // guarded by resources
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    public StaticResourceCache() {
+        this(
+            "true".equalsIgnoreCase(SystemInstance.get().getProperty(CACHE_PREFIX, "true")),
+            new Duration(SystemInstance.get().getProperty(CACHE_PREFIX + ".ttl", "5 seconds")),
+            Integer.parseInt(SystemInstance.get().getProperty(CACHE_PREFIX + ".max-size", Integer.toString(512 * 1024))),
+            Integer.parseInt(SystemInstance.get().getProperty(CACHE_PREFIX + ".max-entries", "10000")),
+            Long.parseLong(SystemInstance.get().getProperty(CACHE_PREFIX + ".max-bytes", Long.toString(32 * 1024 * 1024))),
+            Integer.parseInt(SystemInstance.get().getProperty(CACHE_PREFIX + ".max-misses", "1000")));
+    }
+
+    public StaticResourceCache(final boolean enabled, final Duration ttl, final int maxSize, final int maxEntries) {
+        this(enabled, ttl, maxSize, maxEntries, 32 * 1024 * 1024, 1000);
+    }
+
+    public StaticResourceCache(final boolean enabled, final Duration ttl, final int maxSize, final int maxEntries,
+                               final long maxBytes, final int maxMisses) {
+        this.enabled = enabled;
+        this.ttl = ttl.getTime() < 0 ? -1 : ttl.getUnit() == null ? ttl.getTime() * 1000000 : ttl.getTime(TimeUnit.NANOSECONDS);
+        this.maxSize = maxSize;
+        this.maxEntries = maxEntries;
+        this.maxBytes = maxBytes;
+        this.notFound = new LinkedHashMap<String, Resource>(16, .75f, true) {
+            @Override
+            protected boolean removeEldestEntry(final Map.Entry<String, Resource> eldest) {
+                return size() > maxMisses;
+            }
+        };
+    }
+
+    /**
+     * Merges the static-resources-list patterns into a single alternation so a path is matched
+     * in one pass over a single automaton rather than once per configured pattern.
+     *
+     * @return null if there is no pattern
+     */
+    public static Pattern combine(final Collection<Pattern> patterns) {
+        if (patterns.isEmpty()) {
+            return null;
+        }
+        if (patterns.size() == 1) {
+            return patterns.iterator().next();
+        }
+
+        final StringBuilder regex = new StringBuilder();
+        for (final Pattern pattern : patterns) {
+            if (regex.length() > 0) {
+                regex.append('|');
+            }
+            regex.append("(?:").append(pattern.pattern()).append(')');
+        }
+        return Pattern.compile(regex.toString());
+    }
+
+    public Resource find(final ServletContext context, final String path, final String[] welcomeFiles) {
+        final Resource resource = find(context, path);
+        if (resource != null || !("/".equals(path) || path.isEmpty())) {
+            return resource;
+        }
+
+        for (final String welcomeFile : welcomeFiles) {
+            final Resource welcome = find(context, welcomeFile);
+            if (welcome != null) {
+                return welcome;
+            }
+        }
+        return null;
+    }
+
+    public Resource find(final ServletContext context, final String path) {
+        if (!enabled) { // streamed as it is, no validator nor compressed variant to compute
+            final InputStream is = context.getResourceAsStream(path);
+            if (is == null) {
+                return null;
+            }
+            IO.close(is);
+            return new Resource(path, true, contentType(path), null, null, null, 0, null, System.nanoTime());
+        }
+
+        Resource resource;
+        synchronized (resources) {
+            resource = resources.get(path);
+            if (resource == null) {
+                resource = notFound.get(path);
+            }
+        }
+        if (resource == null || resource.isExpired(ttl)) {
+            misses.incrementAndGet();
+            resource = load(context, path);
+            store(resource);
+        } else {
+            hits.incrementAndGet();
+        }
+        return resource.exists ? resource : null;
+    }
+
+    private void store(final Resource resource) {
+        final long size = resource.size();
+        synchronized (resources) {
+            final Resource previous = resources.remove(resource.path);
+            if (previous != null) {
+                bytes -= previous.size();
+            }
+            notFound.remove(resource.path);
+
+            if (!resource.exists) {
+                notFound.put(resource.path, resource);
+                return;
+            }
+            if (size > maxBytes || maxEntries <= 0) {
+                return;
+            }
+
+            resources.put(resource.path, resource);
+            bytes += size;
+
+            final Iterator<Resource> lru = resources.values().iterator();
+            while ((bytes > maxBytes || resources.size() > maxEntries) && lru.hasNext()) {
+                bytes -= lru.next().size();
+                lru.remove();
+            }
+        }
+    }
+
+    public void clear() {
+        synchronized (resources) {
+            resources.clear();
+            notFound.clear();
+            bytes = 0;
+        }
+    }
+
+    /**
+     * @return the number of resources found kept in memory
+     */
+    public int size() {
+        synchronized (resources) {
+            return resources.size();
+        }
+    }
+
+    /**
+     * @return the bytes held by the resources kept in memory
+     */
+    public long getBytes() {
+        synchronized (resources) {
+            return bytes;
+        }
+    }
+
+    /**
+     * @return the number of paths remembered as not found
+     */
+    public int getNotFound() {
+        synchronized (resources) {
+            return notFound.size();
+        }
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    private Resource load(final ServletContext context, final String path) {
+        final InputStream is = context.getResourceAsStream(path);
+        if (is == null) {
+            return new Resource(path, false, null, null, null, null, 0, null, System.nanoTime());
+        }
+
+        byte[] content = null;
+        try {
+            content = read(is, maxSize);
+        } catch (final IOException e) {
+            // served as a stream then, like an oversized resource
+        } finally {
+            IO.close(is);
+        }
+
+        final long lastModified = lastModified(context, path);
+        final String contentType = contentType(path);
+
+        if (content == null) {
+            final String etag = "W/\"" + path.hashCode() + "-" + lastModified + "\"";
+            return new Resource(path, true, contentType, null, null, etag, lastModified, httpDate(lastModified), System.nanoTime());
+        }
+
+        final CRC32 crc = new CRC32();
+        crc.update(content);
+        final String etag = "\"" + Long.toHexString(crc.getValue()) + "-" + content.length + "\"";
+
+        return new Resource(path, true, contentType, content, compressed(context, path, contentType, content), etag,
+            lastModified, httpDate(lastModified), System.nanoTime());
+    }
+
+    private byte[] compressed(final ServletContext context, final String path, final String contentType, final byte[] content) {
+        // a variant precompressed at build time wins
+        final InputStream gz = context.getResourceAsStream(path + ".gz");
+        if (gz != null) {
+            try {
+                return read(gz, maxSize);
+            } catch (final IOException e) {
+                return null;
+            } finally {
+                IO.close(gz);
+            }
+        }
+
+        if (content.length < MIN_COMPRESS_SIZE || contentType == null || !COMPRESSIBLE_TYPES.contains(contentType)) {
+            return null;
+        }
+
+        try {
+            final ByteArrayOutputStream out = new ByteArrayOutputStream(content.length / 2);
+            final GZIPOutputStream gzip = new GZIPOutputStream(out);
+            gzip.write(content);
+            gzip.close();
+            return out.size() < content.length ? out.toByteArray() : null;
+        } catch (final IOException e) {
+            return null;
+        }
+    }
+
+    private static long lastModified(final ServletContext context, final String path) {
+        try {
+            final URL url = context.getResource(path);
+            if (url != null) {
+                final URLConnection connection = url.openConnection();
+                connection.setUseCaches(false);
+                final long lastModified = connection.getLastModified();
+                if (lastModified > 0) {
+                    return lastModified / 1000 * 1000; // http dates have a second precision
+                }
+            }
+        } catch (final Exception e) {
+            // no validator then
+        }
+        return 0;
+    }
+
+    /**
+     * @return the content or null if it is bigger than {@code max}
+     */
+    private static byte[] read(final InputStream is, final int max) throws IOException {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        final byte[] buffer = new byte[8192];
+        int read;
+        while ((read = is.read(buffer)) >= 0) {
+            out.write(buffer, 0, read);
+            if (out.size() > max) {
+                return null;
+            }
+        }
+        return out.toByteArray();
+    }
+
+    private static String contentType(final String path) {
+        final int ind = path.lastIndexOf('.');
+        if (ind != -1 && ind < path.length()) {
+            return CONTENT_TYPES.get(path.substring(ind + 1));
+        }
+        return null;
+    }
+
+    private static String httpDate(final long time) {
+        if (time <= 0) {
+            return null;
+        }
+        return httpDateFormat().format(new Date(time));
+    }
+
+    private static SimpleDateFormat httpDateFormat() {
+        final SimpleDateFormat format = new SimpleDateFormat("EEE, dd MMM yyyy HH:mm:ss zzz", Locale.US);
+        format.setTimeZone(TimeZone.getTimeZone("GMT"));
+        return format;
+    }
+
+    public static class Resource {
+
+        private final String path;
+        private final boolean exists;
+        private final String contentType;
+        private final byte[] content;
+        private final byte[] gzip;
+        private final String etag;
+        private final long lastModified;
+        private final String lastModifiedHeader;
+        private final long loaded;
+
+        private Resource(final String path, final boolean exists, final String contentType, final byte[] content, final byte[] gzip, final String etag,
+                         final long lastModified, final String lastModifiedHeader, final long loaded) {
+            this.path = path;
+            this.exists = exists;
+            this.contentType = contentType;
+            this.content = content;
+            this.gzip = gzip;
+            this.etag = etag;
+            this.lastModified = lastModified;
+            this.lastModifiedHeader = lastModifiedHeader;
+            this.loaded = loaded;
+        }
+
+        private long size() {
+            return (content == null ? 0 : content.length) + (gzip == null ? 0 : gzip.length);
+        }
+
+        private boolean isExpired(final long ttl) {
+            return ttl >= 0 && System.nanoTime() - loaded > ttl;
+        }
+
+        public String getPath() {
+            return path;
+        }
+
+        public String getContentType() {
+            return contentType;
+        }
+
+        public String getETag() {
+            return etag;
+        }
+
+        public long getLastModified() {
+            return lastModified;
+        }
+
+        public boolean isCompressed() {
+            return gzip != null;
+        }
+
+        public InputStream open(final ServletContext context) {
+            if (content != null) {
+                return new ByteArrayInputStream(content);
+            }
+            return context.getResourceAsStream(path);
+        }
+
+        public void serve(final HttpServletRequest request, final HttpServletResponse response) throws IOException {
+            if (contentType != null) {
+                response.setContentType(contentType);
+            }
+            if (etag != null) {
+                response.setHeader("ETag", etag);
+            }
+            if (lastModifiedHeader != null) {
+                response.setHeader("Last-Modified", lastModifiedHeader);
+            }
+            if (gzip != null) {
+                response.setHeader("Vary", "Accept-Encoding");
+            }
+
+            if (isNotModified(request)) {
+                response.setStatus(HttpURLConnection.HTTP_NOT_MODIFIED);
+                return;
+            }
+
+            final ServletOutputStream os = response.getOutputStream();
+            if (content == null) {
+                final InputStream is = request.getServletContext().getResourceAsStream(path);
+                if (is == null) {
+                    throw new IOException("Static resource " + path + " disappeared");
+                }
+                try {
+                    IO.copy(is, os);
+                } finally {
+                    IO.close(is);
+                }
+            } else {
+                final byte[] body;
+                if (gzip != null && acceptsGzip(request)) {
+                    response.setHeader("Content-Encoding", "gzip");
+                    body = gzip;
+                } else {
+                    body = content;
+                }
+                response.setContentLength(body.length);
+                os.write(body);
+            }
+            os.flush();
+            response.setStatus(HttpURLConnection.HTTP_OK);
+        }
+
+        private boolean isNotModified(final HttpServletRequest request) {
+            if (etag == null) { // not cached
+                return false;
+            }
+
+            final String ifNoneMatch = request.getHeader("If-None-Match");
+            if (ifNoneMatch != null) {
+                // If-None-Match takes precedence over If-Modified-Since
+                return "*".equals(ifNoneMatch.trim()) || ifNoneMatch.contains(etag);
+            }
+
+            final String ifModifiedSince = request.getHeader("If-Modified-Since");
+            if (ifModifiedSince != null && lastModified > 0) {
+                try {
+                    return httpDateFormat().parse(ifModifiedSince).getTime() >= lastModified;
+                } catch (final ParseException e) {
+                    return false;
+                }
+            }
+            return false;
+        }
+
+        private static boolean acceptsGzip(final HttpServletRequest request) {
+            final String acceptEncoding = request.getHeader("Accept-Encoding");
+            return acceptEncoding != null && acceptEncoding.contains("gzip") && !acceptEncoding.contains("gzip;q=0");
+        }
+
+        @Override
+        public String toString() {
+            return "Resource{" +
+                "path='" + path + '\'' +
+                ", contentType='" + contentType + '\'' +
+                ", etag='" + etag + '\'' +
+                ", compressed=" + (gzip != null) +
+                '}';
+        }
+    }
+}
@@ -0,0 +1,295 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.openejb.server.cxf.rs;
+
+import org.apache.openejb.util.Duration;
+import org.junit.Test;
+
+import javax.servlet.ServletContext;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Pattern;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class StaticResourceCacheTest {
+    private static final String HTML;
+
+    static {
+        final StringBuilder builder = new StringBuilder("<html><body>");
+        for (int i = 0; i < 200; i++) {
+            builder.append("<p>static content</p>");
+        }
+        HTML = builder.append("</body></html>").toString();
+    }
+
+    private final Map<String, byte[]> files = new HashMap<>();
+    private final AtomicInteger lookups = new AtomicInteger();
+
+    @Test
+    public void negativeCache() {
+        final StaticResourceCache cache = newCache();
+        final ServletContext context = context();
+
+        assertNull(cache.find(context, "/api/orders"));
+        assertNull(cache.find(context, "/api/orders"));
+        assertNull(cache.find(context, "/api/orders"));
+        assertEquals(1, lookups.get());
+        assertEquals(2, cache.getHits());
+    }
+
+    @Test
+    public void welcomeFile() {
+        files.put("/index.html", HTML.getBytes());
+        final StaticResourceCache.Resource resource = newCache().find(context(), "/", new String[]{"/index.html"});
+        assertNotNull(resource);
+        assertEquals("/index.html", resource.getPath());
+        assertEquals("text/html", resource.getContentType());
+    }
+
+    @Test
+    public void serveCompressedAndConditional() throws IOException {
+        files.put("/index.html", HTML.getBytes());
+        final StaticResourceCache.Resource resource = newCache().find(context(), "/index.html");
+        assertTrue(resource.isCompressed());
+
+        final Map<String, String> headers = new HashMap<>();
+        final ByteArrayOutputStream body = new ByteArrayOutputStream();
+        final AtomicInteger status = new AtomicInteger();
+
+        final Map<String, String> requestHeaders = new HashMap<>();
+        requestHeaders.put("Accept-Encoding", "gzip, deflate");
+        resource.serve(request(requestHeaders), response(headers, body, status));
+        assertEquals(200, status.get());
+        assertEquals("gzip", headers.get("Content-Encoding"));
+        assertTrue(body.size() < HTML.length());
+        assertEquals(resource.getETag(), headers.get("ETag"));
+
+        requestHeaders.clear();
+        headers.clear();
+        body.reset();
+        resource.serve(request(requestHeaders), response(headers, body, status));
+        assertNull(headers.get("Content-Encoding"));
+        assertEquals(HTML, new String(body.toByteArray()));
+
+        requestHeaders.put("If-None-Match", resource.getETag());
+        body.reset();
+        resource.serve(request(requestHeaders), response(headers, body, status));
+        assertEquals(304, status.get());
+        assertEquals(0, body.size());
+    }
+
+    @Test
+    public void smallResourcesAreNotCompressed() {
+        files.put("/style.css", "body {}".getBytes());
+        assertFalse(newCache().find(context(), "/style.css").isCompressed());
+    }
+
+    @Test
+    public void expiry() throws InterruptedException {
+        final StaticResourceCache cache = new StaticResourceCache(true, new Duration(10, TimeUnit.MILLISECONDS), 1024 * 1024, 100);
+        final ServletContext context = context();
+        assertNull(cache.find(context, "/late.txt"));
+        files.put("/late.txt", "here".getBytes());
+        Thread.sleep(50);
+        assertNotNull(cache.find(context, "/late.txt"));
+    }
+
+    @Test
+    public void maxEntries() {
+        final StaticResourceCache cache = new StaticResourceCache(true, new Duration(-1, TimeUnit.SECONDS), 1024 * 1024, 2);
+        final ServletContext context = context();
+        for (int i = 0; i < 10; i++) {
+            files.put("/" + i + ".txt", "content".getBytes());
+            cache.find(context, "/" + i + ".txt");
+        }
+        assertEquals(2, cache.size());
+    }
+
+    @Test
+    public void maxBytes() {
+        final StaticResourceCache cache = new StaticResourceCache(true, new Duration(-1, TimeUnit.SECONDS), 1024, 100, 2500, 10);
+        final ServletContext context = context();
+        for (int i = 0; i < 5; i++) {
+            files.put("/" + i + ".png", new byte[1000]);
+        }
+
+        cache.find(context, "/0.png");
+        cache.find(context, "/1.png");
+        cache.find(context, "/0.png"); // most recently used
+        cache.find(context, "/2.png");
+        assertEquals(2, cache.size());
+        assertEquals(2000, cache.getBytes());
+
+        final int before = lookups.get();
+        cache.find(context, "/0.png");
+        cache.find(context, "/2.png");
+        assertEquals(before, lookups.get());
+        cache.find(context, "/1.png"); // evicted
+        assertEquals(before + 1, lookups.get());
+    }
+
+    @Test
+    public void missesDontEvictContent() {
+        final StaticResourceCache cache = new StaticResourceCache(true, new Duration(-1, TimeUnit.SECONDS), 1024 * 1024, 2, 1024 * 1024, 5);
+        final ServletContext context = context();
+        files.put("/index.html", HTML.getBytes());
+        files.put("/style.css", "body {}".getBytes());
+        assertNotNull(cache.find(context, "/index.html"));
+        assertNotNull(cache.find(context, "/style.css"));
+
+        for (int i = 0; i < 100; i++) {
+            assertNull(cache.find(context, "/api/orders/" + i));
+        }
+        assertEquals(2, cache.size());
+        assertEquals(5, cache.getNotFound());
+
+        final int before = lookups.get();
+        assertNotNull(cache.find(context, "/index.html"));
+        assertNotNull(cache.find(context, "/style.css"));
+        assertEquals(before, lookups.get());
+    }
+
+    @Test
+    public void disabled() throws IOException {
+        final StaticResourceCache cache = new StaticResourceCache(false, new Duration(-1, TimeUnit.SECONDS), 1024 * 1024, 100);
+        final ServletContext context = context();
+        files.put("/index.html", HTML.getBytes());
+
+        assertNull(cache.find(context, "/api/orders"));
+        assertNull(cache.find(context, "/api/orders"));
+        assertEquals(2, lookups.get());
+
+        final StaticResourceCache.Resource resource = cache.find(context, "/index.html");
+        assertNotNull(resource);
+        assertEquals("text/html", resource.getContentType());
+        assertFalse(resource.isCompressed());
+        assertNull(resource.getETag());
+        assertEquals(0, cache.size());
+
+        final Map<String, String> headers = new HashMap<>();
+        final ByteArrayOutputStream body = new ByteArrayOutputStream();
+        final AtomicInteger status = new AtomicInteger();
+        final Map<String, String> requestHeaders = new HashMap<>();
+        requestHeaders.put("Accept-Encoding", "gzip");
+        requestHeaders.put("If-None-Match", "*");
+        resource.serve(request(requestHeaders), response(headers, body, status));
+        assertEquals(200, status.get());
+        assertNull(headers.get("ETag"));
+        assertNull(headers.get("Content-Encoding"));
+        assertEquals(HTML, new String(body.toByteArray()));
+    }
+
+    @Test
+    public void combine() {
+        final Pattern pattern = StaticResourceCache.combine(Arrays.asList(Pattern.compile("/.*\\.html"), Pattern.compile("/img/.*")));
+        assertTrue(pattern.matcher("/index.html").matches());
+        assertTrue(pattern.matcher("/img/logo.png").matches());
+        assertFalse(pattern.matcher("/api/orders").matches());
+        assertNull(StaticResourceCache.combine(new ArrayList<Pattern>()));
+    }
+
+    private StaticResourceCache newCache() {
+        return new StaticResourceCache(true, new Duration(-1, TimeUnit.SECONDS), 1024 * 1024, 100);
+    }
+
+    private ServletContext context() {
+        return ServletContext.class.cast(Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[]{ServletContext.class}, new InvocationHandler() {
+            @Override
+            public Object invoke(final Object proxy, final Method method, final Object[] args) throws Throwable {
+                if ("getResourceAsStream".equals(method.getName())) {
+                    final String path = String.class.cast(args[0]);
+                    if (!path.endsWith(".gz")) {
+                        lookups.incrementAndGet();
+                    }
+                    final byte[] bytes = files.get(path);
+                    return bytes == null ? null : new ByteArrayInputStream(bytes);
+                }
+                return null;
+            }
+        }));
+    }
+
+    private HttpServletRequest request(final Map<String, String> headers) {
+        return HttpServletRequest.class.cast(Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[]{HttpServletRequest.class}, new InvocationHandler() {
+            @Override
+            public Object invoke(final Object proxy, final Method method, final Object[] args) throws Throwable {
+                if ("getHeader".equals(method.getName())) {
+                    return headers.get(String.class.cast(args[0]));
+                }
+                if ("getServletContext".equals(method.getName())) {
+                    return context();
+                }
+                return null;
+            }
+        }));
+    }
+
+    private HttpServletResponse response(final Map<String, String> headers, final ByteArrayOutputStream body, final AtomicInteger status) {
+        final ServletOutputStream out = new ServletOutputStream() {
+            @Override
+            public boolean isReady() {
+                return true;
+            }
+
+            @Override
+            public void setWriteListener(final WriteListener writeListener) {
+                // no-op
+            }
+
+            @Override
+            public void write(final int b) throws IOException {
+                body.write(b);
+            }
+        };
+        return HttpServletResponse.class.cast(Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[]{HttpServletResponse.class}, new InvocationHandler() {
+            @Override
+            public Object invoke(final Object proxy, final Method method, final Object[] args) throws Throwable {
+                switch (method.getName()) {
+                    case "setHeader":
+                        headers.put(String.class.cast(args[0]), String.class.cast(args[1]));
+                        return null;
+                    case "setStatus":
+                        status.set(Integer.class.cast(args[0]));
+                        return null;
+                    case "getOutputStream":
+                        return out;
+                    default:
+                        return null;
+                }
+            }
+        }));
+    }
+}
@@ -16,11 +16,15 @@
  */
 package org.apache.openejb.server.ejbd;
 
+import org.apache.openejb.assembler.classic.event.AssemblerAfterApplicationCreated;
+import org.apache.openejb.assembler.classic.event.AssemblerBeforeApplicationDestroyed;
 import org.apache.openejb.client.ClusterMetaData;
 import org.apache.openejb.client.ClusterRequest;
 import org.apache.openejb.client.ClusterResponse;
 import org.apache.openejb.client.ProtocolMetaData;
 import org.apache.openejb.client.Response;
+import org.apache.openejb.loader.SystemInstance;
+import org.apache.openejb.observer.Observes;
 import org.apache.openejb.server.DiscoveryListener;
 import org.apache.openejb.util.Join;
 import org.apache.openejb.util.LogCategory;
@@ -33,6 +37,7 @@ import java.net.URI;
 import java.net.URISyntaxException;
 import java.util.LinkedHashSet;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.atomic.AtomicReference;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReadWriteLock;
@@ -46,9 +51,15 @@ public class ClusterRequestHandler extends RequestHandler implements DiscoveryLi
     private static final Logger logger = Logger.getInstance(LogCategory.OPENEJB_SERVER_REMOTE.createChild("cluster"), ClusterRequestHandler.class);
 
     private final Data data = new Data();
+    private final DeploymentVersion deploymentVersion = new DeploymentVersion();
 
     public ClusterRequestHandler(final EjbDaemon daemon) {
         super(daemon);
+        SystemInstance.get().addObserver(deploymentVersion);
+    }
+
+    public void stop() {
+        SystemInstance.get().removeObserver(deploymentVersion);
     }
 
     @Override
@@ -75,6 +86,8 @@ public class ClusterRequestHandler extends RequestHandler implements DiscoveryLi
             return res;
         }
 
+        res.setDeploymentVersion(deploymentVersion.get());
+
         final ClusterMetaData currentClusterMetaData = data.current();
 
         if (req.getClusterMetaDataVersion() < currentClusterMetaData.getVersion()) {
@@ -152,6 +165,27 @@ public class ClusterRequestHandler extends RequestHandler implements DiscoveryLi
         }
     }
 
+    /**
+     * Sent to the clients with each cluster response so they can drop the lookups they cached.
+     * Starts from the current time to also change when the server restarts.
+     */
+    public static class DeploymentVersion {
+
+        private final AtomicLong version = new AtomicLong(System.currentTimeMillis());
+
+        public void deployed(@Observes final AssemblerAfterApplicationCreated event) {
+            version.incrementAndGet();
+        }
+
+        public void undeployed(@Observes final AssemblerBeforeApplicationDestroyed event) {
+            version.incrementAndGet();
+        }
+
+        public long get() {
+            return version.get();
+        }
+    }
+
     private static class Data {
 
         private final AtomicReference<ClusterMetaData> current = new AtomicReference<ClusterMetaData>();
@@ -0,0 +1,223 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.openejb.server.ejbd;
+
+import org.apache.openejb.BeanContext;
+import org.apache.openejb.api.internal.Internal;
+import org.apache.openejb.api.jmx.Description;
+import org.apache.openejb.api.jmx.MBean;
+import org.apache.openejb.api.jmx.ManagedAttribute;
+import org.apache.openejb.api.jmx.ManagedOperation;
+import org.apache.openejb.assembler.classic.event.AssemblerBeforeApplicationDestroyed;
+import org.apache.openejb.client.Compression;
+import org.apache.openejb.monitoring.LocalMBeanServer;
+import org.apache.openejb.monitoring.ObjectNameBuilder;
+import org.apache.openejb.observer.Observes;
+
+import javax.management.ObjectName;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * What the compression of the ejbd messages costs and saves, for each deployment.
+ *
+ * A deployment gets its statistics, and its MBean, with the first message buffered for it,
+ * only when the client asked for compression. They are dropped when it is undeployed.
+ */
+public class CompressionStats {
+
+    private final boolean jmx;
+    private final ConcurrentMap<String, Deployment> deployments = new ConcurrentHashMap<>();
+
+    public CompressionStats(final boolean jmx) {
+        this.jmx = jmx;
+    }
+
+    public void record(final String deploymentId, final Compression.Sample request, final Compression.Sample response) {
+        if (deploymentId == null || (request == null && response == null)) {
+            return;
+        }
+
+        Deployment deployment = deployments.get(deploymentId);
+        if (deployment == null) {
+            deployment = new Deployment(deploymentId);
+            final Deployment existing = deployments.putIfAbsent(deploymentId, deployment);
+            if (existing != null) {
+                deployment = existing;
+            } else if (jmx) {
+                deployment.register();
+            }
+        }
+
+        deployment.record(deployment.requests, request);
+        deployment.record(deployment.responses, response);
+    }
+
+    public Deployment get(final String deploymentId) {
+        return deployments.get(deploymentId);
+    }
+
+    /**
+     * Drops the statistics of all the deployments and their MBeans.
+     */
+    public void clear() {
+        for (final Deployment deployment : deployments.values()) {
+            deployment.unregister();
+        }
+        deployments.clear();
+    }
+
+    public void undeployed(@Observes final AssemblerBeforeApplicationDestroyed event) {
+        for (final BeanContext beanContext : event.getContext().getBeanContexts()) {
+            final Deployment deployment = deployments.remove((String) beanContext.getDeploymentID());
+            if (deployment != null) {
+                deployment.unregister();
+            }
+        }
+    }
+
+    @MBean
+    @Internal
+    @Description("Compression of the ejbd messages of a deployment")
+    public static class Deployment {
+
+        private final String deploymentId;
+        private final Counters requests = new Counters();
+        private final Counters responses = new Counters();
+        private ObjectName objectName;
+
+        public Deployment(final String deploymentId) {
+            this.deploymentId = deploymentId;
+        }
+
+        @ManagedAttribute
+        @Description("Requests received with buffered parameters")
+        public long getRequests() {
+            return requests.messages.get();
+        }
+
+        @ManagedAttribute
+        @Description("Requests received with compressed parameters")
+        public long getCompressedRequests() {
+            return requests.compressed.get();
+        }
+
+        @ManagedAttribute
+        @Description("Size of the compressed parameters over their size")
+        public double getRequestRatio() {
+            return requests.ratio();
+        }
+
+        @ManagedAttribute
+        @Description("Nanoseconds spent inflating the parameters")
+        public long getRequestTime() {
+            return requests.time.get();
+        }
+
+        @ManagedAttribute
+        @Description("Responses sent with a buffered result")
+        public long getResponses() {
+            return responses.messages.get();
+        }
+
+        @ManagedAttribute
+        @Description("Responses sent with a compressed result")
+        public long getCompressedResponses() {
+            return responses.compressed.get();
+        }
+
+        @ManagedAttribute
+        @Description("Size of the compressed results over their size")
+        public double getResponseRatio() {
+            return responses.ratio();
+        }
+
+        @ManagedAttribute
+        @Description("Nanoseconds spent compressing the results, including the ones not worth it")
+        public long getResponseTime() {
+            return responses.time.get();
+        }
+
+        @ManagedAttribute
+        @Description("Bytes not sent or received thanks to the compression")
+        public long getSavedBytes() {
+            return requests.bytes.get() - requests.compressedBytes.get() + responses.bytes.get() - responses.compressedBytes.get();
+        }
+
+        @ManagedOperation
+        @Description("Reset the statistics")
+        public void reset() {
+            requests.reset();
+            responses.reset();
+        }
+
+        private void record(final Counters counters, final Compression.Sample sample) {
+            if (sample == null) {
+                return;
+            }
+
+            counters.messages.incrementAndGet();
+            if (sample.getCodec() != Compression.Codec.NONE) {
+                counters.compressed.incrementAndGet();
+            }
+            counters.bytes.addAndGet(sample.getSize());
+            counters.compressedBytes.addAndGet(sample.getCompressedSize());
+            counters.time.addAndGet(sample.getTime());
+        }
+
+        private void register() {
+            final ObjectName name = new ObjectNameBuilder("openejb.management")
+                .set("J2EEServer", "openejb")
+                .set("J2EEApplication", null)
+                .set("j2eeType", "EjbdCompression")
+                .set("name", deploymentId)
+                .build();
+            LocalMBeanServer.registerDynamicWrapperSilently(this, name);
+            objectName = name;
+        }
+
+        private void unregister() {
+            if (objectName != null) {
+                LocalMBeanServer.unregisterSilently(objectName);
+                objectName = null;
+            }
+        }
+    }
+
+    private static final class Counters {
+
+        private final AtomicLong messages = new AtomicLong();
+        private final AtomicLong compressed = new AtomicLong();
+        private final AtomicLong bytes = new AtomicLong();
+        private final AtomicLong compressedBytes = new AtomicLong();
+        private final AtomicLong time = new AtomicLong();
+
+        private double ratio() {
+            final long size = bytes.get();
+            return size == 0 ? 1. : (double) compressedBytes.get() / size;
+        }
+
+        private void reset() {
+            messages.set(0);
+            compressed.set(0);
+            bytes.set(0);
+            compressedBytes.set(0);
+            time.set(0);
+        }
+    }
+}
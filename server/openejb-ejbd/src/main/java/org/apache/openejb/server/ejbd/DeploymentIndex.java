@@ -17,60 +17,153 @@
 package org.apache.openejb.server.ejbd;
 
 import org.apache.openejb.BeanContext;
+import org.apache.openejb.ProxyInfo;
+import org.apache.openejb.assembler.classic.event.AssemblerAfterApplicationCreated;
+import org.apache.openejb.assembler.classic.event.AssemblerBeforeApplicationDestroyed;
 import org.apache.openejb.client.EJBRequest;
+import org.apache.openejb.observer.Observes;
+import org.apache.openejb.spi.ContainerSystem;
 import org.apache.openejb.util.Messages;
 
+import java.lang.reflect.Method;
 import java.rmi.RemoteException;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
 
+/**
+ * Resolves what an ejbd request targets without going through the container system or the
+ * JNDI tree for each of them.
+ *
+ * Each deployment gets a {@link Handle} holding its bean context and the methods of its remote
+ * interfaces, and a code indexing a plain array. The handles are added and removed as the
+ * applications are (un)deployed, requests only read a volatile array and a concurrent map.
+ * A code is never given to another deployment id so a stale code can't reach another bean.
+ *
+ * The remote JNDI lookups of ejbs and contexts are cached too, until the next (un)deployment.
+ */
 public class DeploymentIndex {
 
+    public static final int DEFAULT_JNDI_CACHE_SIZE = 1024;
+
     Messages messages = new Messages("org.apache.openejb.server.ejbd");
 
-    BeanContext[] deployments = null;
+    private final ContainerSystem containerSystem;
+    private final int jndiCacheSize;
 
-    Map index = null;
+    private final ConcurrentMap<String, Handle> handles = new ConcurrentHashMap<>();
+    private final Map<String, Integer> codes = new HashMap<>(); // guarded by this, never shrinks
+    private volatile Handle[] deployments = new Handle[1]; // 0 is not a code
+
+    private final ConcurrentMap<String, Lookup> lookups = new ConcurrentHashMap<>();
+    private final AtomicLong generation = new AtomicLong();
 
-    @SuppressWarnings("unchecked")
     public DeploymentIndex(final BeanContext[] beanContexts) {
+        this(null, DEFAULT_JNDI_CACHE_SIZE);
+        add(beanContexts);
+    }
+
+    /**
+     * @param containerSystem looked up for the deployments this index didn't see yet, can be null
+     * @param jndiCacheSize   max number of cached lookups, 0 to disable the cache
+     */
+    public DeploymentIndex(final ContainerSystem containerSystem, final int jndiCacheSize) {
+        this.containerSystem = containerSystem;
+        this.jndiCacheSize = jndiCacheSize;
+    }
 
-        deployments = new BeanContext[beanContexts.length + 1];
+    public void deployed(@Observes final AssemblerAfterApplicationCreated event) {
+        add(event.getDeployedEjbs().toArray(new BeanContext[event.getDeployedEjbs().size()]));
+    }
+
+    public void undeployed(@Observes final AssemblerBeforeApplicationDestroyed event) {
+        final List<BeanContext> beanContexts = event.getContext().getBeanContexts();
+        remove(beanContexts.toArray(new BeanContext[beanContexts.size()]));
+    }
+
+    public synchronized void add(final BeanContext... beanContexts) {
+        Handle[] copy = deployments;
+        for (final BeanContext beanContext : beanContexts) {
+            final String id = (String) beanContext.getDeploymentID();
+
+            Integer code = codes.get(id);
+            if (code == null) {
+                code = codes.size() + 1;
+                codes.put(id, code);
+            }
 
-        System.arraycopy(beanContexts, 0, deployments, 1, beanContexts.length);
+            // the client sends the code as a short
+            final Handle handle = new Handle(beanContext, code <= Short.MAX_VALUE ? code : -1);
+            handles.put(id, handle);
 
-        index = new HashMap(deployments.length);
-        for (int i = 1; i < deployments.length; i++) {
-            index.put(deployments[i].getDeploymentID(), i);
+            if (handle.code > 0) {
+                if (copy == deployments || copy.length <= handle.code) {
+                    copy = Arrays.copyOf(copy, Math.max(copy.length, handle.code + 1));
+                }
+                copy[handle.code] = handle;
+            }
         }
+        deployments = copy;
+        invalidateLookups();
+    }
+
+    public synchronized void remove(final BeanContext... beanContexts) {
+        final Handle[] copy = deployments.clone();
+        for (final BeanContext beanContext : beanContexts) {
+            final Handle handle = handles.remove((String) beanContext.getDeploymentID());
+            if (handle != null && handle.code > 0) {
+                copy[handle.code] = null;
+            }
+        }
+        deployments = copy;
+        invalidateLookups();
     }
 
     public BeanContext getDeployment(final EJBRequest req) throws RemoteException {
+        return getHandle(req).getBeanContext();
+    }
 
-        final BeanContext info;
+    public Handle getHandle(final EJBRequest req) throws RemoteException {
+        final Handle[] deployments = this.deployments;
 
         final int deploymentCode = req.getDeploymentCode();
         if (deploymentCode > 0 && deploymentCode < deployments.length) {
-            info = deployments[deploymentCode];
-            req.setDeploymentId((String) info.getDeploymentID());
-            return info;
+            final Handle handle = deployments[deploymentCode];
+            if (handle != null) {
+                req.setDeploymentId(handle.getDeploymentId());
+                return handle;
+            }
         }
 
         if (req.getDeploymentId() == null) {
             throw new RemoteException(messages.format("invalidDeploymentIdAndCode", req.getDeploymentId(), req.getDeploymentCode()));
         }
 
-        final int idCode = getDeploymentIndex(req.getDeploymentId());
-        if (idCode == -1) {
+        final Handle handle = getHandle(req.getDeploymentId());
+        if (handle == null) {
             throw new RemoteException(messages.format("noSuchDeploymentIdAndCode", req.getDeploymentId(), req.getDeploymentCode()));
         }
 
-        req.setDeploymentCode(idCode);
+        if (handle.code > 0) {
+            req.setDeploymentCode(handle.code);
+        }
+        return handle;
+    }
 
-        if (req.getDeploymentCode() < 0 || req.getDeploymentCode() >= deployments.length) {
-            throw new RemoteException(messages.format("invalidDeploymentIdAndCode", req.getDeploymentId(), req.getDeploymentCode()));
+    public Handle getHandle(final String deploymentID) {
+        final Handle handle = handles.get(deploymentID);
+        if (handle != null || containerSystem == null) {
+            return handle;
         }
-        return deployments[req.getDeploymentCode()];
+
+        // not indexed, likely still being deployed, not kept as it could be undeployed before being indexed
+        final BeanContext beanContext = containerSystem.getBeanContext(deploymentID);
+        return beanContext == null ? null : new Handle(beanContext, -1);
     }
 
     public int getDeploymentIndex(final BeanContext deployment) {
@@ -78,13 +171,14 @@ public class DeploymentIndex {
     }
 
     public int getDeploymentIndex(final String deploymentID) {
-        final Integer idCode = (Integer) index.get(deploymentID);
+        final Handle handle = handles.get(deploymentID);
 
-        return (idCode == null) ? -1 : idCode;
+        return (handle == null) ? -1 : handle.code;
     }
 
     public BeanContext getDeployment(final String deploymentID) {
-        return getDeployment(getDeploymentIndex(deploymentID));
+        final Handle handle = getHandle(deploymentID);
+        return (handle == null) ? null : handle.getBeanContext();
     }
 
     public BeanContext getDeployment(final Integer index) {
@@ -92,7 +186,161 @@ public class DeploymentIndex {
     }
 
     public BeanContext getDeployment(final int index) {
-        return deployments[index];
+        final Handle[] deployments = this.deployments;
+        if (index <= 0 || index >= deployments.length || deployments[index] == null) {
+            return null;
+        }
+        return deployments[index].getBeanContext();
+    }
+
+    /**
+     * @return the cached lookup of this key, null if it wasn't cached
+     */
+    public Lookup getLookup(final String key) {
+        return lookups.get(key);
     }
-}
 
+    /**
+     * @return the value to give back to {@link #putLookup(String, Lookup, long)}, read it before the lookup is done
+     */
+    public long getLookupGeneration() {
+        return generation.get();
+    }
+
+    public void putLookup(final String key, final Lookup lookup, final long generation) {
+        if (lookups.size() >= jndiCacheSize) {
+            return;
+        }
+
+        lookups.put(key, lookup);
+
+        // an application was (un)deployed while the lookup was done, it could be stale
+        if (this.generation.get() != generation) {
+            lookups.remove(key, lookup);
+        }
+    }
+
+    private void invalidateLookups() {
+        generation.incrementAndGet();
+        lookups.clear();
+    }
+
+    /**
+     * A deployment and the methods its clients can call, resolved from the name and parameter
+     * types sent with each request.
+     */
+    public static final class Handle implements EJBRequest.MethodResolver {
+
+        private final BeanContext beanContext;
+        private final String deploymentId;
+        private final int code;
+        private final Map<Class, Map<String, Signature[]>> methods = new HashMap<>();
+
+        private Handle(final BeanContext beanContext, final int code) {
+            this.beanContext = beanContext;
+            this.deploymentId = (String) beanContext.getDeploymentID();
+            this.code = code;
+
+            final List<Class> interfaces = new ArrayList<>();
+            if (beanContext.getHomeInterface() != null) {
+                interfaces.add(beanContext.getHomeInterface());
+            }
+            if (beanContext.getRemoteInterface() != null) {
+                interfaces.add(beanContext.getRemoteInterface());
+            }
+            if (beanContext.getBusinessRemoteInterfaces() != null) {
+                interfaces.addAll(beanContext.getBusinessRemoteInterfaces());
+            }
+
+            for (final Class intf : interfaces) {
+                final Map<String, List<Signature>> byName = new HashMap<>();
+                for (final Method method : intf.getMethods()) {
+                    List<Signature> signatures = byName.get(method.getName());
+                    if (signatures == null) {
+                        signatures = new ArrayList<>(1);
+                        byName.put(method.getName(), signatures);
+                    }
+                    signatures.add(new Signature(method));
+                }
+
+                final Map<String, Signature[]> table = new HashMap<>(byName.size() * 2);
+                for (final Map.Entry<String, List<Signature>> entry : byName.entrySet()) {
+                    table.put(entry.getKey(), entry.getValue().toArray(new Signature[entry.getValue().size()]));
+                }
+                methods.put(intf, table);
+            }
+        }
+
+        public BeanContext getBeanContext() {
+            return beanContext;
+        }
+
+        public String getDeploymentId() {
+            return deploymentId;
+        }
+
+        public int getCode() {
+            return code;
+        }
+
+        @Override
+        public Method resolve(final Class interfaceClass, final String name, final Class[] parameterTypes) throws NoSuchMethodException {
+            final Map<String, Signature[]> table = methods.get(interfaceClass);
+            if (table != null) {
+                final Signature[] signatures = table.get(name);
+                if (signatures != null) {
+                    for (final Signature signature : signatures) {
+                        if (Arrays.equals(signature.parameterTypes, parameterTypes)) {
+                            return signature.method;
+                        }
+                    }
+                }
+            }
+
+            // EJBObject/EJBHome methods called on another interface, overloads getMethods() didn't keep...
+            return interfaceClass.getMethod(name, parameterTypes);
+        }
+    }
+
+    private static final class Signature {
+
+        private final Method method;
+        private final Class[] parameterTypes;
+
+        private Signature(final Method method) {
+            this.method = method;
+            this.parameterTypes = method.getParameterTypes();
+        }
+    }
+
+    /**
+     * What a remote JNDI lookup answered, only for answers which don't depend on the client.
+     */
+    public static final class Lookup {
+
+        private final int responseCode;
+        private final Object result;
+        private final ProxyInfo proxyInfo;
+
+        public Lookup(final int responseCode, final Object result, final ProxyInfo proxyInfo) {
+            this.responseCode = responseCode;
+            this.result = result;
+            this.proxyInfo = proxyInfo;
+        }
+
+        public int getResponseCode() {
+            return responseCode;
+        }
+
+        public Object getResult() {
+            return result;
+        }
+
+        /**
+         * @return the ejb proxy looked up, still needed to tell the client its cluster, null for a context
+         */
+        public ProxyInfo getProxyInfo() {
+            return proxyInfo;
+        }
+    }
+}
@@ -20,6 +20,7 @@ import org.apache.openejb.BeanContext;
 import org.apache.openejb.OpenEJBRuntimeException;
 import org.apache.openejb.ProxyInfo;
 import org.apache.openejb.client.ClusterResponse;
+import org.apache.openejb.client.Compression;
 import org.apache.openejb.client.EJBRequest;
 import org.apache.openejb.client.EjbObjectInputStream;
 import org.apache.openejb.client.FlushableGZIPOutputStream;
@@ -29,6 +30,7 @@ import org.apache.openejb.client.Response;
 import org.apache.openejb.client.ServerMetaData;
 import org.apache.openejb.client.serializer.EJBDSerializer;
 import org.apache.openejb.loader.SystemInstance;
+import org.apache.openejb.monitoring.LocalMBeanServer;
 import org.apache.openejb.server.DiscoveryAgent;
 import org.apache.openejb.server.context.RequestInfos;
 import org.apache.openejb.server.stream.CountingInputStream;
@@ -56,7 +58,7 @@ public class EjbDaemon implements org.apache.openejb.spi.ApplicationServer {
     static final Logger logger = Logger.getInstance(LogCategory.OPENEJB_SERVER_REMOTE, "org.apache.openejb.server.util.resources");
 
     private ClientObjectFactory clientObjectFactory;
-    //    DeploymentIndex deploymentIndex;
+    private DeploymentIndex deploymentIndex;
     private RequestHandler ejbHandler;
     private RequestHandler jndiHandler;
     private RequestHandler authHandler;
@@ -64,6 +66,9 @@ public class EjbDaemon implements org.apache.openejb.spi.ApplicationServer {
 
     private ContainerSystem containerSystem;
     private boolean gzip;
+    private Compression.Codec compression;
+    private int compressionThreshold = Compression.DEFAULT_THRESHOLD;
+    private CompressionStats compressionStats;
     private EJBDSerializer serializer = null;
 
     //Four hours
@@ -71,7 +76,16 @@ public class EjbDaemon implements org.apache.openejb.spi.ApplicationServer {
 
     public void init(final Properties props) throws Exception {
         containerSystem = SystemInstance.get().getComponent(ContainerSystem.class);
-        //        deploymentIndex = new DeploymentIndex(containerSystem.deployments());
+
+        int jndiCacheSize = DeploymentIndex.DEFAULT_JNDI_CACHE_SIZE;
+        try {
+            jndiCacheSize = Integer.parseInt(props.getProperty("jndiCacheSize", Integer.toString(jndiCacheSize)));
+        } catch (Exception e) {
+            //Ignore
+        }
+        deploymentIndex = new DeploymentIndex(containerSystem, jndiCacheSize);
+        SystemInstance.get().addObserver(deploymentIndex);
+        deploymentIndex.add(containerSystem.deployments());
 
         clientObjectFactory = new ClientObjectFactory(this, props);
 
@@ -81,6 +95,17 @@ public class EjbDaemon implements org.apache.openejb.spi.ApplicationServer {
         clusterHandler = new ClusterRequestHandler(this);
         gzip = "true".equalsIgnoreCase(props.getProperty("gzip", "false"));
 
+        // true answers with the codec the client asks for, false never compresses, a codec name is the most expensive one allowed
+        final String compression = props.getProperty("compression", "true");
+        this.compression = "true".equalsIgnoreCase(compression) ? Compression.Codec.DEFLATE : Compression.Codec.parse(compression);
+        try {
+            compressionThreshold = Integer.parseInt(props.getProperty("compressionThreshold", Integer.toString(compressionThreshold)));
+        } catch (Exception e) {
+            //Ignore
+        }
+        compressionStats = new CompressionStats(LocalMBeanServer.isJMXActive());
+        SystemInstance.get().addObserver(compressionStats);
+
         try {
             this.timeout = Integer.parseInt(props.getProperty("timeout", "14400000"));
         } catch (Exception e) {
@@ -102,6 +127,19 @@ public class EjbDaemon implements org.apache.openejb.spi.ApplicationServer {
         }
     }
 
+    public void stop() {
+        if (clusterHandler != null) {
+            clusterHandler.stop();
+        }
+        if (deploymentIndex != null) {
+            SystemInstance.get().removeObserver(deploymentIndex);
+        }
+        if (compressionStats != null) {
+            SystemInstance.get().removeObserver(compressionStats);
+            compressionStats.clear();
+        }
+    }
+
     public void service(final Socket socket) throws IOException {
 
         InputStream in = null;
@@ -330,12 +368,15 @@ public class EjbDaemon implements org.apache.openejb.spi.ApplicationServer {
     }
 
     protected BeanContext getDeployment(final EJBRequest req) throws RemoteException {
-        final String deploymentId = req.getDeploymentId();
-        final BeanContext beanContext = containerSystem.getBeanContext(deploymentId);
-        if (beanContext == null) {
-            throw new RemoteException("No deployment: " + deploymentId);
-        }
-        return beanContext;
+        return getDeploymentHandle(req).getBeanContext();
+    }
+
+    protected DeploymentIndex.Handle getDeploymentHandle(final EJBRequest req) throws RemoteException {
+        return deploymentIndex.getHandle(req);
+    }
+
+    public DeploymentIndex getDeploymentIndex() {
+        return deploymentIndex;
     }
 
     public Response processEjbRequest(final ObjectInputStream in, final ProtocolMetaData metaData) throws Exception {
@@ -392,6 +433,22 @@ public class EjbDaemon implements org.apache.openejb.spi.ApplicationServer {
         return clientObjectFactory.getEJBHome(info);
     }
 
+    /**
+     * @param requested the codec the client accepts
+     * @return the codec to compress the response with, the cheapest of the one asked and the one allowed
+     */
+    public Compression.Codec getCompression(final Compression.Codec requested) {
+        return requested.ordinal() <= compression.ordinal() ? requested : compression;
+    }
+
+    public int getCompressionThreshold() {
+        return compressionThreshold;
+    }
+
+    public CompressionStats getCompressionStats() {
+        return compressionStats;
+    }
+
     public boolean isGzip() {
         return gzip;
     }
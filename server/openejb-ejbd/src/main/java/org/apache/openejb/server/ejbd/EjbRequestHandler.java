@@ -115,10 +115,10 @@ class EjbRequestHandler extends RequestHandler {
                 return setResponseError(res, version, t, "Client identity is not valid - " + req);
             }
 
-            final BeanContext di;
+            final DeploymentIndex.Handle handle;
 
             try {
-                di = this.daemon.getDeployment(req);
+                handle = this.daemon.getDeploymentHandle(req);
             } catch (RemoteException e) {
                 failed = true;
                 return setResponseError(res, version, e, "No such deployment");
@@ -127,6 +127,8 @@ class EjbRequestHandler extends RequestHandler {
                 return setResponseError(res, version, t, "Unkown error occured while retrieving deployment: " + req);
             }
 
+            final BeanContext di = handle.getBeanContext();
+
             try {
 
                 //Need to set this for deserialization of the body - Will always be reset by EjbDaemon
@@ -135,6 +137,7 @@ class EjbRequestHandler extends RequestHandler {
 
                 res.start(EJBResponse.Time.DESERIALIZATION);
 
+                req.getBody().setMethodResolver(handle);
                 req.getBody().readExternal(in);
 
                 //Client version retrieved from body
@@ -298,9 +301,17 @@ class EjbRequestHandler extends RequestHandler {
 
             final EJBResponse res = (EJBResponse) response;
 
+            final EJBRequest req = res.getRequest();
             try {
+                if (req != null) {
+                    res.setCompression(daemon.getCompression(req.getBody().getCompression()), daemon.getCompressionThreshold());
+                }
                 res.setMetaData(metaData);
                 res.writeExternal(out);
+
+                if (req != null) {
+                    daemon.getCompressionStats().record(req.getDeploymentId(), req.getBody().getCompressionSample(), res.getCompressionSample());
+                }
             } catch (Throwable t) {
                 if (logger.isDebugEnabled()) {
                     logger.debug("Failed to write EjbResponse", t);
@@ -35,6 +35,8 @@ public class EjbServer implements org.apache.openejb.server.ServerService, org.a
 
     protected KeepAliveServer keepAlive;
     protected EjbDaemon server;
+    private Properties props;
+    private boolean stopped;
 
     public EjbServer() {
 
@@ -48,16 +50,27 @@ public class EjbServer implements org.apache.openejb.server.ServerService, org.a
         }
         server.init(props);
         keepAlive = new KeepAliveServer(this, server.isGzip());
+        this.props = props;
     }
 
     @Override
     public void start() throws ServiceException {
+        if (stopped) { // stop() released the daemon observers
+            try {
+                server.init(props);
+            } catch (final Exception e) {
+                throw new ServiceException(e);
+            }
+            stopped = false;
+        }
         keepAlive.start();
     }
 
     @Override
     public void stop() throws ServiceException {
         keepAlive.stop();
+        server.stop();
+        stopped = true;
     }
 
     @Override
@@ -171,7 +171,7 @@ class JndiRequestHandler extends RequestHandler {
 
                     switch (req.getRequestMethod()) {
                         case JNDI_LOOKUP:
-                            doLookup(req, res, prefix);
+                            doLookup(req, res, prefix, metaData);
                             break;
                         case JNDI_LIST:
                             doList(req, res, prefix);
@@ -236,10 +236,24 @@ class JndiRequestHandler extends RequestHandler {
         return prefix;
     }
 
-    private void doLookup(final JNDIRequest req, final JNDIResponse res, final String prefix) {
+    private void doLookup(final JNDIRequest req, final JNDIResponse res, final String prefix, final ProtocolMetaData protocol) {
         Object object;
         final String name = req.getRequestString();
 
+        // the protocol is part of the key as the cached metadata is written with it
+        final DeploymentIndex index = daemon.getDeploymentIndex();
+        final String key = protocol.getSpec() + ":" + prefix + name;
+        final DeploymentIndex.Lookup cached = index.getLookup(key);
+        if (cached != null) {
+            if (cached.getProxyInfo() != null) {
+                updateServer(req, res, cached.getProxyInfo());
+            }
+            res.setResponseCode(cached.getResponseCode());
+            res.setResult(cached.getResult());
+            return;
+        }
+        final long generation = index.getLookupGeneration();
+
         try {
 
             if (name.equals("info/injections")) {
@@ -266,6 +280,7 @@ class JndiRequestHandler extends RequestHandler {
 
             if (object instanceof Context) {
                 res.setResponseCode(ResponseCodes.JNDI_CONTEXT);
+                index.putLookup(key, new DeploymentIndex.Lookup(ResponseCodes.JNDI_CONTEXT, null, null), generation);
                 return;
             } else if (object == null) {
                 throw new NullPointerException("lookup of '" + name + "' returned null");
@@ -475,6 +490,7 @@ class JndiRequestHandler extends RequestHandler {
                 metaData.loadProperties(beanContext.getProperties());
                 log(metaData);
                 res.setResult(metaData);
+                cache(key, res, proxyInfo, generation);
                 break;
             }
             case EJB_LOCAL_HOME: {
@@ -501,6 +517,7 @@ class JndiRequestHandler extends RequestHandler {
 
                 log(metaData);
                 res.setResult(metaData);
+                cache(key, res, proxyInfo, generation);
                 break;
             }
             case BUSINESS_LOCAL: {
@@ -546,6 +563,15 @@ class JndiRequestHandler extends RequestHandler {
         }
     }
 
+    /**
+     * A proxy bound to a primary key is a stateful session (or an entity), each lookup must get its own.
+     */
+    private void cache(final String key, final JNDIResponse res, final ProxyInfo proxyInfo, final long generation) {
+        if (proxyInfo.getPrimaryKey() == null) {
+            daemon.getDeploymentIndex().putLookup(key, new DeploymentIndex.Lookup(res.getResponseCode(), res.getResult(), proxyInfo), generation);
+        }
+    }
+
     protected void updateServer(final JNDIRequest req, final JNDIResponse res, final ProxyInfo proxyInfo) {
         clusterableRequestHandler.updateServer(proxyInfo.getBeanContext(), req, res);
     }
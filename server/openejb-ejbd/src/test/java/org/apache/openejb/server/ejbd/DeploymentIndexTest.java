@@ -58,6 +58,24 @@ public class DeploymentIndexTest {
         deploymentIndex = new DeploymentIndex(new BeanContext[]{beanContext, beanContext});
     }
 
+    private static BeanContext newBeanContext(final String id) throws SystemException {
+        return new BeanContext(id,
+            null,
+            new ModuleContext("", null, "", new AppContext("", SystemInstance.get(), null, null, null, false), null, null),
+            DeploymentIndexTest.class,
+            null,
+            null,
+            null,
+            null,
+            null,
+            null,
+            null,
+            null,
+            null,
+            null,
+            false, false);
+    }
+
     @Test
     public void testGetDeploymentEJBRequest() throws RemoteException {
         final EJBMetaDataImpl ejbMetadataWithId = new EJBMetaDataImpl(null, null, null, null, null, 1, InterfaceType.BUSINESS_REMOTE, null, null);
@@ -76,4 +94,85 @@ public class DeploymentIndexTest {
         deploymentIndex.getDeployment(request);
     }
 
+    @Test
+    public void testCodesAreNotReused() throws Exception {
+        final BeanContext other = newBeanContext("otherDeploymentId");
+        deploymentIndex.add(other);
+        Assert.assertEquals(2, deploymentIndex.getDeploymentIndex(other));
+
+        deploymentIndex.remove(beanContext);
+        Assert.assertNull(deploymentIndex.getDeployment(1));
+        Assert.assertEquals(-1, deploymentIndex.getDeploymentIndex(beanContext));
+
+        final EJBMetaDataImpl removed = new EJBMetaDataImpl(null, null, null, null, null, 1, InterfaceType.BUSINESS_REMOTE, null, null);
+        try {
+            deploymentIndex.getDeployment(new EJBRequest(null, removed, method, null, null, null));
+            Assert.fail();
+        } catch (final RemoteException e) {
+            // expected, the code is free but not given to another deployment
+        }
+
+        final BeanContext third = newBeanContext("thirdDeploymentId");
+        deploymentIndex.add(third);
+        Assert.assertEquals(3, deploymentIndex.getDeploymentIndex(third));
+
+        // redeployed under the same id, same code
+        deploymentIndex.add(beanContext);
+        Assert.assertEquals(1, deploymentIndex.getDeploymentIndex(beanContext));
+        Assert.assertEquals(other, deploymentIndex.getDeployment("otherDeploymentId"));
+    }
+
+    @Test
+    public void testGetDeploymentById() throws Exception {
+        final EJBMetaDataImpl metaData = new EJBMetaDataImpl(null, null, null, null, "aDeploymentId", -1, InterfaceType.BUSINESS_REMOTE, null, null);
+        final EJBRequest request = new EJBRequest(null, metaData, method, null, null, null);
+
+        Assert.assertEquals(beanContext, deploymentIndex.getDeployment(request));
+        Assert.assertEquals(1, request.getDeploymentCode());
+    }
+
+    @Test
+    public void testResolveMethod() throws Exception {
+        final BeanContext bean = newBeanContext("resolved");
+        bean.getBusinessRemoteInterfaces().add(Greeter.class);
+        deploymentIndex.add(bean);
+
+        final DeploymentIndex.Handle handle = deploymentIndex.getHandle("resolved");
+        Assert.assertEquals(Greeter.class.getMethod("greet", String.class), handle.resolve(Greeter.class, "greet", new Class[]{String.class}));
+        Assert.assertEquals(Greeter.class.getMethod("greet", String.class, int.class), handle.resolve(Greeter.class, "greet", new Class[]{String.class, int.class}));
+
+        // not indexed, still resolved
+        Assert.assertEquals(Runnable.class.getMethod("run"), handle.resolve(Runnable.class, "run", new Class[0]));
+
+        try {
+            handle.resolve(Greeter.class, "greet", new Class[]{Integer.class});
+            Assert.fail();
+        } catch (final NoSuchMethodException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testLookupsAreDroppedOnDeployment() throws Exception {
+        final DeploymentIndex.Lookup lookup = new DeploymentIndex.Lookup(0, "result", null);
+
+        deploymentIndex.putLookup("name", lookup, deploymentIndex.getLookupGeneration());
+        Assert.assertSame(lookup, deploymentIndex.getLookup("name"));
+
+        deploymentIndex.add(newBeanContext("deployed"));
+        Assert.assertNull(deploymentIndex.getLookup("name"));
+
+        // done before the deployment, not cached
+        final long generation = deploymentIndex.getLookupGeneration();
+        deploymentIndex.remove(beanContext);
+        deploymentIndex.putLookup("name", lookup, generation);
+        Assert.assertNull(deploymentIndex.getLookup("name"));
+    }
+
+    public interface Greeter {
+
+        String greet(String name);
+
+        String greet(String name, int times);
+    }
 }
@@ -0,0 +1,172 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.openejb.server.ejbd;
+
+import org.apache.openejb.OpenEJB;
+import org.apache.openejb.assembler.classic.Assembler;
+import org.apache.openejb.assembler.classic.StatelessSessionContainerInfo;
+import org.apache.openejb.client.Compression;
+import org.apache.openejb.config.ConfigurationFactory;
+import org.apache.openejb.core.ServerFederation;
+import org.apache.openejb.jee.EjbJar;
+import org.apache.openejb.jee.StatelessBean;
+import org.apache.openejb.loader.SystemInstance;
+import org.apache.openejb.server.ServiceDaemon;
+import org.apache.openejb.server.ServicePool;
+import org.junit.After;
+import org.junit.Test;
+
+import javax.naming.InitialContext;
+import java.util.Properties;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class RemoteCompressionTest {
+
+    private ServiceDaemon serviceDaemon;
+
+    @After
+    public void tearDown() throws Exception {
+        serviceDaemon.stop();
+        OpenEJB.destroy();
+    }
+
+    @Test
+    public void largeMessagesAreCompressed() throws Exception {
+        final EjbServer ejbServer = start("true");
+        final Echo echo = echo("fast");
+
+        final String document = document(256 * 1024);
+        assertEquals(document, echo.echo(document));
+        assertEquals("small", echo.echo("small"));
+
+        final CompressionStats.Deployment stats = ejbServer.server.getCompressionStats().get("EchoBean");
+        assertNotNull(stats);
+        assertEquals(2, stats.getRequests());
+        assertEquals(1, stats.getCompressedRequests());
+        assertEquals(2, stats.getResponses());
+        assertEquals(1, stats.getCompressedResponses());
+        assertTrue(stats.getResponseRatio() < 0.5);
+        assertTrue(stats.getSavedBytes() > document.length());
+    }
+
+    @Test
+    public void serverCanRefuse() throws Exception {
+        final EjbServer ejbServer = start("false");
+        final Echo echo = echo("deflate");
+
+        final String document = document(256 * 1024);
+        assertEquals(document, echo.echo(document));
+
+        final CompressionStats.Deployment stats = ejbServer.server.getCompressionStats().get("EchoBean");
+        assertEquals(1, stats.getCompressedRequests()); // the client still compresses what it sends
+        assertEquals(0, stats.getCompressedResponses());
+    }
+
+    @Test
+    public void noCompressionByDefault() throws Exception {
+        final EjbServer ejbServer = start("true");
+
+        final String document = document(256 * 1024);
+        assertEquals(document, echo(null).echo(document));
+        assertNull(ejbServer.server.getCompressionStats().get("EchoBean"));
+    }
+
+    @Test
+    public void stopReleasesTheObservers() throws Exception {
+        final EjbServer ejbServer = start("true");
+        assertEquals("small", echo("fast").echo("small"));
+
+        final CompressionStats compressionStats = ejbServer.server.getCompressionStats();
+        final DeploymentIndex deploymentIndex = ejbServer.server.getDeploymentIndex();
+        ejbServer.stop();
+        assertFalse(SystemInstance.get().removeObserver(compressionStats));
+        assertFalse(SystemInstance.get().removeObserver(deploymentIndex));
+
+        ejbServer.start(); // initialized again
+        assertNotSame(compressionStats, ejbServer.server.getCompressionStats());
+        assertTrue(SystemInstance.get().removeObserver(ejbServer.server.getCompressionStats()));
+        assertTrue(SystemInstance.get().removeObserver(ejbServer.server.getDeploymentIndex()));
+    }
+
+    private EjbServer start(final String compression) throws Exception {
+        final EjbServer ejbServer = new EjbServer();
+
+        final Properties initProps = new Properties();
+        initProps.setProperty("openejb.deployments.classpath.include", "");
+        initProps.setProperty("openejb.deployments.classpath.filter.descriptors", "true");
+        OpenEJB.init(initProps, new ServerFederation());
+
+        final Properties serverProps = new Properties();
+        serverProps.setProperty("compression", compression);
+        serverProps.setProperty("compressionThreshold", "4096");
+        ejbServer.init(serverProps);
+
+        final ServicePool pool = new ServicePool(ejbServer, 10);
+        serviceDaemon = new ServiceDaemon(pool, 0, "localhost");
+        serviceDaemon.start();
+
+        final ConfigurationFactory config = new ConfigurationFactory();
+        final Assembler assembler = SystemInstance.get().getComponent(Assembler.class);
+        assembler.createContainer(config.configureService(StatelessSessionContainerInfo.class));
+
+        final StatelessBean bean = new StatelessBean(EchoBean.class);
+        bean.addBusinessRemote(Echo.class.getName());
+
+        final EjbJar ejbJar = new EjbJar();
+        ejbJar.addEnterpriseBean(bean);
+        assembler.createApplication(config.configureApplication(ejbJar));
+        return ejbServer;
+    }
+
+    private Echo echo(final String compression) throws Exception {
+        final Properties props = new Properties();
+        props.put("java.naming.factory.initial", "org.apache.openejb.client.RemoteInitialContextFactory");
+        props.put("java.naming.provider.url", "ejbd://127.0.0.1:" + serviceDaemon.getPort());
+        if (compression != null) {
+            props.put(Compression.OPENEJB_CLIENT_COMPRESSION, compression);
+            props.put(Compression.OPENEJB_CLIENT_COMPRESSION_THRESHOLD, "4096");
+        }
+        return (Echo) new InitialContext(props).lookup("EchoBeanRemote");
+    }
+
+    private static String document(final int size) {
+        final StringBuilder sb = new StringBuilder(size);
+        for (int i = 0; sb.length() < size; i++) {
+            sb.append("<entry id=\"").append(i).append("\"><name>entry ").append(i % 100).append("</name></entry>\n");
+        }
+        return sb.toString();
+    }
+
+    public interface Echo {
+
+        String echo(String value);
+    }
+
+    public static class EchoBean implements Echo {
+
+        @Override
+        public String echo(final String value) {
+            return value;
+        }
+    }
+}
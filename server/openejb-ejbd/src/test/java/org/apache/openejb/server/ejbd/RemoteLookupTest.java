@@ -0,0 +1,120 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.openejb.server.ejbd;
+
+import org.apache.openejb.OpenEJB;
+import org.apache.openejb.assembler.classic.AppInfo;
+import org.apache.openejb.assembler.classic.Assembler;
+import org.apache.openejb.assembler.classic.StatelessSessionContainerInfo;
+import org.apache.openejb.client.LookupCache;
+import org.apache.openejb.config.ConfigurationFactory;
+import org.apache.openejb.core.ServerFederation;
+import org.apache.openejb.jee.EjbJar;
+import org.apache.openejb.jee.StatelessBean;
+import org.apache.openejb.loader.SystemInstance;
+import org.apache.openejb.server.ServiceDaemon;
+import org.apache.openejb.server.ServicePool;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.naming.Context;
+import javax.naming.InitialContext;
+import javax.naming.NameNotFoundException;
+import java.util.Properties;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+public class RemoteLookupTest {
+
+    private ServiceDaemon serviceDaemon;
+    private Assembler assembler;
+    private AppInfo appInfo;
+    private Context context;
+
+    @After
+    public void tearDown() throws Exception {
+        serviceDaemon.stop();
+        OpenEJB.destroy();
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        final EjbServer ejbServer = new EjbServer();
+        final KeepAliveServer keepAliveServer = new KeepAliveServer(ejbServer, false);
+
+        final Properties initProps = new Properties();
+        initProps.setProperty("openejb.deployments.classpath.include", "");
+        initProps.setProperty("openejb.deployments.classpath.filter.descriptors", "true");
+        OpenEJB.init(initProps, new ServerFederation());
+        ejbServer.init(new Properties());
+
+        final ServicePool pool = new ServicePool(keepAliveServer, 20);
+        this.serviceDaemon = new ServiceDaemon(pool, 0, "localhost");
+        serviceDaemon.start();
+
+        final ConfigurationFactory config = new ConfigurationFactory();
+        assembler = SystemInstance.get().getComponent(Assembler.class);
+        assembler.createContainer(config.configureService(StatelessSessionContainerInfo.class));
+
+        final StatelessBean bean = new StatelessBean(EchoBean.class);
+        bean.addBusinessRemote(Echo.class.getName());
+
+        final EjbJar ejbJar = new EjbJar();
+        ejbJar.addEnterpriseBean(bean);
+
+        appInfo = config.configureApplication(ejbJar);
+        assembler.createApplication(appInfo);
+
+        final Properties props = new Properties();
+        props.put("java.naming.factory.initial", "org.apache.openejb.client.RemoteInitialContextFactory");
+        props.put("java.naming.provider.url", "ejbd://127.0.0.1:" + serviceDaemon.getPort());
+        props.put(LookupCache.TIME_TO_LIVE, "0"); // every lookup goes to the server
+        context = new InitialContext(props);
+    }
+
+    @Test
+    public void cachedLookupsFollowDeployments() throws Exception {
+        assertEquals("a", ((Echo) context.lookup("EchoBeanRemote")).echo("a"));
+        assertEquals("b", ((Echo) context.lookup("EchoBeanRemote")).echo("b"));
+
+        assembler.destroyApplication(appInfo);
+        try {
+            context.lookup("EchoBeanRemote");
+            fail("the undeployed bean was still found");
+        } catch (final NameNotFoundException e) {
+            // expected
+        }
+
+        assembler.createApplication(appInfo);
+        assertEquals("c", ((Echo) context.lookup("EchoBeanRemote")).echo("c"));
+    }
+
+    public interface Echo {
+
+        String echo(String value);
+    }
+
+    public static class EchoBean implements Echo {
+
+        @Override
+        public String echo(final String value) {
+            return value;
+        }
+    }
+}
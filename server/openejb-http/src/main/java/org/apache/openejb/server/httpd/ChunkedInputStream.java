@@ -0,0 +1,118 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.openejb.server.httpd;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Decodes a "Transfer-Encoding: chunked" body as it is read.
+ * Trailers are consumed and ignored. Closing it doesn't close the socket.
+ */
+public class ChunkedInputStream extends InputStream {
+    private final HttpInputStream in;
+    private int remaining;
+    private boolean finished;
+
+    public ChunkedInputStream(final HttpInputStream in) {
+        this.in = in;
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (!nextChunk()) {
+            return -1;
+        }
+
+        final int b = in.read();
+        if (b == -1) {
+            throw new EOFException("Unexpected end of chunked body");
+        }
+        chunkRead(1);
+        return b;
+    }
+
+    @Override
+    public int read(final byte[] b, final int off, final int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        if (!nextChunk()) {
+            return -1;
+        }
+
+        final int read = in.read(b, off, Math.min(len, remaining));
+        if (read == -1) {
+            throw new EOFException("Unexpected end of chunked body");
+        }
+        chunkRead(read);
+        return read;
+    }
+
+    @Override
+    public int available() throws IOException {
+        return finished ? 0 : Math.min(remaining, in.available());
+    }
+
+    @Override
+    public void close() throws IOException {
+        // no-op: the socket is closed by the server
+    }
+
+    private void chunkRead(final int read) throws IOException {
+        remaining -= read;
+        if (remaining == 0) {
+            in.readLine(); // CRLF ending the chunk data
+        }
+    }
+
+    private boolean nextChunk() throws IOException {
+        if (finished) {
+            return false;
+        }
+        if (remaining > 0) {
+            return true;
+        }
+
+        final String line = in.readLine();
+        if (line == null) {
+            throw new EOFException("Unexpected end of chunked body");
+        }
+
+        final int extension = line.indexOf(';');
+        final String size = (extension < 0 ? line : line.substring(0, extension)).trim();
+        try {
+            remaining = Integer.parseInt(size, 16);
+        } catch (final NumberFormatException e) {
+            throw new IOException("Invalid chunk size: " + size);
+        }
+        if (remaining < 0) {
+            throw new IOException("Invalid chunk size: " + size);
+        }
+
+        if (remaining == 0) {
+            // last chunk, skip the trailers
+            for (String trailer = in.readLine(); trailer != null && !trailer.isEmpty(); trailer = in.readLine()) {
+                // no-op
+            }
+            finished = true;
+            return false;
+        }
+        return true;
+    }
+}
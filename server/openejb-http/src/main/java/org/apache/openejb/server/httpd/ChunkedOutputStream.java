@@ -0,0 +1,76 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.openejb.server.httpd;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Writes every write() call as one "Transfer-Encoding: chunked" chunk so callers
+ * are expected to buffer. {@link #finish()} writes the last chunk, the
+ * underlying stream is never closed.
+ */
+public class ChunkedOutputStream extends OutputStream {
+    private static final byte[] CRLF = {'\r', '\n'};
+    private static final byte[] LAST_CHUNK = {'0', '\r', '\n', '\r', '\n'};
+
+    private final OutputStream out;
+    private boolean finished;
+
+    public ChunkedOutputStream(final OutputStream out) {
+        this.out = out;
+    }
+
+    @Override
+    public void write(final int b) throws IOException {
+        write(new byte[]{(byte) b}, 0, 1);
+    }
+
+    @Override
+    public void write(final byte[] b, final int off, final int len) throws IOException {
+        if (finished) {
+            throw new IOException("Chunked stream already finished");
+        }
+        if (len == 0) { // an empty chunk would be the last one
+            return;
+        }
+
+        out.write(Integer.toHexString(len).getBytes(StandardCharsets.ISO_8859_1));
+        out.write(CRLF);
+        out.write(b, off, len);
+        out.write(CRLF);
+    }
+
+    @Override
+    public void flush() throws IOException {
+        out.flush();
+    }
+
+    public void finish() throws IOException {
+        if (!finished) {
+            finished = true;
+            out.write(LAST_CHUNK);
+            out.flush();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        finish();
+    }
+}
@@ -0,0 +1,76 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.openejb.server.httpd;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Exposes the next Content-Length bytes of the socket as the request body.
+ * Closing it doesn't close the socket.
+ */
+public class ContentLengthInputStream extends InputStream {
+    private final InputStream in;
+    private long remaining;
+
+    public ContentLengthInputStream(final InputStream in, final long length) {
+        this.in = in;
+        this.remaining = length;
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (remaining <= 0) {
+            return -1;
+        }
+
+        final int b = in.read();
+        if (b == -1) {
+            throw new EOFException("Unexpected end of body, " + remaining + " bytes missing");
+        }
+        remaining--;
+        return b;
+    }
+
+    @Override
+    public int read(final byte[] b, final int off, final int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        if (remaining <= 0) {
+            return -1;
+        }
+
+        final int read = in.read(b, off, (int) Math.min(len, remaining));
+        if (read == -1) {
+            throw new EOFException("Unexpected end of body, " + remaining + " bytes missing");
+        }
+        remaining -= read;
+        return read;
+    }
+
+    @Override
+    public int available() throws IOException {
+        return (int) Math.min(remaining, in.available());
+    }
+
+    @Override
+    public void close() throws IOException {
+        // no-op: the socket is closed by the server
+    }
+}
@@ -0,0 +1,148 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.openejb.server.httpd;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Buffered socket input used to parse the request head.
+ *
+ * DataInput.readLine() reads the socket one byte at a time, here lines are
+ * scanned in a buffer and decoded as ISO-8859-1 without any intermediate
+ * StringBuilder. Once the head is read the same instance serves the body so
+ * the bytes already buffered are not lost.
+ */
+public class HttpInputStream extends InputStream {
+    public static final int DEFAULT_BUFFER_SIZE = 8192;
+
+    private final InputStream delegate;
+    private final byte[] buffer;
+    private final int maxLineLength;
+    private byte[] line = new byte[256];
+    private int position;
+    private int limit;
+
+    public HttpInputStream(final InputStream delegate) {
+        this(delegate, DEFAULT_BUFFER_SIZE, DEFAULT_BUFFER_SIZE);
+    }
+
+    public HttpInputStream(final InputStream delegate, final int bufferSize, final int maxLineLength) {
+        this.delegate = delegate;
+        this.buffer = new byte[bufferSize];
+        this.maxLineLength = maxLineLength;
+    }
+
+    /**
+     * @return the next CRLF (or LF) terminated line without its terminator, null at the end of the stream
+     * @throws IOException if the line is longer than the max line length
+     */
+    public String readLine() throws IOException {
+        int length = 0;
+        while (true) {
+            if (position == limit && !fill()) {
+                if (length == 0) {
+                    return null;
+                }
+                break;
+            }
+
+            final byte b = buffer[position++];
+            if (b == '\n') {
+                break;
+            }
+
+            if (length == line.length) {
+                if (length >= maxLineLength) {
+                    throw new IOException("Line exceeds " + maxLineLength + " bytes");
+                }
+                line = Arrays.copyOf(line, Math.min(maxLineLength, length * 2));
+            }
+            line[length++] = b;
+        }
+
+        if (length > 0 && line[length - 1] == '\r') {
+            length--;
+        }
+        return new String(line, 0, length, StandardCharsets.ISO_8859_1);
+    }
+
+    public void readFully(final byte[] bytes) throws IOException {
+        int offset = 0;
+        while (offset < bytes.length) {
+            final int read = read(bytes, offset, bytes.length - offset);
+            if (read == -1) {
+                throw new EOFException("Expected " + bytes.length + " bytes, got " + offset);
+            }
+            offset += read;
+        }
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (position == limit && !fill()) {
+            return -1;
+        }
+        return buffer[position++] & 0xff;
+    }
+
+    @Override
+    public int read(final byte[] b, final int off, final int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+
+        if (position == limit) {
+            if (len >= buffer.length) { // no need to copy twice
+                return delegate.read(b, off, len);
+            }
+            if (!fill()) {
+                return -1;
+            }
+        }
+
+        final int read = Math.min(len, limit - position);
+        System.arraycopy(buffer, position, b, off, read);
+        position += read;
+        return read;
+    }
+
+    @Override
+    public int available() throws IOException {
+        return limit - position + delegate.available();
+    }
+
+    @Override
+    public void close() throws IOException {
+        delegate.close();
+    }
+
+    private boolean fill() throws IOException {
+        position = 0;
+        limit = 0;
+
+        final int read = delegate.read(buffer, 0, buffer.length);
+        if (read <= 0) {
+            return false;
+        }
+        limit = read;
+        return true;
+    }
+}
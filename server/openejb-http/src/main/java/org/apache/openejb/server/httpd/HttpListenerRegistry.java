@@ -25,7 +25,6 @@ import java.net.URL;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
-import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.Map;
 import java.util.StringTokenizer;
@@ -50,8 +49,10 @@ import org.apache.webbeans.spi.ContextsService;
  * @version $Revision$ $Date$
  */
 public class HttpListenerRegistry implements HttpListener {
-    private final Map<String, HttpListener> registry = new LinkedHashMap<>();
-    private final Map<String, Collection<HttpListener>> filterRegistry = new LinkedHashMap<>();
+    // compiled once per (un)registration, requests only read the current tables
+    private volatile RoutingTable<HttpListener> registry = RoutingTable.empty();
+    private volatile RoutingTable<Collection<HttpListener>> filterRegistry = RoutingTable.empty();
+    private final Object lock = new Object();
     private final ThreadLocal<FilterListener> currentFilterListener = new ThreadLocal<>();
     private final ThreadLocal<HttpRequest> request = new ThreadLocal<>();
     private final ClassLoader defaultClassLoader;
@@ -149,54 +150,41 @@ public class HttpListenerRegistry implements HttpListener {
 
         final FilterListener currentFL = currentFilterListener.get();
 
-        // first look filters
-        Map<String, Collection<HttpListener>> filters;
-        synchronized (filterRegistry) {
-            filters = new HashMap<>(filterRegistry);
-        }
-
         final HttpRequest registered = this.request.get();
         final boolean reset = registered == null;
         try {
             if (reset) {
                 this.request.set(request);
             }
-            boolean lastWasCurrent = false;
-            for (Map.Entry<String, Collection<HttpListener>> entry : filters.entrySet()) {
-                String pattern = entry.getKey();
-                for (HttpListener listener : entry.getValue()) {
-                    if ((lastWasCurrent || currentFL == null) && path.matches(pattern)) {
-                        listener.onMessage(request, response);
-                        return;
+
+            // first look filters, the next one of the chain in registration order
+            final RoutingTable<Collection<HttpListener>> filters = filterRegistry;
+            if (!filters.isEmpty()) {
+                boolean lastWasCurrent = false;
+                for (final RoutingTable.Route<Collection<HttpListener>> route : filters.matches(path)) {
+                    for (final HttpListener listener : route.getValue()) {
+                        if (lastWasCurrent || currentFL == null) {
+                            listener.onMessage(request, response);
+                            return;
+                        }
+                        lastWasCurrent = listener == currentFL;
                     }
-                    lastWasCurrent = listener == currentFL;
                 }
             }
 
-
             // then others
-            Map<String, HttpListener> listeners;
-            synchronized (registry) {
-                listeners = new HashMap<>(registry);
-            }
-
-            boolean found = false;
-            for (final Map.Entry<String, HttpListener> entry : listeners.entrySet()) {
-                final String pattern = entry.getKey();
-                if (path.matches(pattern) || path.equals(pattern)) {
-                    final WebBeansContext wbc = WebBeansContext.class.cast(request.getAttribute("openejb_owb_context"));
-                    if (wbc != null) {
-                        CdiAppContextsService.class.cast(wbc.getService(ContextsService.class)).checkConversationState();
-                    }
-                    if (pattern.contains("/.*\\.") && HttpRequestImpl.class.isInstance(request)) { // TODO: enhance it, basically servlet *.xxx
-                        HttpRequestImpl.class.cast(request).noPathInfo();
-                    }
-                    entry.getValue().onMessage(request, response);
-                    found = true;
-                    break;
+            final RoutingTable.Route<HttpListener> route = registry.match(path);
+            if (route != null) {
+                final String pattern = route.getPattern();
+                final WebBeansContext wbc = WebBeansContext.class.cast(request.getAttribute("openejb_owb_context"));
+                if (wbc != null) {
+                    CdiAppContextsService.class.cast(wbc.getService(ContextsService.class)).checkConversationState();
                 }
-            }
-            if (!found) {
+                if (pattern.contains("/.*\\.") && HttpRequestImpl.class.isInstance(request)) { // TODO: enhance it, basically servlet *.xxx
+                    HttpRequestImpl.class.cast(request).noPathInfo();
+                }
+                route.getValue().onMessage(request, response);
+            } else {
                 final String servletPath = request.getServletPath();
                 if (servletPath != null) {
                     URL url = SystemInstance.get().getComponent(ServletContext.class).getResource(servletPath);
@@ -277,31 +265,33 @@ public class HttpListenerRegistry implements HttpListener {
     }
 
     public void addHttpListener(HttpListener listener, String regex) {
-        synchronized (registry) {
-            registry.put(regex, listener);
+        synchronized (lock) {
+            registry = registry.with(regex, listener);
         }
     }
 
     public HttpListener removeHttpListener(String regex) {
-        HttpListener listener;
-        synchronized (registry) {
-            listener = registry.remove(regex);
+        synchronized (lock) {
+            final HttpListener listener = registry.get(regex);
+            registry = registry.without(regex);
+            return listener;
         }
-        return listener;
     }
 
     public void addHttpFilter(HttpListener listener, String regex) {
-        synchronized (filterRegistry) {
-            if (!filterRegistry.containsKey(regex)) {
-                filterRegistry.put(regex, new ArrayList<HttpListener>());
-            }
-            filterRegistry.get(regex).add(listener);
+        synchronized (lock) {
+            final Collection<HttpListener> existing = filterRegistry.get(regex);
+            final Collection<HttpListener> filters = existing == null ? new ArrayList<HttpListener>(1) : new ArrayList<>(existing);
+            filters.add(listener);
+            filterRegistry = filterRegistry.with(regex, filters);
         }
     }
 
     public Collection<HttpListener> removeHttpFilter(String regex) {
-        synchronized (filterRegistry) {
-            return filterRegistry.remove(regex);
+        synchronized (lock) {
+            final Collection<HttpListener> filters = filterRegistry.get(regex);
+            filterRegistry = filterRegistry.without(regex);
+            return filters == null ? null : new ArrayList<>(filters); // requests can still be going through the previous table
         }
     }
 
@@ -28,8 +28,6 @@ import org.apache.openejb.util.Logger;
 
 import java.io.BufferedReader;
 import java.io.ByteArrayOutputStream;
-import java.io.DataInput;
-import java.io.DataInputStream;
 import java.io.EOFException;
 import java.io.IOException;
 import java.io.InputStream;
@@ -132,7 +130,7 @@ public class HttpRequestImpl implements HttpRequest {
      * the content of the body of the request
      */
     private byte[] body;
-    private ServletByteArrayIntputStream in;
+    private ServletInputStream in;
     private int length;
     private String contentType;
 
@@ -158,6 +156,11 @@ public class HttpRequestImpl implements HttpRequest {
     private volatile boolean asyncStarted;
     private boolean noPathInfo;
 
+    /**
+     * if true the body is not read upfront but read from the socket by the listener
+     */
+    private boolean streaming;
+
     public HttpRequestImpl(URI socketURI) {
         this.socketURI = socketURI;
     }
@@ -166,6 +169,10 @@ public class HttpRequestImpl implements HttpRequest {
         this.uri = uri;
     }
 
+    protected void setStreaming(final boolean streaming) {
+        this.streaming = streaming;
+    }
+
     /**
      * Gets a header based the header name passed in.
      *
@@ -374,13 +381,13 @@ public class HttpRequestImpl implements HttpRequest {
      * @throws java.io.IOException if an exception is thrown
      */
     protected boolean readMessage(InputStream input) throws IOException {
-        final DataInput di = new DataInputStream(input);
+        final HttpInputStream in = HttpInputStream.class.isInstance(input) ? HttpInputStream.class.cast(input) : new HttpInputStream(input);
 
-        if (!readRequestLine(di)) {
+        if (!readRequestLine(in)) {
             return false;
         }
-        readHeaders(di);
-        readBody(di);
+        readHeaders(in);
+        readBody(in);
 
         for (final Map.Entry<String, String> formParameters : getFormParameters().entrySet()) {
             parameters.put(formParameters.getKey(), singletonList(formParameters.getValue()));
@@ -418,7 +425,7 @@ public class HttpRequestImpl implements HttpRequest {
             }
             builder.append("\n");
 
-            final String text = new String(body);
+            final String text = body != null ? new String(body) : "<streamed body>";
             if (formatXml && OpenEJBHttpServer.isTextXml(headers)) {
                 builder.append(OpenEJBHttpServer.reformat(text)).append("\n");
             } else {
@@ -435,11 +442,10 @@ public class HttpRequestImpl implements HttpRequest {
      * @param in the input to be read
      * @throws java.io.IOException if an exception is thrown
      */
-    private boolean readRequestLine(DataInput in) throws IOException {
+    private boolean readRequestLine(HttpInputStream in) throws IOException {
         String line;
         try {
             line = in.readLine();
-//            System.out.println(line);
         } catch (Exception e) {
             throw new IOException("Could not read the HTTP Request Line :"
                 + e.getClass().getName()
@@ -450,31 +456,44 @@ public class HttpRequestImpl implements HttpRequest {
             return false;
         }
 
-        StringTokenizer lineParts = new StringTokenizer(line, " ");
+        // METHOD SP URI SP VERSION, tolerate repeated spaces as the StringTokenizer did
+        final int methodStart = skipSpaces(line, 0);
+        final int methodEnd = nextSpace(line, methodStart);
+        final int uriStart = skipSpaces(line, methodEnd);
+        final int uriEnd = nextSpace(line, uriStart);
+        if (methodStart == methodEnd) {
+            throw new IOException("Could not parse the HTTP Request Method : " + line);
+        }
+        if (uriStart == uriEnd) {
+            throw new IOException("Could not parse the HTTP Request URI : " + line);
+        }
+
         /* [1] Parse the method */
-        parseMethod(lineParts);
+        parseMethod(line.substring(methodStart, methodEnd));
         /* [2] Parse the URI */
-        parseURI(lineParts);
+        parseURI(line.substring(uriStart, uriEnd));
         return true;
     }
 
+    private static int skipSpaces(final String line, final int from) {
+        int i = from;
+        while (i < line.length() && line.charAt(i) == ' ') {
+            i++;
+        }
+        return i;
+    }
+
+    private static int nextSpace(final String line, final int from) {
+        final int space = line.indexOf(' ', from);
+        return space < 0 ? line.length() : space;
+    }
+
     /**
      * parses the method for this page
      *
-     * @param lineParts a StringTokenizer of the request line
-     * @throws java.io.IOException if an exeption is thrown
+     * @param token the method token of the request line
      */
-    private void parseMethod(StringTokenizer lineParts) throws IOException {
-        String token;
-        try {
-            token = lineParts.nextToken();
-        } catch (final Exception e) {
-            throw new IOException("Could not parse the HTTP Request Method :"
-                + e.getClass().getName()
-                + " : "
-                + e.getMessage());
-        }
-
+    private void parseMethod(final String token) {
         // in JAXRS you can create your own method
         try { // to control the case
             method = Method.valueOf(token.toUpperCase(Locale.ENGLISH)).name();
@@ -519,7 +538,10 @@ public class HttpRequestImpl implements HttpRequest {
                 + " : "
                 + e.getMessage());
         }
+        parseURI(token);
+    }
 
+    private void parseURI(final String token) throws IOException {
         try {
             uri = new URI(socketURI.toString() + token.replace("//", "/"));
         } catch (URISyntaxException e) {
@@ -572,15 +594,13 @@ public class HttpRequestImpl implements HttpRequest {
      * @param in the data input sent from the browser
      * @throws java.io.IOException if an exeption is thrown
      */
-    private void readHeaders(DataInput in) throws IOException {
-//        System.out.println("\nREQUEST");
+    private void readHeaders(HttpInputStream in) throws IOException {
         while (true) {
             // Header Field
             String hf;
 
             try {
                 hf = in.readLine();
-                //System.out.println(hf);
             } catch (Exception e) {
                 throw new IOException("Could not read the HTTP Request Header Field :"
                     + e.getClass().getName()
@@ -593,17 +613,14 @@ public class HttpRequestImpl implements HttpRequest {
             }
 
             /* [1] parse the name */
-            int colonIndex = hf.indexOf((int) ':');
-            String name = hf.substring(0, colonIndex);
-            if (name == null)
-                break;
+            final int colonIndex = hf.indexOf(':');
+            if (colonIndex <= 0) {
+                throw new IOException("Malformed HTTP Request Header Field : " + hf);
+            }
+            final String name = hf.substring(0, colonIndex);
 
             /* [2] Parse the Value */
-            String value = hf.substring(colonIndex + 1, hf.length());
-            if (value == null)
-                break;
-            value = value.trim();
-            headers.put(name, value);
+            headers.put(name, hf.substring(colonIndex + 1).trim());
         }
 
         // Update the URI to be what the client sees the the server as.
@@ -652,7 +669,7 @@ public class HttpRequestImpl implements HttpRequest {
      * @param in the data input with the body of the page
      * @throws java.io.IOException if an exception is thrown
      */
-    private void readBody(DataInput in) throws IOException {
+    private void readBody(HttpInputStream in) throws IOException {
         //System.out.println("Body Length: " + body.length);
         // Content-type: application/x-www-form-urlencoded
         // or multipart/form-data
@@ -698,29 +715,25 @@ public class HttpRequestImpl implements HttpRequest {
                 //System.out.println(name + ": " + value);
             }
         } else if (hasBody && CHUNKED.equals(headers.get(TRANSFER_ENCODING))) {
-            try {
-                ByteArrayOutputStream out = new ByteArrayOutputStream(4096);
-                for (String line = in.readLine(); line != null; line = in.readLine()) {
-                    // read the size line which is in hex
-                    String sizeString = line.split(";", 2)[0];
-                    int size = Integer.parseInt(sizeString, 16);
-
-                    // if size is 0 we are done
-                    if (size == 0) break;
-
-                    // read the chunk and append to byte array
-                    byte[] chunk = new byte[size];
-                    in.readFully(chunk);
-                    out.write(chunk);
-
-                    // read off the trailing new line characters after the chunk
-                    in.readLine();
+            final ChunkedInputStream chunked = new ChunkedInputStream(in);
+            if (streaming) {
+                this.in = new ServletIntputStreamAdapter(chunked);
+            } else {
+                try {
+                    final ByteArrayOutputStream out = new ByteArrayOutputStream(4096);
+                    final byte[] buffer = new byte[4096];
+                    int read;
+                    while ((read = chunked.read(buffer)) != -1) {
+                        out.write(buffer, 0, read);
+                    }
+                    body = out.toByteArray();
+                    this.in = new ServletByteArrayIntputStream(body);
+                } catch (Exception e) {
+                    throw (IOException) new IOException("Unable to read chunked body").initCause(e);
                 }
-                body = out.toByteArray();
-                this.in = new ServletByteArrayIntputStream(body);
-            } catch (Exception e) {
-                throw (IOException) new IOException("Unable to read chunked body").initCause(e);
             }
+        } else if (hasBody && streaming && length >= 0) {
+            this.in = new ServletIntputStreamAdapter(new ContentLengthInputStream(in, length));
         } else if (hasBody) {
             // TODO This really is terrible
             body = readContent(in);
@@ -732,7 +745,7 @@ public class HttpRequestImpl implements HttpRequest {
 
     }
 
-    private byte[] readContent(DataInput in) throws IOException {
+    private byte[] readContent(HttpInputStream in) throws IOException {
         if (length >= 0) {
             byte[] body = new byte[length];
             in.readFully(body);
@@ -742,12 +755,12 @@ public class HttpRequestImpl implements HttpRequest {
             try {
                 boolean atLineStart = true;
                 while (true) {
-                    byte b = in.readByte();
+                    int b = readByte(in);
 
                     if (b == '\r') {
                         // read the next byte
                         out.write(b);
-                        b = in.readByte();
+                        b = readByte(in);
                     }
 
                     if (b == '\n') {
@@ -769,6 +782,14 @@ public class HttpRequestImpl implements HttpRequest {
         }
     }
 
+    private static int readByte(final InputStream in) throws IOException {
+        final int b = in.read();
+        if (b == -1) {
+            throw new EOFException();
+        }
+        return b;
+    }
+
     private int parseContentLength() {
         // Content-length: 384
         String len = getHeader(HttpRequest.HEADER_CONTENT_LENGTH);
@@ -95,6 +95,14 @@ public class HttpResponseImpl implements HttpResponse {
     private HttpRequestImpl request;
     private URLConnection content;
 
+    /**
+     * the socket the body is streamed to once it exceeds the streaming threshold,
+     * null to buffer the whole response
+     */
+    private transient OutputStream streamingOutput;
+    private int streamingThreshold;
+    private transient ChunkedOutputStream chunked;
+
     private boolean commited = false;
     private String encoding = "UTF-8";
     private Locale locale = Locale.getDefault();
@@ -103,6 +111,26 @@ public class HttpResponseImpl implements HttpResponse {
         this.request = request;
     }
 
+    /**
+     * Bodies bigger than threshold are sent as they are written using
+     * "Transfer-Encoding: chunked" instead of being buffered until the listener returns.
+     *
+     * @param output    the socket output
+     * @param threshold the size of the buffer flushed as one chunk
+     */
+    protected void setStreaming(final OutputStream output, final int threshold) {
+        streamingOutput = output;
+        streamingThreshold = threshold;
+        initBody();
+    }
+
+    /**
+     * @return true if the status line and headers were already sent because the body is streamed
+     */
+    protected boolean isHeadWritten() {
+        return chunked != null;
+    }
+
     /**
      * sets a header to be sent back to the browser
      *
@@ -336,6 +364,9 @@ public class HttpResponseImpl implements HttpResponse {
      * resets the data to be sent to the browser
      */
     public void reset() {
+        if (chunked != null) {
+            throw new IllegalStateException("response already committed");
+        }
         initBody();
     }
 
@@ -424,6 +455,12 @@ public class HttpResponseImpl implements HttpResponse {
     protected void writeMessage(OutputStream output, boolean indent) throws IOException {
         flushBuffer();
 
+        if (chunked != null) { // head and most of the body already sent
+            writeChunk();
+            chunked.finish();
+            return;
+        }
+
         final ByteArrayOutputStream baos = new ByteArrayOutputStream();
         final DataOutputStream out = new DataOutputStream(baos);
         closeMessage();
@@ -431,7 +468,7 @@ public class HttpResponseImpl implements HttpResponse {
         writeHeaders(out);
         writeBody(out, indent);
         out.flush();
-        output.write(baos.toByteArray());
+        baos.writeTo(output);
         output.flush();
     }
 
@@ -439,10 +476,36 @@ public class HttpResponseImpl implements HttpResponse {
      * initalizes the body
      */
     private void initBody() {
-        sosi = new ServletByteArrayOutputStream();
+        sosi = streamingOutput == null ? new ServletByteArrayOutputStream() : new StreamingOutputStream();
         writer = new PrintWriter(sosi);
     }
 
+    /**
+     * sends the buffered body as one chunk, the first call sends the response line and the headers
+     */
+    private void writeChunk() throws IOException {
+        if (chunked == null) {
+            headers.remove("Content-Length");
+            headers.put("Transfer-Encoding", "chunked");
+            setCookieHeader();
+
+            final ByteArrayOutputStream baos = new ByteArrayOutputStream();
+            final DataOutputStream out = new DataOutputStream(baos);
+            writeResponseLine(out);
+            writeHeaders(out);
+            out.writeBytes(CRLF);
+            out.flush();
+            baos.writeTo(streamingOutput);
+
+            chunked = new ChunkedOutputStream(streamingOutput);
+            commited = true;
+        }
+
+        final ByteArrayOutputStream buffer = sosi.getOutputStream();
+        buffer.writeTo(chunked);
+        buffer.reset();
+    }
+
     /**
      * Creates a string version of the response similar to:
      * <p/>
@@ -467,8 +530,7 @@ public class HttpResponseImpl implements HttpResponse {
         if (content == null) {
             writer.flush();
             writer.close();
-            int length = sosi.getOutputStream().toByteArray().length;
-            setHeader("Content-Length", length + "");
+            setHeader("Content-Length", sosi.getOutputStream().size() + "");
         } else {
             setHeader("Content-Length", content.getContentLength() + "");
         }
@@ -734,4 +796,22 @@ public class HttpResponseImpl implements HttpResponse {
     private String toEncoded(final String url) {
         return url; // should add ;JSESSIONID=xxx but breaks other things and here we don't need it that much
     }
+
+    private class StreamingOutputStream extends ServletByteArrayOutputStream {
+        @Override
+        public void write(final int b) throws IOException {
+            super.write(b);
+            if (getOutputStream().size() >= streamingThreshold) {
+                writeChunk();
+            }
+        }
+
+        @Override
+        public void write(final byte[] b, final int off, final int len) throws IOException {
+            super.write(b, off, len);
+            if (getOutputStream().size() >= streamingThreshold) {
+                writeChunk();
+            }
+        }
+    }
 }
\ No newline at end of file
@@ -60,6 +60,8 @@ public class OpenEJBHttpServer implements HttpServer {
     private HttpListener listener;
     private Set<Output> print;
     private boolean indent;
+    private boolean streaming;
+    private int streamingThreshold;
 
     public OpenEJBHttpServer() {
         this(null);
@@ -160,7 +162,8 @@ public class OpenEJBHttpServer implements HttpServer {
         options.setLogger(new OptionsLog(log));
         print = options.getAll("print", OpenEJBHttpServer.Output.class);
         indent = print.size() > 0 && options.get("indent.xml", false);
-
+        streaming = options.get("streaming", false);
+        streamingThreshold = options.get("streaming.threshold", 64 * 1024);
     }
 
     public static enum Output {
@@ -203,12 +206,18 @@ public class OpenEJBHttpServer implements HttpServer {
      * @param out the output stream to the browser
      */
     private boolean processRequest(final Socket socket, final URI socketURI, final InputStream in, final OutputStream out) {
+        final HttpResponseImpl res = new HttpResponseImpl();
+        if (streaming && !print.contains(Output.RESPONSE)) {
+            res.setStreaming(out, streamingThreshold);
+        }
+
         HttpResponseImpl response = null;
         try {
-            response = process(socket, socketURI, in);
+            response = process(socket, socketURI, in, res);
             return response != null;
         } catch (Throwable t) {
-            response = HttpResponseImpl.createError(t.getMessage(), t);
+            // once the head is sent the only way to signal the error is to cut the chunked body
+            response = res.isHeadWritten() ? null : HttpResponseImpl.createError(t.getMessage(), t);
             return true;
         } finally {
             try {
@@ -233,9 +242,9 @@ public class OpenEJBHttpServer implements HttpServer {
         }
     }
 
-    private HttpResponseImpl process(final Socket socket, final URI socketURI, final InputStream in) throws OpenEJBException {
+    private HttpResponseImpl process(final Socket socket, final URI socketURI, final InputStream in, final HttpResponseImpl res) throws OpenEJBException {
         final HttpRequestImpl req = new HttpRequestImpl(socketURI);
-        final HttpResponseImpl res = new HttpResponseImpl();
+        req.setStreaming(streaming);
 
         try {
             if (!req.readMessage(in)) {
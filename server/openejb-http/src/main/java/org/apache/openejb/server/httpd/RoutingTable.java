@@ -0,0 +1,326 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.openejb.server.httpd;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * Immutable table of the regex patterns the http listeners are registered with, compiled once.
+ *
+ * Each pattern is indexed in a prefix trie by its literal prefix, the part of the regex which can
+ * only match itself. A path walks the trie once and only the routes hanging on the nodes it went
+ * through are tried:
+ * - a pattern without any regex construct only matches itself, compared at the end of the path
+ * - a literal prefix followed by .* matches whatever starts with it, nothing to evaluate
+ * - the others are evaluated with their precompiled regex
+ *
+ * {@link #match(String)} picks the route with the longest literal prefix, then an exact pattern,
+ * then the regexes in the order they were added and finally a prefix followed by .*, so the same
+ * path always reaches the same listener whatever the registration order of unrelated patterns.
+ *
+ * Adding or removing a pattern builds a new table, readers just use the one they got.
+ */
+public final class RoutingTable<T> {
+
+    private static final String META_CHARACTERS = ".[]{}()\\*+?^$|";
+    private static final String QUANTIFIERS = "*+?{";
+    private static final String ANY = ".*";
+
+    private static final RoutingTable<Object> EMPTY = new RoutingTable<>(new LinkedHashMap<String, Object>());
+
+    private final Map<String, T> values; // registration order
+    private final List<Route<T>> routes;
+    private final Node<T> root = new Node<>();
+
+    private RoutingTable(final Map<String, T> values) {
+        this.values = values;
+
+        final List<Route<T>> routes = new ArrayList<>(values.size());
+        for (final Map.Entry<String, T> entry : values.entrySet()) {
+            final Route<T> route = new Route<>(entry.getKey(), entry.getValue(), routes.size());
+            routes.add(route);
+            root.add(route);
+        }
+        this.routes = Collections.unmodifiableList(routes);
+    }
+
+    @SuppressWarnings("unchecked")
+    public static <T> RoutingTable<T> empty() {
+        return (RoutingTable<T>) EMPTY;
+    }
+
+    /**
+     * @return a table routing this pattern to this value too, replacing its previous value
+     */
+    public RoutingTable<T> with(final String pattern, final T value) {
+        final Map<String, T> copy = new LinkedHashMap<>(values);
+        copy.put(pattern, value);
+        return new RoutingTable<>(copy);
+    }
+
+    public RoutingTable<T> without(final String pattern) {
+        if (!values.containsKey(pattern)) {
+            return this;
+        }
+
+        final Map<String, T> copy = new LinkedHashMap<>(values);
+        copy.remove(pattern);
+        return new RoutingTable<>(copy);
+    }
+
+    public T get(final String pattern) {
+        return values.get(pattern);
+    }
+
+    /**
+     * @return the routes in registration order
+     */
+    public List<Route<T>> getRoutes() {
+        return routes;
+    }
+
+    public boolean isEmpty() {
+        return values.isEmpty();
+    }
+
+    /**
+     * @return the most specific route matching this path, null if none does
+     */
+    public Route<T> match(final String path) {
+        final Node<T>[] visited = visit(path);
+        for (int depth = visited.length - 1; depth >= 0; depth--) {
+            final Node<T> node = visited[depth];
+            if (node == null) {
+                continue;
+            }
+
+            if (depth == path.length() && node.exact != null) {
+                return node.exact;
+            }
+            for (final Route<T> route : node.regexes) {
+                if (route.regex.matcher(path).matches()) {
+                    return route;
+                }
+            }
+            if (node.any != null) {
+                return node.any;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return all the routes matching this path in registration order
+     */
+    public List<Route<T>> matches(final String path) {
+        List<Route<T>> matches = null;
+        final Node<T>[] visited = visit(path);
+        for (int depth = 0; depth < visited.length; depth++) {
+            final Node<T> node = visited[depth];
+            if (node == null) {
+                continue;
+            }
+
+            if (depth == path.length() && node.exact != null) {
+                matches = add(matches, node.exact);
+            }
+            for (final Route<T> route : node.regexes) {
+                if (route.regex.matcher(path).matches()) {
+                    matches = add(matches, route);
+                }
+            }
+            if (node.any != null) {
+                matches = add(matches, node.any);
+            }
+        }
+
+        if (matches == null) {
+            return Collections.emptyList();
+        }
+        if (matches.size() > 1) {
+            Collections.sort(matches);
+        }
+        return matches;
+    }
+
+    private static <T> List<Route<T>> add(final List<Route<T>> routes, final Route<T> route) {
+        final List<Route<T>> list = routes == null ? new ArrayList<Route<T>>(2) : routes;
+        list.add(route);
+        return list;
+    }
+
+    /**
+     * @return the nodes holding routes the path went through, indexed by their depth
+     */
+    @SuppressWarnings("unchecked")
+    private Node<T>[] visit(final String path) {
+        final Node<T>[] visited = new Node[path.length() + 1];
+        Node<T> node = root;
+        int depth = 0;
+        while (node != null) {
+            if (node.hasRoutes()) {
+                visited[depth] = node;
+            }
+            if (depth == path.length()) {
+                break;
+            }
+            node = node.child(path.charAt(depth++));
+        }
+        return visited;
+    }
+
+    /**
+     * @return the part of the pattern which can only match itself
+     */
+    static String literalPrefix(final String pattern) {
+        if (pattern.indexOf('|') >= 0) { // an alternative at the top level could start with anything
+            return "";
+        }
+
+        int end = 0;
+        while (end < pattern.length() && META_CHARACTERS.indexOf(pattern.charAt(end)) < 0) {
+            end++;
+        }
+        if (end < pattern.length() && end > 0 && QUANTIFIERS.indexOf(pattern.charAt(end)) >= 0) {
+            end--; // the quantifier applies to the last literal character
+        }
+        return pattern.substring(0, end);
+    }
+
+    public static final class Route<T> implements Comparable<Route<T>> {
+
+        private final String pattern;
+        private final T value;
+        private final int order;
+        private final String prefix;
+        private final Pattern regex; // null when the prefix is enough to decide
+        private final boolean exact;
+
+        private Route(final String pattern, final T value, final int order) {
+            this.pattern = pattern;
+            this.value = value;
+            this.order = order;
+
+            final String literal = literalPrefix(pattern);
+            Pattern compiled = null;
+            boolean exact = literal.length() == pattern.length();
+            if (!exact && !ANY.equals(pattern.substring(literal.length()))) {
+                try {
+                    compiled = Pattern.compile(pattern);
+                } catch (final PatternSyntaxException e) {
+                    exact = true; // not a regex, can only be matched as it is
+                }
+            }
+            this.prefix = exact ? pattern : literal;
+            this.regex = compiled;
+            this.exact = exact;
+        }
+
+        public String getPattern() {
+            return pattern;
+        }
+
+        public T getValue() {
+            return value;
+        }
+
+        @Override
+        public int compareTo(final Route<T> o) {
+            return Integer.compare(order, o.order);
+        }
+
+        @Override
+        public String toString() {
+            return pattern;
+        }
+    }
+
+    private static final class Node<T> {
+
+        private char[] keys = new char[0];
+        private Node<T>[] children = newNodes(0);
+        private Route<T> exact;
+        private Route<T> any;
+        private Route<T>[] regexes = newRoutes(0);
+
+        private void add(final Route<T> route) {
+            Node<T> node = this;
+            for (int i = 0; i < route.prefix.length(); i++) {
+                node = node.getOrCreate(route.prefix.charAt(i));
+            }
+
+            if (route.exact) {
+                node.exact = route;
+            } else if (route.regex == null) {
+                node.any = route;
+            } else {
+                node.regexes = Arrays.copyOf(node.regexes, node.regexes.length + 1);
+                node.regexes[node.regexes.length - 1] = route;
+            }
+        }
+
+        private boolean hasRoutes() {
+            return exact != null || any != null || regexes.length > 0;
+        }
+
+        private Node<T> child(final char c) {
+            final int i = Arrays.binarySearch(keys, c);
+            return i < 0 ? null : children[i];
+        }
+
+        private Node<T> getOrCreate(final char c) {
+            int i = Arrays.binarySearch(keys, c);
+            if (i >= 0) {
+                return children[i];
+            }
+
+            i = -i - 1;
+            final Node<T> node = new Node<>();
+
+            final char[] newKeys = new char[keys.length + 1];
+            System.arraycopy(keys, 0, newKeys, 0, i);
+            System.arraycopy(keys, i, newKeys, i + 1, keys.length - i);
+            newKeys[i] = c;
+
+            final Node<T>[] newChildren = newNodes(children.length + 1);
+            System.arraycopy(children, 0, newChildren, 0, i);
+            System.arraycopy(children, i, newChildren, i + 1, children.length - i);
+            newChildren[i] = node;
+
+            keys = newKeys;
+            children = newChildren;
+            return node;
+        }
+
+        @SuppressWarnings("unchecked")
+        private static <T> Node<T>[] newNodes(final int size) {
+            return new Node[size];
+        }
+
+        @SuppressWarnings("unchecked")
+        private static <T> Route<T>[] newRoutes(final int size) {
+            return new Route[size];
+        }
+    }
+}
@@ -38,6 +38,23 @@ public class ServletIntputStreamAdapter extends ServletInputStream {
         return read;
     }
 
+    @Override
+    public int read(final byte[] b, final int off, final int len) throws IOException {
+        final int read = intputStream.read(b, off, len);
+        finished = read == -1;
+        return read;
+    }
+
+    @Override
+    public int available() throws IOException {
+        return intputStream.available();
+    }
+
+    @Override
+    public void close() throws IOException {
+        intputStream.close();
+    }
+
     @Override
     public boolean isFinished() {
         return finished;
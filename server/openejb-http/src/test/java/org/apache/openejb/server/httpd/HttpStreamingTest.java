@@ -0,0 +1,182 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.openejb.server.httpd;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class HttpStreamingTest {
+    @Test
+    public void requestLineAndHeaders() throws Exception {
+        final HttpRequestImpl request = read(false, ("GET  /foo?a=b HTTP/1.1\r\n"
+                + "Host: example.org:8080\r\n"
+                + "X-Empty:\r\n"
+                + "X-Spaces:   value  \r\n"
+                + "\r\n").getBytes());
+
+        assertEquals("GET", request.getMethod());
+        assertEquals("/foo", request.getURI().getPath());
+        assertEquals("example.org", request.getURI().getHost());
+        assertEquals(8080, request.getURI().getPort());
+        assertEquals("b", request.getParameter("a"));
+        assertEquals("", request.getHeader("X-Empty"));
+        assertEquals("value", request.getHeader("X-Spaces"));
+    }
+
+    @Test
+    public void malformedHeader() throws Exception {
+        try {
+            read(false, "GET / HTTP/1.1\r\nno colon\r\n\r\n".getBytes());
+            fail();
+        } catch (final IOException e) {
+            // ok
+        }
+    }
+
+    @Test
+    public void endOfStream() throws Exception {
+        final HttpRequestImpl request = new HttpRequestImpl(new URI("http://localhost:4204"));
+        assertFalse(request.readMessage(new ByteArrayInputStream(new byte[0])));
+    }
+
+    @Test
+    public void bufferedChunkedBody() throws Exception {
+        final HttpRequestImpl request = read(false, chunkedRequest("hello chunked world".getBytes(), 4));
+        assertEquals("hello chunked world", new String(slurp(request.getInputStream())));
+    }
+
+    @Test
+    public void streamedChunkedBody() throws Exception {
+        final byte[] body = body(3 * 1024 * 1024 + 17);
+        final HttpRequestImpl request = read(true, chunkedRequest(body, 8000));
+        assertArrayEquals(body, slurp(request.getInputStream()));
+        assertTrue(request.getInputStream().isFinished());
+    }
+
+    @Test
+    public void streamedContentLengthBody() throws Exception {
+        final byte[] body = body(2 * 1024 * 1024);
+        final ByteArrayOutputStream raw = new ByteArrayOutputStream();
+        raw.write(("POST /upload HTTP/1.1\r\nContent-Type: application/octet-stream\r\nContent-Length: " + body.length + "\r\n\r\n").getBytes());
+        raw.write(body);
+        raw.write("garbage after the body".getBytes());
+
+        final HttpRequestImpl request = read(true, raw.toByteArray());
+        assertEquals(body.length, request.getContentLength());
+        assertArrayEquals(body, slurp(request.getInputStream()));
+    }
+
+    @Test
+    public void formIsStillParsedWhenStreaming() throws Exception {
+        final HttpRequestImpl request = read(true, ("POST /form HTTP/1.1\r\n"
+                + "Content-Type: application/x-www-form-urlencoded\r\n"
+                + "Content-Length: 7\r\n"
+                + "\r\n"
+                + "a=1&b=2").getBytes());
+        assertEquals("1", request.getParameter("a"));
+        assertEquals("2", request.getParameter("b"));
+        assertNull(request.getParameter("c"));
+    }
+
+    @Test
+    public void chunkedResponse() throws Exception {
+        final ByteArrayOutputStream socket = new ByteArrayOutputStream();
+        final HttpResponseImpl response = new HttpResponseImpl();
+        response.setStreaming(socket, 1024);
+
+        final byte[] body = body(10000);
+        response.getOutputStream().write(body);
+        assertTrue(response.isHeadWritten());
+        assertTrue(socket.size() > 0);
+        response.writeMessage(socket, false);
+
+        final HttpInputStream in = new HttpInputStream(new ByteArrayInputStream(socket.toByteArray()));
+        assertEquals("HTTP/1.1 200 OK", in.readLine());
+        boolean chunked = false;
+        for (String header = in.readLine(); !header.isEmpty(); header = in.readLine()) {
+            assertFalse(header.startsWith("Content-Length"));
+            chunked |= header.equals("Transfer-Encoding: chunked");
+        }
+        assertTrue(chunked);
+        assertArrayEquals(body, slurp(new ChunkedInputStream(in)));
+        assertEquals(-1, in.read());
+    }
+
+    @Test
+    public void smallResponseKeepsContentLength() throws Exception {
+        final ByteArrayOutputStream socket = new ByteArrayOutputStream();
+        final HttpResponseImpl response = new HttpResponseImpl();
+        response.setStreaming(socket, 1024);
+        response.getWriter().write("small");
+        response.writeMessage(socket, false);
+
+        assertFalse(response.isHeadWritten());
+        final String raw = new String(socket.toByteArray());
+        assertTrue(raw, raw.contains("Content-Length: 5"));
+        assertTrue(raw, raw.endsWith("\r\n\r\nsmall"));
+    }
+
+    private static HttpRequestImpl read(final boolean streaming, final byte[] raw) throws Exception {
+        final HttpRequestImpl request = new HttpRequestImpl(new URI("http://localhost:4204"));
+        request.setStreaming(streaming);
+        assertTrue(request.readMessage(new ByteArrayInputStream(raw)));
+        return request;
+    }
+
+    private static byte[] chunkedRequest(final byte[] body, final int chunkSize) throws IOException {
+        final ByteArrayOutputStream raw = new ByteArrayOutputStream();
+        raw.write("POST /upload HTTP/1.1\r\nHost: localhost\r\nTransfer-Encoding: chunked\r\n\r\n".getBytes());
+        for (int i = 0; i < body.length; i += chunkSize) {
+            final int size = Math.min(chunkSize, body.length - i);
+            raw.write((Integer.toHexString(size) + ";ext=1\r\n").getBytes());
+            raw.write(body, i, size);
+            raw.write("\r\n".getBytes());
+        }
+        raw.write("0\r\nX-Trailer: ignored\r\n\r\n".getBytes());
+        return raw.toByteArray();
+    }
+
+    private static byte[] body(final int size) {
+        final byte[] body = new byte[size];
+        for (int i = 0; i < size; i++) {
+            body[i] = (byte) (i % 251);
+        }
+        return body;
+    }
+
+    private static byte[] slurp(final InputStream in) throws IOException {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        final byte[] buffer = new byte[4096];
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            out.write(buffer, 0, read);
+        }
+        return out.toByteArray();
+    }
+}
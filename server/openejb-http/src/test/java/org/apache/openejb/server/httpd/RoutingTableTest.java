@@ -0,0 +1,140 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.openejb.server.httpd;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class RoutingTableTest {
+
+    @Test
+    public void literalPrefix() {
+        assertEquals("/ws/Calculator", RoutingTable.literalPrefix("/ws/Calculator"));
+        assertEquals("/app/rest/", RoutingTable.literalPrefix("/app/rest/.*"));
+        assertEquals("/ejb", RoutingTable.literalPrefix("/ejb/?.*"));
+        assertEquals("/app/", RoutingTable.literalPrefix("/app/.*\\.jsp"));
+        assertEquals("", RoutingTable.literalPrefix("/a/.*|/b/.*"));
+        assertEquals("", RoutingTable.literalPrefix(".*"));
+    }
+
+    @Test
+    public void longestMatchWins() {
+        final RoutingTable<String> table = RoutingTable.<String>empty()
+            .with("/app/.*", "app")
+            .with("/app/rest/.*", "rest")
+            .with("/app/rest/admin", "admin")
+            .with("/app/rest/[0-9]+", "numbers")
+            .with("/ejb/?.*", "ejb");
+
+        assertEquals("app", table.match("/app/index.html").getValue());
+        assertEquals("rest", table.match("/app/rest/users").getValue());
+        assertEquals("admin", table.match("/app/rest/admin").getValue());
+        assertEquals("rest", table.match("/app/rest/admin/users").getValue());
+        assertEquals("numbers", table.match("/app/rest/42").getValue());
+        assertEquals("ejb", table.match("/ejb").getValue());
+        assertEquals("ejb", table.match("/ejb/foo").getValue());
+        assertNull(table.match("/other"));
+        assertNull(table.match(""));
+    }
+
+    @Test
+    public void registrationOrderDoesNotMatter() {
+        final List<String> patterns = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            patterns.add("/app" + i + "/.*");
+            patterns.add("/app" + i + "/rest/.*");
+            patterns.add("/app" + i + "/ws/Service" + i);
+        }
+
+        final RoutingTable<String> reference = table(patterns);
+        for (int run = 0; run < 10; run++) {
+            Collections.shuffle(patterns);
+            final RoutingTable<String> shuffled = table(patterns);
+            for (int i = 0; i < 20; i++) {
+                for (final String path : new String[]{"/app" + i + "/rest/x", "/app" + i + "/ws/Service" + i, "/app" + i + "/index"}) {
+                    assertEquals(path, reference.match(path).getValue(), shuffled.match(path).getValue());
+                }
+            }
+        }
+    }
+
+    @Test
+    public void sameAsRegex() {
+        final String[] patterns = {"/.*", "/app/.*", "/app/.*\\.jsp", "/app/(a|b)/.*", "/app/c+/x", "/app/*", "/x/y?z", "/ws/Calc", "/v[0-9]/.*"};
+        final String[] paths = {"", "/", "/app", "/app/", "/app//", "/app/a/1", "/app/b/", "/app/d/", "/app/ccc/x", "/app/x.jsp",
+            "/x/z", "/x/yz", "/x/yyz", "/ws/Calc", "/ws/Calc2", "/v1/", "/vx/"};
+
+        for (final String pattern : patterns) {
+            final RoutingTable<String> table = RoutingTable.<String>empty().with(pattern, pattern);
+            for (final String path : paths) {
+                assertEquals(pattern + " on " + path, path.matches(pattern), table.match(path) != null);
+            }
+        }
+    }
+
+    @Test
+    public void invalidRegexIsMatchedAsIs() {
+        final RoutingTable<String> table = RoutingTable.<String>empty().with("/app/[broken", "broken");
+        assertEquals("broken", table.match("/app/[broken").getValue());
+        assertNull(table.match("/app/b"));
+    }
+
+    @Test
+    public void allMatchesInRegistrationOrder() {
+        final RoutingTable<String> table = RoutingTable.<String>empty()
+            .with("/app/secured/.*", "security")
+            .with("/.*", "encoding")
+            .with("/app/secured/page", "page")
+            .with("/other/.*", "other");
+
+        final List<String> values = new ArrayList<>();
+        for (final RoutingTable.Route<String> route : table.matches("/app/secured/page")) {
+            values.add(route.getValue());
+        }
+        assertEquals(Arrays.asList("security", "encoding", "page"), values);
+    }
+
+    @Test
+    public void copyOnWrite() {
+        final RoutingTable<String> empty = RoutingTable.empty();
+        final RoutingTable<String> one = empty.with("/a/.*", "a");
+        final RoutingTable<String> two = one.with("/a/.*", "b");
+
+        assertTrue(empty.isEmpty());
+        assertEquals("a", one.match("/a/x").getValue());
+        assertEquals("b", two.match("/a/x").getValue());
+        assertNull(two.without("/a/.*").match("/a/x"));
+        assertSame(two, two.without("/unknown"));
+    }
+
+    private static RoutingTable<String> table(final List<String> patterns) {
+        RoutingTable<String> table = RoutingTable.empty();
+        for (final String pattern : patterns) {
+            table = table.with(pattern, pattern);
+        }
+        return table;
+    }
+}
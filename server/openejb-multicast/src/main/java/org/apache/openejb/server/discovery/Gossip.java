@@ -0,0 +1,971 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.apache.openejb.server.discovery;
+
+import org.apache.openejb.monitoring.Event;
+import org.apache.openejb.monitoring.Managed;
+import org.apache.openejb.server.DiscoveryListener;
+import org.apache.openejb.util.DaemonThreadFactory;
+import org.apache.openejb.util.LogCategory;
+import org.apache.openejb.util.Logger;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.SocketTimeoutException;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * SWIM style membership over UDP.
+ *
+ * Each protocol period a node probes a single member (round-robin over a shuffled list), asks
+ * up to {@code indirectProbes} other members to probe it on its behalf when no ack arrives in
+ * time, and only then starts suspecting it.  Membership changes are never sent on their own,
+ * they are piggybacked on the ping/ack traffic, a bounded number of updates per datagram and a
+ * bounded number of times per update.  So the traffic a node emits per period does not grow
+ * with the size of the cluster, unlike the full mesh heartbeats of {@link MultipointServer}.
+ *
+ * The services a member registers travel with its alive/suspect updates so the usual
+ * {@link DiscoveryListener} events are derived from the membership itself.
+ *
+ * @version $Rev$ $Date$
+ */
+@Managed
+public class Gossip {
+
+    private static final Logger log = Logger.getInstance(LogCategory.OPENEJB_SERVER.createChild("discovery").createChild("gossip"), Gossip.class);
+
+    private static final short MAGIC = 0x5357;
+    private static final byte VERSION = 1;
+
+    /**
+     * Safe payload size for a single datagram, we never fragment an update across datagrams
+     */
+    private static final int MAX_PACKET = 60 * 1024;
+
+    private static final byte PING = 1;
+    private static final byte ACK = 2;
+    private static final byte PING_REQ = 3;
+    private static final byte SYNC = 4;
+
+    enum Status {
+        ALIVE, SUSPECT, DEAD
+    }
+
+    private final AtomicBoolean running = new AtomicBoolean(false);
+
+    private final String group;
+    private final String bindHost;
+    private final String discoveryHost;
+    private final List<InetSocketAddress> seeds;
+    private final long period;
+    private final long ackTimeout;
+    private final int indirectProbes;
+    private final int suspicionMultiplier;
+    private final int retransmitMultiplier;
+    private final int maxPiggyback;
+    private int port;
+
+    private String self;
+    private long incarnation;
+    private final Set<URI> services = new CopyOnWriteArraySet<URI>();
+
+    /**
+     * Guards every membership transition, reads on the hot receive path do not need it
+     */
+    private final Object lock = new Object();
+    private final Map<String, Member> members = new ConcurrentHashMap<String, Member>();
+    private final Map<String, Member> dead = new ConcurrentHashMap<String, Member>();
+    private final Map<String, Broadcast> broadcasts = new HashMap<String, Broadcast>();
+    private final Map<Long, Probe> probes = new ConcurrentHashMap<Long, Probe>();
+    private final AtomicLong sequence = new AtomicLong();
+    private final Random random = new Random();
+
+    // only touched by the scheduler thread
+    private final List<String> probeOrder = new ArrayList<String>();
+    private int probeIndex;
+
+    private volatile DiscoveryListener discoveryListener;
+
+    private DatagramSocket socket;
+    private ScheduledExecutorService scheduler;
+
+    /**
+     * Single thread so a listener always sees the add of a service before its remove
+     */
+    private final ExecutorService notifier = new ThreadPoolExecutor(0, 1, 30, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), new DaemonThreadFactory("Gossip Notifier"));
+
+    @Managed
+    private final Event probesSent = new Event();
+    @Managed
+    private final Event indirectProbesSent = new Event();
+    @Managed
+    private final Event suspicions = new Event();
+    @Managed
+    private final Event refutations = new Event();
+    @Managed
+    private final Event deaths = new Event();
+    @Managed
+    private final Event joins = new Event();
+
+    public Gossip(final String group, final String bindHost, final String discoveryHost, final int port, final List<InetSocketAddress> seeds,
+                  final long period, final long ackTimeout, final int indirectProbes, final int suspicionMultiplier,
+                  final int retransmitMultiplier, final int maxPiggyback) {
+        if (bindHost == null) {
+            throw new NullPointerException("host cannot be null");
+        }
+        if (ackTimeout >= period) {
+            throw new IllegalArgumentException("ack timeout (" + ackTimeout + "ms) must be shorter than the protocol period (" + period + "ms)");
+        }
+        this.group = group;
+        this.bindHost = bindHost;
+        this.discoveryHost = discoveryHost != null ? discoveryHost : bindHost;
+        this.port = port;
+        this.seeds = seeds;
+        this.period = period;
+        this.ackTimeout = ackTimeout;
+        this.indirectProbes = indirectProbes;
+        this.suspicionMultiplier = suspicionMultiplier;
+        this.retransmitMultiplier = retransmitMultiplier;
+        this.maxPiggyback = maxPiggyback;
+    }
+
+    public void setDiscoveryListener(final DiscoveryListener discoveryListener) {
+        this.discoveryListener = discoveryListener;
+    }
+
+    public Gossip start() throws IOException {
+        if (running.compareAndSet(false, true)) {
+            socket = new DatagramSocket(new InetSocketAddress(bindHost, port));
+            socket.setSoTimeout((int) period);
+            port = socket.getLocalPort();
+            self = discoveryHost + ":" + port;
+
+            synchronized (lock) {
+                members.clear();
+                dead.clear();
+                probes.clear();
+                synchronized (broadcasts) {
+                    broadcasts.clear();
+                }
+
+                // a restarted node must win over the tombstones the cluster may still hold for it
+                incarnation = System.currentTimeMillis();
+                enqueue(selfUpdate());
+            }
+
+            scheduler = Executors.newSingleThreadScheduledExecutor(new DaemonThreadFactory("Gossip", self));
+
+            final Thread receiver = new Thread(new Receiver(), "Gossip Receiver " + self);
+            receiver.setDaemon(true);
+            receiver.start();
+
+            scheduler.scheduleAtFixedRate(new Runnable() {
+                @Override
+                public void run() {
+                    tick();
+                }
+            }, 0, period, TimeUnit.MILLISECONDS);
+
+            log.info(String.format("Gossip(bindHost=%s, discoveryHost=%s, port=%s, group=%s, seeds=%s, period=%s, ackTimeout=%s, indirectProbes=%s)",
+                bindHost, discoveryHost, port, group, seeds, period, ackTimeout, indirectProbes));
+        }
+        return this;
+    }
+
+    /**
+     * Leaves the cluster gracefully, the members we tell spread our death certificate
+     */
+    public void stop() {
+        if (running.get()) {
+            leave();
+        }
+        halt();
+    }
+
+    /**
+     * Stops without telling anyone, the cluster has to find out by itself
+     */
+    void halt() {
+        if (running.compareAndSet(true, false)) {
+            scheduler.shutdownNow();
+            socket.close();
+        }
+    }
+
+    public int getPort() {
+        return port;
+    }
+
+    @Managed
+    public String getSelf() {
+        return self;
+    }
+
+    @Managed
+    public long getIncarnation() {
+        synchronized (lock) {
+            return incarnation;
+        }
+    }
+
+    @Managed
+    public List<String> getMembers() {
+        final List<String> list = new ArrayList<String>();
+        synchronized (lock) {
+            for (final Member member : members.values()) {
+                list.add(member.id + " " + member.status);
+            }
+        }
+        Collections.sort(list);
+        return list;
+    }
+
+    @Managed
+    public int getMemberCount() {
+        return members.size();
+    }
+
+    @Managed
+    public int getPendingBroadcasts() {
+        synchronized (broadcasts) {
+            return broadcasts.size();
+        }
+    }
+
+    public Event getProbesSent() {
+        return probesSent;
+    }
+
+    public Event getIndirectProbesSent() {
+        return indirectProbesSent;
+    }
+
+    public Event getSuspicions() {
+        return suspicions;
+    }
+
+    public Event getDeaths() {
+        return deaths;
+    }
+
+    public void registerService(final URI uri) {
+        if (services.add(uri)) {
+            fireServiceAddedEvent(uri);
+            advertise();
+        }
+    }
+
+    public void unregisterService(final URI uri) {
+        if (services.remove(uri)) {
+            fireServiceRemovedEvent(uri);
+            advertise();
+        }
+    }
+
+    /**
+     * Someone could not talk to the service, start suspecting the member that advertises it.
+     * The member still gets a chance to refute before it is declared dead.
+     */
+    public void reportFailed(final URI uri) {
+        synchronized (lock) {
+            for (final Member member : members.values()) {
+                if (member.services.contains(uri)) {
+                    suspect(member);
+                    return;
+                }
+            }
+        }
+    }
+
+    private void advertise() {
+        synchronized (lock) {
+            incarnation++;
+            enqueue(selfUpdate());
+        }
+    }
+
+    private Update selfUpdate() {
+        return new Update(self, Status.ALIVE, incarnation, new LinkedHashSet<URI>(services));
+    }
+
+    // ---------------------------------------------------------------------
+    // Failure detection
+
+    private void tick() {
+        try {
+            expireSuspects();
+
+            final Member target = nextTarget();
+            if (target == null) {
+                join();
+            } else {
+                probe(target);
+            }
+        } catch (final Throwable e) {
+            // a scheduled task that throws is never run again
+            if (running.get()) {
+                log.error("Gossip protocol period failed", e);
+            }
+        }
+    }
+
+    private void join() {
+        for (final InetSocketAddress seed : seeds) {
+            send(seed, PING, 0, "");
+        }
+    }
+
+    private Member nextTarget() {
+        for (int attempts = members.size() + 1; attempts > 0; attempts--) {
+            if (probeIndex >= probeOrder.size()) {
+                probeOrder.clear();
+                probeOrder.addAll(members.keySet());
+                Collections.shuffle(probeOrder, random);
+                probeIndex = 0;
+
+                if (probeOrder.isEmpty()) {
+                    return null;
+                }
+            }
+
+            final Member member = members.get(probeOrder.get(probeIndex++));
+            if (member != null) {
+                return member;
+            }
+        }
+        return null;
+    }
+
+    private void probe(final Member target) {
+        final long seq = sequence.incrementAndGet();
+        final Probe probe = new Probe(target.id, null, 0);
+        probes.put(seq, probe);
+
+        probesSent.record();
+        send(target.address, PING, seq, target.id);
+
+        scheduler.schedule(new Runnable() {
+            @Override
+            public void run() {
+                if (!probe.acked) {
+                    probeIndirectly(seq, target);
+                }
+            }
+        }, ackTimeout, TimeUnit.MILLISECONDS);
+
+        scheduler.schedule(new Runnable() {
+            @Override
+            public void run() {
+                probes.remove(seq);
+                if (!probe.acked) {
+                    synchronized (lock) {
+                        suspect(target);
+                    }
+                }
+            }
+        }, period, TimeUnit.MILLISECONDS);
+    }
+
+    private void probeIndirectly(final long seq, final Member target) {
+        final List<Member> helpers = new ArrayList<Member>(members.values());
+        helpers.remove(target);
+        Collections.shuffle(helpers, random);
+
+        for (final Member helper : helpers.subList(0, Math.min(indirectProbes, helpers.size()))) {
+            indirectProbesSent.record();
+            send(helper.address, PING_REQ, seq, target.id);
+        }
+    }
+
+    private void suspect(final Member member) {
+        if (members.get(member.id) != member || member.status != Status.ALIVE) {
+            return;
+        }
+
+        if (log.isDebugEnabled()) {
+            log.debug("Suspecting " + member);
+        }
+
+        suspicions.record();
+        member.status = Status.SUSPECT;
+        member.changed = System.currentTimeMillis();
+        enqueue(new Update(member.id, Status.SUSPECT, member.incarnation, member.services));
+    }
+
+    private void expireSuspects() {
+        final long now = System.currentTimeMillis();
+
+        synchronized (lock) {
+            final long timeout = suspicionMultiplier * log2(members.size()) * period;
+
+            for (final Member member : new ArrayList<Member>(members.values())) {
+                if (member.status == Status.SUSPECT && now - member.changed > timeout) {
+                    bury(member, member.incarnation);
+                    enqueue(new Update(member.id, Status.DEAD, member.incarnation, Collections.<URI>emptySet()));
+                }
+            }
+
+            // tombstones only have to outlive the gossip about the death
+            for (final Iterator<Member> it = dead.values().iterator(); it.hasNext(); ) {
+                if (now - it.next().changed > 10 * timeout) {
+                    it.remove();
+                }
+            }
+        }
+    }
+
+    private void leave() {
+        final List<Update> updates;
+        final List<Member> targets = new ArrayList<Member>(members.values());
+        synchronized (lock) {
+            updates = Collections.singletonList(new Update(self, Status.DEAD, incarnation, Collections.<URI>emptySet()));
+        }
+
+        Collections.shuffle(targets, random);
+        for (final Member member : targets.subList(0, Math.min(indirectProbes + 1, targets.size()))) {
+            send(member.address, SYNC, 0, "", updates);
+        }
+    }
+
+    // ---------------------------------------------------------------------
+    // Membership
+
+    private void apply(final Update update) {
+        synchronized (lock) {
+            if (self.equals(update.id)) {
+                refute(update);
+                return;
+            }
+
+            final Member member = members.get(update.id);
+
+            if (update.status == Status.DEAD) {
+                if (member != null && update.incarnation >= member.incarnation) {
+                    bury(member, update.incarnation);
+                    enqueue(update);
+                }
+                return;
+            }
+
+            if (member == null) {
+                final Member tombstone = dead.get(update.id);
+                if (tombstone != null && tombstone.incarnation >= update.incarnation) {
+                    return;
+                }
+                add(update);
+                return;
+            }
+
+            if (update.status == Status.ALIVE && update.incarnation > member.incarnation) {
+
+                member.status = Status.ALIVE;
+                member.incarnation = update.incarnation;
+                setServices(member, update.services);
+                enqueue(update);
+
+            } else if (update.status == Status.SUSPECT && (update.incarnation > member.incarnation
+                || update.incarnation == member.incarnation && member.status == Status.ALIVE)) {
+
+                member.status = Status.SUSPECT;
+                member.incarnation = update.incarnation;
+                member.changed = System.currentTimeMillis();
+                enqueue(update);
+            }
+        }
+    }
+
+    private void refute(final Update update) {
+        if (update.status != Status.ALIVE && update.incarnation >= incarnation && running.get()) {
+            if (log.isDebugEnabled()) {
+                log.debug("Refuting " + update);
+            }
+            refutations.record();
+            incarnation = update.incarnation + 1;
+            enqueue(selfUpdate());
+        }
+    }
+
+    private void add(final Update update) {
+        final InetSocketAddress address;
+        try {
+            address = address(update.id);
+        } catch (final IllegalArgumentException e) {
+            log.debug("Ignoring member with an invalid address " + update.id);
+            return;
+        }
+
+        final Member member = new Member(update.id, address);
+        member.status = update.status;
+        member.incarnation = update.incarnation;
+        member.changed = System.currentTimeMillis();
+        dead.remove(update.id);
+        members.put(member.id, member);
+        joins.record();
+
+        if (log.isDebugEnabled()) {
+            log.debug("Joined " + member);
+        }
+
+        setServices(member, update.services);
+        enqueue(update);
+    }
+
+    private void bury(final Member member, final long incarnation) {
+        if (log.isDebugEnabled()) {
+            log.debug("Dead " + member);
+        }
+
+        deaths.record();
+        members.remove(member.id);
+        member.status = Status.DEAD;
+        member.incarnation = incarnation;
+        member.changed = System.currentTimeMillis();
+        dead.put(member.id, member);
+        setServices(member, Collections.<URI>emptySet());
+    }
+
+    private void setServices(final Member member, final Set<URI> services) {
+        for (final URI uri : member.services) {
+            if (!services.contains(uri)) {
+                fireServiceRemovedEvent(uri);
+            }
+        }
+        for (final URI uri : services) {
+            if (!member.services.contains(uri)) {
+                fireServiceAddedEvent(uri);
+            }
+        }
+        member.services = services;
+    }
+
+    // ---------------------------------------------------------------------
+    // Dissemination
+
+    private void enqueue(final Update update) {
+        synchronized (broadcasts) {
+            broadcasts.put(update.id, new Broadcast(update));
+        }
+    }
+
+    /**
+     * Appends the least transmitted updates that fit, each update is retransmitted
+     * {@code retransmitMultiplier * log(n)} times which is enough for it to reach
+     * every member with high probability.
+     */
+    private void piggyback(final DataOutputStream out, final int budget) throws IOException {
+        final ByteArrayOutputStream section = new ByteArrayOutputStream();
+        final DataOutputStream data = new DataOutputStream(section);
+        int count = 0;
+
+        synchronized (broadcasts) {
+            if (!broadcasts.isEmpty()) {
+                final List<Broadcast> candidates = new ArrayList<Broadcast>(broadcasts.values());
+                Collections.sort(candidates, Broadcast.LEAST_TRANSMITTED);
+
+                final int limit = retransmitMultiplier * log2(members.size());
+
+                for (final Broadcast broadcast : candidates) {
+                    if (count == maxPiggyback) {
+                        break;
+                    }
+
+                    final int mark = data.size();
+                    broadcast.update.write(data);
+                    if (data.size() > budget) {
+                        // does not fit, leave it for the next message
+                        final byte[] written = section.toByteArray();
+                        section.reset();
+                        section.write(written, 0, mark);
+                        break;
+                    }
+
+                    count++;
+                    if (++broadcast.transmits >= limit) {
+                        broadcasts.remove(broadcast.update.id);
+                    }
+                }
+            }
+        }
+
+        out.writeShort(count);
+        section.writeTo(out);
+    }
+
+    // ---------------------------------------------------------------------
+    // Wire
+
+    private void send(final SocketAddress address, final byte type, final long seq, final String target) {
+        send(address, type, seq, target, null);
+    }
+
+    private void send(final SocketAddress address, final byte type, final long seq, final String target, final List<Update> updates) {
+        try {
+            final ByteArrayOutputStream bytes = new ByteArrayOutputStream(512);
+            final DataOutputStream out = new DataOutputStream(bytes);
+            out.writeShort(MAGIC);
+            out.writeByte(VERSION);
+            out.writeByte(type);
+            out.writeUTF(group);
+            out.writeUTF(self);
+            out.writeLong(seq);
+            out.writeUTF(target);
+
+            if (updates == null) {
+                piggyback(out, MAX_PACKET - out.size());
+            } else {
+                out.writeShort(updates.size());
+                for (final Update update : updates) {
+                    update.write(out);
+                }
+            }
+            out.flush();
+
+            final byte[] data = bytes.toByteArray();
+            socket.send(new DatagramPacket(data, data.length, address));
+        } catch (final IOException e) {
+            if (running.get()) {
+                log.debug("Failed to send gossip to " + address + ": " + e);
+            }
+        }
+    }
+
+    /**
+     * Gives a member we have never talked to our complete view, including its own
+     * tombstone so it can refute a death it did not know about.
+     */
+    private void sync(final SocketAddress address, final String to) {
+        final List<Update> updates = new ArrayList<Update>();
+        synchronized (lock) {
+            updates.add(selfUpdate());
+            for (final Member member : members.values()) {
+                if (!member.id.equals(to)) {
+                    updates.add(new Update(member.id, member.status, member.incarnation, member.services));
+                }
+            }
+            final Member tombstone = dead.get(to);
+            if (tombstone != null) {
+                updates.add(new Update(to, Status.DEAD, tombstone.incarnation, Collections.<URI>emptySet()));
+            }
+        }
+
+        // keep each datagram well under the size limit, member entries are small
+        final int chunk = 32;
+        for (int i = 0; i < updates.size(); i += chunk) {
+            send(address, SYNC, 0, "", updates.subList(i, Math.min(i + chunk, updates.size())));
+        }
+    }
+
+    private void receive(final DatagramPacket packet) throws IOException {
+        final DataInputStream in = new DataInputStream(new ByteArrayInputStream(packet.getData(), packet.getOffset(), packet.getLength()));
+
+        if (in.readShort() != MAGIC || in.readByte() != VERSION) {
+            return;
+        }
+
+        final byte type = in.readByte();
+        final String group = in.readUTF();
+        final String from = in.readUTF();
+        final long seq = in.readLong();
+        final String target = in.readUTF();
+
+        if (!this.group.equals(group) || self.equals(from)) {
+            return;
+        }
+
+        final boolean known = members.containsKey(from);
+
+        final int count = in.readUnsignedShort();
+        for (int i = 0; i < count; i++) {
+            apply(Update.read(in));
+        }
+
+        if (!known && type != SYNC) {
+            sync(packet.getSocketAddress(), from);
+        }
+
+        switch (type) {
+            case PING:
+                send(packet.getSocketAddress(), ACK, seq, self);
+                break;
+            case PING_REQ:
+                relay(packet.getSocketAddress(), seq, target);
+                break;
+            case ACK:
+                acknowledge(seq, target);
+                break;
+            default:
+                break;
+        }
+    }
+
+    private void relay(final SocketAddress requester, final long seq, final String target) {
+        final Member member = members.get(target);
+        if (member == null) {
+            return;
+        }
+
+        final long relaySeq = sequence.incrementAndGet();
+        probes.put(relaySeq, new Probe(target, requester, seq));
+        send(member.address, PING, relaySeq, target);
+
+        scheduler.schedule(new Runnable() {
+            @Override
+            public void run() {
+                probes.remove(relaySeq);
+            }
+        }, period, TimeUnit.MILLISECONDS);
+    }
+
+    private void acknowledge(final long seq, final String target) {
+        final Probe probe = probes.get(seq);
+        if (probe == null || !probe.target.equals(target)) {
+            return;
+        }
+
+        if (probe.requester != null) {
+            probes.remove(seq);
+            send(probe.requester, ACK, probe.requesterSeq, target);
+        } else {
+            probe.acked = true;
+        }
+    }
+
+    // ---------------------------------------------------------------------
+    // Events
+
+    private void fireServiceRemovedEvent(final URI uri) {
+        if (log.isInfoEnabled()) {
+            log.info(String.format("Removed Service{uri=%s}", uri));
+        }
+
+        final DiscoveryListener discoveryListener = this.discoveryListener;
+        if (discoveryListener != null) {
+            notifier.execute(new Runnable() {
+                @Override
+                public void run() {
+                    discoveryListener.serviceRemoved(uri);
+                }
+            });
+        }
+    }
+
+    private void fireServiceAddedEvent(final URI uri) {
+        if (log.isInfoEnabled()) {
+            log.info(String.format("Added Service{uri=%s}", uri));
+        }
+
+        final DiscoveryListener discoveryListener = this.discoveryListener;
+        if (discoveryListener != null) {
+            notifier.execute(new Runnable() {
+                @Override
+                public void run() {
+                    discoveryListener.serviceAdded(uri);
+                }
+            });
+        }
+    }
+
+    private static int log2(final int members) {
+        // ceil(log2(n + 1)), at least 1
+        return Math.max(1, 32 - Integer.numberOfLeadingZeros(members));
+    }
+
+    static InetSocketAddress address(final String hostAndPort) {
+        final int colon = hostAndPort.lastIndexOf(':');
+        if (colon <= 0) {
+            throw new IllegalArgumentException("host:port expected " + hostAndPort);
+        }
+        try {
+            return new InetSocketAddress(hostAndPort.substring(0, colon), Integer.parseInt(hostAndPort.substring(colon + 1)));
+        } catch (final NumberFormatException e) {
+            throw new IllegalArgumentException("host:port expected " + hostAndPort, e);
+        }
+    }
+
+    class Receiver implements Runnable {
+
+        @Override
+        public void run() {
+            final byte[] buf = new byte[64 * 1024];
+            final DatagramPacket packet = new DatagramPacket(buf, buf.length);
+            while (running.get()) {
+                try {
+                    packet.setLength(buf.length);
+                    socket.receive(packet);
+                    receive(packet);
+                } catch (final SocketTimeoutException e) {
+                    // ignore
+                } catch (final IOException e) {
+                    if (running.get()) {
+                        log.error("Failed to process gossip packet: " + e);
+                    }
+                } catch (final RuntimeException e) {
+                    if (running.get()) {
+                        log.error("Failed to process gossip packet", e);
+                    }
+                }
+            }
+        }
+    }
+
+    private static class Member {
+
+        private final String id;
+        private final InetSocketAddress address;
+
+        // guarded by Gossip.lock
+        private Status status;
+        private long incarnation;
+        private long changed;
+        private Set<URI> services = Collections.emptySet();
+
+        private Member(final String id, final InetSocketAddress address) {
+            this.id = id;
+            this.address = address;
+        }
+
+        @Override
+        public String toString() {
+            return "Member{" +
+                "id='" + id + '\'' +
+                ", status=" + status +
+                ", incarnation=" + incarnation +
+                ", services=" + services +
+                '}';
+        }
+    }
+
+    private static class Update {
+
+        private final String id;
+        private final Status status;
+        private final long incarnation;
+        private final Set<URI> services;
+
+        private Update(final String id, final Status status, final long incarnation, final Set<URI> services) {
+            this.id = id;
+            this.status = status;
+            this.incarnation = incarnation;
+            this.services = services;
+        }
+
+        private void write(final DataOutputStream out) throws IOException {
+            out.writeUTF(id);
+            out.writeByte(status.ordinal());
+            out.writeLong(incarnation);
+            out.writeShort(services.size());
+            for (final URI uri : services) {
+                out.writeUTF(uri.toString());
+            }
+        }
+
+        private static Update read(final DataInputStream in) throws IOException {
+            final String id = in.readUTF();
+            final Status status = Status.values()[in.readByte()];
+            final long incarnation = in.readLong();
+            final int count = in.readUnsignedShort();
+
+            final Set<URI> services = new HashSet<URI>(count);
+            for (int i = 0; i < count; i++) {
+                final String uri = in.readUTF();
+                try {
+                    services.add(new URI(uri));
+                } catch (final Exception e) {
+                    // don't continuously log this
+                }
+            }
+            return new Update(id, status, incarnation, services);
+        }
+
+        @Override
+        public String toString() {
+            return "Update{" +
+                "id='" + id + '\'' +
+                ", status=" + status +
+                ", incarnation=" + incarnation +
+                '}';
+        }
+    }
+
+    private static class Broadcast {
+
+        private static final Comparator<Broadcast> LEAST_TRANSMITTED = new Comparator<Broadcast>() {
+            @Override
+            public int compare(final Broadcast a, final Broadcast b) {
+                return a.transmits - b.transmits;
+            }
+        };
+
+        private final Update update;
+        private int transmits;
+
+        private Broadcast(final Update update) {
+            this.update = update;
+        }
+    }
+
+    private static class Probe {
+
+        private final String target;
+        private final SocketAddress requester;
+        private final long requesterSeq;
+        private volatile boolean acked;
+
+        private Probe(final String target, final SocketAddress requester, final long requesterSeq) {
+            this.target = target;
+            this.requester = requester;
+            this.requesterSeq = requesterSeq;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "Gossip{" +
+            "self='" + self + '\'' +
+            ", group='" + group + '\'' +
+            ", members=" + members.size() +
+            '}';
+    }
+}
@@ -0,0 +1,229 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.apache.openejb.server.discovery;
+
+import org.apache.openejb.loader.Options;
+import org.apache.openejb.monitoring.Managed;
+import org.apache.openejb.server.DiscoveryAgent;
+import org.apache.openejb.server.DiscoveryListener;
+import org.apache.openejb.server.SelfManaging;
+import org.apache.openejb.server.ServerService;
+import org.apache.openejb.server.ServiceException;
+import org.apache.openejb.util.LogCategory;
+import org.apache.openejb.util.Logger;
+import org.apache.openejb.util.OptionsLog;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.StringTokenizer;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Discovery agent for large clusters, see {@link Gossip}.
+ *
+ * Nodes only need to know one or more seed nodes, listed as {@code host:port} in
+ * {@code initialServers}, to find the rest of the cluster.
+ *
+ * @version $Rev$ $Date$
+ */
+public class GossipDiscoveryAgent implements DiscoveryAgent, ServerService, SelfManaging {
+
+    private static final Logger log = Logger.getInstance(LogCategory.OPENEJB_SERVER.createChild("discovery").createChild("gossip"), GossipDiscoveryAgent.class);
+
+    private final AtomicBoolean running = new AtomicBoolean(false);
+
+    @Managed
+    private String host = "127.0.0.1";
+
+    @Managed
+    private int port = 4213;
+
+    private String initialServers = "";
+
+    @Managed(append = false)
+    private Gossip gossip;
+
+    @Override
+    public void init(final Properties props) {
+
+        final Options options = new Options(props);
+        options.setLogger(new OptionsLog(log));
+
+        host = props.getProperty("bind", host);
+        port = options.get("port", port);
+        initialServers = options.get("initialServers", initialServers);
+
+        final List<InetSocketAddress> seeds = new ArrayList<InetSocketAddress>();
+        final StringTokenizer st = new StringTokenizer(initialServers, ",");
+        while (st.hasMoreTokens()) {
+            String string = st.nextToken().trim();
+            if (string.contains("://")) {
+                final URI uri = URI.create(string);
+                string = uri.getHost() + ":" + uri.getPort();
+            }
+            seeds.add(Gossip.address(string));
+        }
+
+        gossip = new Gossip(
+            props.getProperty("group", "default"),
+            host,
+            options.get("discoveryHost", host),
+            port,
+            seeds,
+            options.get("protocol_period", 1000L),
+            options.get("ack_timeout", 300L),
+            options.get("indirect_probes", 3),
+            options.get("suspicion_multiplier", 4),
+            options.get("retransmit_multiplier", 4),
+            options.get("max_piggyback", 8));
+    }
+
+    @Override
+    public String getIP() {
+        return host;
+    }
+
+    @Override
+    public String getName() {
+        return "gossip";
+    }
+
+    @Override
+    public int getPort() {
+        return port;
+    }
+
+    public String getInitialServers() {
+        return initialServers;
+    }
+
+    @Override
+    public void setDiscoveryListener(final DiscoveryListener listener) {
+        gossip.setDiscoveryListener(listener);
+    }
+
+    @Override
+    public void registerService(final URI serviceUri) throws IOException {
+        gossip.registerService(serviceUri);
+    }
+
+    @Override
+    public void unregisterService(final URI serviceUri) throws IOException {
+        gossip.unregisterService(serviceUri);
+    }
+
+    @Override
+    public void reportFailed(final URI serviceUri) {
+        gossip.reportFailed(serviceUri);
+    }
+
+    /**
+     * start the discovery agent
+     *
+     * @throws ServiceException On error
+     */
+    @Override
+    @Managed
+    public void start() throws ServiceException {
+        try {
+            if (running.compareAndSet(false, true)) {
+                log.info("GossipDiscoveryAgent Starting");
+                gossip.start();
+                port = gossip.getPort();
+                log.info("GossipDiscoveryAgent Started");
+            }
+        } catch (Exception e) {
+            running.set(false);
+            throw new ServiceException(port + "", e);
+        }
+    }
+
+    /**
+     * leave the cluster
+     *
+     * @throws ServiceException On error
+     */
+    @Override
+    @Managed
+    public void stop() throws ServiceException {
+        if (running.compareAndSet(true, false)) {
+            log.info("GossipDiscoveryAgent Stopping");
+            gossip.stop();
+        }
+    }
+
+    /**
+     * Simulates a crash, the other nodes are not told we are going away
+     */
+    void halt() {
+        if (running.compareAndSet(true, false)) {
+            gossip.halt();
+        }
+    }
+
+    @Override
+    public void service(final InputStream in, final OutputStream out) throws ServiceException, IOException {
+    }
+
+    @Override
+    public void service(final Socket socket) throws ServiceException, IOException {
+    }
+
+    public String getHost() {
+        return host;
+    }
+
+    public void setHost(final String host) {
+        this.host = host;
+    }
+
+    public Gossip getGossip() {
+        return gossip;
+    }
+
+    @Managed
+    public List<String> getMembers() {
+        return gossip.getMembers();
+    }
+
+    @Managed
+    public long getProbes() {
+        return gossip.getProbesSent().get();
+    }
+
+    @Managed
+    public long getIndirectProbes() {
+        return gossip.getIndirectProbesSent().get();
+    }
+
+    @Managed
+    public long getSuspicions() {
+        return gossip.getSuspicions().get();
+    }
+
+    @Managed
+    public long getDeaths() {
+        return gossip.getDeaths().get();
+    }
+}
@@ -0,0 +1,178 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.apache.openejb.server.discovery;
+
+import junit.framework.TestCase;
+import org.apache.openejb.server.DiscoveryListener;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @version $Rev$ $Date$
+ */
+public class GossipDiscoveryAgentTest extends TestCase {
+
+    private static final int NODES = 24;
+
+    private final List<Node> nodes = new ArrayList<Node>();
+
+    @Override
+    protected void tearDown() throws Exception {
+        for (final Node node : nodes) {
+            node.getAgent().stop();
+        }
+    }
+
+    public void test() throws Exception {
+
+        final Node root = new Node();
+        nodes.add(root);
+
+        for (int i = 1; i < NODES; i++) {
+            nodes.add(new Node(root));
+        }
+
+        final Set<URI> all = new CopyOnWriteArraySet<URI>();
+        for (final Node node : nodes) {
+            all.add(node.getService());
+        }
+
+        // Every node, not only the root, should see every service
+        for (final Node node : nodes) {
+            assertTrue("join " + node + " sees " + node.getListener().services.size(), node.await(all, 30));
+        }
+
+        // Graceful leave
+        final Node leaving = nodes.remove(NODES - 1);
+        leaving.getAgent().stop();
+        all.remove(leaving.getService());
+
+        for (final Node node : nodes) {
+            assertTrue("leave " + node, node.await(all, 30));
+        }
+
+        // Crash, only the failure detector can notice
+        final Node crashed = nodes.remove(NODES / 2);
+        crashed.getAgent().halt();
+        all.remove(crashed.getService());
+
+        for (final Node node : nodes) {
+            assertTrue("crash " + node, node.await(all, 60));
+        }
+
+        for (final Node node : nodes) {
+            assertEquals(NODES - 3, node.getAgent().getGossip().getMemberCount());
+        }
+    }
+
+    public void testUnregister() throws Exception {
+        final Node root = new Node();
+        nodes.add(root);
+        final Node other = new Node(root);
+        nodes.add(other);
+
+        final Set<URI> expected = new CopyOnWriteArraySet<URI>();
+        expected.add(root.getService());
+        expected.add(other.getService());
+        assertTrue(root.await(expected, 30));
+
+        final URI extra = new URI("extra://localhost:1234");
+        other.getAgent().registerService(extra);
+        expected.add(extra);
+        assertTrue(root.await(expected, 30));
+
+        other.getAgent().unregisterService(extra);
+        expected.remove(extra);
+        assertTrue(root.await(expected, 30));
+    }
+
+    public static class Node {
+
+        private final GossipDiscoveryAgent agent = new GossipDiscoveryAgent();
+        private final Listener listener = new Listener();
+        private final URI service;
+
+        public Node(final Node... seeds) throws Exception {
+            final Properties props = new Properties();
+            props.put("port", "0");
+            props.put("protocol_period", "100");
+            props.put("ack_timeout", "40");
+
+            final StringBuilder initialServers = new StringBuilder();
+            for (final Node seed : seeds) {
+                initialServers.append("127.0.0.1:").append(seed.getAgent().getPort()).append(',');
+            }
+            props.put("initialServers", initialServers.toString());
+
+            agent.init(props);
+            agent.setDiscoveryListener(listener);
+            agent.start();
+
+            service = new URI("green://localhost:" + agent.getPort());
+            agent.registerService(service);
+        }
+
+        public GossipDiscoveryAgent getAgent() {
+            return agent;
+        }
+
+        public Listener getListener() {
+            return listener;
+        }
+
+        public URI getService() {
+            return service;
+        }
+
+        public boolean await(final Set<URI> expected, final int seconds) throws InterruptedException {
+            final long timeout = System.nanoTime() + TimeUnit.SECONDS.toNanos(seconds);
+            while (System.nanoTime() < timeout) {
+                if (expected.equals(listener.services)) {
+                    return true;
+                }
+                Thread.sleep(50);
+            }
+            return false;
+        }
+
+        @Override
+        public String toString() {
+            return service.toString();
+        }
+    }
+
+    private static class Listener implements DiscoveryListener {
+
+        private final Set<URI> services = new CopyOnWriteArraySet<URI>();
+
+        @Override
+        public void serviceAdded(final URI service) {
+            services.add(service);
+        }
+
+        @Override
+        public void serviceRemoved(final URI service) {
+            services.remove(service);
+        }
+    }
+}
@@ -38,6 +38,15 @@ public class CountingInputStream extends InputStream {
         return r;
     }
 
+    @Override
+    public int read(final byte[] b, final int off, final int len) throws IOException {
+        final int r = delegate.read(b, off, len);
+        if (r > 0) {
+            count += r;
+        }
+        return r;
+    }
+
     @Override
     public int available() throws IOException {
         return delegate.available();
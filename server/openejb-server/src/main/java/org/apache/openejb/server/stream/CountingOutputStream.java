@@ -36,14 +36,13 @@ public class CountingOutputStream extends FilterOutputStream {
 
     @Override
     public void write(final byte[] b) throws IOException {
-        count += b.length;
-        super.write(b);
+        write(b, 0, b.length);
     }
 
     @Override
     public void write(final byte[] b, final int off, final int len) throws IOException {
         count += len;
-        super.write(b, off, len);
+        out.write(b, off, len); // FilterOutputStream would go through write(int) byte per byte
     }
 
     public int getCount() {
@@ -27,6 +27,7 @@ import org.apache.catalina.core.StandardEngine;
 import org.apache.catalina.core.StandardHost;
 import org.apache.catalina.core.StandardServer;
 import org.apache.openejb.loader.SystemInstance;
+import org.apache.tomee.catalina.cluster.ClusterObserver;
 import org.apache.tomee.catalina.cluster.TomEEClusterListener;
 import org.apache.tomee.catalina.remote.TomEERemoteWebapp;
 import org.apache.tomee.loader.TomcatHelper;
@@ -159,6 +160,10 @@ public class GlobalListenerSupport implements PropertyChangeListener, LifecycleL
                 if (tomEEClusterListener != null) {
                     tomEEClusterListener.stop();
                 }
+                final ClusterObserver clusterObserver = SystemInstance.get().getComponent(ClusterObserver.class);
+                if (clusterObserver != null) {
+                    clusterObserver.stop();
+                }
             }
 
             if (Lifecycle.AFTER_STOP_EVENT.equals(type)) {
@@ -317,7 +317,9 @@ public class TomcatWebAppBuilder implements WebAppBuilder, ContextListener, Pare
             }
         }
 
-        SystemInstance.get().addObserver(new ClusterObserver(clusters));
+        final ClusterObserver clusterObserver = new ClusterObserver(clusters);
+        SystemInstance.get().setComponent(ClusterObserver.class, clusterObserver);
+        SystemInstance.get().addObserver(clusterObserver);
 
         configurationFactory = new ConfigurationFactory();
         deploymentLoader = new DeploymentLoader();
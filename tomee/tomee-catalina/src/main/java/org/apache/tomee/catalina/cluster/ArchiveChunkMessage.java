@@ -0,0 +1,62 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.tomee.catalina.cluster;
+
+import org.apache.catalina.ha.ClusterMessageBase;
+
+import java.util.zip.CRC32;
+
+public class ArchiveChunkMessage extends ClusterMessageBase {
+    private String hash;
+    private int index;
+    private byte[] data;
+    private long checksum;
+
+    public ArchiveChunkMessage(final String hash, final int index, final byte[] data) {
+        this.hash = hash;
+        this.index = index;
+        this.data = data;
+        this.checksum = checksum(data);
+    }
+
+    public String getHash() {
+        return hash;
+    }
+
+    public int getIndex() {
+        return index;
+    }
+
+    public byte[] getData() {
+        return data;
+    }
+
+    public boolean isValid() {
+        return data != null && checksum(data) == checksum;
+    }
+
+    private static long checksum(final byte[] data) {
+        final CRC32 crc = new CRC32();
+        crc.update(data, 0, data.length);
+        return crc.getValue();
+    }
+
+    @Override
+    public String getUniqueId() {
+        return "ARCHIVE-CHUNK-" + hash + "-" + index;
+    }
+}
@@ -0,0 +1,301 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.tomee.catalina.cluster;
+
+import org.apache.catalina.ha.CatalinaCluster;
+import org.apache.catalina.tribes.Member;
+import org.apache.openejb.loader.IO;
+import org.apache.openejb.loader.Options;
+import org.apache.openejb.loader.SystemInstance;
+import org.apache.openejb.util.DaemonThreadFactory;
+import org.apache.openejb.util.Duration;
+import org.apache.openejb.util.LogCategory;
+import org.apache.openejb.util.Logger;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Sends an archive to the other members of the clusters.
+ *
+ * The archive is announced with its SHA-256, each member answers with the chunks it misses
+ * (none if it already has this content, only the ones not received yet if a previous transfer
+ * was interrupted) and they are streamed from the file to this member only. Once all members
+ * of a cluster have the complete archive a commit message deploys it everywhere. If it doesn't
+ * happen before tomee.cluster.deploy.timeout nothing is deployed but receivers keep what they
+ * got for the next attempt.
+ *
+ * No thread waits for the members, their answers drive the distribution and a timer expires it.
+ */
+public class ArchiveDistributor {
+    public static final String TOMEE_CLUSTER_DEPLOY_CHUNK_SIZE = "tomee.cluster.deploy.chunk-size";
+    public static final String TOMEE_CLUSTER_DEPLOY_TIMEOUT = "tomee.cluster.deploy.timeout";
+
+    private static final Logger LOGGER = Logger.getInstance(LogCategory.OPENEJB, ArchiveDistributor.class);
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    private final ConcurrentMap<String, Distribution> distributions = new ConcurrentHashMap<>();
+    private final ExecutorService executor = Executors.newCachedThreadPool(new DaemonThreadFactory("TomEE-Cluster-Archive-"));
+    private final ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor(new DaemonThreadFactory("TomEE-Cluster-Archive-Timeout-"));
+    private final int chunkSize;
+    private final long timeout;
+
+    public ArchiveDistributor() {
+        final Options options = SystemInstance.get().getOptions();
+        chunkSize = options.get(TOMEE_CLUSTER_DEPLOY_CHUNK_SIZE, 1024 * 1024);
+        timeout = new Duration(options.get(TOMEE_CLUSTER_DEPLOY_TIMEOUT, "10 minutes")).getTime(TimeUnit.MILLISECONDS);
+        if (chunkSize <= 0) {
+            throw new IllegalArgumentException(TOMEE_CLUSTER_DEPLOY_CHUNK_SIZE + " should be positive: " + chunkSize);
+        }
+    }
+
+    public void distribute(final Iterable<CatalinaCluster> clusters, final File archive) {
+        executor.submit(new Runnable() {
+            @Override
+            public void run() {
+                doDistribute(clusters, archive);
+            }
+        });
+    }
+
+    public void statusReceived(final ArchiveStatusMessage status) {
+        final Distribution distribution = distributions.get(status.getHash());
+        final Member member = status.getAddress();
+        if (distribution == null || member == null) {
+            LOGGER.debug("ignoring archive status for " + status.getHash());
+            return;
+        }
+
+        if (!status.isComplete()) {
+            executor.submit(new ChunkSender(distribution, member, status.getMissing()));
+            return;
+        }
+
+        final CatalinaCluster cluster = distribution.complete(member);
+        if (cluster != null) { // all its members have the archive
+            cluster.send(new DeployMessage(distribution.path, distribution.hash, distribution.size, chunkSize, true));
+            LOGGER.info("archive " + distribution.path + " (" + distribution.hash + ") distributed to "
+                + distribution.members(cluster) + " members, deploying it");
+        }
+        if (distribution.isDone() && distributions.remove(distribution.hash, distribution)) {
+            distribution.cancelTimeout();
+        }
+    }
+
+    public void stop() {
+        executor.shutdownNow();
+        timer.shutdownNow();
+    }
+
+    private void doDistribute(final Iterable<CatalinaCluster> clusters, final File archive) {
+        final String path = archive.getAbsolutePath();
+        final String hash;
+        try {
+            hash = hash(archive);
+        } catch (final IOException e) {
+            LOGGER.error("can't compute hash of " + path + ", it will not be sent to the cluster", e);
+            return;
+        }
+
+        final Distribution distribution = new Distribution(archive, path, hash, archive.length());
+        for (final CatalinaCluster cluster : clusters) {
+            final Member[] members = cluster.getMembers();
+            if (members != null && members.length > 0) {
+                distribution.add(cluster, members);
+            }
+        }
+        if (distribution.isDone()) {
+            return;
+        }
+
+        if (distributions.putIfAbsent(hash, distribution) != null) {
+            LOGGER.info("archive " + path + " (" + hash + ") is already being distributed");
+            return;
+        }
+
+        distribution.expireIn(timer.schedule(new Runnable() {
+            @Override
+            public void run() {
+                if (distributions.remove(hash, distribution)) {
+                    distribution.expire();
+                }
+            }
+        }, timeout, TimeUnit.MILLISECONDS));
+
+        for (final CatalinaCluster cluster : distribution.clusters()) {
+            cluster.send(new DeployMessage(path, hash, distribution.size, chunkSize, false));
+        }
+    }
+
+    static String hash(final File file) throws IOException {
+        final MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (final NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+
+        final byte[] buffer = new byte[64 * 1024];
+        try (InputStream is = IO.read(file)) {
+            int read;
+            while ((read = is.read(buffer)) >= 0) {
+                digest.update(buffer, 0, read);
+            }
+        }
+
+        final byte[] bytes = digest.digest();
+        final char[] hex = new char[bytes.length * 2];
+        for (int i = 0; i < bytes.length; i++) {
+            hex[2 * i] = HEX[(bytes[i] >> 4) & 0xf];
+            hex[2 * i + 1] = HEX[bytes[i] & 0xf];
+        }
+        return new String(hex);
+    }
+
+    private class ChunkSender implements Runnable {
+        private final Distribution distribution;
+        private final Member member;
+        private final BitSet missing;
+
+        private ChunkSender(final Distribution distribution, final Member member, final BitSet missing) {
+            this.distribution = distribution;
+            this.member = member;
+            this.missing = missing;
+        }
+
+        @Override
+        public void run() {
+            final CatalinaCluster cluster = distribution.cluster(member);
+            if (cluster == null) {
+                LOGGER.debug("ignoring chunks requested by " + member + ", archive " + distribution.hash + " was not sent to it");
+                return;
+            }
+
+            final int chunks = (int) ((distribution.size + chunkSize - 1) / chunkSize);
+            try (RandomAccessFile file = new RandomAccessFile(distribution.archive, "r")) {
+                // one chunk in memory at a time, the message keeps its array until it is serialized
+                for (int i = missing.nextSetBit(0); i >= 0 && i < chunks; i = missing.nextSetBit(i + 1)) {
+                    if (distribution.isDone()) {
+                        return;
+                    }
+
+                    final long offset = (long) i * chunkSize;
+                    final byte[] data = new byte[(int) Math.min(chunkSize, distribution.size - offset)];
+                    file.seek(offset);
+                    file.readFully(data);
+                    cluster.send(new ArchiveChunkMessage(distribution.hash, i, data), member);
+                }
+            } catch (final IOException e) {
+                LOGGER.error("can't send " + distribution.archive + " to " + member, e);
+            }
+        }
+    }
+
+    private class Distribution {
+        private final File archive;
+        private final String path;
+        private final String hash;
+        private final long size;
+        private final Map<Member, CatalinaCluster> clusters = new HashMap<>();
+        private final Map<CatalinaCluster, Set<Member>> pending = new HashMap<>();
+        private ScheduledFuture<?> expiration;
+
+        private Distribution(final File archive, final String path, final String hash, final long size) {
+            this.archive = archive;
+            this.path = path;
+            this.hash = hash;
+            this.size = size;
+        }
+
+        private synchronized void add(final CatalinaCluster cluster, final Member[] members) {
+            pending.put(cluster, new HashSet<>(Arrays.asList(members)));
+            for (final Member member : members) {
+                clusters.put(member, cluster);
+            }
+        }
+
+        private synchronized Set<CatalinaCluster> clusters() {
+            return new HashSet<>(pending.keySet());
+        }
+
+        private synchronized CatalinaCluster cluster(final Member member) {
+            return clusters.get(member);
+        }
+
+        private synchronized int members(final CatalinaCluster cluster) {
+            int count = 0;
+            for (final CatalinaCluster c : clusters.values()) {
+                if (c == cluster) {
+                    count++;
+                }
+            }
+            return count;
+        }
+
+        /**
+         * @return the cluster to commit if the member was the last one of its cluster missing the archive
+         */
+        private synchronized CatalinaCluster complete(final Member member) {
+            final CatalinaCluster cluster = clusters.get(member);
+            final Set<Member> members = pending.get(cluster);
+            if (members == null || !members.remove(member) || !members.isEmpty()) {
+                return null;
+            }
+            pending.remove(cluster);
+            return cluster;
+        }
+
+        private synchronized void expireIn(final ScheduledFuture<?> expiration) {
+            this.expiration = expiration;
+        }
+
+        private synchronized void cancelTimeout() {
+            if (expiration != null) {
+                expiration.cancel(false);
+            }
+        }
+
+        private synchronized void expire() {
+            for (final Set<Member> members : pending.values()) {
+                LOGGER.error("archive " + path + " not received by " + members
+                    + " after " + timeout + "ms, it will not be deployed on the cluster");
+            }
+            pending.clear();
+        }
+
+        private synchronized boolean isDone() {
+            return pending.isEmpty();
+        }
+    }
+}
@@ -0,0 +1,354 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.tomee.catalina.cluster;
+
+import org.apache.openejb.loader.Files;
+import org.apache.openejb.loader.IO;
+import org.apache.openejb.loader.SystemInstance;
+import org.apache.openejb.util.Duration;
+import org.apache.openejb.util.LogCategory;
+import org.apache.openejb.util.Logger;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Writes the chunks sent by an ArchiveDistributor directly to deployed/.cluster/&lt;hash&gt;.part.
+ *
+ * The received chunks are saved regularly next to it so a transfer interrupted by a restart of
+ * either side only resends what is missing. Once complete and verified the archive is moved
+ * to deployed/&lt;name&gt; and its hash is kept to recognize the same content later.
+ *
+ * The missing chunks are requested again each time the last chunk of the previous request arrives,
+ * a transfer receiving nothing for tomee.cluster.deploy.retry (lost last chunk for instance) is
+ * requested again by stalled().
+ *
+ * Writing the chunks and verifying the archive take time, it is not meant to be called from the
+ * threads receiving the cluster messages.
+ */
+public class ArchiveReceiver {
+    public static final String TOMEE_CLUSTER_DEPLOY_RETRY = "tomee.cluster.deploy.retry";
+
+    private static final Logger LOGGER = Logger.getInstance(LogCategory.OPENEJB, ArchiveReceiver.class);
+    private static final int CHECKPOINT = 16;
+    private static final int MAX_RETRIES = 5;
+
+    private final File deployed;
+    private final File work;
+    private final long retry;
+    private final Map<String, Transfer> transfers = new HashMap<>();
+
+    public ArchiveReceiver(final File deployed) {
+        this(deployed, new Duration(SystemInstance.get().getOptions().get(TOMEE_CLUSTER_DEPLOY_RETRY, "30 seconds")).getTime(TimeUnit.MILLISECONDS));
+    }
+
+    /**
+     * @param retry milliseconds without receiving anything before asking the missing chunks again
+     */
+    public ArchiveReceiver(final File deployed, final long retry) {
+        this.deployed = deployed;
+        this.work = new File(deployed, ".cluster");
+        this.retry = retry;
+        if (retry <= 0) {
+            throw new IllegalArgumentException(TOMEE_CLUSTER_DEPLOY_RETRY + " should be positive: " + retry);
+        }
+    }
+
+    public long getRetry() {
+        return retry;
+    }
+
+    public File target(final DeployMessage msg) {
+        return new File(deployed, new File(msg.getFile()).getName());
+    }
+
+    public synchronized ArchiveStatusMessage announced(final DeployMessage msg) {
+        final String hash = msg.getHash();
+        final File target = target(msg);
+        if (target.isFile() && hash.equals(readHash(target))) {
+            LOGGER.info("archive " + target + " already up to date");
+            return new ArchiveStatusMessage(hash, null);
+        }
+
+        Transfer transfer = transfers.get(hash);
+        if (transfer == null) {
+            try {
+                transfer = open(msg, target);
+            } catch (final IOException e) {
+                LOGGER.error("can't receive archive " + msg.getFile(), e);
+                return null; // the sender will time out
+            }
+            transfers.put(hash, transfer);
+        } else {
+            transfer.msg = msg; // the sender may have restarted, answer the last announce
+        }
+
+        if (transfer.isComplete()) {
+            return finish(transfer);
+        }
+        return transfer.request();
+    }
+
+    /**
+     * @return the status to send back if the transfer is over or chunks need to be sent again, null otherwise
+     */
+    public synchronized ArchiveStatusMessage received(final ArchiveChunkMessage msg) {
+        final Transfer transfer = transfers.get(msg.getHash());
+        if (transfer == null) {
+            return null;
+        }
+
+        try {
+            if (msg.isValid()) {
+                transfer.write(msg.getIndex(), msg.getData());
+            } else {
+                LOGGER.warning("corrupted chunk " + msg.getIndex() + " of " + transfer.target + ", asking it again");
+            }
+        } catch (final IOException e) {
+            LOGGER.error("can't write archive " + transfer.target, e);
+            close(transfer);
+            return null;
+        }
+
+        if (transfer.isComplete()) {
+            return finish(transfer);
+        }
+        if (msg.getIndex() >= transfer.lastRequested) { // sender is done with the last request
+            return transfer.request();
+        }
+        return null;
+    }
+
+    /**
+     * Asks again the missing chunks of the transfers which received nothing for the retry delay.
+     * A transfer still stalled after a few requests is closed, what was received is kept for the
+     * next announce of the archive.
+     *
+     * @return the requests to send, by announce they answer to
+     */
+    public synchronized Map<DeployMessage, ArchiveStatusMessage> stalled() {
+        final long now = System.currentTimeMillis();
+        final Map<DeployMessage, ArchiveStatusMessage> requests = new IdentityHashMap<>();
+        for (final Transfer transfer : new ArrayList<>(transfers.values())) {
+            if (now - transfer.lastActivity < retry) {
+                continue;
+            }
+
+            if (transfer.retries >= MAX_RETRIES) {
+                LOGGER.warning("transfer of " + transfer.target + " stalled, it will resume when the archive is sent again");
+                close(transfer);
+                continue;
+            }
+
+            transfer.retries++;
+            LOGGER.info("no chunk of " + transfer.target + " received for " + (now - transfer.lastActivity) + "ms, asking them again");
+            requests.put(transfer.msg, transfer.request());
+        }
+        return requests;
+    }
+
+    /**
+     * @return the archive to deploy or null if it was not completely received
+     */
+    public File committed(final DeployMessage msg) {
+        final File target = target(msg);
+        if (target.isFile() && msg.getHash().equals(readHash(target))) {
+            return target;
+        }
+        LOGGER.warning("archive " + target + " was not received, can't deploy it");
+        return null;
+    }
+
+    public synchronized void close() {
+        for (final Transfer transfer : transfers.values()) {
+            try {
+                transfer.close();
+            } catch (final IOException e) {
+                LOGGER.warning("can't save state of " + transfer.target, e);
+            }
+        }
+        transfers.clear();
+    }
+
+    private Transfer open(final DeployMessage msg, final File target) throws IOException {
+        Files.mkdirs(work);
+
+        final int chunks = msg.getChunks();
+        final File part = new File(work, msg.getHash() + ".part");
+        final File state = new File(work, msg.getHash() + "-" + msg.getChunkSize() + ".chunks");
+
+        BitSet received = new BitSet(chunks);
+        if (part.isFile() && part.length() == msg.getSize() && state.isFile()) {
+            try {
+                received = BitSet.valueOf(java.nio.file.Files.readAllBytes(state.toPath()));
+                LOGGER.info("resuming transfer of " + target + ", " + received.cardinality() + "/" + chunks + " chunks already received");
+            } catch (final IOException e) {
+                LOGGER.warning("can't read " + state + ", receiving " + target + " again", e);
+            }
+        } else if (state.exists()) {
+            IO.delete(state);
+        }
+
+        final RandomAccessFile file = new RandomAccessFile(part, "rw");
+        file.setLength(msg.getSize());
+        return new Transfer(msg, target, part, state, file, received);
+    }
+
+    private ArchiveStatusMessage finish(final Transfer transfer) {
+        final String hash = transfer.hash;
+        close(transfer);
+
+        try {
+            final String actual = ArchiveDistributor.hash(transfer.part);
+            if (!hash.equals(actual)) {
+                LOGGER.warning("archive " + transfer.target + " is corrupted (" + actual + " instead of " + hash + "), receiving it again");
+                IO.delete(transfer.part);
+                IO.delete(transfer.state);
+                final Transfer again = open(transfer.msg, transfer.target);
+                transfers.put(hash, again);
+                return again.request();
+            }
+
+            if (transfer.target.exists() && !IO.delete(transfer.target)) {
+                throw new IOException("can't replace " + transfer.target);
+            }
+            if (!transfer.part.renameTo(transfer.target)) {
+                IO.copy(transfer.part, transfer.target);
+                IO.delete(transfer.part);
+            }
+            IO.writeString(hashFile(transfer.target), hash);
+            IO.delete(transfer.state);
+
+            LOGGER.info("archive " + transfer.target + " received");
+            return new ArchiveStatusMessage(hash, null);
+        } catch (final IOException e) {
+            LOGGER.error("can't store archive " + transfer.target, e);
+            return null;
+        }
+    }
+
+    private void close(final Transfer transfer) {
+        transfers.remove(transfer.hash);
+        try {
+            transfer.close();
+        } catch (final IOException e) {
+            LOGGER.warning("can't close " + transfer.part, e);
+        }
+    }
+
+    private File hashFile(final File target) {
+        return new File(work, target.getName() + ".sha256");
+    }
+
+    private String readHash(final File target) {
+        final File hash = hashFile(target);
+        if (!hash.isFile()) {
+            return null;
+        }
+        try {
+            return IO.readString(hash).trim();
+        } catch (final IOException e) {
+            return null;
+        }
+    }
+
+    private static class Transfer {
+        private DeployMessage msg;
+        private final String hash;
+        private final File target;
+        private final File part;
+        private final File state;
+        private final RandomAccessFile file;
+        private final BitSet received;
+        private final long size;
+        private final int chunkSize;
+        private final int chunks;
+        private int lastRequested = -1;
+        private int unsaved;
+        private long lastActivity = System.currentTimeMillis();
+        private int retries;
+
+        private Transfer(final DeployMessage msg, final File target, final File part, final File state,
+                         final RandomAccessFile file, final BitSet received) {
+            this.msg = msg;
+            this.hash = msg.getHash();
+            this.size = msg.getSize();
+            this.chunkSize = msg.getChunkSize();
+            this.chunks = msg.getChunks();
+            this.target = target;
+            this.part = part;
+            this.state = state;
+            this.file = file;
+            this.received = received;
+        }
+
+        private boolean isComplete() {
+            return received.cardinality() >= chunks;
+        }
+
+        private ArchiveStatusMessage request() {
+            final BitSet missing = new BitSet(chunks);
+            missing.set(0, chunks);
+            missing.andNot(received);
+            lastRequested = missing.length() - 1;
+            lastActivity = System.currentTimeMillis();
+            return new ArchiveStatusMessage(hash, missing);
+        }
+
+        private void write(final int index, final byte[] data) throws IOException {
+            if (index < 0 || index >= chunks || received.get(index)) {
+                return;
+            }
+
+            final long offset = (long) index * chunkSize;
+            if (data.length != Math.min(chunkSize, size - offset)) {
+                LOGGER.warning("chunk " + index + " of " + target + " has a wrong size, ignoring it");
+                return;
+            }
+
+            file.seek(offset);
+            file.write(data);
+            received.set(index);
+            lastActivity = System.currentTimeMillis();
+            retries = 0;
+            if (++unsaved >= CHECKPOINT) {
+                save();
+            }
+        }
+
+        // no fsync: a chunk marked received but lost by a crash is caught by the hash check at the end
+        private void save() throws IOException {
+            IO.copy(received.toByteArray(), state);
+            unsaved = 0;
+        }
+
+        private void close() throws IOException {
+            try {
+                save();
+            } finally {
+                file.close();
+            }
+        }
+    }
+}
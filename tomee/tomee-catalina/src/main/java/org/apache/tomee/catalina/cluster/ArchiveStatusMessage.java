@@ -0,0 +1,52 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.tomee.catalina.cluster;
+
+import org.apache.catalina.ha.ClusterMessageBase;
+
+import java.util.BitSet;
+
+/**
+ * Sent by a receiver to the member distributing an archive: either the archive is complete
+ * (already there or fully received) or it lists the chunks to send.
+ */
+public class ArchiveStatusMessage extends ClusterMessageBase {
+    private String hash;
+    private BitSet missing;
+
+    public ArchiveStatusMessage(final String hash, final BitSet missing) {
+        this.hash = hash;
+        this.missing = missing;
+    }
+
+    public String getHash() {
+        return hash;
+    }
+
+    public BitSet getMissing() {
+        return missing;
+    }
+
+    public boolean isComplete() {
+        return missing == null || missing.isEmpty();
+    }
+
+    @Override
+    public String getUniqueId() {
+        return "ARCHIVE-STATUS-" + hash + "-" + getTimestamp();
+    }
+}
@@ -24,17 +24,23 @@ import org.apache.openejb.assembler.classic.event.AssemblerBeforeApplicationDest
 import org.apache.openejb.loader.SystemInstance;
 import org.apache.openejb.observer.Observes;
 import org.apache.openejb.observer.event.AfterEvent;
+import org.apache.openejb.util.LogCategory;
+import org.apache.openejb.util.Logger;
 
 import java.io.File;
 import java.util.Set;
 
 public class ClusterObserver {
+    private static final Logger LOGGER = Logger.getInstance(LogCategory.OPENEJB, ClusterObserver.class);
     private static final boolean ClUSTER_DEPLOYMENT = "true".equals(SystemInstance.get().getProperty("tomee.cluster.deployment", "false"));
 
     private final Set<CatalinaCluster> clusters;
+    private final boolean sendArchive;
+    private volatile ArchiveDistributor distributor;
 
     public ClusterObserver(final Set<CatalinaCluster> clusters) {
         this.clusters = clusters;
+        this.sendArchive = SystemInstance.get().getOptions().get(DeployMessage.TOMEE_CLUSTER_DEPLOY_SEND_ARCHIVE, false);
     }
 
     public void deploy(@Observes final AfterEvent<AssemblerAfterApplicationCreated> app) {
@@ -43,7 +49,20 @@ public class ClusterObserver {
         }
 
         final AppInfo appInfo = app.getEvent().getApp();
-        send(new DeployMessage(appInfo.path), appInfo);
+        if (sendArchive) {
+            final File archive = new File(appInfo.path);
+            if (appInfo.autoDeploy) {
+                return;
+            }
+            if (archive.isFile()) {
+                distributor().distribute(clusters, archive);
+            } else if (archive.isDirectory()) { // only archives are sent, in chunks of the file
+                LOGGER.warning("application " + appInfo.path + " is an exploded directory, it is not sent to the cluster,"
+                    + " deploy it as an archive or set " + DeployMessage.TOMEE_CLUSTER_DEPLOY_SEND_ARCHIVE + "=false to deploy the same path on all members");
+            }
+        } else {
+            send(new DeployMessage(appInfo.path), appInfo);
+        }
     }
 
     public void undeploy(@Observes final AssemblerBeforeApplicationDestroyed app) {
@@ -55,6 +74,31 @@ public class ClusterObserver {
         send(new UndeployMessage(appInfo.path), appInfo);
     }
 
+    public void archiveStatus(final ArchiveStatusMessage status) {
+        final ArchiveDistributor current = distributor;
+        if (current != null) {
+            current.statusReceived(status);
+        }
+    }
+
+    public void stop() {
+        final ArchiveDistributor current = distributor;
+        if (current != null) {
+            current.stop();
+        }
+    }
+
+    private ArchiveDistributor distributor() {
+        if (distributor == null) {
+            synchronized (this) {
+                if (distributor == null) {
+                    distributor = new ArchiveDistributor();
+                }
+            }
+        }
+        return distributor;
+    }
+
     private void send(final ClusterMessage message, final AppInfo app) {
         for (final CatalinaCluster cluster : clusters) {
             final String path = app.path;
@@ -17,47 +17,64 @@
 package org.apache.tomee.catalina.cluster;
 
 import org.apache.catalina.ha.ClusterMessageBase;
-import org.apache.openejb.loader.IO;
-import org.apache.openejb.loader.SystemInstance;
-import org.apache.tomee.catalina.TomEERuntimeException;
-
-import java.io.ByteArrayOutputStream;
-import java.io.FileInputStream;
 
+/**
+ * Without hash the receivers deploy the file directly.
+ *
+ * With a hash the archive is sent in ArchiveChunkMessage: the first message announces it
+ * (receivers answer with an ArchiveStatusMessage) and a second one, commit, is sent once
+ * all the members have the complete archive to deploy it everywhere at the same time.
+ */
 public class DeployMessage extends ClusterMessageBase {
     public static final String TOMEE_CLUSTER_DEPLOY_SEND_ARCHIVE = "tomee.cluster.deploy.send-archive";
 
     private String file;
-    private byte[] archive;
+    private String hash;
+    private long size;
+    private int chunkSize;
+    private boolean commit;
 
     public DeployMessage(final String path) {
         file = path;
-        if (SystemInstance.get().getOptions().get(TOMEE_CLUSTER_DEPLOY_SEND_ARCHIVE, false)) {
-            final ByteArrayOutputStream baos = new ByteArrayOutputStream();
-            FileInputStream fis = null;
-            try {
-                fis = new FileInputStream(path);
-                IO.copy(fis, baos);
-                archive = baos.toByteArray();
-            } catch (final Exception e) {
-                throw new TomEERuntimeException(e);
-            } finally {
-                IO.close(fis);
-                IO.close(baos);
-            }
-        }
+    }
+
+    public DeployMessage(final String path, final String hash, final long size, final int chunkSize, final boolean commit) {
+        this.file = path;
+        this.hash = hash;
+        this.size = size;
+        this.chunkSize = chunkSize;
+        this.commit = commit;
     }
 
     public String getFile() {
         return file;
     }
 
-    public byte[] getArchive() {
-        return archive;
+    public String getHash() {
+        return hash;
+    }
+
+    public long getSize() {
+        return size;
+    }
+
+    public int getChunkSize() {
+        return chunkSize;
+    }
+
+    public int getChunks() {
+        return (int) ((size + chunkSize - 1) / chunkSize);
+    }
+
+    public boolean isCommit() {
+        return commit;
     }
 
     @Override
     public String getUniqueId() {
-        return "DEPLOY-" + file;
+        if (hash == null) {
+            return "DEPLOY-" + file;
+        }
+        return "DEPLOY-" + file + "-" + hash + (commit ? "-COMMIT" : "");
     }
 }
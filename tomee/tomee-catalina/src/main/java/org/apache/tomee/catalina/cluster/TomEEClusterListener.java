@@ -24,54 +24,45 @@ import org.apache.openejb.UndeployException;
 import org.apache.openejb.assembler.Deployer;
 import org.apache.openejb.assembler.classic.Assembler;
 import org.apache.openejb.core.LocalInitialContextFactory;
-import org.apache.openejb.loader.Files;
-import org.apache.openejb.loader.IO;
 import org.apache.openejb.loader.SystemInstance;
 import org.apache.openejb.util.DaemonThreadFactory;
 import org.apache.openejb.util.LogCategory;
 import org.apache.openejb.util.Logger;
 
 import java.io.File;
+import java.util.Map;
 import java.util.Properties;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
 import javax.naming.Context;
 import javax.naming.InitialContext;
 import javax.naming.NamingException;
 
 public class TomEEClusterListener extends ClusterListener {
+    private ScheduledFuture<?> stalledTransfers;
+
     @Override
     public void messageReceived(final ClusterMessage clusterMessage) {
         final Class<?> type = clusterMessage.getClass();
 
         if (DeployMessage.class.equals(type)) {
             final DeployMessage msg = (DeployMessage) clusterMessage;
-            String file = msg.getFile();
-
-            final boolean alreadyDeployed = isDeployed(file);
-            File ioFile = new File(file);
-
-            if (!alreadyDeployed) {
-                if (msg.getArchive() != null) {
-                    final File deployed = deployedDir();
-                    try {
-                        if (!deployed.exists()) {
-                            Files.mkdirs(deployed); // can throw runtime exceptions
-                        }
-
-                        final File dump = new File(deployed, ioFile.getName());
-                        IO.copy(msg.getArchive(), dump);
-                        file = dump.getAbsolutePath();
-                        ioFile = new File(file);
-
-                        Static.STATIC.LOGGER.info("dumped archive: " + msg.getFile() + " to " + file);
-                    } catch (final Exception e) {
-                        Static.STATIC.LOGGER.error("can't dump archive: "+ file, e);
+            if (msg.getHash() != null) {
+                Static.STATIC.ARCHIVES.submit(new Runnable() {
+                    @Override
+                    public void run() {
+                        archiveDeployment(msg);
                     }
-                }
+                });
+                return;
+            }
 
-                if (ioFile.exists()) {
+            final String file = msg.getFile();
+            if (!isDeployed(file)) {
+                if (new File(file).exists()) {
                     Static.STATIC.SERVICE.submit(new DeployTask(file));
                 } else {
                     Static.STATIC.LOGGER.warning("can't find '" + file);
@@ -79,6 +70,19 @@ public class TomEEClusterListener extends ClusterListener {
             } else {
                 Static.STATIC.LOGGER.info("application already deployed: " + file);
             }
+        } else if (ArchiveChunkMessage.class.equals(type)) {
+            final ArchiveChunkMessage chunk = (ArchiveChunkMessage) clusterMessage;
+            Static.STATIC.ARCHIVES.submit(new Runnable() {
+                @Override
+                public void run() {
+                    reply(Static.STATIC.RECEIVER.received(chunk), chunk);
+                }
+            });
+        } else if (ArchiveStatusMessage.class.equals(type)) {
+            final ClusterObserver observer = SystemInstance.get().getComponent(ClusterObserver.class);
+            if (observer != null) {
+                observer.archiveStatus((ArchiveStatusMessage) clusterMessage);
+            }
         } else if (UndeployMessage.class.equals(type)) {
             final String file = ((UndeployMessage) clusterMessage).getFile();
             if (isDeployed(file)) {
@@ -95,7 +99,56 @@ public class TomEEClusterListener extends ClusterListener {
         }
     }
 
-    private File deployedDir() {
+    private void archiveDeployment(final DeployMessage msg) {
+        final File target = Static.STATIC.RECEIVER.target(msg);
+        if (isDeployed(msg.getFile()) || isDeployed(target.getAbsolutePath())) {
+            if (!msg.isCommit()) { // don't touch a deployed archive but don't block the other members
+                Static.STATIC.LOGGER.info("application already deployed: " + msg.getFile());
+                reply(new ArchiveStatusMessage(msg.getHash(), null), msg);
+            }
+            return;
+        }
+
+        if (msg.isCommit()) {
+            final File archive = Static.STATIC.RECEIVER.committed(msg);
+            if (archive != null) {
+                Static.STATIC.SERVICE.submit(new DeployTask(archive.getAbsolutePath()));
+            }
+        } else {
+            watchStalledTransfers();
+            reply(Static.STATIC.RECEIVER.announced(msg), msg);
+        }
+    }
+
+    // the last chunk of a request can be lost, nothing would ask the missing ones again then
+    private synchronized void watchStalledTransfers() {
+        if (stalledTransfers != null) {
+            return;
+        }
+
+        final long retry = Static.STATIC.RECEIVER.getRetry();
+        stalledTransfers = Static.STATIC.ARCHIVES.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                for (final Map.Entry<DeployMessage, ArchiveStatusMessage> request : Static.STATIC.RECEIVER.stalled().entrySet()) {
+                    reply(request.getValue(), request.getKey());
+                }
+            }
+        }, retry, retry, TimeUnit.MILLISECONDS);
+    }
+
+    private void reply(final ClusterMessage response, final ClusterMessage request) {
+        if (response == null) {
+            return;
+        }
+        if (cluster == null || request.getAddress() == null) {
+            Static.STATIC.LOGGER.warning("can't answer to " + request.getUniqueId());
+            return;
+        }
+        cluster.send(response, request.getAddress());
+    }
+
+    private static File deployedDir() {
         return new File(SystemInstance.get().getHome().getDirectory(), "deployed");
     }
 
@@ -111,16 +164,22 @@ public class TomEEClusterListener extends ClusterListener {
     public boolean accept(final ClusterMessage clusterMessage) {
         return clusterMessage != null
             && (DeployMessage.class.equals(clusterMessage.getClass())
-                || UndeployMessage.class.equals(clusterMessage.getClass()));
+                || UndeployMessage.class.equals(clusterMessage.getClass())
+                || ArchiveChunkMessage.class.equals(clusterMessage.getClass())
+                || ArchiveStatusMessage.class.equals(clusterMessage.getClass()));
     }
 
     public static void stop() {
+        Static.STATIC.ARCHIVES.shutdown(); // cancels the periodic check of the transfers
         Static.STATIC.SERVICE.shutdown();
         try {
+            Static.STATIC.ARCHIVES.awaitTermination(1, TimeUnit.MINUTES);
             Static.STATIC.SERVICE.awaitTermination(1, TimeUnit.MINUTES);
         } catch (final InterruptedException e) {
+            Static.STATIC.ARCHIVES.shutdownNow();
             Static.STATIC.SERVICE.shutdownNow();
         }
+        Static.STATIC.RECEIVER.close();
     }
 
     private static class DeployTask implements Runnable {
@@ -181,6 +240,11 @@ public class TomEEClusterListener extends ClusterListener {
         // async processing to avoid to make the cluster hanging
         private static final ExecutorService SERVICE = Executors.newSingleThreadExecutor(new DaemonThreadFactory("TomEE-Cluster-Listener-thread-"));
 
+        // archive transfers: chunks written and archives verified in order, off the cluster threads
+        private static final ScheduledExecutorService ARCHIVES = Executors.newSingleThreadScheduledExecutor(new DaemonThreadFactory("TomEE-Cluster-Archive-Receiver-"));
+
+        private static final ArchiveReceiver RECEIVER = new ArchiveReceiver(deployedDir());
+
         static {
             IC_PROPS.setProperty(Context.INITIAL_CONTEXT_FACTORY, LocalInitialContextFactory.class.getName());
         }
@@ -0,0 +1,72 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.tomee.catalina.session;
+
+import org.apache.catalina.session.PersistentManager;
+
+/**
+ * Keeps the recently used sessions on heap and the other ones serialized off heap (OffHeapSessionStore).
+ *
+ * There is no cache of its own: the sessions on heap are the active sessions of the PersistentManager.
+ * Sessions idle for more than maxIdleSwap seconds (default 60) are moved to the store by the background
+ * process and swapped in again when a request uses them, an idle session stays on heap up to maxIdleSwap
+ * plus the period of the background process. maxActiveSessions caps their number as documented for the
+ * PersistentManager. Usable in context.xml:
+ *
+ * <pre>
+ * &lt;Manager className="org.apache.tomee.catalina.session.OffHeapSessionManager"
+ *          maxIdleSwap="60" segmentSize="67108864" directory="${catalina.base}/work/sessions"/&gt;
+ * </pre>
+ *
+ * or globally with openejb.session.manager. The segments of each context are in their own sub directory
+ * (host/context base name) of the directory. Without directory the segments are direct buffers and
+ * the sessions are lost on restart.
+ */
+public class OffHeapSessionManager extends PersistentManager {
+    private final OffHeapSessionStore offHeapStore = new OffHeapSessionStore();
+
+    public OffHeapSessionManager() {
+        setStore(offHeapStore);
+        setMaxIdleSwap(60);
+        setMinIdleSwap(-1);
+        setSaveOnRestart(true);
+    }
+
+    public int getSegmentSize() {
+        return offHeapStore.getSegmentSize();
+    }
+
+    public void setSegmentSize(final int segmentSize) {
+        offHeapStore.setSegmentSize(segmentSize);
+    }
+
+    public double getCompactionThreshold() {
+        return offHeapStore.getCompactionThreshold();
+    }
+
+    public void setCompactionThreshold(final double compactionThreshold) {
+        offHeapStore.setCompactionThreshold(compactionThreshold);
+    }
+
+    public String getDirectory() {
+        return offHeapStore.getDirectory();
+    }
+
+    public void setDirectory(final String directory) {
+        offHeapStore.setDirectory(directory);
+    }
+}
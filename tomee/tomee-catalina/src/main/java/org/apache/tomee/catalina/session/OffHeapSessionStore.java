@@ -0,0 +1,611 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.tomee.catalina.session;
+
+import org.apache.catalina.Container;
+import org.apache.catalina.Context;
+import org.apache.catalina.LifecycleException;
+import org.apache.catalina.Loader;
+import org.apache.catalina.Session;
+import org.apache.catalina.session.PersistentManagerBase;
+import org.apache.catalina.session.StandardSession;
+import org.apache.catalina.session.StoreBase;
+import org.apache.catalina.util.ContextName;
+import org.apache.catalina.util.CustomObjectInputStream;
+import org.apache.openejb.loader.Files;
+import org.apache.openejb.util.LogCategory;
+import org.apache.openejb.util.Logger;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.RandomAccessFile;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Store keeping the serialized sessions out of the java heap.
+ *
+ * Sessions are appended to fixed size segments, direct buffers or memory mapped files when a directory
+ * is configured. Saving a session again appends a new copy, segments with few live sessions left are
+ * compacted by the background expiration. The memory of a segment is released as soon as it is emptied
+ * and when the store is cleared or stopped.
+ *
+ * Only the index (id, location, expiration time) stays on heap so expired sessions are found without
+ * deserializing all the stored sessions.
+ *
+ * With a directory the index is written when the store stops and read back when it starts so sessions
+ * survive a restart without being serialized again. Without a clean stop the files are ignored.
+ * Each context uses its own sub directory (host/context base name) so a directory configured once,
+ * in the global context.xml for instance, can be shared by all the webapps.
+ */
+public class OffHeapSessionStore extends StoreBase {
+    private static final Logger LOGGER = Logger.getInstance(LogCategory.OPENEJB.createChild("tomcat"), OffHeapSessionStore.class);
+
+    private static final String STORE_NAME = "offHeapStore";
+    private static final String INDEX = "sessions.index";
+    private static final int INDEX_VERSION = 1;
+
+    private int segmentSize = 64 * 1024 * 1024;
+    private double compactionThreshold = 0.25;
+    private String directory;
+    private File contextDirectory;
+
+    // guarded by this
+    private final Map<String, Entry> entries = new HashMap<>();
+    private final List<Segment> segments = new ArrayList<>();
+    private Segment current;
+    private int nextSegment;
+
+    public int getSegmentSize() {
+        return segmentSize;
+    }
+
+    public void setSegmentSize(final int segmentSize) {
+        this.segmentSize = segmentSize;
+    }
+
+    public double getCompactionThreshold() {
+        return compactionThreshold;
+    }
+
+    /**
+     * @param compactionThreshold ratio of live bytes below which a full segment is compacted
+     */
+    public void setCompactionThreshold(final double compactionThreshold) {
+        this.compactionThreshold = compactionThreshold;
+    }
+
+    public String getDirectory() {
+        return directory;
+    }
+
+    /**
+     * @param directory where segments are mapped and the index saved on stop, under a sub directory per context,
+     *                  null for direct buffers
+     */
+    public void setDirectory(final String directory) {
+        this.directory = directory;
+    }
+
+    @Override
+    public String getStoreName() {
+        return STORE_NAME;
+    }
+
+    @Override
+    public synchronized int getSize() throws IOException {
+        return entries.size();
+    }
+
+    @Override
+    public synchronized String[] keys() throws IOException {
+        return entries.keySet().toArray(new String[entries.size()]);
+    }
+
+    @Override
+    public Session load(final String id) throws ClassNotFoundException, IOException {
+        final byte[] data;
+        synchronized (this) {
+            final Entry entry = entries.get(id);
+            if (entry == null) {
+                return null;
+            }
+            data = entry.read();
+        }
+
+        final Context context = manager.getContext();
+        final ClassLoader loader = classLoader(context);
+        final Thread thread = Thread.currentThread();
+        final ClassLoader old = thread.getContextClassLoader();
+        thread.setContextClassLoader(loader);
+        try (final ObjectInputStream ois = new CustomObjectInputStream(new BufferedInputStream(new ByteArrayInputStream(data)), loader)) {
+            final StandardSession session = (StandardSession) manager.createEmptySession();
+            session.readObjectData(ois);
+            session.setManager(manager);
+            return session;
+        } finally {
+            thread.setContextClassLoader(old);
+        }
+    }
+
+    @Override
+    public void save(final Session session) throws IOException {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (final ObjectOutputStream oos = new ObjectOutputStream(new BufferedOutputStream(bytes))) {
+            ((StandardSession) session).writeObjectData(oos);
+        }
+
+        final long expiresAt;
+        final int maxInactive = session.getMaxInactiveInterval();
+        if (maxInactive > 0) {
+            expiresAt = session.getThisAccessedTimeInternal() + maxInactive * 1000L;
+        } else {
+            expiresAt = Long.MAX_VALUE;
+        }
+
+        synchronized (this) {
+            final Entry entry = write(session.getIdInternal(), bytes.toByteArray(), expiresAt);
+            release(entries.put(entry.id, entry));
+        }
+    }
+
+    @Override
+    public synchronized void remove(final String id) throws IOException {
+        release(entries.remove(id));
+    }
+
+    @Override
+    public synchronized void clear() throws IOException {
+        entries.clear();
+        for (final Segment segment : segments) {
+            segment.free();
+        }
+        segments.clear();
+        current = null;
+    }
+
+    /**
+     * Expires the sessions using the index and compacts the sparse segments.
+     * Only the expired sessions are deserialized, to notify their listeners.
+     */
+    @Override
+    public void processExpires() {
+        if (!getState().isAvailable()) {
+            return;
+        }
+
+        final long now = System.currentTimeMillis();
+        final List<String> expired = new ArrayList<>();
+        synchronized (this) {
+            for (final Entry entry : entries.values()) {
+                if (entry.expiresAt <= now) {
+                    expired.add(entry.id);
+                }
+            }
+        }
+
+        final PersistentManagerBase persistentManager = PersistentManagerBase.class.isInstance(manager) ? PersistentManagerBase.class.cast(manager) : null;
+        for (final String id : expired) {
+            try {
+                if (persistentManager != null && persistentManager.isLoaded(id)) { // the session in memory is the reference
+                    remove(id);
+                    continue;
+                }
+
+                final StandardSession session = (StandardSession) load(id);
+                if (session == null) {
+                    continue;
+                }
+                if (session.isValid()) { // it saw the new time on load, still expired otherwise
+                    session.expire();
+                }
+                remove(id);
+            } catch (final Exception e) {
+                LOGGER.error("Can't expire session " + id, e);
+                try {
+                    remove(id);
+                } catch (final IOException ioe) {
+                    // no-op, memory only
+                }
+            }
+        }
+
+        compact();
+    }
+
+    @Override
+    protected synchronized void startInternal() throws LifecycleException {
+        if (directory != null) {
+            final File dir = new File(directory, contextDirectoryName());
+            contextDirectory = dir;
+            Files.mkdirs(dir);
+            try {
+                restore(dir);
+            } catch (final IOException e) {
+                LOGGER.warning("Can't restore sessions from " + dir.getAbsolutePath() + ", starting empty", e);
+                clearFiles(dir);
+            }
+        }
+        super.startInternal();
+    }
+
+    @Override
+    protected synchronized void stopInternal() throws LifecycleException {
+        super.stopInternal();
+        if (contextDirectory != null) {
+            try {
+                saveIndex(contextDirectory);
+            } catch (final IOException e) {
+                LOGGER.warning("Can't save the session index, sessions will be lost on restart", e);
+            }
+        }
+        for (final Segment segment : segments) {
+            segment.close();
+        }
+        segments.clear();
+        entries.clear();
+        current = null;
+    }
+
+    private Entry write(final String id, final byte[] data, final long expiresAt) throws IOException {
+        final int size = data.length;
+        if (current == null || current.remaining() < size) {
+            final Segment previous = current;
+            current = newSegment(nextSegment++, Math.max(segmentSize, size));
+            if (previous != null && previous.count == 0) {
+                segments.remove(previous);
+                previous.free();
+            }
+        }
+        final int offset = current.append(data);
+        return new Entry(id, current, offset, size, expiresAt);
+    }
+
+    private void release(final Entry entry) {
+        if (entry == null) {
+            return;
+        }
+
+        final Segment segment = entry.segment;
+        segment.live -= entry.length;
+        segment.count--;
+        if (segment.count == 0 && segment != current) {
+            segments.remove(segment);
+            segment.free();
+        }
+    }
+
+    /**
+     * Moves the sessions of the sparse segments to the current one, a session at a time so the
+     * requests saving or loading sessions meanwhile don't wait for the whole compaction.
+     */
+    private void compact() {
+        final List<Entry> moving = new ArrayList<>();
+        synchronized (this) {
+            final Set<Segment> sparse = new HashSet<>();
+            for (final Segment segment : segments) {
+                if (segment != current && segment.live < segment.capacity() * compactionThreshold) {
+                    sparse.add(segment);
+                }
+            }
+            if (sparse.isEmpty()) {
+                return;
+            }
+
+            for (final Entry entry : entries.values()) {
+                if (sparse.contains(entry.segment)) {
+                    moving.add(entry);
+                }
+            }
+        }
+
+        for (final Entry entry : moving) {
+            synchronized (this) {
+                if (entries.get(entry.id) != entry) { // saved again or removed meanwhile
+                    continue;
+                }
+
+                try {
+                    entries.put(entry.id, write(entry.id, entry.read(), entry.expiresAt));
+                    release(entry);
+                } catch (final IOException ioe) {
+                    LOGGER.warning("Can't compact the session store", ioe);
+                    return;
+                }
+            }
+        }
+    }
+
+    private Segment newSegment(final int index, final int capacity) throws IOException {
+        final Segment segment;
+        if (contextDirectory == null) {
+            segment = new Segment(index, ByteBuffer.allocateDirect(capacity), null);
+        } else {
+            final File file = segmentFile(contextDirectory, index);
+            try (final RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+                raf.setLength(capacity);
+                segment = new Segment(index, raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, capacity), file);
+            }
+        }
+        segments.add(segment);
+        return segment;
+    }
+
+    private void saveIndex(final File dir) throws IOException {
+        try (final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(new File(dir, INDEX))))) {
+            out.writeInt(INDEX_VERSION);
+            out.writeInt(nextSegment);
+            out.writeInt(segments.size());
+            for (final Segment segment : segments) {
+                out.writeInt(segment.index);
+                out.writeInt(segment.buffer.position());
+                segment.force();
+            }
+            out.writeInt(entries.size());
+            for (final Entry entry : entries.values()) {
+                out.writeUTF(entry.id);
+                out.writeInt(entry.segment.index);
+                out.writeInt(entry.offset);
+                out.writeInt(entry.length);
+                out.writeLong(entry.expiresAt);
+            }
+        }
+    }
+
+    private void restore(final File dir) throws IOException {
+        final File index = new File(dir, INDEX);
+        if (!index.isFile()) {
+            clearFiles(dir); // not stopped properly, segments may be partially written
+            return;
+        }
+
+        try (final DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(index)))) {
+            if (in.readInt() != INDEX_VERSION) {
+                throw new IOException("Unsupported index version");
+            }
+            nextSegment = in.readInt();
+
+            final Map<Integer, Segment> byIndex = new HashMap<>();
+            final int segmentCount = in.readInt();
+            for (int i = 0; i < segmentCount; i++) {
+                final int segmentIndex = in.readInt();
+                final int position = in.readInt();
+                final File file = segmentFile(dir, segmentIndex);
+                try (final RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+                    final MappedByteBuffer buffer = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, raf.length());
+                    buffer.position(position);
+                    final Segment segment = new Segment(segmentIndex, buffer, file);
+                    segments.add(segment);
+                    byIndex.put(segmentIndex, segment);
+                    current = segment; // keep appending to the last one
+                }
+            }
+
+            final int entryCount = in.readInt();
+            for (int i = 0; i < entryCount; i++) {
+                final String id = in.readUTF();
+                final Segment segment = byIndex.get(in.readInt());
+                final int offset = in.readInt();
+                final int length = in.readInt();
+                final long expiresAt = in.readLong();
+                if (segment == null) {
+                    throw new IOException("Missing segment for session " + id);
+                }
+
+                // the ones which expired while stopped are handled by the next processExpires()
+                entries.put(id, new Entry(id, segment, offset, length, expiresAt));
+                segment.live += length;
+                segment.count++;
+            }
+        } finally {
+            // the index describes the files at stop time only
+            delete(index);
+        }
+
+        LOGGER.info("Restored " + entries.size() + " sessions from " + dir.getAbsolutePath());
+    }
+
+    private void clearFiles(final File dir) {
+        for (final Segment segment : segments) {
+            segment.close();
+        }
+        segments.clear();
+        entries.clear();
+        current = null;
+        nextSegment = 0;
+
+        final File[] files = dir.listFiles();
+        if (files != null) {
+            for (final File file : files) {
+                if (file.getName().startsWith("segment-") || INDEX.equals(file.getName())) {
+                    delete(file);
+                }
+            }
+        }
+    }
+
+    private static void delete(final File file) {
+        if (file.exists() && !file.delete()) {
+            LOGGER.warning("Can't delete " + file.getAbsolutePath());
+            file.deleteOnExit();
+        }
+    }
+
+    /**
+     * Releases the memory of a direct or mapped buffer now, it would otherwise stay allocated until
+     * the buffer is collected, which can take long for a buffer living in the old generation.
+     * The buffer must not be used anymore.
+     */
+    private static void unmap(final ByteBuffer buffer) {
+        if (!buffer.isDirect()) {
+            return;
+        }
+
+        try {
+            final Method cleanerMethod = buffer.getClass().getMethod("cleaner");
+            cleanerMethod.setAccessible(true);
+            final Object cleaner = cleanerMethod.invoke(buffer);
+            if (cleaner != null) {
+                cleaner.getClass().getMethod("clean").invoke(cleaner);
+            }
+        } catch (final Exception e) { // java 9, the cleaner is no more accessible
+            try {
+                final Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+                final Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+                theUnsafe.setAccessible(true);
+                unsafeClass.getMethod("invokeCleaner", ByteBuffer.class).invoke(theUnsafe.get(null), buffer);
+            } catch (final Exception ignored) {
+                LOGGER.debug("Can't free a session segment now, it will be when collected: " + e.getMessage());
+            }
+        }
+    }
+
+    private String contextDirectoryName() {
+        final Context context = manager == null ? null : manager.getContext();
+        if (context == null) {
+            return "ROOT";
+        }
+
+        final String name = new ContextName(context.getName(), false).getBaseName();
+        final Container host = context.getParent();
+        return host == null ? name : host.getName() + File.separator + name;
+    }
+
+    private static File segmentFile(final File dir, final int index) {
+        return new File(dir, "segment-" + index + ".bin");
+    }
+
+    private static ClassLoader classLoader(final Context context) {
+        if (context != null) {
+            final Loader loader = context.getLoader();
+            if (loader != null && loader.getClassLoader() != null) {
+                return loader.getClassLoader();
+            }
+        }
+        return OffHeapSessionStore.class.getClassLoader();
+    }
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + "[" + (contextDirectory != null ? contextDirectory.getPath() : (directory == null ? "direct" : directory)) + "]";
+    }
+
+    private static final class Entry {
+        private final String id;
+        private final Segment segment;
+        private final int offset;
+        private final int length;
+        private final long expiresAt;
+
+        private Entry(final String id, final Segment segment, final int offset, final int length, final long expiresAt) {
+            this.id = id;
+            this.segment = segment;
+            this.offset = offset;
+            this.length = length;
+            this.expiresAt = expiresAt;
+        }
+
+        private byte[] read() {
+            final byte[] data = new byte[length];
+            final ByteBuffer buffer = segment.buffer.duplicate();
+            buffer.position(offset);
+            buffer.get(data);
+            return data;
+        }
+    }
+
+    private static final class Segment {
+        private final int index;
+        private final ByteBuffer buffer;
+        private final File file;
+        private int live;
+        private int count;
+        private boolean released;
+
+        private Segment(final int index, final ByteBuffer buffer, final File file) {
+            this.index = index;
+            this.buffer = buffer;
+            this.file = file;
+        }
+
+        private int capacity() {
+            return buffer.capacity();
+        }
+
+        private int remaining() {
+            return buffer.remaining();
+        }
+
+        private int append(final byte[] data) {
+            final int offset = buffer.position();
+            buffer.put(data);
+            live += data.length;
+            count++;
+            return offset;
+        }
+
+        private void force() {
+            if (MappedByteBuffer.class.isInstance(buffer)) {
+                MappedByteBuffer.class.cast(buffer).force();
+            }
+        }
+
+        /**
+         * Releases the memory, keeping the file for the next start.
+         */
+        private void close() {
+            if (released) {
+                return;
+            }
+            force();
+            released = true;
+            unmap(buffer);
+        }
+
+        /**
+         * Releases the memory and the file.
+         */
+        private void free() {
+            if (!released) {
+                released = true;
+                unmap(buffer);
+            }
+            if (file != null) {
+                delete(file);
+            }
+        }
+    }
+}
@@ -0,0 +1,230 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.tomee.catalina.cluster;
+
+import org.apache.catalina.ha.CatalinaCluster;
+import org.apache.catalina.ha.ClusterMessage;
+import org.apache.catalina.tribes.Member;
+import org.apache.openejb.loader.Files;
+import org.apache.openejb.loader.IO;
+import org.apache.openejb.loader.SystemInstance;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Distributes an archive to receivers through an in memory cluster.
+ */
+public class ArchiveDistributorTest {
+    private static final int CHUNK = 1024;
+
+    private File base;
+    private File archive;
+    private byte[] content;
+    private ArchiveDistributor distributor;
+
+    private final Map<Member, ArchiveReceiver> receivers = new ConcurrentHashMap<>();
+    private final Map<Member, File> committed = new ConcurrentHashMap<>();
+
+    @Before
+    public void createArchive() throws Exception {
+        base = Files.tmpdir();
+        content = new byte[20 * CHUNK + 10];
+        new Random(1).nextBytes(content);
+        archive = new File(base, "app.war");
+        IO.copy(content, archive);
+
+        SystemInstance.get().setProperty(ArchiveDistributor.TOMEE_CLUSTER_DEPLOY_CHUNK_SIZE, Integer.toString(CHUNK));
+        SystemInstance.get().setProperty(ArchiveDistributor.TOMEE_CLUSTER_DEPLOY_TIMEOUT, "1 second");
+        distributor = new ArchiveDistributor();
+    }
+
+    @After
+    public void stop() {
+        distributor.stop();
+        Files.delete(base);
+    }
+
+    @Test
+    public void lostLastChunk() throws Exception {
+        final Member first = member("first", 100);
+        final Member second = member("second", 100);
+        final AtomicBoolean lost = new AtomicBoolean();
+        final CatalinaCluster cluster = cluster(new Loss() {
+            @Override
+            public boolean lost(final ClusterMessage message, final Member destination) {
+                return destination == first && message instanceof ArchiveChunkMessage
+                    && ((ArchiveChunkMessage) message).getIndex() == 20 && lost.compareAndSet(false, true);
+            }
+        }, first, second);
+
+        distributor.distribute(Collections.singleton(cluster), archive);
+        for (int i = 0; i < 100 && committed.size() < 2; i++) {
+            Thread.sleep(50);
+            retryStalled(cluster);
+        }
+
+        assertTrue(lost.get());
+        assertEquals(2, committed.size());
+        for (final File received : committed.values()) {
+            assertArrayEquals(content, java.nio.file.Files.readAllBytes(received.toPath()));
+        }
+    }
+
+    @Test
+    public void timeout() throws Exception {
+        final Member silent = member("silent", 60000);
+        final Member other = member("other", 60000);
+        final CatalinaCluster cluster = cluster(new Loss() {
+            @Override
+            public boolean lost(final ClusterMessage message, final Member destination) {
+                return destination == silent;
+            }
+        }, silent, other);
+
+        distributor.distribute(Collections.singleton(cluster), archive);
+        Thread.sleep(1500);
+        assertTrue(committed.isEmpty());
+
+        // expired, the archive can be sent again
+        final CatalinaCluster reliable = cluster(new Loss() {
+            @Override
+            public boolean lost(final ClusterMessage message, final Member destination) {
+                return false;
+            }
+        }, silent, other);
+        distributor.distribute(Collections.singleton(reliable), archive);
+        for (int i = 0; i < 100 && committed.size() < 2; i++) {
+            Thread.sleep(50);
+        }
+        assertEquals(2, committed.size());
+    }
+
+    private void retryStalled(final CatalinaCluster cluster) {
+        for (final Map.Entry<Member, ArchiveReceiver> receiver : receivers.entrySet()) {
+            for (final ArchiveStatusMessage request : receiver.getValue().stalled().values()) {
+                cluster.send(from(request, receiver.getKey()), null);
+            }
+        }
+    }
+
+    private Member member(final String name, final long retry) {
+        final Member member = (Member) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[]{Member.class}, new InvocationHandler() {
+            @Override
+            public Object invoke(final Object proxy, final Method method, final Object[] args) throws Throwable {
+                switch (method.getName()) {
+                    case "equals":
+                        return proxy == args[0];
+                    case "hashCode":
+                        return System.identityHashCode(proxy);
+                    case "toString":
+                    case "getName":
+                        return name;
+                    default:
+                        return null;
+                }
+            }
+        });
+        receivers.put(member, new ArchiveReceiver(new File(base, name), retry));
+        return member;
+    }
+
+    /**
+     * Delivers the messages on the sending thread, the status messages, sent to a null member,
+     * go to the distributor.
+     */
+    private CatalinaCluster cluster(final Loss loss, final Member... members) {
+        return (CatalinaCluster) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[]{CatalinaCluster.class}, new InvocationHandler() {
+            @Override
+            public Object invoke(final Object proxy, final Method method, final Object[] args) throws Throwable {
+                switch (method.getName()) {
+                    case "getMembers":
+                        return members;
+                    case "send":
+                        if (args.length == 1) {
+                            for (final Member member : members) {
+                                deliver(loss, (ClusterMessage) args[0], member);
+                            }
+                        } else {
+                            deliver(loss, (ClusterMessage) args[0], (Member) args[1]);
+                        }
+                        return null;
+                    case "equals":
+                        return proxy == args[0];
+                    case "hashCode":
+                        return System.identityHashCode(proxy);
+                    default:
+                        return null;
+                }
+            }
+        });
+    }
+
+    private void deliver(final Loss loss, final ClusterMessage message, final Member destination) {
+        if (destination != null && loss.lost(message, destination)) {
+            return;
+        }
+
+        if (message instanceof ArchiveStatusMessage) {
+            distributor.statusReceived((ArchiveStatusMessage) message);
+            return;
+        }
+
+        final ArchiveReceiver receiver = receivers.get(destination);
+        final ArchiveStatusMessage reply;
+        if (message instanceof DeployMessage) {
+            final DeployMessage deploy = (DeployMessage) message;
+            if (deploy.isCommit()) {
+                final File received = receiver.committed(deploy);
+                if (received != null) {
+                    committed.put(destination, received);
+                }
+                return;
+            }
+            reply = receiver.announced(deploy);
+        } else {
+            reply = receiver.received((ArchiveChunkMessage) message);
+        }
+
+        if (reply != null) {
+            deliver(loss, from(reply, destination), null);
+        }
+    }
+
+    private static ArchiveStatusMessage from(final ArchiveStatusMessage status, final Member member) {
+        status.setAddress(member);
+        return status;
+    }
+
+    private interface Loss {
+        boolean lost(ClusterMessage message, Member destination);
+    }
+}
@@ -0,0 +1,152 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.tomee.catalina.cluster;
+
+import org.apache.openejb.loader.Files;
+import org.apache.openejb.loader.IO;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class ArchiveReceiverTest {
+    private static final int CHUNK = 1024;
+
+    private File base;
+    private byte[] content;
+    private DeployMessage announce;
+
+    @Before
+    public void createArchive() throws Exception {
+        base = Files.tmpdir();
+        content = new byte[3 * CHUNK + 10];
+        new Random(1).nextBytes(content);
+
+        final File archive = new File(base, "app.war");
+        IO.copy(content, archive);
+        announce = new DeployMessage(archive.getAbsolutePath(), ArchiveDistributor.hash(archive), content.length, CHUNK, false);
+    }
+
+    @After
+    public void deleteArchive() {
+        Files.delete(base);
+    }
+
+    @Test
+    public void receive() throws Exception {
+        final ArchiveReceiver receiver = new ArchiveReceiver(new File(base, "deployed"), 60000);
+        final ArchiveStatusMessage request = receiver.announced(announce);
+        assertEquals(4, request.getMissing().cardinality());
+
+        for (int i = 0; i < 3; i++) {
+            assertNull(receiver.received(chunk(i)));
+        }
+        final ArchiveStatusMessage status = receiver.received(chunk(3));
+        assertTrue(status.isComplete());
+
+        final File archive = receiver.committed(announce);
+        assertNotNull(archive);
+        assertArrayEquals(content, bytes(archive));
+
+        // same content announced again
+        assertTrue(receiver.announced(announce).isComplete());
+    }
+
+    @Test
+    public void corruptedChunkIsRequestedAgain() throws Exception {
+        final ArchiveReceiver receiver = new ArchiveReceiver(new File(base, "deployed"), 60000);
+        receiver.announced(announce);
+
+        final ArchiveChunkMessage corrupted = chunk(3);
+        corrupted.getData()[0] ^= 1;
+        receiver.received(chunk(0));
+        receiver.received(chunk(1));
+        receiver.received(chunk(2));
+        final ArchiveStatusMessage request = receiver.received(corrupted);
+        assertFalse(request.isComplete());
+        assertEquals(3, request.getMissing().nextSetBit(0));
+        assertEquals(1, request.getMissing().cardinality());
+
+        assertTrue(receiver.received(chunk(3)).isComplete());
+        assertNotNull(receiver.committed(announce));
+    }
+
+    @Test
+    public void lostLastChunkIsRequestedAgain() throws Exception {
+        final ArchiveReceiver receiver = new ArchiveReceiver(new File(base, "deployed"), 100);
+        receiver.announced(announce);
+        receiver.received(chunk(0));
+        receiver.received(chunk(1));
+        receiver.received(chunk(2));
+        // chunk 3, the last requested one, is lost: nothing else would request it again
+        assertTrue(receiver.stalled().isEmpty());
+
+        Thread.sleep(200);
+        final Map<DeployMessage, ArchiveStatusMessage> requests = receiver.stalled();
+        assertEquals(1, requests.size());
+        assertSame(announce, requests.keySet().iterator().next());
+        assertEquals(3, requests.get(announce).getMissing().nextSetBit(0));
+        assertEquals(1, requests.get(announce).getMissing().cardinality());
+
+        assertTrue(receiver.received(chunk(3)).isComplete());
+        assertNotNull(receiver.committed(announce));
+    }
+
+    @Test
+    public void stalledTransferResumesWhenAnnouncedAgain() throws Exception {
+        final ArchiveReceiver receiver = new ArchiveReceiver(new File(base, "deployed"), 1);
+        receiver.announced(announce);
+        receiver.received(chunk(0));
+        receiver.received(chunk(1));
+
+        for (int i = 0; i < 6; i++) { // requested again a few times then given up
+            Thread.sleep(5);
+            receiver.stalled();
+        }
+        assertNull(receiver.received(chunk(2)));
+        assertNull(receiver.committed(announce));
+
+        // a new deployment of the archive only sends what is missing
+        final ArchiveStatusMessage request = receiver.announced(announce);
+        assertEquals(2, request.getMissing().nextSetBit(0));
+        assertEquals(2, request.getMissing().cardinality());
+        receiver.received(chunk(2));
+        assertTrue(receiver.received(chunk(3)).isComplete());
+        assertArrayEquals(content, bytes(receiver.committed(announce)));
+    }
+
+    private static byte[] bytes(final File file) throws Exception {
+        return java.nio.file.Files.readAllBytes(file.toPath());
+    }
+
+    private ArchiveChunkMessage chunk(final int index) {
+        final int start = index * CHUNK;
+        return new ArchiveChunkMessage(announce.getHash(), index, Arrays.copyOfRange(content, start, Math.min(content.length, start + CHUNK)));
+    }
+}
@@ -0,0 +1,270 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.tomee.catalina.session;
+
+import org.apache.catalina.core.StandardContext;
+import org.apache.catalina.core.StandardHost;
+import org.apache.catalina.session.StandardSession;
+import org.apache.openejb.loader.Files;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.servlet.http.HttpSessionEvent;
+import javax.servlet.http.HttpSessionListener;
+import java.io.File;
+import java.lang.management.BufferPoolMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class OffHeapSessionStoreTest {
+    private static final String VALUE = String.format("%0200d", 0);
+
+    private File directory;
+
+    @Before
+    public void createDirectory() {
+        directory = Files.tmpdir();
+    }
+
+    @After
+    public void deleteDirectory() {
+        Files.delete(directory);
+    }
+
+    @Test
+    public void saveLoadRemove() throws Exception {
+        final OffHeapSessionManager manager = manager("/app");
+        final OffHeapSessionStore store = store(manager);
+        try {
+            store.save(session(manager, "s1", "one"));
+            store.save(session(manager, "s2", "two"));
+            store.save(session(manager, "s1", "one again"));
+            assertEquals(2, store.getSize());
+            assertEquals(2, store.keys().length);
+
+            assertEquals("one again", attribute(store, "s1"));
+            assertEquals("two", attribute(store, "s2"));
+
+            store.remove("s1");
+            assertNull(store.load("s1"));
+            assertEquals(1, store.getSize());
+        } finally {
+            store.stop();
+        }
+    }
+
+    @Test
+    public void expire() throws Exception {
+        final AtomicInteger destroyed = new AtomicInteger();
+        final OffHeapSessionManager manager = manager("/app");
+        manager.getContext().setApplicationLifecycleListeners(new Object[]{new HttpSessionListener() {
+            @Override
+            public void sessionCreated(final HttpSessionEvent se) {
+                // no-op
+            }
+
+            @Override
+            public void sessionDestroyed(final HttpSessionEvent se) {
+                destroyed.incrementAndGet();
+            }
+        }});
+
+        final OffHeapSessionStore store = store(manager);
+        try {
+            final StandardSession expired = session(manager, "expired", "old");
+            expired.setCreationTime(System.currentTimeMillis() - TimeUnit.HOURS.toMillis(1));
+            store.save(expired);
+            manager.remove(expired); // swapped out, only in the store
+            store.save(session(manager, "alive", "new"));
+
+            store.processExpires();
+            assertNull(store.load("expired"));
+            assertEquals(1, destroyed.get());
+            assertEquals("new", attribute(store, "alive"));
+        } finally {
+            store.stop();
+        }
+    }
+
+    @Test
+    public void compact() throws Exception {
+        final OffHeapSessionManager manager = manager("/app");
+        manager.setSegmentSize(4096);
+        manager.setDirectory(directory.getAbsolutePath());
+        final OffHeapSessionStore store = store(manager);
+        try {
+            for (int i = 0; i < 100; i++) {
+                store.save(session(manager, "s" + i, VALUE + i));
+            }
+            for (int i = 0; i < 100; i++) {
+                if (i % 10 != 0) {
+                    store.remove("s" + i);
+                }
+            }
+
+            final File sessions = new File(directory, "localhost/app");
+            final int segments = segments(sessions);
+            store.processExpires();
+            assertTrue(segments(sessions) < segments);
+
+            assertEquals(10, store.getSize());
+            for (int i = 0; i < 100; i += 10) {
+                assertEquals(VALUE + i, attribute(store, "s" + i));
+            }
+        } finally {
+            store.stop();
+        }
+    }
+
+    @Test
+    public void restart() throws Exception {
+        final OffHeapSessionManager manager = manager("/app");
+        manager.setDirectory(directory.getAbsolutePath());
+        final OffHeapSessionStore store = store(manager);
+        store.save(session(manager, "s1", "one"));
+        store.stop();
+        assertEquals(0, store.getSize());
+
+        store.start();
+        try {
+            assertEquals(1, store.getSize());
+            assertEquals("one", attribute(store, "s1"));
+        } finally {
+            store.stop();
+        }
+    }
+
+    @Test
+    public void directoryPerContext() throws Exception {
+        final OffHeapSessionManager first = manager("/a");
+        first.setDirectory(directory.getAbsolutePath());
+        final OffHeapSessionManager second = manager("");
+        second.setDirectory(directory.getAbsolutePath());
+
+        final OffHeapSessionStore firstStore = store(first);
+        final OffHeapSessionStore secondStore = store(second);
+        firstStore.save(session(first, "s1", "a"));
+        secondStore.save(session(second, "s1", "root"));
+        firstStore.stop();
+        secondStore.stop();
+
+        assertTrue(new File(directory, "localhost/a").isDirectory());
+        assertTrue(new File(directory, "localhost/ROOT").isDirectory());
+
+        firstStore.start();
+        secondStore.start();
+        try {
+            assertEquals("a", attribute(firstStore, "s1"));
+            assertEquals("root", attribute(secondStore, "s1"));
+        } finally {
+            firstStore.stop();
+            secondStore.stop();
+        }
+    }
+
+    @Test
+    public void clearReleasesTheSegments() throws Exception {
+        final OffHeapSessionManager manager = manager("/app");
+        manager.setSegmentSize(16 * 1024 * 1024);
+        final OffHeapSessionStore store = store(manager);
+        try {
+            final long before = directMemory();
+            store.save(session(manager, "s1", "one"));
+            assertTrue(directMemory() >= before + 16 * 1024 * 1024);
+
+            store.clear();
+            assertEquals(0, store.getSize());
+            assertTrue(directMemory() < before + 16 * 1024 * 1024);
+        } finally {
+            store.stop();
+        }
+    }
+
+    @Test
+    public void stopReleasesTheSegments() throws Exception {
+        final OffHeapSessionManager manager = manager("/app");
+        manager.setSegmentSize(16 * 1024 * 1024);
+        final OffHeapSessionStore store = store(manager);
+        final long before = directMemory();
+        store.save(session(manager, "s1", "one"));
+        store.stop();
+        assertTrue(directMemory() < before + 16 * 1024 * 1024);
+    }
+
+    private static OffHeapSessionManager manager(final String path) {
+        final StandardHost host = new StandardHost();
+        host.setName("localhost");
+
+        final StandardContext context = new StandardContext();
+        context.setName(path);
+        context.setPath(path);
+        context.setParent(host);
+
+        final OffHeapSessionManager manager = new OffHeapSessionManager();
+        manager.setContext(context);
+        return manager;
+    }
+
+    private static OffHeapSessionStore store(final OffHeapSessionManager manager) throws Exception {
+        final OffHeapSessionStore store = (OffHeapSessionStore) manager.getStore();
+        store.start();
+        return store;
+    }
+
+    private static StandardSession session(final OffHeapSessionManager manager, final String id, final String value) {
+        final StandardSession session = (StandardSession) manager.createEmptySession();
+        session.setNew(true);
+        session.setValid(true);
+        session.setCreationTime(System.currentTimeMillis());
+        session.setMaxInactiveInterval(60);
+        session.setId(id, false);
+        session.setAttribute("value", value);
+        return session;
+    }
+
+    private static Object attribute(final OffHeapSessionStore store, final String id) throws Exception {
+        final StandardSession session = (StandardSession) store.load(id);
+        assertNotNull(session);
+        return session.getAttribute("value");
+    }
+
+    private static int segments(final File dir) {
+        int count = 0;
+        for (final String name : dir.list()) {
+            if (name.startsWith("segment-")) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private static long directMemory() {
+        for (final BufferPoolMXBean pool : ManagementFactory.getPlatformMXBeans(BufferPoolMXBean.class)) {
+            if ("direct".equals(pool.getName())) {
+                return pool.getMemoryUsed();
+            }
+        }
+        throw new IllegalStateException("No direct buffer pool");
+    }
+}
@@ -0,0 +1,230 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.tomee.jul.formatter;
+
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+import java.util.logging.Formatter;
+import java.util.logging.LogRecord;
+
+/**
+ * Single line formatter ("dd-MMM-yyyy HH:mm:ss.SSS LEVEL [thread] logger message") writing into a
+ * reusable per-thread buffer.
+ *
+ * format(LogRecord) works as any JUL formatter but RingBufferFileHandler calls formatTo() which
+ * doesn't allocate for plain messages and simple {n} parameters: the date is formatted once per
+ * second and thread, the stack traces are printed through a writer appending to the buffer.
+ * The thread name is the one of the current thread so records should be formatted where they are logged.
+ */
+public class BufferedLineFormatter extends Formatter {
+    private static final String LN = System.getProperty("line.separator");
+    private static final int MAX_RETAINED_CAPACITY = 64 * 1024;
+
+    private static final ThreadLocal<Buffers> BUFFERS = new ThreadLocal<Buffers>() {
+        @Override
+        protected Buffers initialValue() {
+            return new Buffers();
+        }
+    };
+
+    @Override
+    public String format(final LogRecord record) {
+        final Buffers buffers = BUFFERS.get();
+        final StringBuilder builder = buffers.builder();
+        formatTo(record, builder, buffers);
+        return builder.toString();
+    }
+
+    /**
+     * @return the buffer of the current thread containing the formatted record, valid until the next call
+     */
+    public StringBuilder formatToBuffer(final LogRecord record) {
+        final Buffers buffers = BUFFERS.get();
+        final StringBuilder builder = buffers.builder();
+        formatTo(record, builder, buffers);
+        return builder;
+    }
+
+    public void formatTo(final LogRecord record, final StringBuilder builder) {
+        formatTo(record, builder, BUFFERS.get());
+    }
+
+    private void formatTo(final LogRecord record, final StringBuilder builder, final Buffers buffers) {
+        final boolean busy = buffers.busy;
+        buffers.busy = true;
+        try {
+            doFormat(record, builder, buffers);
+        } finally {
+            buffers.busy = busy;
+        }
+    }
+
+    private void doFormat(final LogRecord record, final StringBuilder builder, final Buffers buffers) {
+        buffers.appendDate(builder, record.getMillis());
+        builder.append(' ').append(record.getLevel().getLocalizedName())
+            .append(" [").append(Thread.currentThread().getName()).append("] ");
+        if (record.getLoggerName() != null) {
+            builder.append(record.getLoggerName()).append(' ');
+        }
+        appendMessage(record, builder);
+        builder.append(LN);
+
+        final Throwable thrown = record.getThrown();
+        if (thrown != null) {
+            final StringBuilder previous = buffers.writer.builder;
+            buffers.writer.builder = builder;
+            try {
+                thrown.printStackTrace(buffers.printer);
+                buffers.printer.flush();
+            } catch (final Exception ex) {
+                // no-op
+            } finally {
+                buffers.writer.builder = previous;
+            }
+        }
+    }
+
+    private void appendMessage(final LogRecord record, final StringBuilder builder) {
+        final String message = record.getMessage();
+        if (message == null) {
+            builder.append("null");
+            return;
+        }
+
+        final Object[] parameters = record.getParameters();
+        if (record.getResourceBundle() != null || (parameters != null && parameters.length > 0 && !isSimple(message, parameters))) {
+            builder.append(formatMessage(record)); // MessageFormat features, let JUL handle it
+            return;
+        }
+        if (parameters == null || parameters.length == 0) {
+            builder.append(message);
+            return;
+        }
+
+        int last = 0;
+        int open = message.indexOf('{');
+        while (open >= 0) {
+            builder.append(message, last, open);
+            builder.append(parameters[message.charAt(open + 1) - '0']);
+            last = open + 3;
+            open = message.indexOf('{', last);
+        }
+        builder.append(message, last, message.length());
+    }
+
+    // only {0}..{9}, no quote and no number or date (localized by MessageFormat), anything else needs MessageFormat
+    private static boolean isSimple(final String message, final Object[] parameters) {
+        if (message.indexOf('\'') >= 0) {
+            return false;
+        }
+        for (final Object parameter : parameters) {
+            if (parameter instanceof Number || parameter instanceof Date) {
+                return false;
+            }
+        }
+
+        int open = message.indexOf('{');
+        if (open < 0) {
+            return false; // JUL doesn't format such messages, keep its behavior
+        }
+        while (open >= 0) {
+            if (open + 2 >= message.length() || message.charAt(open + 2) != '}') {
+                return false;
+            }
+            final int index = message.charAt(open + 1) - '0';
+            if (index < 0 || index >= parameters.length) {
+                return false;
+            }
+            open = message.indexOf('{', open + 3);
+        }
+        return true;
+    }
+
+    private static final class Buffers {
+        private final StringBuilder builder = new StringBuilder(256);
+        private final BuilderWriter writer = new BuilderWriter();
+        private final PrintWriter printer = new PrintWriter(writer);
+        private final SimpleDateFormat dateFormat = new SimpleDateFormat("dd-MMM-yyyy HH:mm:ss", Locale.ENGLISH);
+        private final Date date = new Date();
+        private long second = -1;
+        private String formattedSecond;
+        private boolean busy; // a parameter logging while it is formatted
+
+        private StringBuilder builder() {
+            if (busy) {
+                return new StringBuilder();
+            }
+            if (builder.capacity() > MAX_RETAINED_CAPACITY) { // don't keep a huge stack trace buffer
+                builder.setLength(0);
+                builder.trimToSize();
+            }
+            builder.setLength(0);
+            return builder;
+        }
+
+        private void appendDate(final StringBuilder builder, final long millis) {
+            final long currentSecond = millis / 1000;
+            if (currentSecond != second) {
+                date.setTime(currentSecond * 1000);
+                formattedSecond = dateFormat.format(date);
+                second = currentSecond;
+            }
+            builder.append(formattedSecond).append('.');
+
+            final int ms = (int) (millis % 1000);
+            if (ms < 100) {
+                builder.append('0');
+            }
+            if (ms < 10) {
+                builder.append('0');
+            }
+            builder.append(ms);
+        }
+    }
+
+    private static final class BuilderWriter extends Writer {
+        private StringBuilder builder;
+
+        @Override
+        public void write(final char[] chars, final int off, final int len) {
+            builder.append(chars, off, len);
+        }
+
+        @Override
+        public void write(final int c) {
+            builder.append((char) c);
+        }
+
+        @Override
+        public void write(final String str, final int off, final int len) {
+            builder.append(str, off, off + len);
+        }
+
+        @Override
+        public void flush() {
+            // no-op
+        }
+
+        @Override
+        public void close() {
+            // no-op
+        }
+    }
+}
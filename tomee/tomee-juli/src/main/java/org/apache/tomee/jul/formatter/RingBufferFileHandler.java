@@ -0,0 +1,419 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.tomee.jul.formatter;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.file.StandardOpenOption;
+import java.text.SimpleDateFormat;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.logging.ErrorManager;
+import java.util.logging.Filter;
+import java.util.logging.Formatter;
+import java.util.logging.Handler;
+import java.util.logging.Level;
+import java.util.logging.LogManager;
+import java.util.logging.LogRecord;
+
+/**
+ * Asynchronous file handler without allocation on the logging path.
+ *
+ * Records are formatted by the logging thread (BufferedLineFormatter per-thread buffer) and copied
+ * into the preallocated slots of a ring buffer. A single writer thread encodes the slots into a
+ * direct buffer and writes them to a FileChannel, one write per batch of available records.
+ *
+ * Configuration, prefixed by the class name as for Tomcat FileHandler:
+ * <ul>
+ *     <li>directory, prefix, suffix, rotatable (daily), encoding, level, formatter, filter: as FileHandler</li>
+ *     <li>bufferSize: number of slots, rounded to a power of two (default 8192)</li>
+ *     <li>overflowPolicy: what to do when the ring is full, block (default), drop or discard
+ *     (drop records below discardLevel and block for the others)</li>
+ *     <li>discardLevel: default WARNING</li>
+ *     <li>writeBufferSize: size of the encoding buffer in bytes (default 64k)</li>
+ * </ul>
+ */
+public class RingBufferFileHandler extends Handler {
+    private static final int MAX_RETAINED_SLOT = 16 * 1024;
+    private static final long IDLE_WAIT = TimeUnit.SECONDS.toNanos(1);
+
+    public enum OverflowPolicy {
+        BLOCK, DROP, DISCARD
+    }
+
+    private final Slot[] slots;
+    private final int mask;
+    private final OverflowPolicy overflowPolicy;
+    private final int discardLevel;
+
+    private final AtomicLong claimed = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private volatile long written;
+    private volatile boolean sleeping;
+    private volatile boolean closed;
+
+    private final String directory;
+    private final String prefix;
+    private final String suffix;
+    private final boolean rotatable;
+    private final Appender appender;
+
+    public RingBufferFileHandler() {
+        this(null, null, null);
+    }
+
+    public RingBufferFileHandler(final String directory, final String prefix, final String suffix) {
+        this(directory, prefix, suffix, -1, null);
+    }
+
+    /**
+     * @param bufferSize number of slots, the configuration is used when not positive
+     * @param overflowPolicy the configuration is used when null
+     */
+    public RingBufferFileHandler(final String directory, final String prefix, final String suffix,
+                                 final int bufferSize, final OverflowPolicy overflowPolicy) {
+        final String className = getClass().getName();
+        this.directory = directory != null ? directory : property(className + ".directory", "logs");
+        this.prefix = prefix != null ? prefix : property(className + ".prefix", "juli.");
+        this.suffix = suffix != null ? suffix : property(className + ".suffix", ".log");
+        this.rotatable = Boolean.parseBoolean(property(className + ".rotatable", "true"));
+        this.overflowPolicy = overflowPolicy != null ? overflowPolicy : OverflowPolicy.valueOf(property(className + ".overflowPolicy", "block").toUpperCase(Locale.ENGLISH));
+        this.discardLevel = Level.parse(property(className + ".discardLevel", "WARNING")).intValue();
+
+        int size = 1;
+        final int requested = Math.max(2, bufferSize > 0 ? bufferSize : Integer.parseInt(property(className + ".bufferSize", "8192")));
+        while (size < requested) {
+            size <<= 1;
+        }
+        slots = new Slot[size];
+        for (int i = 0; i < size; i++) {
+            slots[i] = new Slot(i - size); // never published
+        }
+        mask = size - 1;
+
+        setLevel(Level.parse(property(className + ".level", "ALL")));
+        setFormatter(this.<Formatter>newInstance(property(className + ".formatter", null), new BufferedLineFormatter()));
+        final Filter filter = newInstance(property(className + ".filter", null), null);
+        if (filter != null) {
+            setFilter(filter);
+        }
+        final String encoding = property(className + ".encoding", null);
+        try {
+            setEncoding(encoding);
+        } catch (final Exception e) {
+            reportError("Unsupported encoding " + encoding, e, ErrorManager.OPEN_FAILURE);
+        }
+
+        final Charset charset = getEncoding() == null ? Charset.defaultCharset() : Charset.forName(getEncoding());
+        appender = new Appender(charset, Integer.parseInt(property(className + ".writeBufferSize", "65536")));
+        appender.setName("RingBufferFileHandler-" + this.prefix);
+        appender.setDaemon(true);
+        appender.start();
+    }
+
+    @Override
+    public void publish(final LogRecord record) {
+        if (closed || !isLoggable(record)) {
+            return;
+        }
+
+        final Formatter formatter = getFormatter();
+        final CharSequence text;
+        try {
+            text = BufferedLineFormatter.class.isInstance(formatter) ?
+                BufferedLineFormatter.class.cast(formatter).formatToBuffer(record) : formatter.format(record);
+        } catch (final Exception e) {
+            reportError(null, e, ErrorManager.FORMAT_FAILURE);
+            return;
+        }
+
+        final long sequence = claim(record.getLevel().intValue());
+        if (sequence < 0) {
+            return;
+        }
+
+        final Slot slot = slots[(int) (sequence & mask)];
+        slot.set(text);
+        slot.published = sequence;
+
+        if (sleeping) {
+            LockSupport.unpark(appender);
+        }
+    }
+
+    private long claim(final int level) {
+        boolean unparked = false;
+        while (true) {
+            final long sequence = claimed.get();
+            if (sequence - written < slots.length) {
+                if (claimed.compareAndSet(sequence, sequence + 1)) {
+                    return sequence;
+                }
+                continue;
+            }
+
+            // full, nothing will free a slot if the appender died
+            if (overflowPolicy == OverflowPolicy.DROP || (overflowPolicy == OverflowPolicy.DISCARD && level < discardLevel)
+                || closed || !appender.isAlive()) {
+                dropped.incrementAndGet();
+                return -1;
+            }
+            if (!unparked) {
+                LockSupport.unpark(appender);
+                unparked = true;
+            }
+            LockSupport.parkNanos(TimeUnit.MICROSECONDS.toNanos(50));
+        }
+    }
+
+    /**
+     * Waits until the records published before this call are written.
+     */
+    @Override
+    public void flush() {
+        final long target = claimed.get();
+        while (written < target && appender.isAlive()) {
+            LockSupport.unpark(appender);
+            LockSupport.parkNanos(TimeUnit.MICROSECONDS.toNanos(100));
+        }
+    }
+
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        LockSupport.unpark(appender);
+        try {
+            appender.join(TimeUnit.SECONDS.toMillis(10));
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    public long getDropped() {
+        return dropped.get();
+    }
+
+    private static String property(final String name, final String defaultValue) {
+        final String value = LogManager.getLogManager().getProperty(name);
+        return value == null ? defaultValue : value.trim();
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T> T newInstance(final String className, final T defaultValue) {
+        if (className == null) {
+            return defaultValue;
+        }
+        try {
+            final ClassLoader loader = Thread.currentThread().getContextClassLoader();
+            return (T) Class.forName(className, true, loader == null ? getClass().getClassLoader() : loader).newInstance();
+        } catch (final Exception e) {
+            reportError("Can't create " + className, e, ErrorManager.GENERIC_FAILURE);
+            return defaultValue;
+        }
+    }
+
+    private static final class Slot {
+        private volatile long published;
+        private char[] chars = new char[256];
+        private CharBuffer buffer = CharBuffer.wrap(chars);
+        private int length;
+
+        private Slot(final long published) {
+            this.published = published;
+        }
+
+        private void set(final CharSequence text) {
+            length = text.length();
+            if (length > chars.length) {
+                chars = new char[Math.max(length, chars.length * 2)];
+                buffer = CharBuffer.wrap(chars);
+            }
+            if (StringBuilder.class.isInstance(text)) {
+                StringBuilder.class.cast(text).getChars(0, length, chars, 0);
+            } else {
+                text.toString().getChars(0, length, chars, 0);
+            }
+        }
+
+        private CharBuffer read() {
+            buffer.clear();
+            buffer.limit(length);
+            return buffer;
+        }
+
+        private void release() {
+            if (chars.length > MAX_RETAINED_SLOT) { // a huge stack trace
+                chars = new char[256];
+                buffer = CharBuffer.wrap(chars);
+            }
+        }
+    }
+
+    private final class Appender extends Thread {
+        private final CharsetEncoder encoder;
+        private final ByteBuffer bytes;
+        private FileChannel channel;
+        private long nextRotation;
+        private final int maxBatch = Math.max(1, slots.length / 4); // free slots regularly for blocked producers
+        private long reportedDrops;
+
+        private Appender(final Charset charset, final int bufferSize) {
+            encoder = charset.newEncoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+            bytes = ByteBuffer.allocateDirect(Math.max(1024, bufferSize));
+        }
+
+        @Override
+        public void run() {
+            long next = 0;
+            try {
+                while (true) {
+                    final boolean closing = closed;
+
+                    long end = next;
+                    final long max = next + maxBatch;
+                    while (end < max && slots[(int) (end & mask)].published == end) {
+                        end++;
+                    }
+
+                    if (end > next || dropped.get() != reportedDrops) {
+                        write(next, end);
+                        next = end;
+                        written = end;
+                    } else if (closing) {
+                        break;
+                    } else {
+                        sleeping = true;
+                        if (slots[(int) (next & mask)].published != next && !closed) {
+                            LockSupport.parkNanos(RingBufferFileHandler.this, IDLE_WAIT);
+                        }
+                        sleeping = false;
+                    }
+                }
+            } finally {
+                closeChannel();
+            }
+        }
+
+        private void write(final long from, final long to) {
+            try {
+                ensureOpen();
+                for (long sequence = from; sequence < to; sequence++) {
+                    final Slot slot = slots[(int) (sequence & mask)];
+                    encode(slot.read());
+                    slot.release();
+                }
+
+                final long drops = dropped.get();
+                if (drops != reportedDrops) {
+                    final long count = drops - reportedDrops;
+                    reportedDrops = drops;
+                    encode(CharBuffer.wrap(count + " log records dropped by " + getName() + System.getProperty("line.separator")));
+                }
+                drain();
+            } catch (final IOException e) {
+                reportedDrops = dropped.get();
+                bytes.clear();
+                reportError(null, e, ErrorManager.WRITE_FAILURE);
+                closeChannel();
+            }
+        }
+
+        private void encode(final CharBuffer chars) throws IOException {
+            encoder.reset();
+            while (true) {
+                final CoderResult result = encoder.encode(chars, bytes, true);
+                if (result.isOverflow()) {
+                    drain();
+                    continue;
+                }
+                if (encoder.flush(bytes).isOverflow()) {
+                    drain();
+                    continue;
+                }
+                break;
+            }
+        }
+
+        private void drain() throws IOException {
+            bytes.flip();
+            while (bytes.hasRemaining()) {
+                channel.write(bytes);
+            }
+            bytes.clear();
+        }
+
+        private void ensureOpen() throws IOException {
+            final long now = System.currentTimeMillis();
+            if (channel != null && now < nextRotation) {
+                return;
+            }
+            closeChannel();
+
+            final String date;
+            if (rotatable) {
+                final Calendar calendar = Calendar.getInstance();
+                calendar.setTimeInMillis(now);
+                date = new SimpleDateFormat("yyyy-MM-dd", Locale.ENGLISH).format(new Date(now));
+                calendar.set(Calendar.HOUR_OF_DAY, 0);
+                calendar.set(Calendar.MINUTE, 0);
+                calendar.set(Calendar.SECOND, 0);
+                calendar.set(Calendar.MILLISECOND, 0);
+                calendar.add(Calendar.DAY_OF_MONTH, 1);
+                nextRotation = calendar.getTimeInMillis();
+            } else {
+                date = "";
+                nextRotation = Long.MAX_VALUE;
+            }
+
+            final File file = new File(directory, prefix + date + suffix).getAbsoluteFile();
+            final File parent = file.getParentFile();
+            if (!parent.isDirectory() && !parent.mkdirs() && !parent.isDirectory()) {
+                throw new IOException("Unable to create " + parent);
+            }
+            channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        }
+
+        private void closeChannel() {
+            if (channel == null) {
+                return;
+            }
+            try {
+                channel.close();
+            } catch (final IOException e) {
+                reportError(null, e, ErrorManager.CLOSE_FAILURE);
+            } finally {
+                channel = null;
+            }
+        }
+    }
+}
@@ -0,0 +1,86 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.tomee.jul.formatter;
+
+import org.apache.commons.lang3.exception.ExceptionUtils;
+import org.junit.Test;
+
+import java.text.MessageFormat;
+import java.util.logging.Level;
+import java.util.logging.LogRecord;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class BufferedLineFormatterTest {
+    private static final String LN = System.getProperty("line.separator");
+
+    private final BufferedLineFormatter formatter = new BufferedLineFormatter();
+
+    @Test
+    public void format() {
+        final LogRecord record = new LogRecord(Level.INFO, "An example log record");
+        record.setLoggerName("logger");
+        record.setMillis(5);
+
+        final String formatted = formatter.format(record);
+        assertTrue(formatted, formatted.matches("(?s)\\d{2}-\\w{3}-\\d{4} \\d{2}:\\d{2}:\\d{2}\\.005 .*"));
+        assertTrue(formatted.endsWith(" " + Level.INFO.getLocalizedName() + " [" + Thread.currentThread().getName() + "] logger An example log record" + LN));
+    }
+
+    @Test
+    public void parameters() {
+        assertEquals("a b a", message("{0} {1} {0}", "a", "b"));
+        assertEquals("null", message("{0}", new Object[]{null}));
+        assertEquals("no parameter", message("no parameter", "a"));
+        // MessageFormat behaviors
+        assertEquals(MessageFormat.format("{0}", 1000), message("{0}", 1000));
+        assertEquals("{0}", message("'{0}'", "a"));
+        assertEquals("a", message("{0,choice,0#a|1#b}", 0));
+        assertEquals("{0} {", message("{0} {", "a")); // invalid pattern, JUL keeps it
+    }
+
+    @Test
+    public void thrown() {
+        final Exception thrown = new Exception("An example exception");
+        final LogRecord record = new LogRecord(Level.SEVERE, "failed");
+        record.setThrown(thrown);
+
+        assertTrue(formatter.format(record).endsWith(" failed" + LN + ExceptionUtils.getStackTrace(thrown)));
+    }
+
+    @Test
+    public void reentrant() {
+        final LogRecord record = new LogRecord(Level.INFO, "value {0}");
+        record.setParameters(new Object[]{new Object() {
+            @Override
+            public String toString() {
+                final LogRecord nested = new LogRecord(Level.INFO, "nested");
+                return formatter.format(nested).contains(" nested" + LN) ? "formatted" : "broken";
+            }
+        }});
+        assertTrue(formatter.format(record).endsWith(" value formatted" + LN));
+    }
+
+    private String message(final String message, final Object... parameters) {
+        final LogRecord record = new LogRecord(Level.INFO, message);
+        record.setParameters(parameters);
+        final String formatted = formatter.format(record);
+        final String prefix = "[" + Thread.currentThread().getName() + "] ";
+        return formatted.substring(formatted.indexOf(prefix) + prefix.length(), formatted.length() - LN.length());
+    }
+}
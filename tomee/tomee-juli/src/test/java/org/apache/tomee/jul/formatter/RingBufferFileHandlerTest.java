@@ -0,0 +1,147 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.tomee.jul.formatter;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.LogRecord;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class RingBufferFileHandlerTest {
+    private File directory;
+
+    @Before
+    public void createDirectory() throws IOException {
+        directory = Files.createTempDirectory("ring-buffer-handler").toFile();
+    }
+
+    @After
+    public void deleteDirectory() {
+        final File[] files = directory.listFiles();
+        if (files != null) {
+            for (final File file : files) {
+                file.delete();
+            }
+        }
+        directory.delete();
+    }
+
+    @Test
+    public void writeInOrder() throws Exception {
+        final RingBufferFileHandler handler = new RingBufferFileHandler(directory.getAbsolutePath(), "test.", ".log", 16, RingBufferFileHandler.OverflowPolicy.BLOCK);
+        try {
+            for (int i = 0; i < 1000; i++) {
+                final LogRecord record = new LogRecord(Level.INFO, "message {0}");
+                record.setParameters(new Object[]{"#" + i});
+                record.setLoggerName("test");
+                handler.publish(record);
+            }
+            final LogRecord error = new LogRecord(Level.SEVERE, "failed");
+            error.setThrown(new IllegalStateException("expected"));
+            handler.publish(error);
+            handler.flush();
+        } finally {
+            handler.close();
+        }
+
+        final List<String> lines = lines();
+        for (int i = 0; i < 1000; i++) {
+            assertTrue(lines.get(i), lines.get(i).endsWith(" test message #" + i));
+        }
+        assertTrue(lines.get(1000).endsWith(" failed"));
+        assertEquals(IllegalStateException.class.getName() + ": expected", lines.get(1001));
+        assertEquals(0, handler.getDropped());
+    }
+
+    @Test
+    public void drop() throws Exception {
+        final RingBufferFileHandler handler = new RingBufferFileHandler(directory.getAbsolutePath(), "test.", ".log", 2, RingBufferFileHandler.OverflowPolicy.DROP);
+        try {
+            for (int i = 0; i < 10000; i++) {
+                handler.publish(new LogRecord(Level.INFO, "message"));
+            }
+            handler.flush();
+        } finally {
+            handler.close();
+        }
+
+        int messages = 0;
+        long reported = 0;
+        for (final String line : lines()) {
+            if (line.endsWith(" message")) {
+                messages++;
+            } else {
+                reported += Long.parseLong(line.substring(0, line.indexOf(' ')));
+            }
+        }
+        assertEquals(handler.getDropped(), reported);
+        assertEquals(10000, messages + reported);
+    }
+
+    @Test
+    public void discardBelowLevel() throws Exception {
+        final RingBufferFileHandler handler = new RingBufferFileHandler(directory.getAbsolutePath(), "test.", ".log", 2, RingBufferFileHandler.OverflowPolicy.DISCARD);
+        try {
+            for (int i = 0; i < 10000; i++) {
+                handler.publish(new LogRecord(Level.FINE, "debug"));
+                handler.publish(new LogRecord(Level.WARNING, "warning"));
+            }
+            handler.flush();
+        } finally {
+            handler.close();
+        }
+
+        int warnings = 0;
+        for (final String line : lines()) {
+            if (line.endsWith(" warning")) {
+                warnings++;
+            }
+        }
+        assertEquals(10000, warnings);
+    }
+
+    @Test(timeout = 30000)
+    public void blockDoesNotWaitForADeadAppender() throws Exception {
+        // an invalid file name kills the writer thread with an InvalidPathException
+        final RingBufferFileHandler handler = new RingBufferFileHandler(directory.getAbsolutePath(), "dead\0.", ".log", 2, RingBufferFileHandler.OverflowPolicy.BLOCK);
+        try {
+            for (int i = 0; i < 100; i++) {
+                handler.publish(new LogRecord(Level.INFO, "message"));
+            }
+            handler.flush();
+            assertTrue(handler.getDropped() > 0);
+        } finally {
+            handler.close();
+        }
+    }
+
+    private List<String> lines() throws IOException {
+        final File[] files = directory.listFiles();
+        assertEquals(1, files.length);
+        return Files.readAllLines(files[0].toPath(), Charset.defaultCharset());
+    }
+}